@@ -17,6 +17,8 @@ public class AlgoStub implements Algo
 	
 	private ArrayList<AlgoListener> algoListeners = new ArrayList<AlgoListener>();
 
+	private ArrayList<PhaseListener> phaseListeners = new ArrayList<PhaseListener>();
+
 
 	// ===================================================================
 	// Management of listeners
@@ -33,6 +35,54 @@ public class AlgoStub implements Algo
 		this.algoListeners.remove(listener);
 	}
 
+	/**
+	 * Adds a listener that will be notified at the end of each phase of the
+	 * algorithm.
+	 * 
+	 * @param listener
+	 *            the listener to add
+	 */
+	public void addPhaseListener(PhaseListener listener) 
+	{
+		this.phaseListeners.add(listener);
+	}
+
+	/**
+	 * Removes a phase listener.
+	 * 
+	 * @param listener
+	 *            the listener to remove
+	 */
+	public void removePhaseListener(PhaseListener listener) 
+	{
+		this.phaseListeners.remove(listener);
+	}
+
+	/**
+	 * @return true if at least one phase listener was added to this algorithm
+	 */
+	public boolean hasPhaseListeners()
+	{
+		return !this.phaseListeners.isEmpty();
+	}
+
+
+	// ===================================================================
+	// Management of phases
+
+	/**
+	 * Starts a new phase of the algorithm. The phase listeners are notified
+	 * when the <code>finish</code> method of the returned timer is called.
+	 * 
+	 * @param phase
+	 *            the name of the phase
+	 * @return the timer of the new phase
+	 */
+	protected PhaseTimer startPhase(String phase)
+	{
+		return new PhaseTimer(this, phase);
+	}
+
 	
 	// ===================================================================
 	// fire events
@@ -76,4 +126,12 @@ public class AlgoStub implements Algo
 			listener.algoStatusChanged(evt);
 		}
 	}
+
+	protected void firePhaseFinished(PhaseEvent evt)
+	{
+		for (PhaseListener listener : this.phaseListeners)
+		{
+			listener.algoPhaseFinished(evt);
+		}
+	}
 }
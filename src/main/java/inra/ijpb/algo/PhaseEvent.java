@@ -0,0 +1,131 @@
+/**
+ * 
+ */
+package inra.ijpb.algo;
+
+/**
+ * An event class for storing the metrics of a phase of an algorithm: elapsed
+ * time, number of processed elements, and number of bytes allocated by the
+ * thread that ran the phase.
+ * 
+ * @see PhaseListener
+ * 
+ * @author David Legland
+ *
+ */
+public class PhaseEvent
+{
+	/**
+	 * The algorithm object that throwed this event
+	 */
+	private Object source;
+
+	/**
+	 * The name of the phase
+	 */
+	private String phase;
+
+	/**
+	 * The elapsed time, in nanoseconds
+	 */
+	private long elapsedTime;
+
+	/**
+	 * The number of elements processed during the phase
+	 */
+	private long count;
+
+	/**
+	 * The number of bytes allocated during the phase, or -1 if unknown
+	 */
+	private long allocatedBytes;
+
+	/**
+	 * Creates a new phase event.
+	 * 
+	 * @param source
+	 *            the algorithm that ran the phase
+	 * @param phase
+	 *            the name of the phase
+	 * @param elapsedTime
+	 *            the elapsed time, in nanoseconds
+	 * @param count
+	 *            the number of elements processed during the phase
+	 * @param allocatedBytes
+	 *            the number of bytes allocated during the phase, or -1 if
+	 *            unknown
+	 */
+	public PhaseEvent(Object source, String phase, long elapsedTime,
+			long count, long allocatedBytes)
+	{
+		this.source = source;
+		this.phase = phase;
+		this.elapsedTime = elapsedTime;
+		this.count = count;
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	/**
+	 * @return the source object
+	 */
+	public Object getSource()
+	{
+		return source;
+	}
+
+	/**
+	 * @return the name of the phase
+	 */
+	public String getPhase()
+	{
+		return phase;
+	}
+
+	/**
+	 * @return the elapsed time, in nanoseconds
+	 */
+	public long getElapsedTime()
+	{
+		return elapsedTime;
+	}
+
+	/**
+	 * @return the elapsed time, in milliseconds
+	 */
+	public double getElapsedMillis()
+	{
+		return elapsedTime / 1e6;
+	}
+
+	/**
+	 * @return the number of elements processed during the phase
+	 */
+	public long getCount()
+	{
+		return count;
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the thread that ran the phase.
+	 * The allocations of worker threads created by the phase are not
+	 * included.
+	 * 
+	 * @return the number of bytes allocated during the phase, or -1 if the
+	 *         virtual machine does not provide this information
+	 */
+	public long getAllocatedBytes()
+	{
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return the number of processed elements per second, or 0 if the
+	 *         elapsed time is zero
+	 */
+	public double getThroughput()
+	{
+		if (elapsedTime <= 0)
+			return 0;
+		return count * 1e9 / elapsedTime;
+	}
+}
@@ -0,0 +1,25 @@
+/**
+ * 
+ */
+package inra.ijpb.algo;
+
+/**
+ * Interface for collecting the metrics of the successive phases of an
+ * algorithm.
+ * 
+ * @see AlgoStub#addPhaseListener(PhaseListener)
+ * @see PhaseMetricsWriter
+ * 
+ * @author David Legland
+ *
+ */
+public interface PhaseListener
+{
+	/**
+	 * Called when a phase of an algorithm is finished.
+	 * 
+	 * @param evt
+	 *            the metrics of the phase
+	 */
+	public void algoPhaseFinished(PhaseEvent evt);
+}
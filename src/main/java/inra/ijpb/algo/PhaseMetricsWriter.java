@@ -0,0 +1,108 @@
+/**
+ * 
+ */
+package inra.ijpb.algo;
+
+import ij.IJ;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Writes the metrics of the phases of algorithms to a text output, either in
+ * CSV format (one line per phase, with a header line), or in JSON format (one
+ * JSON object per line).
+ * 
+ * <p>
+ * Example of use:
+ * <pre><code>
+ * Writer output = new FileWriter("watershed-metrics.csv");
+ * PhaseMetricsWriter metrics = new PhaseMetricsWriter(output, PhaseMetricsWriter.Format.CSV);
+ * MarkerControlledWatershedTransform3D algo = ...
+ * algo.addPhaseListener(metrics);
+ * ImagePlus result = algo.applyWithPriorityQueue();
+ * output.close();
+ * </code></pre>
+ * 
+ * @see PhaseEvent
+ * 
+ * @author David Legland
+ *
+ */
+public class PhaseMetricsWriter implements PhaseListener
+{
+	/**
+	 * The format of the output.
+	 */
+	public enum Format 
+	{
+		/** Comma separated values, with a header line */
+		CSV,
+		/** One JSON object per line */
+		JSON;
+	}
+
+	/** The output */
+	private Writer writer;
+
+	/** The format of the output */
+	private Format format;
+
+	/** Indicates whether the CSV header was written */
+	private boolean headerWritten = false;
+
+	/**
+	 * Creates a new writer of phase metrics.
+	 * 
+	 * @param writer
+	 *            the output. It is flushed after each phase, but not closed.
+	 * @param format
+	 *            the format of the output
+	 */
+	public PhaseMetricsWriter(Writer writer, Format format)
+	{
+		this.writer = writer;
+		this.format = format;
+	}
+
+	@Override
+	public synchronized void algoPhaseFinished(PhaseEvent evt)
+	{
+		String algoName = evt.getSource().getClass().getSimpleName();
+		try
+		{
+			if (format == Format.CSV)
+			{
+				if (!headerWritten)
+				{
+					writer.write("algo,phase,time_ms,count,allocated_bytes,throughput\n");
+					headerWritten = true;
+				}
+				writer.write(String.format(Locale.ENGLISH, "%s,%s,%.3f,%d,%d,%.1f\n",
+						algoName, evt.getPhase(), evt.getElapsedMillis(),
+						evt.getCount(), evt.getAllocatedBytes(), evt.getThroughput()));
+			}
+			else
+			{
+				writer.write(String.format(Locale.ENGLISH, 
+						"{\"algo\": \"%s\", \"phase\": \"%s\", \"time_ms\": %.3f, \"count\": %d, \"allocated_bytes\": %d, \"throughput\": %.1f}\n",
+						algoName, escape(evt.getPhase()), evt.getElapsedMillis(),
+						evt.getCount(), evt.getAllocatedBytes(), evt.getThroughput()));
+			}
+			writer.flush();
+		}
+		catch (IOException ex)
+		{
+			IJ.log("Could not write phase metrics: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Escapes the characters that are not allowed within JSON strings.
+	 */
+	private static final String escape(String text)
+	{
+		return text.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ * 
+ */
+package inra.ijpb.algo;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Measures the elapsed time and the allocated memory of a phase of an
+ * algorithm, and notifies the phase listeners of the algorithm when the phase
+ * is finished. Measures are only performed if the algorithm has phase
+ * listeners when the phase starts.
+ * 
+ * <p>
+ * Example of use, within a class extending AlgoStub:
+ * <pre><code>
+ * PhaseTimer timer = startPhase("flood");
+ * // run the phase
+ * ...
+ * timer.finish(nProcessedVoxels);
+ * </code></pre>
+ * 
+ * @see AlgoStub#startPhase(String)
+ * 
+ * @author David Legland
+ *
+ */
+public class PhaseTimer
+{
+	// ===================================================================
+	// Static variables
+
+	/** The bean used for measuring allocations, or null if not available */
+	private static final ThreadMXBean threadBean;
+
+	/** The method returning the allocated bytes of a thread, or null */
+	private static final Method allocatedBytesMethod;
+
+	static
+	{
+		ThreadMXBean bean = null;
+		Method method = null;
+		try
+		{
+			// use reflection, as the method is not part of the standard API
+			bean = ManagementFactory.getThreadMXBean();
+			Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean");
+			if (beanClass.isInstance(bean))
+			{
+				method = beanClass.getMethod("getThreadAllocatedBytes", long.class);
+				if (((Long) method.invoke(bean, Thread.currentThread().getId())) < 0)
+					method = null;
+			}
+		}
+		catch (Exception ex)
+		{
+			method = null;
+		}
+		threadBean = bean;
+		allocatedBytesMethod = method;
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread since its
+	 * creation.
+	 * 
+	 * @return the number of allocated bytes, or -1 if the virtual machine does
+	 *         not provide this information
+	 */
+	public static final long currentThreadAllocatedBytes()
+	{
+		if (allocatedBytesMethod == null)
+			return -1;
+		try
+		{
+			return (Long) allocatedBytesMethod.invoke(threadBean, Thread.currentThread().getId());
+		}
+		catch (Exception ex)
+		{
+			return -1;
+		}
+	}
+
+
+	// ===================================================================
+	// Class variables
+
+	/** The algorithm to notify */
+	private final AlgoStub algo;
+
+	/** The name of the phase */
+	private final String phase;
+
+	/** True if the algorithm had listeners when the phase started */
+	private final boolean enabled;
+
+	/** The time at the start of the phase, in nanoseconds */
+	private final long startTime;
+
+	/** The allocated bytes at the start of the phase */
+	private final long startBytes;
+
+
+	// ===================================================================
+	// Constructor
+
+	/**
+	 * Starts a new phase.
+	 * 
+	 * @param algo
+	 *            the algorithm whose phase listeners will be notified
+	 * @param phase
+	 *            the name of the phase
+	 */
+	public PhaseTimer(AlgoStub algo, String phase)
+	{
+		this.algo = algo;
+		this.phase = phase;
+		this.enabled = algo.hasPhaseListeners();
+		this.startBytes = this.enabled ? currentThreadAllocatedBytes() : -1;
+		this.startTime = this.enabled ? System.nanoTime() : 0;
+	}
+
+
+	// ===================================================================
+	// Methods
+
+	/**
+	 * Finishes the phase, and notifies the phase listeners of the algorithm.
+	 * 
+	 * @param count
+	 *            the number of elements processed during the phase
+	 */
+	public void finish(long count)
+	{
+		if (!this.enabled)
+			return;
+
+		long time = System.nanoTime() - this.startTime;
+		long bytes = -1;
+		if (this.startBytes >= 0)
+		{
+			long endBytes = currentThreadAllocatedBytes();
+			if (endBytes >= 0)
+				bytes = endBytes - this.startBytes;
+		}
+		this.algo.firePhaseFinished(new PhaseEvent(this.algo, this.phase, time, count, bytes));
+	}
+
+	/**
+	 * @return the name of the phase
+	 */
+	public String getPhase()
+	{
+		return this.phase;
+	}
+}
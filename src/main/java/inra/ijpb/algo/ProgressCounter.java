@@ -0,0 +1,241 @@
+/**
+ *
+ */
+package inra.ijpb.algo;
+
+/**
+ * <p>
+ * Lightweight monitoring of the progression and of the cancellation of an
+ * algorithm within intensive loops.
+ * </p>
+ *
+ * <p>
+ * Updating the counter only stores the current progression. Every
+ * <code>checkPeriod</code> updates, the counter checks whether the current
+ * thread was interrupted or the counter was cancelled, and publishes the
+ * progression to the listeners of the algorithm if the last publication is
+ * older than the publication interval. This makes it possible to update the
+ * counter for each processed pixel without slowing down the algorithm.
+ * </p>
+ *
+ * <p>
+ * Example of use:
+ * <pre><code>
+ * ProgressCounter progress = new ProgressCounter(this, queue.size());
+ * while (!queue.isEmpty())
+ * {
+ *     if (!progress.increment())
+ *         return null;
+ *     // process next element of the queue
+ *     ...
+ * }
+ * progress.finish();
+ * </code></pre>
+ *
+ * @see AlgoStub
+ * @see DefaultAlgoListener
+ *
+ * @author David Legland
+ *
+ */
+public class ProgressCounter
+{
+	// ===================================================================
+	// Constants
+
+	/**
+	 * The default minimal interval between two publications of the
+	 * progression, in milliseconds.
+	 */
+	public static final long DEFAULT_INTERVAL = 100;
+
+	/**
+	 * The default number of updates between two checks of the time and of
+	 * the cancellation.
+	 */
+	public static final int DEFAULT_CHECK_PERIOD = 1024;
+
+
+	// ===================================================================
+	// Class variables
+
+	/** The algorithm whose listeners are notified */
+	private final AlgoStub algo;
+
+	/** The value of the progression corresponding to the end of the process */
+	private final double total;
+
+	/** The minimal interval between two publications, in nanoseconds */
+	private final long interval;
+
+	/** The number of updates between two checks */
+	private final int checkPeriod;
+
+	/** The current progression */
+	private double current = 0;
+
+	/** The number of updates since the last check */
+	private int updates = 0;
+
+	/** The time of the last publication, in nanoseconds */
+	private long lastPublication;
+
+	/** Can be set by another thread to stop the algorithm */
+	private volatile boolean cancelled = false;
+
+
+	// ===================================================================
+	// Constructors
+
+	/**
+	 * Creates a new progress counter using the default publication interval
+	 * and check period.
+	 *
+	 * @param algo
+	 *            the algorithm whose listeners will be notified
+	 * @param total
+	 *            the value of the progression at the end of the process, or
+	 *            0 to only check the cancellation
+	 */
+	public ProgressCounter(AlgoStub algo, double total)
+	{
+		this(algo, total, DEFAULT_INTERVAL, DEFAULT_CHECK_PERIOD);
+	}
+
+	/**
+	 * Creates a new progress counter.
+	 *
+	 * @param algo
+	 *            the algorithm whose listeners will be notified
+	 * @param total
+	 *            the value of the progression at the end of the process, or
+	 *            0 to only check the cancellation
+	 * @param interval
+	 *            the minimal interval between two publications of the
+	 *            progression, in milliseconds
+	 * @param checkPeriod
+	 *            the number of updates between two checks of the time and of
+	 *            the cancellation
+	 */
+	public ProgressCounter(AlgoStub algo, double total, long interval, int checkPeriod)
+	{
+		if (checkPeriod < 1)
+		{
+			throw new IllegalArgumentException("Check period must be positive");
+		}
+		this.algo = algo;
+		this.total = total;
+		this.interval = interval * 1000000L;
+		this.checkPeriod = checkPeriod;
+		this.lastPublication = System.nanoTime();
+	}
+
+
+	// ===================================================================
+	// Updates
+
+	/**
+	 * Increments the progression by one.
+	 *
+	 * @return false if the process was cancelled, true otherwise
+	 */
+	public final boolean increment()
+	{
+		this.current++;
+		if (++this.updates < this.checkPeriod)
+			return true;
+		return check();
+	}
+
+	/**
+	 * Changes the current progression.
+	 *
+	 * @param current
+	 *            the new value of the progression
+	 * @return false if the process was cancelled, true otherwise
+	 */
+	public final boolean update(double current)
+	{
+		this.current = current;
+		if (++this.updates < this.checkPeriod)
+			return true;
+		return check();
+	}
+
+	/**
+	 * Checks the cancellation, and publishes the progression if the
+	 * publication interval has elapsed.
+	 *
+	 * @return false if the process was cancelled, true otherwise
+	 */
+	public boolean check()
+	{
+		if (this.cancelled || Thread.currentThread().isInterrupted())
+		{
+			// check again at next update
+			this.cancelled = true;
+			this.updates = this.checkPeriod;
+			return false;
+		}
+
+		this.updates = 0;
+		long time = System.nanoTime();
+		if (this.total > 0 && time - this.lastPublication >= this.interval)
+		{
+			this.lastPublication = time;
+			this.algo.fireProgressChanged(this.algo, this.current, this.total);
+		}
+		return true;
+	}
+
+	/**
+	 * Publishes the end of the process.
+	 */
+	public void finish()
+	{
+		this.current = this.total;
+		if (this.total > 0)
+			this.algo.fireProgressChanged(this.algo, this.total, this.total);
+	}
+
+
+	// ===================================================================
+	// Cancellation
+
+	/**
+	 * Requests the cancellation of the process. The algorithm stops at the
+	 * next check of the counter. Can be called from another thread.
+	 */
+	public void cancel()
+	{
+		this.cancelled = true;
+	}
+
+	/**
+	 * @return true if the process was cancelled
+	 */
+	public boolean isCancelled()
+	{
+		return this.cancelled;
+	}
+
+
+	// ===================================================================
+	// Accessors
+
+	/**
+	 * @return the current progression
+	 */
+	public double getCurrent()
+	{
+		return this.current;
+	}
+
+	/**
+	 * @return the value of the progression at the end of the process
+	 */
+	public double getTotal()
+	{
+		return this.total;
+	}
+}
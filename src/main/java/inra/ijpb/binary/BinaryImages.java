@@ -23,9 +23,16 @@ import inra.ijpb.binary.geodesic.GeodesicDistanceTransformFloat;
 import inra.ijpb.binary.geodesic.GeodesicDistanceTransformFloat5x5;
 import inra.ijpb.binary.geodesic.GeodesicDistanceTransformShort;
 import inra.ijpb.binary.geodesic.GeodesicDistanceTransformShort5x5;
+import inra.ijpb.data.OffsetNeighborhood3D;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
+import inra.ijpb.data.image.IntStackWrapper;
+import inra.ijpb.data.image.TiledProcessor;
 import inra.ijpb.label.LabelImages;
 import inra.ijpb.morphology.FloodFill;
 
+import java.util.Arrays;
+
 /**
  * A collection of static methods for operating on binary images (2D/3D).
  * Some of the methods need the LabelImages class. 
@@ -179,7 +186,7 @@ public class BinaryImages
 	 *            the connectivity, either 6 or 26
 	 * @param bitDepth
 	 *            the number of bits used to create the result stack (8, 16 or
-	 *            32)
+	 *            32), or 24 for storing labels as int values
 	 * @return a new instance of ImageStack containing the label of each
 	 *         connected component.
 	 * @throws RuntimeException
@@ -193,6 +200,12 @@ public class BinaryImages
 		if ( Thread.currentThread().isInterrupted() )					
 			return null;
 		
+		// labels stored as int values are processed with linear indices
+		if (bitDepth == 24)
+		{
+			return componentsLabelingInt(image, conn);
+		}
+		
 		// get image size
 		int sizeX = image.getWidth();
 		int sizeY = image.getHeight();
@@ -214,7 +227,7 @@ public class BinaryImages
 			break;
 		default:
 			throw new IllegalArgumentException(
-					"Bit Depth should be 8, 16 or 32.");
+					"Bit Depth should be 8, 16, 24 or 32.");
 		}
 
 		IJ.showStatus("Compute Labels...");
@@ -252,6 +265,363 @@ public class BinaryImages
 		return labels;
 	}
 
+	/**
+	 * Computes the labels of the connected components in the given 3D binary
+	 * image, and stores them as int values within a 24-bit stack. The
+	 * connected components are propagated using the coordinates of the
+	 * voxels, making it possible to label more than 2^23 components within
+	 * images with more than 2^31 voxels.
+	 * 
+	 * @see inra.ijpb.data.image.IntStackWrapper
+	 */
+	private final static ImageStack componentsLabelingInt(ImageStack image,
+			int conn)
+	{
+		// get image size
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+		int sizeZ = image.getSize();
+
+		IJ.showStatus("Allocate Memory");
+		ImageStack labelStack = IntStackWrapper.createStack(sizeX, sizeY, sizeZ);
+		Image3D input = Images3D.createWrapper(image);
+		Image3D labels = new IntStackWrapper(labelStack);
+
+		componentsLabeling(input, labels, conn, Integer.MAX_VALUE);
+		return labelStack;
+	}
+
+	/**
+	 * Computes the labels of the connected components in the given 3D binary
+	 * image, and stores them within the specified label image. As both images
+	 * are accessed through the Image3D interface, the labeling can be
+	 * performed out-of-core, for example using MappedImage3D or
+	 * ChunkedImage3D instances.
+	 * 
+	 * @param image
+	 *            the 3D binary image (any non-zero value is foreground)
+	 * @param labels
+	 *            the image that will contain the labels, with the same size
+	 *            as the binary image, and initialized with zeros
+	 * @param conn
+	 *            the connectivity, either 6 or 26
+	 * @param maxLabel
+	 *            the largest label that can be stored within the label image
+	 * @return the number of labels
+	 * @throws RuntimeException
+	 *             if the number of labels exceeds the maximum label
+	 * @see inra.ijpb.data.image.MappedImage3D
+	 * @see inra.ijpb.data.image.ChunkedImage3D
+	 */
+	public final static int componentsLabeling(Image3D image, Image3D labels,
+			int conn, int maxLabel)
+	{
+		// get image size
+		int sizeX = image.getSizeX();
+		int sizeY = image.getSizeY();
+		int sizeZ = image.getSizeZ();
+		OffsetNeighborhood3D neigh = OffsetNeighborhood3D.create(sizeX, sizeY, sizeZ, conn);
+
+		// the stack of voxel coordinates to process
+		int[] stack = new int[3 * 64];
+
+		IJ.showStatus("Compute Labels...");
+		int nLabels = 0;
+		for (int z = 0; z < sizeZ; z++) 
+		{
+			IJ.showProgress(z, sizeZ);
+			for (int y = 0; y < sizeY; y++) 
+			{
+				for (int x = 0; x < sizeX; x++) 
+				{
+					// Do not process background voxels, nor voxels already
+					// labeled
+					if (image.getValue(x, y, z) == 0 || labels.getValue(x, y, z) > 0)
+						continue;
+
+					// a new label is found: check current label number
+					if (nLabels == maxLabel)
+					{
+						throw new RuntimeException("Max number of label reached (" + maxLabel + ")");
+					}
+
+					// increment label index, and propagate
+					nLabels++;
+					stack = propagateLabel(image, labels, neigh, x, y, z, nLabels, stack);
+				}
+			}
+		}
+		
+		IJ.showStatus("");
+		IJ.showProgress(1);
+		return nLabels;
+	}
+
+	/**
+	 * Propagates a label from a seed voxel to all the voxels of the connected
+	 * component containing the seed. Neighbors are computed from the shifts
+	 * of the neighborhood, so that the propagation does not depend on linear
+	 * indices and works for images with more than 2^31 voxels.
+	 * 
+	 * @param input
+	 *            the binary image
+	 * @param labels
+	 *            the label image, modified by this method
+	 * @param neigh
+	 *            the neighborhood used for propagation
+	 * @param x
+	 *            the x-coordinate of the seed voxel
+	 * @param y
+	 *            the y-coordinate of the seed voxel
+	 * @param z
+	 *            the z-coordinate of the seed voxel
+	 * @param label
+	 *            the label to propagate
+	 * @param stack
+	 *            a buffer used to store the coordinates of the voxels to
+	 *            process
+	 * @return the buffer used for storing coordinates, that may have been
+	 *         enlarged, and can be used for the next propagation
+	 */
+	static final int[] propagateLabel(Image3D input, Image3D labels,
+			OffsetNeighborhood3D neigh, int x, int y, int z, int label,
+			int[] stack)
+	{
+		int nNeighbors = neigh.size();
+		labels.setValue(x, y, z, label);
+		int stackSize = 0;
+		stack[stackSize++] = x;
+		stack[stackSize++] = y;
+		stack[stackSize++] = z;
+		while (stackSize > 0)
+		{
+			int z1 = stack[--stackSize];
+			int y1 = stack[--stackSize];
+			int x1 = stack[--stackSize];
+			boolean interior = neigh.isInterior(x1, y1, z1);
+			for (int n = 0; n < nNeighbors; n++)
+			{
+				if (!interior && !neigh.contains(x1, y1, z1, n))
+					continue;
+				
+				int x2 = x1 + neigh.getShiftX(n);
+				int y2 = y1 + neigh.getShiftY(n);
+				int z2 = z1 + neigh.getShiftZ(n);
+				if (input.getValue(x2, y2, z2) == 0 || labels.getValue(x2, y2, z2) > 0)
+					continue;
+				
+				labels.setValue(x2, y2, z2, label);
+				if (stackSize + 3 > stack.length)
+				{
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				stack[stackSize++] = x2;
+				stack[stackSize++] = y2;
+				stack[stackSize++] = z2;
+			}
+		}
+		return stack;
+	}
+
+	/**
+	 * <p>
+	 * Computes the labels of the connected components in a planar binary
+	 * image stored as a 3D image with a single slice, by splitting the image
+	 * into tiles that are labeled in parallel. The labels of the components
+	 * crossing tile boundaries are then merged, and the final labels are
+	 * written tile by tile. As both images are accessed through the Image3D
+	 * interface, images larger than the Java array size can be labeled, for
+	 * example using MappedImage3D or ChunkedImage3D instances.
+	 * </p>
+	 * 
+	 * <p>
+	 * Labels are consecutive, and are ordered by tiles rather than by
+	 * pixels. The label image should store int values (bit depth 24), or
+	 * float values when the number of labels is smaller than 2^24. The
+	 * number of labels within a tile must be smaller than 2^23.
+	 * </p>
+	 * 
+	 * @see inra.ijpb.data.image.TiledProcessor
+	 * 
+	 * @param image
+	 *            the planar binary image, with a single slice (any non-zero
+	 *            value is foreground)
+	 * @param labels
+	 *            the image that will contain the labels, with the same size
+	 *            as the binary image
+	 * @param conn
+	 *            the connectivity, either 4 or 8
+	 * @param tileSize
+	 *            the size of the tiles
+	 * @return the number of labels, or -1 if the labeling was interrupted
+	 * @throws RuntimeException
+	 *             if the number of labels exceeds the maximum int value
+	 * @see inra.ijpb.data.image.MappedImage3D
+	 * @see inra.ijpb.data.image.ChunkedImage3D
+	 */
+	public final static int componentsLabelingTiled(Image3D image,
+			Image3D labels, final int conn, final int tileSize)
+	{
+		if (conn != 4 && conn != 8)
+		{
+			throw new IllegalArgumentException("Connectivity must be 4 or 8");
+		}
+
+		int sizeX = image.getSizeX();
+		int sizeY = image.getSizeY();
+		final int nTilesX = (sizeX + tileSize - 1) / tileSize;
+		int nTilesY = (sizeY + tileSize - 1) / tileSize;
+		TiledProcessor tiles = new TiledProcessor(tileSize, 0);
+
+		// label each tile independently, keeping the number of labels
+		IJ.showStatus("Compute Labels...");
+		final int[] tileLabelCounts = new int[nTilesX * nTilesY];
+		TiledProcessor.Operator labelOp = new TiledProcessor.Operator()
+		{
+			public ImageProcessor process(ImageProcessor tile, int x0, int y0)
+			{
+				ImageProcessor tileLabels = componentsLabeling(tile, conn, 32);
+				tileLabelCounts[(y0 / tileSize) * nTilesX + x0 / tileSize] = (int) tileLabels.getMax();
+				return tileLabels;
+			}
+		};
+		if (tiles.process(image, labelOp, labels) == null)
+			return -1;
+
+		// the labels of each tile are shifted by the number of labels within
+		// the previous tiles
+		final int[] labelOffsets = new int[tileLabelCounts.length];
+		long nLabels = 0;
+		for (int k = 0; k < tileLabelCounts.length; k++)
+		{
+			labelOffsets[k] = (int) nLabels;
+			nLabels += tileLabelCounts[k];
+		}
+		if (nLabels >= Integer.MAX_VALUE)
+		{
+			throw new RuntimeException("Max number of label reached (" + Integer.MAX_VALUE + ")");
+		}
+
+		// merge the labels of components crossing tile boundaries, keeping
+		// the smallest label as root
+		IJ.showStatus("Merge Labels...");
+		int[] parents = new int[(int) nLabels + 1];
+		for (int i = 0; i < parents.length; i++)
+		{
+			parents[i] = i;
+		}
+		int nDiag = conn == 8 ? 1 : 0;
+		for (int tx = 1; tx < nTilesX; tx++)
+		{
+			int x = tx * tileSize;
+			for (int y = 0; y < sizeY; y++)
+			{
+				int label = tiledLabel(labels, labelOffsets, nTilesX, tileSize, x - 1, y);
+				if (label == 0)
+					continue;
+				for (int y2 = Math.max(y - nDiag, 0); y2 <= Math.min(y + nDiag, sizeY - 1); y2++)
+				{
+					int label2 = tiledLabel(labels, labelOffsets, nTilesX, tileSize, x, y2);
+					if (label2 != 0)
+						union(parents, label, label2);
+				}
+			}
+		}
+		for (int ty = 1; ty < nTilesY; ty++)
+		{
+			int y = ty * tileSize;
+			for (int x = 0; x < sizeX; x++)
+			{
+				int label = tiledLabel(labels, labelOffsets, nTilesX, tileSize, x, y - 1);
+				if (label == 0)
+					continue;
+				for (int x2 = Math.max(x - nDiag, 0); x2 <= Math.min(x + nDiag, sizeX - 1); x2++)
+				{
+					int label2 = tiledLabel(labels, labelOffsets, nTilesX, tileSize, x2, y);
+					if (label2 != 0)
+						union(parents, label, label2);
+				}
+			}
+		}
+
+		// compute consecutive final labels. As parents have smaller labels,
+		// they are already converted when their children are processed.
+		int count = 0;
+		for (int i = 1; i < parents.length; i++)
+		{
+			parents[i] = parents[i] == i ? ++count : parents[parents[i]];
+		}
+		final int[] lut = parents;
+
+		// replace the labels of each tile
+		IJ.showStatus("Relabel...");
+		TiledProcessor.Operator relabelOp = new TiledProcessor.Operator()
+		{
+			public ImageProcessor process(ImageProcessor tile, int x0, int y0)
+			{
+				int offset = labelOffsets[(y0 / tileSize) * nTilesX + x0 / tileSize];
+				ImageProcessor res = tile.createProcessor(tile.getWidth(), tile.getHeight());
+				for (int y = 0; y < tile.getHeight(); y++)
+				{
+					for (int x = 0; x < tile.getWidth(); x++)
+					{
+						int label = LabelImages.getLabel(tile, x, y);
+						if (label > 0)
+							LabelImages.setLabel(res, x, y, lut[offset + label]);
+					}
+				}
+				return res;
+			}
+		};
+		if (tiles.process(labels, relabelOp, labels) == null)
+			return -1;
+
+		IJ.showStatus("");
+		return count;
+	}
+
+	/**
+	 * Returns the label of a pixel within an image labeled by tiles, shifted
+	 * by the label offset of the tile containing the pixel.
+	 */
+	private static final int tiledLabel(Image3D labels, int[] labelOffsets,
+			int nTilesX, int tileSize, int x, int y)
+	{
+		int label = labels.get(x, y, 0);
+		if (label == 0)
+			return 0;
+		return labelOffsets[(y / tileSize) * nTilesX + x / tileSize] + label;
+	}
+
+	/**
+	 * Merges the sets containing two labels, using the smallest root as the
+	 * root of the merged set, such that the parent of a label is never
+	 * larger than the label.
+	 */
+	private static final void union(int[] parents, int label1, int label2)
+	{
+		int root1 = findRoot(parents, label1);
+		int root2 = findRoot(parents, label2);
+		if (root1 < root2)
+			parents[root2] = root1;
+		else if (root2 < root1)
+			parents[root1] = root2;
+	}
+
+	/**
+	 * Finds the root of the set containing a label, halving the path to the
+	 * root.
+	 */
+	private static final int findRoot(int[] parents, int label)
+	{
+		while (parents[label] != label)
+		{
+			parents[label] = parents[parents[label]];
+			label = parents[label];
+		}
+		return label;
+	}
+
 	/**
 	 * Computes maximum value in the input 2D image.
 	 * This method is used to compute display range of result ImagePlus.
@@ -288,7 +658,9 @@ public class BinaryImages
 		int sizeY = image.getHeight();
 		int sizeZ = image.getSize();
 
-		// find maximum value over voxels
+		// find maximum value over voxels, using a wrapper to also process
+		// labels stored as int values
+		Image3D image3d = Images3D.createWrapper(image);
 		int maxVal = 0;
 		for (int z = 0; z < sizeZ; z++) 
 		{
@@ -297,7 +669,7 @@ public class BinaryImages
 			{
 				for (int x = 0; x < sizeX; x++) 
 				{
-					maxVal = Math.max(maxVal, (int) image.getVoxel(x, y, z));
+					maxVal = Math.max(maxVal, (int) image3d.getValue(x, y, z));
 				}
 			}
 		}
@@ -502,6 +874,29 @@ public class BinaryImages
 		return algo.distanceMap(image);
 	}
 	
+	/**
+	 * Computes the distance map from a binary 3D image, and stores it within
+	 * another 3D image. The images can be stored outside of the Java heap,
+	 * for example using {@link inra.ijpb.data.image.DirectImage3D}.
+	 * 
+	 * @param image
+	 *            the input 3D binary image
+	 * @param result
+	 *            a 3D image with the same size as input image, that can
+	 *            store floating point values
+	 * @param weights
+	 *            an array of chamfer weights, with at least three values
+	 * @param normalize
+	 *            indicates whether the resulting distance map should be
+	 *            normalized (divide distances by the first chamfer weight)
+	 */
+	public static final void distanceMap(Image3D image, Image3D result,
+			float[] weights, boolean normalize)
+	{
+		DistanceTransform3DFloat algo = new DistanceTransform3DFloat(weights, normalize);
+		algo.distanceMap(image, result);
+	}
+	
 	/**
 	 * Computes the geodesic distance transform (or geodesic distance map) of a
 	 * binary image of marker, constrained to a binary mask.
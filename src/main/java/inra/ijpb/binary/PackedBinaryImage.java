@@ -0,0 +1,638 @@
+/**
+ *
+ */
+package inra.ijpb.binary;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.morphology.Strel;
+import inra.ijpb.morphology.strel.LinearHorizontalStrel;
+import inra.ijpb.morphology.strel.LinearVerticalStrel;
+import inra.ijpb.morphology.strel.SquareStrel;
+
+import java.util.Arrays;
+
+/**
+ * A planar binary image that stores 64 pixels within each <code>long</code>
+ * value. Each row starts at the beginning of a new word, and pixel
+ * <code>x</code> of a row corresponds to bit <code>x % 64</code> of word
+ * <code>x / 64</code>.
+ *
+ * Compared to a ByteProcessor, this representation requires eight times less
+ * memory, and logical operations, morphological dilations and erosions, or
+ * morphological reconstruction can process 64 pixels at once using shifts and
+ * bitwise operations.
+ *
+ * For morphological operations, the pixels outside of the image are ignored:
+ * they are considered as background for dilations, and as foreground for
+ * erosions.
+ *
+ * Example of use:
+ * <pre><code>
+ * ImageProcessor mask = ...
+ * PackedBinaryImage image = PackedBinaryImage.fromProcessor(mask);
+ * PackedBinaryImage dilated = image.dilation(SquareStrel.fromRadius(3));
+ * ImageProcessor result = dilated.toByteProcessor();
+ * </code></pre>
+ *
+ * @see PackedBinaryStack
+ *
+ * @author David Legland
+ *
+ */
+public class PackedBinaryImage
+{
+	// ==============================================================
+	// Class variables
+
+	/** The number of pixels in each row */
+	int sizeX;
+
+	/** The number of rows */
+	int sizeY;
+
+	/** The number of words used to store each row */
+	int wordsPerRow;
+
+	/** The mask of valid pixels within the last word of each row */
+	long lastWordMask;
+
+	/** The bits of the image, row by row */
+	long[] data;
+
+
+	// ==============================================================
+	// Constructors
+
+	/**
+	 * Creates a new empty binary image.
+	 *
+	 * @param sizeX
+	 *            the width of the image
+	 * @param sizeY
+	 *            the height of the image
+	 */
+	public PackedBinaryImage(int sizeX, int sizeY)
+	{
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.wordsPerRow = (sizeX + 63) >>> 6;
+		int rem = sizeX & 63;
+		this.lastWordMask = rem == 0 ? -1L : (1L << rem) - 1;
+		this.data = new long[wordsPerRow * sizeY];
+	}
+
+	/**
+	 * Creates a new binary image from a planar image. Pixels with a value
+	 * different from zero are considered as foreground.
+	 *
+	 * @param image
+	 *            a planar image
+	 * @return the binary image
+	 */
+	public static final PackedBinaryImage fromProcessor(ImageProcessor image)
+	{
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+		PackedBinaryImage result = new PackedBinaryImage(sizeX, sizeY);
+
+		if (image instanceof ByteProcessor)
+		{
+			byte[] pixels = (byte[]) image.getPixels();
+			for (int y = 0; y < sizeY; y++)
+			{
+				int offset = y * sizeX;
+				int rowOffset = y * result.wordsPerRow;
+				for (int x = 0; x < sizeX; x++)
+				{
+					if (pixels[offset + x] != 0)
+						result.data[rowOffset + (x >>> 6)] |= 1L << x;
+				}
+			}
+		}
+		else
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				int rowOffset = y * result.wordsPerRow;
+				for (int x = 0; x < sizeX; x++)
+				{
+					if (image.getf(x, y) != 0)
+						result.data[rowOffset + (x >>> 6)] |= 1L << x;
+				}
+			}
+		}
+		return result;
+	}
+
+
+	// ==============================================================
+	// Conversion and accessors
+
+	/**
+	 * Converts this image into a ByteProcessor, with foreground pixels set to
+	 * 255 and background pixels set to 0.
+	 *
+	 * @return a new binary ByteProcessor
+	 */
+	public ByteProcessor toByteProcessor()
+	{
+		ByteProcessor result = new ByteProcessor(sizeX, sizeY);
+		byte[] pixels = (byte[]) result.getPixels();
+		for (int y = 0; y < sizeY; y++)
+		{
+			int offset = y * sizeX;
+			int rowOffset = y * wordsPerRow;
+			for (int x = 0; x < sizeX; x++)
+			{
+				if ((data[rowOffset + (x >>> 6)] & (1L << x)) != 0)
+					pixels[offset + x] = (byte) 255;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the width of the image
+	 */
+	public int getWidth()
+	{
+		return sizeX;
+	}
+
+	/**
+	 * @return the height of the image
+	 */
+	public int getHeight()
+	{
+		return sizeY;
+	}
+
+	/**
+	 * @param x
+	 *            the x-coordinate of the pixel
+	 * @param y
+	 *            the y-coordinate of the pixel
+	 * @return true if the pixel belongs to the foreground
+	 */
+	public boolean get(int x, int y)
+	{
+		return (data[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+	}
+
+	/**
+	 * @param x
+	 *            the x-coordinate of the pixel
+	 * @param y
+	 *            the y-coordinate of the pixel
+	 * @param value
+	 *            the new value of the pixel
+	 */
+	public void set(int x, int y, boolean value)
+	{
+		int index = y * wordsPerRow + (x >>> 6);
+		if (value)
+			data[index] |= 1L << x;
+		else
+			data[index] &= ~(1L << x);
+	}
+
+	/**
+	 * @return the number of foreground pixels
+	 */
+	public int countForeground()
+	{
+		int count = 0;
+		for (long word : data)
+		{
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * @return a new image with the same content
+	 */
+	public PackedBinaryImage duplicate()
+	{
+		PackedBinaryImage result = new PackedBinaryImage(sizeX, sizeY);
+		System.arraycopy(data, 0, result.data, 0, data.length);
+		return result;
+	}
+
+	/**
+	 * Checks if this image has the same size and the same pixel values as
+	 * another image.
+	 *
+	 * @param image
+	 *            the image to compare with
+	 * @return true if both images are identical
+	 */
+	public boolean isSameAs(PackedBinaryImage image)
+	{
+		return sizeX == image.sizeX && sizeY == image.sizeY
+				&& Arrays.equals(data, image.data);
+	}
+
+
+	// ==============================================================
+	// Logical operations
+
+	/**
+	 * @param image
+	 *            another binary image with the same size
+	 * @return the intersection of both images
+	 */
+	public PackedBinaryImage and(PackedBinaryImage image)
+	{
+		checkSameSize(image);
+		PackedBinaryImage result = new PackedBinaryImage(sizeX, sizeY);
+		for (int i = 0; i < data.length; i++)
+		{
+			result.data[i] = data[i] & image.data[i];
+		}
+		return result;
+	}
+
+	/**
+	 * @param image
+	 *            another binary image with the same size
+	 * @return the union of both images
+	 */
+	public PackedBinaryImage or(PackedBinaryImage image)
+	{
+		checkSameSize(image);
+		PackedBinaryImage result = new PackedBinaryImage(sizeX, sizeY);
+		for (int i = 0; i < data.length; i++)
+		{
+			result.data[i] = data[i] | image.data[i];
+		}
+		return result;
+	}
+
+	/**
+	 * @param image
+	 *            another binary image with the same size
+	 * @return the pixels that belong to exactly one of the images
+	 */
+	public PackedBinaryImage xor(PackedBinaryImage image)
+	{
+		checkSameSize(image);
+		PackedBinaryImage result = new PackedBinaryImage(sizeX, sizeY);
+		for (int i = 0; i < data.length; i++)
+		{
+			result.data[i] = data[i] ^ image.data[i];
+		}
+		return result;
+	}
+
+	/**
+	 * @return the complement of this image
+	 */
+	public PackedBinaryImage not()
+	{
+		PackedBinaryImage result = new PackedBinaryImage(sizeX, sizeY);
+		for (int i = 0; i < data.length; i++)
+		{
+			result.data[i] = ~data[i];
+		}
+		result.clearPadding();
+		return result;
+	}
+
+	private void checkSameSize(PackedBinaryImage image)
+	{
+		if (image.sizeX != sizeX || image.sizeY != sizeY)
+		{
+			throw new IllegalArgumentException("Both images must have the same size");
+		}
+	}
+
+	/**
+	 * Resets the bits located after the end of each row.
+	 */
+	private void clearPadding()
+	{
+		if (lastWordMask == -1L)
+			return;
+		for (int y = 0; y < sizeY; y++)
+		{
+			data[(y + 1) * wordsPerRow - 1] &= lastWordMask;
+		}
+	}
+
+
+	// ==============================================================
+	// Morphological operations
+
+	/**
+	 * Computes the dilation of this image by a structuring element. Square
+	 * and linear structuring elements are decomposed into shifts whose number
+	 * grows logarithmically with the size. Other structuring elements are
+	 * processed by combining the shifted images for each element of the
+	 * structuring element.
+	 *
+	 * @param strel
+	 *            the structuring element
+	 * @return the result of the dilation
+	 */
+	public PackedBinaryImage dilation(Strel strel)
+	{
+		if (strel instanceof SquareStrel)
+		{
+			int size = strel.getSize()[0];
+			int offset = strel.getOffset()[0];
+			PackedBinaryImage res = lineDilation(size, offset, 1, 0);
+			return res.lineDilation(size, offset, 0, 1);
+		}
+		if (strel instanceof LinearHorizontalStrel)
+		{
+			return lineDilation(strel.getSize()[0], strel.getOffset()[0], 1, 0);
+		}
+		if (strel instanceof LinearVerticalStrel)
+		{
+			return lineDilation(strel.getSize()[1], strel.getOffset()[1], 0, 1);
+		}
+
+		int[][] mask = strel.getMask();
+		int[] offset = strel.getOffset();
+		PackedBinaryImage result = new PackedBinaryImage(sizeX, sizeY);
+		for (int y = 0; y < mask.length; y++)
+		{
+			for (int x = 0; x < mask[y].length; x++)
+			{
+				if (mask[y][x] > 0)
+					orShifted(this, x - offset[0], y - offset[1], result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the erosion of this image by a structuring element, using the
+	 * duality with the dilation.
+	 *
+	 * @param strel
+	 *            the structuring element
+	 * @return the result of the erosion
+	 */
+	public PackedBinaryImage erosion(Strel strel)
+	{
+		return not().dilation(strel).not();
+	}
+
+	/**
+	 * Computes the morphological opening of this image.
+	 *
+	 * @param strel
+	 *            the structuring element
+	 * @return the result of the opening
+	 */
+	public PackedBinaryImage opening(Strel strel)
+	{
+		return erosion(strel).dilation(strel.reverse());
+	}
+
+	/**
+	 * Computes the morphological closing of this image.
+	 *
+	 * @param strel
+	 *            the structuring element
+	 * @return the result of the closing
+	 */
+	public PackedBinaryImage closing(Strel strel)
+	{
+		return dilation(strel).erosion(strel.reverse());
+	}
+
+	/**
+	 * Computes the dilation by a horizontal or vertical line. The line is split
+	 * into the part before the reference pixel and the part after it, and the
+	 * union along each part is computed by successive doublings of the window
+	 * length, requiring a number of shifts proportional to the logarithm of
+	 * the size.
+	 *
+	 * @param size
+	 *            the number of pixels of the line
+	 * @param offset
+	 *            the position of the reference pixel within the line
+	 * @param dx
+	 *            the x-direction of the line (0 or 1)
+	 * @param dy
+	 *            the y-direction of the line (0 or 1)
+	 */
+	PackedBinaryImage lineDilation(int size, int offset, int dx, int dy)
+	{
+		// union over [p - offset, p] and [p, p + size - offset)
+		PackedBinaryImage result = directionalUnion(offset + 1, -dx, -dy);
+		PackedBinaryImage after = directionalUnion(size - offset, dx, dy);
+		long[] res = result.data;
+		long[] data2 = after.data;
+		for (int i = 0; i < res.length; i++)
+		{
+			res[i] |= data2[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Computes, for each pixel p, the union of the pixels p + i * (dx, dy),
+	 * for i between 0 and length-1.
+	 */
+	private PackedBinaryImage directionalUnion(int length, int dx, int dy)
+	{
+		// union over windows of length k, for increasing powers of two
+		PackedBinaryImage window = this;
+		int k = 1;
+		while (2 * k <= length)
+		{
+			PackedBinaryImage next = window.duplicate();
+			orShifted(window, k * dx, k * dy, next);
+			window = next;
+			k *= 2;
+		}
+
+		// union over window of the requested length
+		PackedBinaryImage res = window.duplicate();
+		if (length > k)
+		{
+			orShifted(window, (length - k) * dx, (length - k) * dy, res);
+		}
+		return res;
+	}
+
+	/**
+	 * Combines the target image with the shifted source image, such that for
+	 * each pixel p, target(p) = target(p) OR source(p + shift). Pixels outside
+	 * of the source image are considered as background.
+	 */
+	static final void orShifted(PackedBinaryImage source, int dx, int dy,
+			PackedBinaryImage target)
+	{
+		int sizeY = source.sizeY;
+		int nWords = source.wordsPerRow;
+		long[] src = source.data;
+		long[] dst = target.data;
+
+		// shift between words, and within words
+		int wordShift = dx >> 6;
+		int bitShift = dx & 63;
+
+		for (int y = Math.max(0, -dy); y < Math.min(sizeY, sizeY - dy); y++)
+		{
+			int srcOffset = (y + dy) * nWords;
+			int dstOffset = y * nWords;
+			for (int w = 0; w < nWords; w++)
+			{
+				// bits of target word w come from source words w+ws and w+ws+1
+				int w1 = w + wordShift;
+				long lo = w1 >= 0 && w1 < nWords ? src[srcOffset + w1] : 0;
+				long word = lo >>> bitShift;
+				if (bitShift != 0)
+				{
+					int w2 = w1 + 1;
+					long hi = w2 >= 0 && w2 < nWords ? src[srcOffset + w2] : 0;
+					word |= hi << (64 - bitShift);
+				}
+				dst[dstOffset + w] |= word;
+			}
+			dst[dstOffset + nWords - 1] &= target.lastWordMask;
+		}
+	}
+
+
+	// ==============================================================
+	// Morphological reconstruction
+
+	/**
+	 * Computes the morphological reconstruction by dilation of a marker image
+	 * within a mask image, i.e. the connected components of the mask that
+	 * contain at least one pixel of the marker.
+	 *
+	 * Each row is processed by propagating the marker along the runs of the
+	 * mask with integer additions, then the result is propagated to the next
+	 * row. Forward and backward passes are repeated until stability.
+	 *
+	 * @param marker
+	 *            the marker image
+	 * @param mask
+	 *            the mask image, with the same size as the marker
+	 * @param conn
+	 *            the connectivity, either 4 or 8
+	 * @return the result of the reconstruction
+	 */
+	public static final PackedBinaryImage reconstructionByDilation(
+			PackedBinaryImage marker, PackedBinaryImage mask, int conn)
+	{
+		if (conn != 4 && conn != 8)
+		{
+			throw new IllegalArgumentException("Connectivity must be 4 or 8, not " + conn);
+		}
+
+		PackedBinaryImage result = marker.and(mask);
+		result.reconstructInPlace(mask, conn);
+		return result;
+	}
+
+	/**
+	 * Propagates the foreground of this image within the mask, until
+	 * stability. This image is expected to be included within the mask.
+	 * Returns true if this image was modified.
+	 */
+	boolean reconstructInPlace(PackedBinaryImage mask, int conn)
+	{
+		long[] row = new long[wordsPerRow];
+
+		boolean changed = false;
+		boolean modified = true;
+		while (modified)
+		{
+			modified = false;
+
+			// forward pass
+			for (int y = 0; y < sizeY; y++)
+			{
+				if (updateRow(y, y - 1, mask, conn, row))
+					modified = true;
+			}
+
+			// backward pass
+			for (int y = sizeY - 1; y >= 0; y--)
+			{
+				if (updateRow(y, y + 1, mask, conn, row))
+					modified = true;
+			}
+			changed |= modified;
+		}
+
+		return changed;
+	}
+
+	/**
+	 * Propagates the pixels of the neighbor row and of the current row within
+	 * the runs of the mask. Returns true if the row was modified.
+	 */
+	private boolean updateRow(int y, int yNeigh, PackedBinaryImage mask,
+			int conn, long[] row)
+	{
+		int nWords = wordsPerRow;
+		int offset = y * nWords;
+		long[] maskData = mask.data;
+
+		// copy current row
+		System.arraycopy(data, offset, row, 0, nWords);
+
+		// propagate from neighbor row
+		if (yNeigh >= 0 && yNeigh < sizeY)
+		{
+			int neighOffset = yNeigh * nWords;
+			for (int w = 0; w < nWords; w++)
+			{
+				long neigh = data[neighOffset + w];
+				if (conn == 8)
+				{
+					// also consider diagonal neighbors
+					long prev = w > 0 ? data[neighOffset + w - 1] : 0;
+					long next = w < nWords - 1 ? data[neighOffset + w + 1] : 0;
+					neigh |= (neigh << 1) | (prev >>> 63) | (neigh >>> 1) | (next << 63);
+				}
+				row[w] |= neigh & maskData[offset + w];
+			}
+		}
+
+		// propagate along runs of mask pixels towards increasing x
+		long carry = 0;
+		for (int w = 0; w < nWords; w++)
+		{
+			long m = maskData[offset + w];
+			long x = row[w] | (carry & m & 1L);
+			long r = (m & ((m + x) ^ m)) | x;
+			row[w] = r;
+			carry = r >>> 63;
+		}
+
+		// propagate along runs of mask pixels towards decreasing x, using
+		// reversed bit order
+		carry = 0;
+		for (int w = nWords - 1; w >= 0; w--)
+		{
+			long m = Long.reverse(maskData[offset + w]);
+			long x = Long.reverse(row[w]) | (carry & m & 1L);
+			long r = (m & ((m + x) ^ m)) | x;
+			row[w] = Long.reverse(r);
+			carry = r >>> 63;
+		}
+
+		// copy back, and check modification
+		boolean modified = false;
+		for (int w = 0; w < nWords; w++)
+		{
+			if (row[w] != data[offset + w])
+			{
+				data[offset + w] = row[w];
+				modified = true;
+			}
+		}
+		return modified;
+	}
+}
@@ -0,0 +1,516 @@
+/**
+ *
+ */
+package inra.ijpb.binary;
+
+import ij.ImageStack;
+import inra.ijpb.morphology.Strel3D;
+import inra.ijpb.morphology.strel.CubeStrel;
+
+/**
+ * A 3D binary image that stores each slice as a PackedBinaryImage, with 64
+ * voxels within each <code>long</code> value.
+ *
+ * As for planar images, the voxels outside of the image are ignored by
+ * morphological operations: they are considered as background for dilations,
+ * and as foreground for erosions.
+ *
+ * Example of use:
+ * <pre><code>
+ * ImageStack mask = ...
+ * PackedBinaryStack image = PackedBinaryStack.fromStack(mask);
+ * PackedBinaryStack dilated = image.dilation(CubeStrel.fromRadius(2));
+ * ImageStack result = dilated.toStack();
+ * </code></pre>
+ *
+ * @see PackedBinaryImage
+ *
+ * @author David Legland
+ *
+ */
+public class PackedBinaryStack
+{
+	// ==============================================================
+	// Class variables
+
+	/** The width of the image */
+	int sizeX;
+
+	/** The height of the image */
+	int sizeY;
+
+	/** The slices of the image */
+	PackedBinaryImage[] slices;
+
+
+	// ==============================================================
+	// Constructors
+
+	/**
+	 * Creates a new empty 3D binary image.
+	 *
+	 * @param sizeX
+	 *            the width of the image
+	 * @param sizeY
+	 *            the height of the image
+	 * @param sizeZ
+	 *            the number of slices of the image
+	 */
+	public PackedBinaryStack(int sizeX, int sizeY, int sizeZ)
+	{
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.slices = new PackedBinaryImage[sizeZ];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			this.slices[z] = new PackedBinaryImage(sizeX, sizeY);
+		}
+	}
+
+	private PackedBinaryStack(PackedBinaryImage[] slices)
+	{
+		this.sizeX = slices[0].sizeX;
+		this.sizeY = slices[0].sizeY;
+		this.slices = slices;
+	}
+
+	/**
+	 * Creates a new 3D binary image from an image stack. Voxels with a value
+	 * different from zero are considered as foreground.
+	 *
+	 * @param image
+	 *            a 3D image
+	 * @return the 3D binary image
+	 */
+	public static final PackedBinaryStack fromStack(ImageStack image)
+	{
+		int sizeZ = image.getSize();
+		PackedBinaryImage[] slices = new PackedBinaryImage[sizeZ];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			slices[z] = PackedBinaryImage.fromProcessor(image.getProcessor(z + 1));
+		}
+		return new PackedBinaryStack(slices);
+	}
+
+
+	// ==============================================================
+	// Conversion and accessors
+
+	/**
+	 * Converts this image into an 8-bits image stack, with foreground voxels
+	 * set to 255 and background voxels set to 0.
+	 *
+	 * @return a new binary image stack
+	 */
+	public ImageStack toStack()
+	{
+		ImageStack result = new ImageStack(sizeX, sizeY);
+		for (PackedBinaryImage slice : slices)
+		{
+			result.addSlice(slice.toByteProcessor());
+		}
+		return result;
+	}
+
+	/**
+	 * @return the width of the image
+	 */
+	public int getWidth()
+	{
+		return sizeX;
+	}
+
+	/**
+	 * @return the height of the image
+	 */
+	public int getHeight()
+	{
+		return sizeY;
+	}
+
+	/**
+	 * @return the number of slices of the image
+	 */
+	public int getSize()
+	{
+		return slices.length;
+	}
+
+	/**
+	 * @param z
+	 *            the index of the slice, between 0 and size-1
+	 * @return the binary image corresponding to the slice
+	 */
+	public PackedBinaryImage getSlice(int z)
+	{
+		return slices[z];
+	}
+
+	/**
+	 * @param x
+	 *            the x-coordinate of the voxel
+	 * @param y
+	 *            the y-coordinate of the voxel
+	 * @param z
+	 *            the z-coordinate of the voxel
+	 * @return true if the voxel belongs to the foreground
+	 */
+	public boolean get(int x, int y, int z)
+	{
+		return slices[z].get(x, y);
+	}
+
+	/**
+	 * @param x
+	 *            the x-coordinate of the voxel
+	 * @param y
+	 *            the y-coordinate of the voxel
+	 * @param z
+	 *            the z-coordinate of the voxel
+	 * @param value
+	 *            the new value of the voxel
+	 */
+	public void set(int x, int y, int z, boolean value)
+	{
+		slices[z].set(x, y, value);
+	}
+
+	/**
+	 * @return the number of foreground voxels
+	 */
+	public long countForeground()
+	{
+		long count = 0;
+		for (PackedBinaryImage slice : slices)
+		{
+			count += slice.countForeground();
+		}
+		return count;
+	}
+
+	/**
+	 * @return a new image with the same content
+	 */
+	public PackedBinaryStack duplicate()
+	{
+		PackedBinaryImage[] res = new PackedBinaryImage[slices.length];
+		for (int z = 0; z < slices.length; z++)
+		{
+			res[z] = slices[z].duplicate();
+		}
+		return new PackedBinaryStack(res);
+	}
+
+	/**
+	 * Checks if this image has the same size and the same voxel values as
+	 * another image.
+	 *
+	 * @param image
+	 *            the image to compare with
+	 * @return true if both images are identical
+	 */
+	public boolean isSameAs(PackedBinaryStack image)
+	{
+		if (image.slices.length != slices.length)
+			return false;
+		for (int z = 0; z < slices.length; z++)
+		{
+			if (!slices[z].isSameAs(image.slices[z]))
+				return false;
+		}
+		return true;
+	}
+
+
+	// ==============================================================
+	// Logical operations
+
+	/**
+	 * @param image
+	 *            another binary image with the same size
+	 * @return the intersection of both images
+	 */
+	public PackedBinaryStack and(PackedBinaryStack image)
+	{
+		checkSameSize(image);
+		PackedBinaryImage[] res = new PackedBinaryImage[slices.length];
+		for (int z = 0; z < slices.length; z++)
+		{
+			res[z] = slices[z].and(image.slices[z]);
+		}
+		return new PackedBinaryStack(res);
+	}
+
+	/**
+	 * @param image
+	 *            another binary image with the same size
+	 * @return the union of both images
+	 */
+	public PackedBinaryStack or(PackedBinaryStack image)
+	{
+		checkSameSize(image);
+		PackedBinaryImage[] res = new PackedBinaryImage[slices.length];
+		for (int z = 0; z < slices.length; z++)
+		{
+			res[z] = slices[z].or(image.slices[z]);
+		}
+		return new PackedBinaryStack(res);
+	}
+
+	/**
+	 * @param image
+	 *            another binary image with the same size
+	 * @return the voxels that belong to exactly one of the images
+	 */
+	public PackedBinaryStack xor(PackedBinaryStack image)
+	{
+		checkSameSize(image);
+		PackedBinaryImage[] res = new PackedBinaryImage[slices.length];
+		for (int z = 0; z < slices.length; z++)
+		{
+			res[z] = slices[z].xor(image.slices[z]);
+		}
+		return new PackedBinaryStack(res);
+	}
+
+	/**
+	 * @return the complement of this image
+	 */
+	public PackedBinaryStack not()
+	{
+		PackedBinaryImage[] res = new PackedBinaryImage[slices.length];
+		for (int z = 0; z < slices.length; z++)
+		{
+			res[z] = slices[z].not();
+		}
+		return new PackedBinaryStack(res);
+	}
+
+	private void checkSameSize(PackedBinaryStack image)
+	{
+		if (image.sizeX != sizeX || image.sizeY != sizeY
+				|| image.slices.length != slices.length)
+		{
+			throw new IllegalArgumentException("Both images must have the same size");
+		}
+	}
+
+
+	// ==============================================================
+	// Morphological operations
+
+	/**
+	 * Computes the dilation of this image by a 3D structuring element. Cubic
+	 * structuring elements are decomposed into three linear dilations. Other
+	 * structuring elements are processed by combining the shifted images for
+	 * each element of the structuring element.
+	 *
+	 * @param strel
+	 *            the 3D structuring element
+	 * @return the result of the dilation
+	 */
+	public PackedBinaryStack dilation(Strel3D strel)
+	{
+		int sizeZ = slices.length;
+		if (strel instanceof CubeStrel)
+		{
+			int size = strel.getSize()[0];
+			int offset = strel.getOffset()[0];
+			PackedBinaryImage[] res = new PackedBinaryImage[sizeZ];
+			for (int z = 0; z < sizeZ; z++)
+			{
+				res[z] = slices[z].lineDilation(size, offset, 1, 0).lineDilation(size, offset, 0, 1);
+			}
+			return new PackedBinaryStack(res).depthDilation(size, offset);
+		}
+
+		int[][][] mask = strel.getMask3D();
+		int[] offset = strel.getOffset();
+		PackedBinaryStack result = new PackedBinaryStack(sizeX, sizeY, sizeZ);
+		for (int dz = 0; dz < mask.length; dz++)
+		{
+			int shiftZ = dz - offset[2];
+			for (int dy = 0; dy < mask[dz].length; dy++)
+			{
+				for (int dx = 0; dx < mask[dz][dy].length; dx++)
+				{
+					if (mask[dz][dy][dx] == 0)
+						continue;
+					for (int z = Math.max(0, -shiftZ); z < Math.min(sizeZ, sizeZ - shiftZ); z++)
+					{
+						PackedBinaryImage.orShifted(slices[z + shiftZ], dx - offset[0],
+								dy - offset[1], result.slices[z]);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the erosion of this image by a 3D structuring element, using
+	 * the duality with the dilation.
+	 *
+	 * @param strel
+	 *            the 3D structuring element
+	 * @return the result of the erosion
+	 */
+	public PackedBinaryStack erosion(Strel3D strel)
+	{
+		return not().dilation(strel).not();
+	}
+
+	/**
+	 * Computes the dilation along the z direction, by combining slices with
+	 * a number of operations proportional to the logarithm of the size.
+	 */
+	private PackedBinaryStack depthDilation(int size, int offset)
+	{
+		// union over [z - offset, z] and [z, z + size - offset)
+		PackedBinaryImage[] before = depthUnion(offset + 1, -1);
+		PackedBinaryImage[] after = depthUnion(size - offset, 1);
+		PackedBinaryImage[] result = new PackedBinaryImage[slices.length];
+		for (int z = 0; z < slices.length; z++)
+		{
+			result[z] = before[z].or(after[z]);
+		}
+		return new PackedBinaryStack(result);
+	}
+
+	/**
+	 * Computes, for each slice z, the union of the slices z + i * dz, for i
+	 * between 0 and length-1.
+	 */
+	private PackedBinaryImage[] depthUnion(int length, int dz)
+	{
+		// union over windows of length k, for increasing powers of two
+		PackedBinaryImage[] window = slices;
+		int k = 1;
+		while (2 * k <= length)
+		{
+			window = orSlices(window, k * dz);
+			k *= 2;
+		}
+
+		// union over window of the requested length
+		return length > k ? orSlices(window, (length - k) * dz) : window;
+	}
+
+	/**
+	 * Returns the slices obtained by combining each slice with the slice
+	 * located at the given shift.
+	 */
+	private static final PackedBinaryImage[] orSlices(PackedBinaryImage[] slices, int shift)
+	{
+		int sizeZ = slices.length;
+		PackedBinaryImage[] res = new PackedBinaryImage[sizeZ];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			int z2 = z + shift;
+			res[z] = z2 >= 0 && z2 < sizeZ ? slices[z].or(slices[z2]) : slices[z].duplicate();
+		}
+		return res;
+	}
+
+
+	// ==============================================================
+	// Morphological reconstruction
+
+	/**
+	 * Computes the morphological reconstruction by dilation of a marker image
+	 * within a mask image, i.e. the connected components of the mask that
+	 * contain at least one voxel of the marker.
+	 *
+	 * Each slice is reconstructed using the planar algorithm, then the result
+	 * is propagated to the next slice. Forward and backward passes are
+	 * repeated until stability.
+	 *
+	 * @param marker
+	 *            the marker image
+	 * @param mask
+	 *            the mask image, with the same size as the marker
+	 * @param conn
+	 *            the connectivity, either 6 or 26
+	 * @return the result of the reconstruction
+	 */
+	public static final PackedBinaryStack reconstructionByDilation(
+			PackedBinaryStack marker, PackedBinaryStack mask, int conn)
+	{
+		if (conn != 6 && conn != 26)
+		{
+			throw new IllegalArgumentException("Connectivity must be 6 or 26, not " + conn);
+		}
+		int conn2d = conn == 6 ? 4 : 8;
+
+		PackedBinaryStack result = marker.and(mask);
+		PackedBinaryImage[] res = result.slices;
+		int sizeZ = res.length;
+
+		// initial propagation within each slice
+		for (int z = 0; z < sizeZ; z++)
+		{
+			res[z].reconstructInPlace(mask.slices[z], conn2d);
+		}
+
+		boolean modified = true;
+		while (modified)
+		{
+			modified = false;
+
+			// forward pass
+			for (int z = 1; z < sizeZ; z++)
+			{
+				if (propagate(res[z - 1], res[z], mask.slices[z], conn2d))
+					modified = true;
+			}
+
+			// backward pass
+			for (int z = sizeZ - 2; z >= 0; z--)
+			{
+				if (propagate(res[z + 1], res[z], mask.slices[z], conn2d))
+					modified = true;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Propagates the foreground of a slice to an adjacent slice, then within
+	 * the adjacent slice. Returns true if the adjacent slice was modified.
+	 */
+	private static final boolean propagate(PackedBinaryImage source,
+			PackedBinaryImage target, PackedBinaryImage mask, int conn2d)
+	{
+		// voxels of the source slice that can be propagated
+		PackedBinaryImage neigh = source;
+		if (conn2d == 8)
+		{
+			// for 26-connectivity, also consider diagonal neighbors
+			neigh = source.lineDilation(3, 1, 1, 0).lineDilation(3, 1, 0, 1);
+		}
+
+		// add new voxels to the target slice
+		long[] data = target.data;
+		long[] neighData = neigh.data;
+		long[] maskData = mask.data;
+		boolean added = false;
+		for (int i = 0; i < data.length; i++)
+		{
+			long word = data[i] | (neighData[i] & maskData[i]);
+			if (word != data[i])
+			{
+				data[i] = word;
+				added = true;
+			}
+		}
+
+		// propagate new voxels within the target slice
+		if (added)
+		{
+			target.reconstructInPlace(mask, conn2d);
+		}
+		return added;
+	}
+}
@@ -3,6 +3,9 @@ package inra.ijpb.binary.distmap;
 import static java.lang.Math.min;
 import ij.ImageStack;
 import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
+import inra.ijpb.data.image.VirtualStackWrapper;
 
 /**
  * Computes Chamfer distances in a 3x3x3 neighborhood using floating point 
@@ -21,7 +24,7 @@ public class DistanceTransform3DFloat extends AlgoStub implements DistanceTransf
 	private int height;
 	private int depth;
 
-	private ImageStack maskProc;
+	private Image3D maskProc;
 
 	int maskLabel = DEFAULT_MASK_LABEL;
 
@@ -36,7 +39,7 @@ public class DistanceTransform3DFloat extends AlgoStub implements DistanceTransf
 	 * The inner buffer that will store the distance map. The content
 	 * of the buffer is updated during forward and backward iterations.
 	 */
-	private ImageStack buffer;
+	private Image3D buffer;
 	
 	/**
 	 * Default constructor that specifies the chamfer weights.
@@ -73,29 +76,67 @@ public class DistanceTransform3DFloat extends AlgoStub implements DistanceTransf
 	 * </ul>
 	 */
 	public ImageStack distanceMap(ImageStack image) 
+	{
+		// create new empty image, and compute distances within it
+		ImageStack result = ImageStack.create(image.getWidth(),
+				image.getHeight(), image.getSize(), 32);
+		
+		// slices of virtual stacks are read in advance on another thread
+		if (image.isVirtual())
+		{
+			VirtualStackWrapper wrapper = new VirtualStackWrapper(image);
+			try
+			{
+				distanceMap(wrapper, Images3D.createWrapper(result));
+			}
+			finally
+			{
+				wrapper.close();
+			}
+			return result;
+		}
+		
+		distanceMap(Images3D.createWrapper(image), Images3D.createWrapper(result));
+		return result;
+	}
+
+	/**
+	 * Computes the distance map from a 3D binary image, and stores it within
+	 * another image. Input and output images can be stored out of memory, for
+	 * example using {@link inra.ijpb.data.image.ChunkedImage3D}.
+	 * 
+	 * @param image
+	 *            a 3D binary image with white pixels (255) as foreground
+	 * @param result
+	 *            a 3D image with the same size, that can store floating point
+	 *            values, and that will contain the distance map
+	 */
+	public void distanceMap(Image3D image, Image3D result) 
 	{
 		// size of image
-		width = image.getWidth();
-		height = image.getHeight();
-		depth = image.getSize();
+		width = image.getSizeX();
+		height = image.getSizeY();
+		depth = image.getSizeZ();
 		
 		// update mask
 		this.maskProc = image;
 
-		// create new empty image, and fill it with black
-		buffer = ImageStack.create(width, height, depth, 32);
+		// the image that will contain the distance map
+		buffer = result;
 		
 		// initialize empty image with either 0 (background) or Inf (foreground)
 		fireStatusChanged(this, "Initialization..."); 
+		double[] line = new double[width];
 		for (int k = 0; k < depth; k++) 
 		{
 			for (int j = 0; j < height; j++) 
 			{
+				image.getLineX(j, k, line);
 				for (int i = 0; i < width; i++) 
 				{
-					double val = image.getVoxel(i, j, k);
-					buffer.setVoxel(i, j, k, val == 0 ? 0 : Float.MAX_VALUE);
+					line[i] = line[i] == 0 ? 0 : Float.MAX_VALUE;
 				}
+				buffer.setLineX(j, k, line);
 			}
 		}
 		fireProgressChanged(this, 1, 1); 
@@ -114,17 +155,15 @@ public class DistanceTransform3DFloat extends AlgoStub implements DistanceTransf
 				{
 					for (int i = 0; i < width; i++) 
 					{
-						if (maskProc.getVoxel(i, j, k) != 0)
+						if (maskProc.getValue(i, j, k) != 0)
 						{
-							buffer.setVoxel(i, j, k, buffer.getVoxel(i, j, k) / weights[0]);
+							buffer.setValue(i, j, k, buffer.getValue(i, j, k) / weights[0]);
 						}
 					}
 				}
 			}
 			fireProgressChanged(this, 1, 1); 
 		}
-				
-		return buffer;
 	}
 
 	private void forwardIteration() 
@@ -139,7 +178,7 @@ public class DistanceTransform3DFloat extends AlgoStub implements DistanceTransf
 				for (int x = 0; x < width; x++)
 				{
 					// check if we need to update current voxel
-					if (maskProc.getVoxel(x, y, z) != maskLabel)
+					if (maskProc.getValue(x, y, z) != maskLabel)
 						continue;
 					
 					// init new values for current voxel
@@ -155,24 +194,24 @@ public class DistanceTransform3DFloat extends AlgoStub implements DistanceTransf
 							// voxels in the (y-1) line of  the (z-1) plane
 							if (x > 0) 
 							{
-								diag3 = Math.min(diag3, buffer.getVoxel(x - 1, y - 1, z - 1));
+								diag3 = Math.min(diag3, buffer.getValue(x - 1, y - 1, z - 1));
 							}
-							diago = Math.min(diago, buffer.getVoxel(x, y - 1, z - 1));
+							diago = Math.min(diago, buffer.getValue(x, y - 1, z - 1));
 							if (x < width - 1) 
 							{
-								diag3 = Math.min(diag3, buffer.getVoxel(x + 1, y - 1, z - 1));
+								diag3 = Math.min(diag3, buffer.getValue(x + 1, y - 1, z - 1));
 							}
 						}
 						
 						// voxels in the y line of the (z-1) plane
 						if (x > 0) 
 						{
-							diago = Math.min(diago, buffer.getVoxel(x - 1, y, z - 1));
+							diago = Math.min(diago, buffer.getValue(x - 1, y, z - 1));
 						}
-						ortho = Math.min(ortho, buffer.getVoxel(x, y, z - 1));
+						ortho = Math.min(ortho, buffer.getValue(x, y, z - 1));
 						if (x < width - 1) 
 						{
-							diago = Math.min(diago, buffer.getVoxel(x + 1, y, z - 1));
+							diago = Math.min(diago, buffer.getValue(x + 1, y, z - 1));
 						}
 					}
 					
@@ -181,19 +220,19 @@ public class DistanceTransform3DFloat extends AlgoStub implements DistanceTransf
 					{
 						if (x > 0) 
 						{
-							diago = Math.min(diago, buffer.getVoxel(x - 1, y - 1, z));
+							diago = Math.min(diago, buffer.getValue(x - 1, y - 1, z));
 						}
-						ortho = Math.min(ortho, buffer.getVoxel(x, y - 1, z));
+						ortho = Math.min(ortho, buffer.getValue(x, y - 1, z));
 						if (x < width - 1) 
 						{
-							diago = Math.min(diago, buffer.getVoxel(x + 1, y - 1, z));
+							diago = Math.min(diago, buffer.getValue(x + 1, y - 1, z));
 						}
 					}
 					
 					// pixel to the left of the current voxel
 					if (x > 0) 
 					{
-						ortho = Math.min(ortho, buffer.getVoxel(x - 1, y, z));
+						ortho = Math.min(ortho, buffer.getValue(x - 1, y, z));
 					}
 					
 					double newVal = min3w(ortho, diago, diag3);
@@ -216,7 +255,7 @@ public class DistanceTransform3DFloat extends AlgoStub implements DistanceTransf
 				for (int x = width - 1; x >= 0; x--)
 				{
 					// check if we need to update current voxel
-					if (maskProc.getVoxel(x, y, z) != maskLabel)
+					if (maskProc.getValue(x, y, z) != maskLabel)
 						continue;
 					
 					// init new values for current voxel
@@ -232,24 +271,24 @@ public class DistanceTransform3DFloat extends AlgoStub implements DistanceTransf
 							// voxels in the (y+1) line of  the (z+1) plane
 							if (x < width - 1) 
 							{
-								diag3 = Math.min(diag3, buffer.getVoxel(x + 1, y + 1, z + 1));
+								diag3 = Math.min(diag3, buffer.getValue(x + 1, y + 1, z + 1));
 							}
-							diago = Math.min(diago, buffer.getVoxel(x, y + 1, z + 1));
+							diago = Math.min(diago, buffer.getValue(x, y + 1, z + 1));
 							if (x > 0) 
 							{
-								diag3 = Math.min(diag3, buffer.getVoxel(x - 1, y + 1, z + 1));
+								diag3 = Math.min(diag3, buffer.getValue(x - 1, y + 1, z + 1));
 							}
 						}
 						
 						// voxels in the y line of the (z+1) plane
 						if (x < width - 1) 
 						{
-							diago = Math.min(diago, buffer.getVoxel(x + 1, y, z + 1));
+							diago = Math.min(diago, buffer.getValue(x + 1, y, z + 1));
 						}
-						ortho = Math.min(ortho, buffer.getVoxel(x, y, z + 1));
+						ortho = Math.min(ortho, buffer.getValue(x, y, z + 1));
 						if (x > 0) 
 						{
-							diago = Math.min(diago, buffer.getVoxel(x - 1, y, z + 1));
+							diago = Math.min(diago, buffer.getValue(x - 1, y, z + 1));
 						}
 					}
 					
@@ -258,19 +297,19 @@ public class DistanceTransform3DFloat extends AlgoStub implements DistanceTransf
 					{
 						if (x < width - 1) 
 						{
-							diago = Math.min(diago, buffer.getVoxel(x + 1, y + 1, z));
+							diago = Math.min(diago, buffer.getValue(x + 1, y + 1, z));
 						}
-						ortho = Math.min(ortho, buffer.getVoxel(x, y + 1, z));
+						ortho = Math.min(ortho, buffer.getValue(x, y + 1, z));
 						if (x > 0) 
 						{
-							diago = Math.min(diago, buffer.getVoxel(x - 1, y + 1, z));
+							diago = Math.min(diago, buffer.getValue(x - 1, y + 1, z));
 						}
 					}
 					
 					// pixel to the left of the current voxel
 					if (x < width - 1) 
 					{
-						ortho = Math.min(ortho, buffer.getVoxel(x + 1, y, z));
+						ortho = Math.min(ortho, buffer.getValue(x + 1, y, z));
 					}
 					
 					double newVal = min3w(ortho, diago, diag3);
@@ -297,10 +336,10 @@ public class DistanceTransform3DFloat extends AlgoStub implements DistanceTransf
 	 */
 	private void updateIfNeeded(int i, int j, int k, double newVal)
 	{
-		double value = buffer.getVoxel(i, j, k);
+		double value = buffer.getValue(i, j, k);
 		if (newVal < value) 
 		{
-			buffer.setVoxel(i, j, k, newVal);
+			buffer.setValue(i, j, k, newVal);
 		}
 	}
 }
@@ -0,0 +1,298 @@
+/**
+ *
+ */
+package inra.ijpb.data;
+
+import java.util.Arrays;
+
+/**
+ * An associative array that maps primitive long keys to primitive int
+ * values, using open addressing with linear probing. Compared to a
+ * <code>HashMap&lt;Long, Integer&gt;</code>, it avoids allocating an object
+ * for each entry and boxing keys and values on each access.
+ *
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	LongIntHashMap map = new LongIntHashMap();
+ *	map.put(12L, 3);
+ *	int value = map.get(12L, -1); // returns 3
+ *	int missing = map.get(5L, -1); // returns -1
+ *}</pre>
+ *
+ * @author David Legland
+ *
+ */
+public class LongIntHashMap
+{
+	// ===================================================================
+	// Class variables
+
+	/** The keys of the map, at their hashed position */
+	long[] keys;
+
+	/** The values associated to each key */
+	int[] values;
+
+	/** Indicates which slots of the table are occupied */
+	boolean[] used;
+
+	/** The number of entries in the map */
+	int size = 0;
+
+	/** The number of entries that triggers the next resize of the table */
+	int threshold;
+
+
+	// ===================================================================
+	// Constructors
+
+	/**
+	 * Creates a new empty map with a default initial capacity.
+	 */
+	public LongIntHashMap()
+	{
+		this(16);
+	}
+
+	/**
+	 * Creates a new empty map that can store the specified number of entries
+	 * without being resized.
+	 *
+	 * @param expectedSize
+	 *            the expected number of entries
+	 */
+	public LongIntHashMap(int expectedSize)
+	{
+		int capacity = 16;
+		while (capacity * 3 / 4 < expectedSize)
+		{
+			capacity *= 2;
+		}
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity)
+	{
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		this.used = new boolean[capacity];
+		this.threshold = capacity * 3 / 4;
+	}
+
+
+	// ===================================================================
+	// Methods
+
+	/**
+	 * Returns the value associated to the given key, or the default value if
+	 * the key is not contained in this map.
+	 *
+	 * @param key
+	 *            the key to look for
+	 * @param defaultValue
+	 *            the value to return if the key is not found
+	 * @return the value associated to the key, or the default value
+	 */
+	public int get(long key, int defaultValue)
+	{
+		int mask = keys.length - 1;
+		int pos = hash(key) & mask;
+		while (used[pos])
+		{
+			if (keys[pos] == key)
+			{
+				return values[pos];
+			}
+			pos = (pos + 1) & mask;
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Checks if this map contains the given key.
+	 *
+	 * @param key
+	 *            the key to look for
+	 * @return true if the key is contained in this map
+	 */
+	public boolean containsKey(long key)
+	{
+		int mask = keys.length - 1;
+		int pos = hash(key) & mask;
+		while (used[pos])
+		{
+			if (keys[pos] == key)
+			{
+				return true;
+			}
+			pos = (pos + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * Associates the specified value to the specified key, replacing the
+	 * previous value if the key was already contained in this map.
+	 *
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value to associate to the key
+	 */
+	public void put(long key, int value)
+	{
+		int mask = keys.length - 1;
+		int pos = hash(key) & mask;
+		while (used[pos])
+		{
+			if (keys[pos] == key)
+			{
+				values[pos] = value;
+				return;
+			}
+			pos = (pos + 1) & mask;
+		}
+
+		keys[pos] = key;
+		values[pos] = value;
+		used[pos] = true;
+		if (++size > threshold)
+		{
+			rehash(keys.length * 2);
+		}
+	}
+
+	/**
+	 * Returns the value associated to the given key. If the key is not yet
+	 * contained in this map, associates it with the specified value and
+	 * returns this value. This allows to retrieve or create an entry with a
+	 * single lookup.
+	 *
+	 * @param key
+	 *            the key to look for
+	 * @param value
+	 *            the value to associate to the key if it is not found
+	 * @return the value associated to the key after the call
+	 */
+	public int putIfAbsent(long key, int value)
+	{
+		int mask = keys.length - 1;
+		int pos = hash(key) & mask;
+		while (used[pos])
+		{
+			if (keys[pos] == key)
+			{
+				return values[pos];
+			}
+			pos = (pos + 1) & mask;
+		}
+
+		keys[pos] = key;
+		values[pos] = value;
+		used[pos] = true;
+		if (++size > threshold)
+		{
+			rehash(keys.length * 2);
+		}
+		return value;
+	}
+
+	/**
+	 * @return the number of entries in this map
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return true if this map does not contain any entry
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Removes all the entries of this map.
+	 */
+	public void clear()
+	{
+		Arrays.fill(used, false);
+		size = 0;
+	}
+
+	/**
+	 * Returns the keys contained in this map, in an unspecified order.
+	 *
+	 * @return a new array containing the keys of this map
+	 */
+	public long[] keys()
+	{
+		long[] res = new long[size];
+		int n = 0;
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (used[i])
+			{
+				res[n++] = keys[i];
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Returns the values contained in this map, in the same order as the keys
+	 * returned by the <code>keys()</code> method.
+	 *
+	 * @return a new array containing the values of this map
+	 */
+	public int[] values()
+	{
+		int[] res = new int[size];
+		int n = 0;
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (used[i])
+			{
+				res[n++] = values[i];
+			}
+		}
+		return res;
+	}
+
+	private void rehash(int newCapacity)
+	{
+		long[] oldKeys = this.keys;
+		int[] oldValues = this.values;
+		boolean[] oldUsed = this.used;
+
+		allocate(newCapacity);
+		int mask = newCapacity - 1;
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (!oldUsed[i])
+				continue;
+
+			int pos = hash(oldKeys[i]) & mask;
+			while (used[pos])
+			{
+				pos = (pos + 1) & mask;
+			}
+			keys[pos] = oldKeys[i];
+			values[pos] = oldValues[i];
+			used[pos] = true;
+		}
+	}
+
+	/**
+	 * Mixes the bits of the key, such that keys obtained by packing two
+	 * integers are evenly spread over the table.
+	 */
+	private static final int hash(long key)
+	{
+		key *= 0x9E3779B97F4A7C15L;
+		return (int) (key ^ (key >>> 32));
+	}
+}
@@ -0,0 +1,399 @@
+/**
+ *
+ */
+package inra.ijpb.data;
+
+/**
+ * <p>
+ * Neighborhood of a voxel within a 3D image of known dimensions, represented
+ * by the precomputed differences of linear indices between a voxel and its
+ * neighbors. The linear index of the voxel (x,y,z) is given by
+ * <code>(z * sizeY + y) * sizeX + x</code>.
+ * </p>
+ *
+ * <p>
+ * Contrary to the {@link Neighborhood3D} class, no object is created when
+ * iterating over the neighbors. For voxels in the interior of the image,
+ * the neighbors are obtained by adding the offsets to the index of the
+ * current voxel. For voxels on the image border, the neighbors outside of
+ * the image have to be discarded using the <code>contains</code> method.
+ * The neighbors are visited in the same order as the
+ * {@link Neighborhood3DC6} and {@link Neighborhood3DC26} classes.
+ * </p>
+ *
+ * <p>
+ * Linear indices can only be used for images with less than 2^31 voxels.
+ * For larger images, data can be stored with one array per slice, and
+ * neighbors identified by their slice, given by <code>getShiftZ()</code>,
+ * and by their index within the slice, obtained by adding the planar offsets
+ * to the planar index <code>y * sizeX + x</code> of the voxel.
+ * </p>
+ *
+ * Example of use:
+ * <pre><code>
+ * OffsetNeighborhood3D neigh = OffsetNeighborhood3D.create(sizeX, sizeY, sizeZ, 6);
+ * int[] offsets = neigh.getOffsets();
+ * int index = neigh.index(x, y, z);
+ * boolean interior = neigh.isInterior(x, y, z);
+ * for (int n = 0; n &lt; offsets.length; n++)
+ * {
+ *     if (!interior &amp;&amp; !neigh.contains(x, y, z, n))
+ *         continue;
+ *     int index2 = index + offsets[n];
+ *     ...
+ * }
+ * </code></pre>
+ *
+ * @see Neighborhood3DC6
+ * @see Neighborhood3DC26
+ *
+ * @author David Legland
+ *
+ */
+public class OffsetNeighborhood3D
+{
+	// ==============================================================
+	// Class variables
+
+	/** The size of the image in the X direction */
+	final int sizeX;
+	/** The size of the image in the Y direction */
+	final int sizeY;
+	/** The size of the image in the Z direction */
+	final int sizeZ;
+
+	/** The shifts of each neighbor in the X direction */
+	final int[] shiftsX;
+	/** The shifts of each neighbor in the Y direction */
+	final int[] shiftsY;
+	/** The shifts of each neighbor in the Z direction */
+	final int[] shiftsZ;
+
+	/** The differences of linear index between a voxel and its neighbors */
+	final int[] offsets;
+
+	/**
+	 * The differences of index within slices between a voxel and its
+	 * neighbors
+	 */
+	final int[] planarOffsets;
+
+	/** Indicates whether the voxels of the image can be linearly indexed */
+	final boolean linearIndexing;
+
+
+	// ==============================================================
+	// Static factory
+
+	/**
+	 * Creates a new neighborhood for an image with the given dimensions.
+	 *
+	 * @param sizeX
+	 *            the size of the image in the X direction
+	 * @param sizeY
+	 *            the size of the image in the Y direction
+	 * @param sizeZ
+	 *            the size of the image in the Z direction
+	 * @param connectivity
+	 *            the connectivity, either 6 or 26
+	 * @return a new neighborhood with precomputed offsets
+	 */
+	public static final OffsetNeighborhood3D create(int sizeX, int sizeY,
+			int sizeZ, int connectivity)
+	{
+		switch (connectivity)
+		{
+		case 6:
+			return new OffsetNeighborhood3D(sizeX, sizeY, sizeZ,
+					new int[] { 0, -1, 0, 0, 1, 0 },
+					new int[] { 0, 0, -1, 1, 0, 0 },
+					new int[] { -1, 0, 0, 0, 0, 1 });
+		case 26:
+			int[] dx = new int[26];
+			int[] dy = new int[26];
+			int[] dz = new int[26];
+			int n = 0;
+			for (int z = -1; z <= 1; z++)
+			{
+				for (int x = -1; x <= 1; x++)
+				{
+					for (int y = -1; y <= 1; y++)
+					{
+						if (x == 0 && y == 0 && z == 0)
+							continue;
+						dx[n] = x;
+						dy[n] = y;
+						dz[n] = z;
+						n++;
+					}
+				}
+			}
+			return new OffsetNeighborhood3D(sizeX, sizeY, sizeZ, dx, dy, dz);
+		default:
+			throw new IllegalArgumentException(
+					"Connectivity must be either 6 or 26, not " + connectivity);
+		}
+	}
+
+
+	// ==============================================================
+	// Constructor
+
+	/**
+	 * Creates a new neighborhood from the shifts of each neighbor.
+	 *
+	 * @param sizeX
+	 *            the size of the image in the X direction
+	 * @param sizeY
+	 *            the size of the image in the Y direction
+	 * @param sizeZ
+	 *            the size of the image in the Z direction
+	 * @param shiftsX
+	 *            the shifts of each neighbor in the X direction, between -1
+	 *            and 1
+	 * @param shiftsY
+	 *            the shifts of each neighbor in the Y direction, between -1
+	 *            and 1
+	 * @param shiftsZ
+	 *            the shifts of each neighbor in the Z direction, between -1
+	 *            and 1
+	 */
+	public OffsetNeighborhood3D(int sizeX, int sizeY, int sizeZ,
+			int[] shiftsX, int[] shiftsY, int[] shiftsZ)
+	{
+		if (shiftsY.length != shiftsX.length || shiftsZ.length != shiftsX.length)
+		{
+			throw new IllegalArgumentException("Shift arrays must have the same length");
+		}
+		if ((long) sizeX * sizeY > Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Image slices are too large for planar indexing");
+		}
+
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+		this.shiftsX = shiftsX;
+		this.shiftsY = shiftsY;
+		this.shiftsZ = shiftsZ;
+
+		this.linearIndexing = (long) sizeX * sizeY * sizeZ <= Integer.MAX_VALUE;
+		this.offsets = new int[shiftsX.length];
+		this.planarOffsets = new int[shiftsX.length];
+		for (int n = 0; n < shiftsX.length; n++)
+		{
+			this.planarOffsets[n] = shiftsY[n] * sizeX + shiftsX[n];
+			this.offsets[n] = shiftsZ[n] * sizeY * sizeX + planarOffsets[n];
+		}
+	}
+
+
+	// ==============================================================
+	// Methods
+
+	/**
+	 * Computes the index of a voxel within its slice.
+	 *
+	 * @param x
+	 *            the x-coordinate of the voxel
+	 * @param y
+	 *            the y-coordinate of the voxel
+	 * @return the index of the voxel within its slice
+	 */
+	public final int planarIndex(int x, int y)
+	{
+		return y * sizeX + x;
+	}
+
+	/**
+	 * Computes the linear index of a voxel. The image must contain less than
+	 * 2^31 voxels.
+	 *
+	 * @param x
+	 *            the x-coordinate of the voxel
+	 * @param y
+	 *            the y-coordinate of the voxel
+	 * @param z
+	 *            the z-coordinate of the voxel
+	 * @return the linear index of the voxel
+	 */
+	public final int index(int x, int y, int z)
+	{
+		return (z * sizeY + y) * sizeX + x;
+	}
+
+	/**
+	 * Checks if all the neighbors of a voxel are within the image. In that
+	 * case, the indices of the neighbors are obtained by simply adding the
+	 * offsets to the index of the voxel.
+	 *
+	 * @param x
+	 *            the x-coordinate of the voxel
+	 * @param y
+	 *            the y-coordinate of the voxel
+	 * @param z
+	 *            the z-coordinate of the voxel
+	 * @return true if the voxel is not located on the image border
+	 */
+	public final boolean isInterior(int x, int y, int z)
+	{
+		return x > 0 && x < sizeX - 1 && y > 0 && y < sizeY - 1 && z > 0 && z < sizeZ - 1;
+	}
+
+	/**
+	 * Checks if the n-th neighbor of a voxel is within the image.
+	 *
+	 * @param x
+	 *            the x-coordinate of the voxel
+	 * @param y
+	 *            the y-coordinate of the voxel
+	 * @param z
+	 *            the z-coordinate of the voxel
+	 * @param n
+	 *            the index of the neighbor
+	 * @return true if the n-th neighbor is within image bounds
+	 */
+	public final boolean contains(int x, int y, int z, int n)
+	{
+		int x2 = x + shiftsX[n];
+		int y2 = y + shiftsY[n];
+		int z2 = z + shiftsZ[n];
+		return x2 >= 0 && x2 < sizeX && y2 >= 0 && y2 < sizeY && z2 >= 0 && z2 < sizeZ;
+	}
+
+	/**
+	 * Creates a new cursor located on the n-th neighbor of a voxel.
+	 *
+	 * @param cursor
+	 *            the position of the voxel
+	 * @param n
+	 *            the index of the neighbor
+	 * @return the position of the n-th neighbor
+	 */
+	public Cursor3D getNeighbor(Cursor3D cursor, int n)
+	{
+		return new Cursor3D(cursor.getX() + shiftsX[n], cursor.getY() + shiftsY[n],
+				cursor.getZ() + shiftsZ[n]);
+	}
+
+	/**
+	 * Computes the linear indices of the neighbors of a voxel that are within
+	 * the image, and returns the number of neighbors.
+	 *
+	 * @param x
+	 *            the x-coordinate of the voxel
+	 * @param y
+	 *            the y-coordinate of the voxel
+	 * @param z
+	 *            the z-coordinate of the voxel
+	 * @param indices
+	 *            the array used to store the indices of the neighbors, with at
+	 *            least as many elements as the neighborhood
+	 * @return the number of neighbors within the image
+	 */
+	public int getNeighbors(int x, int y, int z, int[] indices)
+	{
+		int index = index(x, y, z);
+		int nOffsets = offsets.length;
+
+		// fast path for interior voxels
+		if (isInterior(x, y, z))
+		{
+			for (int n = 0; n < nOffsets; n++)
+			{
+				indices[n] = index + offsets[n];
+			}
+			return nOffsets;
+		}
+
+		// border voxels: keep only neighbors within image
+		int count = 0;
+		for (int n = 0; n < nOffsets; n++)
+		{
+			if (contains(x, y, z, n))
+			{
+				indices[count++] = index + offsets[n];
+			}
+		}
+		return count;
+	}
+
+
+	// ==============================================================
+	// Accessors
+
+	/**
+	 * @return the number of neighbors of an interior voxel
+	 */
+	public int size()
+	{
+		return offsets.length;
+	}
+
+	/**
+	 * Returns the differences of linear index between a voxel and each of its
+	 * neighbors. The returned array must not be modified.
+	 *
+	 * @return the offsets of the neighbors
+	 */
+	public int[] getOffsets()
+	{
+		if (!linearIndexing)
+		{
+			throw new IllegalStateException("Image is too large for linear indexing");
+		}
+		return offsets;
+	}
+
+	/**
+	 * Returns the differences of index within slices between a voxel and each
+	 * of its neighbors. The slice of each neighbor is obtained with the
+	 * <code>getShiftZ()</code> method. The returned array must not be
+	 * modified.
+	 *
+	 * @return the planar offsets of the neighbors
+	 */
+	public int[] getPlanarOffsets()
+	{
+		return planarOffsets;
+	}
+
+	/**
+	 * @return true if the image contains less than 2^31 voxels, making it
+	 *         possible to use linear indices
+	 */
+	public boolean isLinearIndexable()
+	{
+		return linearIndexing;
+	}
+
+	/**
+	 * @param n
+	 *            the index of the neighbor
+	 * @return the shift of the n-th neighbor in the X direction
+	 */
+	public int getShiftX(int n)
+	{
+		return shiftsX[n];
+	}
+
+	/**
+	 * @param n
+	 *            the index of the neighbor
+	 * @return the shift of the n-th neighbor in the Y direction
+	 */
+	public int getShiftY(int n)
+	{
+		return shiftsY[n];
+	}
+
+	/**
+	 * @param n
+	 *            the index of the neighbor
+	 * @return the shift of the n-th neighbor in the Z direction
+	 */
+	public int getShiftZ(int n)
+	{
+		return shiftsZ[n];
+	}
+}
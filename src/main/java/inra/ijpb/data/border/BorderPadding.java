@@ -0,0 +1,338 @@
+/**
+ *
+ */
+package inra.ijpb.data.border;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
+import inra.ijpb.data.image.IntStackWrapper;
+
+/**
+ * <p>
+ * Materializes the borders of an image into a padded copy of the image.
+ * </p>
+ *
+ * <p>
+ * The values of the pixels within the original image bounds are copied
+ * row by row, and only the pixels of the added borders are computed from the
+ * border manager. Filters applied on the padded image can then access
+ * neighbors without checking image bounds, and the result is obtained by
+ * cropping the filtered image.
+ * </p>
+ *
+ * <pre><code>
+ * ImageProcessor image = ...
+ * BorderManager border = BorderManager.Type.MIRRORED.createBorderManager(image);
+ * ImageProcessor padded = BorderPadding.pad(image, 3, 3, 3, 3, border);
+ * ImageProcessor filtered = ... // process padded image
+ * ImageProcessor result = BorderPadding.crop(filtered, 3, 3,
+ *         image.getWidth(), image.getHeight());
+ * </code></pre>
+ *
+ * @see BorderManager
+ * @see BorderManager3D
+ *
+ * @author David Legland
+ *
+ */
+public class BorderPadding
+{
+	/**
+	 * Makes the default constructor private to avoid creation of instances.
+	 */
+	private BorderPadding()
+	{
+	}
+
+
+	// =======================================================================
+	// Padding of planar images
+
+	/**
+	 * Adds the same number of pixels on each side of the input image.
+	 *
+	 * @param image
+	 *            the input image
+	 * @param radius
+	 *            the number of pixels to add on each side of the image
+	 * @param type
+	 *            the type of border used for computing values of added pixels
+	 * @return a new image with extended borders
+	 */
+	public static final ImageProcessor pad(ImageProcessor image, int radius,
+			BorderManager.Type type)
+	{
+		return pad(image, radius, radius, radius, radius, type.createBorderManager(image));
+	}
+
+	/**
+	 * Adds the specified number of pixels around the input image, and returns
+	 * the resulting image. Negative numbers remove pixels from the
+	 * corresponding side.
+	 *
+	 * @param image
+	 *            the input image
+	 * @param left
+	 *            the number of pixels to add to the left
+	 * @param right
+	 *            the number of pixels to add to the right
+	 * @param top
+	 *            the number of pixels to add on top of image
+	 * @param bottom
+	 *            the number of pixels to at the bottom of image
+	 * @param border
+	 *            an instance of BorderManager that specifies the value of
+	 *            pixels to be added
+	 * @return a new image with extended borders
+	 */
+	public static final ImageProcessor pad(ImageProcessor image, int left,
+			int right, int top, int bottom, BorderManager border)
+	{
+		// get image dimensions
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		// compute result dimensions
+		int width2 = width + left + right;
+		int height2 = height + top + bottom;
+		ImageProcessor result = image.createProcessor(width2, height2);
+
+		// range of result columns that are within the original image
+		int x0 = max(left, 0);
+		int x1 = min(left + width, width2);
+
+		Object pixels = image.getPixels();
+		Object pixels2 = result.getPixels();
+		for (int y2 = 0; y2 < height2; y2++)
+		{
+			int y = y2 - top;
+			if (y < 0 || y >= height || x1 <= x0)
+			{
+				// the whole row is outside of original image
+				for (int x2 = 0; x2 < width2; x2++)
+				{
+					result.set(x2, y2, border.get(x2 - left, y));
+				}
+				continue;
+			}
+
+			// borders on each side of the row
+			for (int x2 = 0; x2 < x0; x2++)
+			{
+				result.set(x2, y2, border.get(x2 - left, y));
+			}
+			for (int x2 = x1; x2 < width2; x2++)
+			{
+				result.set(x2, y2, border.get(x2 - left, y));
+			}
+
+			// copy the part of the row within the image
+			System.arraycopy(pixels, y * width + x0 - left, pixels2, y2 * width2 + x0, x1 - x0);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Extracts a rectangular region from an image, typically to remove the
+	 * borders added by the <code>pad</code> method.
+	 *
+	 * @param image
+	 *            the (padded) image
+	 * @param x0
+	 *            the x-coordinate of the first column to keep
+	 * @param y0
+	 *            the y-coordinate of the first row to keep
+	 * @param width
+	 *            the width of the result image
+	 * @param height
+	 *            the height of the result image
+	 * @return a new image containing the specified region
+	 */
+	public static final ImageProcessor crop(ImageProcessor image, int x0,
+			int y0, int width, int height)
+	{
+		checkRegion(image.getWidth(), image.getHeight(), 1, x0, y0, 0, width, height, 1);
+
+		ImageProcessor result = image.createProcessor(width, height);
+		int sizeX = image.getWidth();
+		Object pixels = image.getPixels();
+		Object pixels2 = result.getPixels();
+		for (int y = 0; y < height; y++)
+		{
+			System.arraycopy(pixels, (y + y0) * sizeX + x0, pixels2, y * width, width);
+		}
+		return result;
+	}
+
+
+	// =======================================================================
+	// Padding of 3D images
+
+	/**
+	 * Adds the same number of voxels on each side of the input 3D image.
+	 *
+	 * @param image
+	 *            the input 3D image
+	 * @param radius
+	 *            the number of voxels to add on each side of the image
+	 * @param type
+	 *            the type of border used for computing values of added voxels
+	 * @return a new image with extended borders
+	 */
+	public static final ImageStack pad(ImageStack image, int radius,
+			BorderManager3D.Type type)
+	{
+		return pad(image, radius, radius, radius, radius, radius, radius,
+				type.createBorderManager(image));
+	}
+
+	/**
+	 * Adds the specified number of voxels around the input 3D image, and
+	 * returns the resulting image. Negative numbers remove voxels from the
+	 * corresponding side.
+	 *
+	 * @param image
+	 *            the input 3D image
+	 * @param left
+	 *            the number of voxels to add to the left
+	 * @param right
+	 *            the number of voxels to add to the right
+	 * @param top
+	 *            the number of voxels to add on top of image
+	 * @param bottom
+	 *            the number of voxels to at the bottom of image
+	 * @param front
+	 *            the number of slices to add before the first slice
+	 * @param back
+	 *            the number of slices to add after the last slice
+	 * @param border
+	 *            an instance of BorderManager3D that specifies the value of
+	 *            voxels to be added
+	 * @return a new image with extended borders
+	 */
+	public static final ImageStack pad(ImageStack image, int left, int right,
+			int top, int bottom, int front, int back, BorderManager3D border)
+	{
+		// get image dimensions
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int depth = image.getSize();
+
+		// compute result dimensions
+		int width2 = width + left + right;
+		int height2 = height + top + bottom;
+		int depth2 = depth + front + back;
+		ImageStack result = createStack(width2, height2, depth2, image.getBitDepth());
+		Image3D values = Images3D.createWrapper(result);
+
+		// range of result columns that are within the original image
+		int x0 = max(left, 0);
+		int x1 = min(left + width, width2);
+
+		for (int z2 = 0; z2 < depth2; z2++)
+		{
+			int z = z2 - front;
+			boolean inside = z >= 0 && z < depth && x1 > x0;
+			Object pixels = inside ? image.getPixels(z + 1) : null;
+			Object pixels2 = result.getPixels(z2 + 1);
+
+			for (int y2 = 0; y2 < height2; y2++)
+			{
+				int y = y2 - top;
+				if (!inside || y < 0 || y >= height)
+				{
+					// the whole row is outside of original image
+					for (int x2 = 0; x2 < width2; x2++)
+					{
+						values.set(x2, y2, z2, border.get(x2 - left, y, z));
+					}
+					continue;
+				}
+
+				// borders on each side of the row
+				for (int x2 = 0; x2 < x0; x2++)
+				{
+					values.set(x2, y2, z2, border.get(x2 - left, y, z));
+				}
+				for (int x2 = x1; x2 < width2; x2++)
+				{
+					values.set(x2, y2, z2, border.get(x2 - left, y, z));
+				}
+
+				// copy the part of the row within the image
+				System.arraycopy(pixels, y * width + x0 - left, pixels2, y2 * width2 + x0, x1 - x0);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Extracts a box-shaped region from a 3D image, typically to remove the
+	 * borders added by the <code>pad</code> method.
+	 *
+	 * @param image
+	 *            the (padded) 3D image
+	 * @param x0
+	 *            the x-coordinate of the first column to keep
+	 * @param y0
+	 *            the y-coordinate of the first row to keep
+	 * @param z0
+	 *            the z-coordinate of the first slice to keep
+	 * @param width
+	 *            the width of the result image
+	 * @param height
+	 *            the height of the result image
+	 * @param depth
+	 *            the number of slices of the result image
+	 * @return a new image containing the specified region
+	 */
+	public static final ImageStack crop(ImageStack image, int x0, int y0,
+			int z0, int width, int height, int depth)
+	{
+		int sizeX = image.getWidth();
+		checkRegion(sizeX, image.getHeight(), image.getSize(), x0, y0, z0, width, height, depth);
+
+		ImageStack result = createStack(width, height, depth, image.getBitDepth());
+		for (int z = 0; z < depth; z++)
+		{
+			Object pixels = image.getPixels(z + z0 + 1);
+			Object pixels2 = result.getPixels(z + 1);
+			for (int y = 0; y < height; y++)
+			{
+				System.arraycopy(pixels, (y + y0) * sizeX + x0, pixels2, y * width, width);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a new stack with the given type, such that stacks of int
+	 * values (24-bit) are initialized with zeros instead of opaque black.
+	 */
+	private static final ImageStack createStack(int width, int height,
+			int depth, int bitDepth)
+	{
+		if (bitDepth == 24)
+			return IntStackWrapper.createStack(width, height, depth);
+		return ImageStack.create(width, height, depth, bitDepth);
+	}
+
+	/**
+	 * Checks that the specified region is contained within image bounds.
+	 */
+	private static final void checkRegion(int sizeX, int sizeY, int sizeZ,
+			int x0, int y0, int z0, int width, int height, int depth)
+	{
+		if (x0 < 0 || y0 < 0 || z0 < 0 || width < 0 || height < 0 || depth < 0
+				|| x0 + width > sizeX || y0 + height > sizeY || z0 + depth > sizeZ)
+		{
+			throw new IllegalArgumentException("Region must be contained within image bounds");
+		}
+	}
+}
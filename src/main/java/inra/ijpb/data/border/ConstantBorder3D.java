@@ -4,6 +4,8 @@
 package inra.ijpb.data.border;
 
 import ij.ImageStack;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
 
 /**
  * Returns either image pixel when position is inside image bounds, or a
@@ -16,11 +18,15 @@ public class ConstantBorder3D implements BorderManager3D
 {
 
 	ImageStack image;
+
+	/** Access to the values of the image, including int values of 24-bit stacks */
+	Image3D values;
 	int value;
 
 	public ConstantBorder3D(ImageStack image, int value)
 	{
 		this.image = image;
+		this.values = Images3D.createWrapper(image);
 		this.value = value;
 	}
 
@@ -45,7 +51,7 @@ public class ConstantBorder3D implements BorderManager3D
 			return this.value;
 		if (z >= this.image.getSize())
 			return this.value;
-		return (int) this.image.getVoxel(x, y, z);
+		return this.values.get(x, y, z);
 	}
 
 }
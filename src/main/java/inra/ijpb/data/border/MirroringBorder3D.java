@@ -4,6 +4,8 @@
 package inra.ijpb.data.border;
 
 import ij.ImageStack;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
 
 /**
  * Periodic border that considers image is mirrored indefinitely in all
@@ -17,9 +19,13 @@ public class MirroringBorder3D implements BorderManager3D
 
 	ImageStack image;
 
+	/** Access to the values of the image, including int values of 24-bit stacks */
+	Image3D values;
+
 	public MirroringBorder3D(ImageStack image)
 	{
 		this.image = image;
+		this.values = Images3D.createWrapper(image);
 	}
 
 	/**
@@ -45,8 +51,8 @@ public class MirroringBorder3D implements BorderManager3D
 		if (y >= height)
 			y = 2 * height - 1 - y;
 		if (z >= depth)
-			z = 2 * depth - 1 - y;
-		return (int) this.image.getVoxel(x, y, z);
+			z = 2 * depth - 1 - z;
+		return this.values.get(x, y, z);
 	}
 
 }
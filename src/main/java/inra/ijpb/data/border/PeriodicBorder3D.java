@@ -4,6 +4,8 @@
 package inra.ijpb.data.border;
 
 import ij.ImageStack;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
 
 /**
  * Periodic border that considers image is repeated indefinitely in all
@@ -17,9 +19,13 @@ public class PeriodicBorder3D implements BorderManager3D
 
 	ImageStack image;
 
+	/** Access to the values of the image, including int values of 24-bit stacks */
+	Image3D values;
+
 	public PeriodicBorder3D(ImageStack image)
 	{
 		this.image = image;
+		this.values = Images3D.createWrapper(image);
 	}
 
 	/**
@@ -37,7 +43,7 @@ public class PeriodicBorder3D implements BorderManager3D
 			y += image.getHeight();
 		if (z < 0)
 			z += image.getSize();
-		return (int) this.image.getVoxel(x, y, z);
+		return this.values.get(x, y, z);
 	}
 
 }
@@ -4,6 +4,8 @@
 package inra.ijpb.data.border;
 
 import ij.ImageStack;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
 
 /**
  * Assess pixel outside image bounds have same value as the closest pixel on
@@ -17,9 +19,13 @@ public class ReplicatedBorder3D implements BorderManager3D
 
 	ImageStack image;
 
+	/** Access to the values of the image, including int values of 24-bit stacks */
+	Image3D values;
+
 	public ReplicatedBorder3D(ImageStack image)
 	{
 		this.image = image;
+		this.values = Images3D.createWrapper(image);
 	}
 
 	/**
@@ -40,7 +46,7 @@ public class ReplicatedBorder3D implements BorderManager3D
 		x = Math.min(x, image.getWidth() - 1);
 		y = Math.min(y, image.getHeight() - 1);
 		z = Math.min(z, image.getSize() - 1);
-		return (int) this.image.getVoxel(x, y, z);
+		return this.values.get(x, y, z);
 	}
 
 }
@@ -8,6 +8,8 @@
  * <p> 
  * The global behavior is defined by the {@link inra.ijpb.data.border.BorderManager} interface. 
  * Implementations manage replication, mirroring, constant borders... 
+ * The {@link inra.ijpb.data.border.BorderPadding} class computes a padded 
+ * copy of an image, to avoid border checks within filtering loops.
  */
 package inra.ijpb.data.border;
 
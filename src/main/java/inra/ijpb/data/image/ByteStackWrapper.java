@@ -53,6 +53,33 @@ public class ByteStackWrapper implements Image3D
 		}
 	}
 	
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeX()
+	 */
+	@Override
+	public int getSizeX()
+	{
+		return sizeX;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeY()
+	 */
+	@Override
+	public int getSizeY()
+	{
+		return sizeY;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeZ()
+	 */
+	@Override
+	public int getSizeZ()
+	{
+		return sizeZ;
+	}
+
 	/* (non-Javadoc)
 	 * @see inra.ijpb.data.image.Image3D#get(int, int, int)
 	 */
@@ -89,12 +116,151 @@ public class ByteStackWrapper implements Image3D
 	 */
 	@Override
 	public void setValue(int x, int y, int z, double value)
+	{
+		slices[z][y * sizeX + x] = toByte(value);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getValue(int)
+	 */
+	@Override
+	public double getValue(int index)
+	{
+		int sizeXY = sizeX * sizeY;
+		return slices[index / sizeXY][index % sizeXY] & 0x00FF;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setValue(int, double)
+	 */
+	@Override
+	public void setValue(int index, double value)
+	{
+		int sizeXY = sizeX * sizeY;
+		slices[index / sizeXY][index % sizeXY] = toByte(value);
+	}
+
+
+	// ==================================================
+	// Access to lines and slices
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineX(int, int, double[])
+	 */
+	@Override
+	public void getLineX(int y, int z, double[] buffer)
+	{
+		byte[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			buffer[x] = slice[offset + x] & 0x00FF;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineX(int, int, double[])
+	 */
+	@Override
+	public void setLineX(int y, int z, double[] buffer)
+	{
+		byte[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			slice[offset + x] = toByte(buffer[x]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineY(int, int, double[])
+	 */
+	@Override
+	public void getLineY(int x, int z, double[] buffer)
+	{
+		byte[] slice = slices[z];
+		for (int y = 0, offset = x; y < sizeY; y++, offset += sizeX)
+		{
+			buffer[y] = slice[offset] & 0x00FF;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineY(int, int, double[])
+	 */
+	@Override
+	public void setLineY(int x, int z, double[] buffer)
+	{
+		byte[] slice = slices[z];
+		for (int y = 0, offset = x; y < sizeY; y++, offset += sizeX)
+		{
+			slice[offset] = toByte(buffer[y]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineZ(int, int, double[])
+	 */
+	@Override
+	public void getLineZ(int x, int y, double[] buffer)
+	{
+		int offset = y * sizeX + x;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			buffer[z] = slices[z][offset] & 0x00FF;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineZ(int, int, double[])
+	 */
+	@Override
+	public void setLineZ(int x, int y, double[] buffer)
+	{
+		int offset = y * sizeX + x;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			slices[z][offset] = toByte(buffer[z]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSliceValues(int, double[])
+	 */
+	@Override
+	public void getSliceValues(int z, double[] buffer)
+	{
+		byte[] slice = slices[z];
+		for (int i = 0; i < slice.length; i++)
+		{
+			buffer[i] = slice[i] & 0x00FF;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setSliceValues(int, double[])
+	 */
+	@Override
+	public void setSliceValues(int z, double[] buffer)
+	{
+		byte[] slice = slices[z];
+		for (int i = 0; i < slice.length; i++)
+		{
+			slice[i] = toByte(buffer[i]);
+		}
+	}
+
+	/**
+	 * Converts a value to the byte stored within the slices, by clamping it
+	 * between 0 and 255 and rounding to the nearest integer. Used by all the
+	 * setters to ensure they store the same byte for a given value.
+	 */
+	private static final byte toByte(double value)
 	{
 		if (value > 255)
 			value = 255;
 		else if (value < 0)
 			value = 0;
-		slices[z][y * sizeX + x] = (byte) (value + .5);
+		return (byte) (value + .5);
 	}
-
 }
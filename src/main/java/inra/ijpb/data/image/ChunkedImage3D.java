@@ -0,0 +1,622 @@
+/**
+ *
+ */
+package inra.ijpb.data.image;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * A 3D image stored as cubic blocks of voxels within a local file, with only
+ * a bounded number of blocks kept in memory. Blocks are loaded when one of
+ * their voxels is accessed, and the least recently used block is written back
+ * to the file (only if it was modified) when the cache is full. This makes it
+ * possible to process images larger than the available memory, with a memory
+ * footprint that does not depend on image size.
+ * </p>
+ *
+ * <p>
+ * Algorithms that access voxels close to each other, such as scanning
+ * algorithms, benefit most from this representation. Blocks that were never
+ * modified are not stored within the file, and contain only zeros. This class
+ * is not thread-safe.
+ * </p>
+ *
+ * <p>
+ * Blocks are not thicker than the image, so that a planar image larger than
+ * the Java array size can be stored as a chunked image with a single slice,
+ * and processed by tiles using {@link TiledProcessor}.
+ * </p>
+ *
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	ChunkedImage3D image = ChunkedImage3D.create(2000, 2000, 1000, 16);
+ *	image.setValue(10, 20, 30, 1200);
+ *	...
+ *	image.close();
+ *}</pre>
+ *
+ * @see MappedImage3D
+ *
+ * @author David Legland
+ *
+ */
+public class ChunkedImage3D implements Image3D, Closeable
+{
+	// ==================================================
+	// Constants
+
+	/**
+	 * The default size of the blocks in each direction.
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 64;
+
+	/**
+	 * The default maximal number of blocks kept in memory.
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 128;
+
+
+	// ==================================================
+	// Static factories
+
+	/**
+	 * Creates a new chunked image using default block size and cache size,
+	 * and a temporary file that is deleted when the image is closed.
+	 *
+	 * @param sizeX
+	 *            the size of the image in the x direction
+	 * @param sizeY
+	 *            the size of the image in the y direction
+	 * @param sizeZ
+	 *            the size of the image in the z direction
+	 * @param bitDepth
+	 *            the bit depth of the image, either 8, 16 or 32 (float), or
+	 *            24 for int values such as large label images
+	 * @return a new chunked image containing only zeros
+	 * @throws IOException
+	 *             if the temporary file can not be created
+	 */
+	public static final ChunkedImage3D create(int sizeX, int sizeY, int sizeZ,
+			int bitDepth) throws IOException
+	{
+		File file = File.createTempFile("chunks", ".raw");
+		file.deleteOnExit();
+		ChunkedImage3D image = new ChunkedImage3D(sizeX, sizeY, sizeZ,
+				bitDepth, DEFAULT_BLOCK_SIZE, DEFAULT_CACHE_SIZE, file);
+		image.deleteOnClose = true;
+		return image;
+	}
+
+
+	// ==================================================
+	// Inner class
+
+	/**
+	 * A block of voxels in memory.
+	 */
+	static class Block
+	{
+		/** The index of the block within the image */
+		final int index;
+
+		/** The values of the voxels */
+		final ByteBuffer data;
+
+		/** Indicates whether the block was modified since it was loaded */
+		boolean dirty = false;
+
+		Block(int index, ByteBuffer data)
+		{
+			this.index = index;
+			this.data = data;
+		}
+	}
+
+
+	// ==================================================
+	// Class variables
+
+	int sizeX;
+	int sizeY;
+	int sizeZ;
+
+	/** The number of bits of each voxel: 8, 16, 24 (for int) or 32 */
+	int bitDepth;
+
+	/** The number of bytes of each voxel */
+	int bytesPerVoxel;
+
+	/** The size of the blocks in the x and y directions */
+	int blockSize;
+
+	/** The size of the blocks in the z direction, not larger than the image */
+	int blockSizeZ;
+
+	/** The number of bytes of a block */
+	int blockBytes;
+
+	/** The number of blocks in each direction */
+	int nBlocksX;
+	int nBlocksY;
+	int nBlocksZ;
+
+	/** The maximal number of blocks in memory */
+	int cacheSize;
+
+	/** The blocks in memory, ordered from the least recently used */
+	LinkedHashMap<Integer, Block> cache;
+
+	/** The last accessed block, to avoid looking up the cache */
+	Block lastBlock = null;
+
+	/** Indicates which blocks were written to the file */
+	boolean[] stored;
+
+	/** The file used for storing blocks removed from memory */
+	File file;
+	RandomAccessFile raf;
+	FileChannel channel;
+
+	/** Indicates whether the file is deleted when the image is closed */
+	boolean deleteOnClose = false;
+
+
+	// ==================================================
+	// Constructor
+
+	/**
+	 * Creates a new chunked image containing only zeros.
+	 *
+	 * @param sizeX
+	 *            the size of the image in the x direction
+	 * @param sizeY
+	 *            the size of the image in the y direction
+	 * @param sizeZ
+	 *            the size of the image in the z direction
+	 * @param bitDepth
+	 *            the bit depth of the image, either 8, 16 or 32 (float), or
+	 *            24 for int values
+	 * @param blockSize
+	 *            the size of the blocks in each direction. Blocks are clipped
+	 *            in the z direction to the size of the image.
+	 * @param cacheSize
+	 *            the maximal number of blocks kept in memory
+	 * @param file
+	 *            the file used for storing the blocks. Its content is
+	 *            overwritten.
+	 * @throws IOException
+	 *             if the file can not be opened
+	 */
+	public ChunkedImage3D(int sizeX, int sizeY, int sizeZ, int bitDepth,
+			int blockSize, int cacheSize, File file) throws IOException
+	{
+		if (bitDepth != 8 && bitDepth != 16 && bitDepth != 24 && bitDepth != 32)
+		{
+			throw new IllegalArgumentException("Requires a bit depth equal to 8, 16, 24 or 32");
+		}
+		if (blockSize < 1 || cacheSize < 1)
+		{
+			throw new IllegalArgumentException("Block size and cache size must be positive");
+		}
+
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+		this.bitDepth = bitDepth;
+		this.bytesPerVoxel = bitDepth == 24 ? 4 : bitDepth / 8;
+		this.blockSize = blockSize;
+		this.blockSizeZ = Math.max(Math.min(blockSize, sizeZ), 1);
+		this.blockBytes = blockSize * blockSize * blockSizeZ * bytesPerVoxel;
+		this.nBlocksX = (sizeX + blockSize - 1) / blockSize;
+		this.nBlocksY = (sizeY + blockSize - 1) / blockSize;
+		this.nBlocksZ = (sizeZ + blockSizeZ - 1) / blockSizeZ;
+		this.stored = new boolean[nBlocksX * nBlocksY * nBlocksZ];
+
+		this.file = file;
+		this.raf = new RandomAccessFile(file, "rw");
+		this.raf.setLength(0);
+		this.channel = this.raf.getChannel();
+
+		// cache of blocks in access order, writing back the least recently
+		// used block when the cache is full
+		this.cacheSize = cacheSize;
+		this.cache = new LinkedHashMap<Integer, Block>(16, .75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Block> eldest)
+			{
+				if (size() <= ChunkedImage3D.this.cacheSize)
+					return false;
+				writeBlock(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+
+	// ==================================================
+	// Management of blocks
+
+	/**
+	 * Returns the block with the given index, loading it if necessary.
+	 */
+	private Block getBlock(int index)
+	{
+		if (lastBlock != null && lastBlock.index == index)
+			return lastBlock;
+
+		Block block = cache.get(index);
+		if (block == null)
+		{
+			block = readBlock(index);
+			cache.put(index, block);
+		}
+		lastBlock = block;
+		return block;
+	}
+
+	/**
+	 * Reads a block from the file, or creates an empty block if it was never
+	 * stored.
+	 */
+	private Block readBlock(int index)
+	{
+		ByteBuffer data = ByteBuffer.allocate(blockBytes);
+		if (stored[index])
+		{
+			try
+			{
+				long pos = (long) index * blockBytes;
+				while (data.hasRemaining())
+				{
+					if (channel.read(data, pos + data.position()) < 0)
+						break;
+				}
+			}
+			catch (IOException ex)
+			{
+				throw new RuntimeException("Could not read block " + index + " from file "
+						+ file.getName(), ex);
+			}
+		}
+		return new Block(index, data);
+	}
+
+	/**
+	 * Writes a block to the file, if it was modified.
+	 */
+	private void writeBlock(Block block)
+	{
+		if (!block.dirty)
+			return;
+
+		try
+		{
+			ByteBuffer data = block.data.duplicate();
+			data.clear();
+			long pos = (long) block.index * blockBytes;
+			while (data.hasRemaining())
+			{
+				channel.write(data, pos + data.position());
+			}
+		}
+		catch (IOException ex)
+		{
+			throw new RuntimeException("Could not write block " + block.index + " to file "
+					+ file.getName(), ex);
+		}
+		block.dirty = false;
+		stored[block.index] = true;
+	}
+
+	/**
+	 * Writes all the modified blocks to the file.
+	 */
+	public void flush()
+	{
+		for (Block block : cache.values())
+		{
+			writeBlock(block);
+		}
+	}
+
+	/**
+	 * Releases the blocks in memory and closes the file. The file is deleted
+	 * if the image was created with a temporary file. Otherwise, the
+	 * modified blocks are written before closing.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (!deleteOnClose)
+			flush();
+		cache.clear();
+		lastBlock = null;
+		raf.close();
+		if (deleteOnClose)
+			file.delete();
+	}
+
+	/**
+	 * @return the number of blocks currently in memory
+	 */
+	public int getCachedBlockCount()
+	{
+		return cache.size();
+	}
+
+	/**
+	 * @return the size of the blocks in the x and y directions
+	 */
+	public int getBlockSize()
+	{
+		return blockSize;
+	}
+
+	/**
+	 * @return the bit depth of the image, either 8, 16, 24 (int) or 32
+	 */
+	public int getBitDepth()
+	{
+		return bitDepth;
+	}
+
+
+	// ==================================================
+	// Access to voxels
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeX()
+	 */
+	@Override
+	public int getSizeX()
+	{
+		return sizeX;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeY()
+	 */
+	@Override
+	public int getSizeY()
+	{
+		return sizeY;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeZ()
+	 */
+	@Override
+	public int getSizeZ()
+	{
+		return sizeZ;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#get(int, int, int)
+	 */
+	@Override
+	public int get(int x, int y, int z)
+	{
+		if (bitDepth == 24)
+		{
+			return getBlock(blockIndex(x, y, z)).data.getInt(blockPos(x, y, z));
+		}
+		return (int) getValue(x, y, z);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#set(int, int, int, int)
+	 */
+	@Override
+	public void set(int x, int y, int z, int value)
+	{
+		if (bitDepth == 24)
+		{
+			Block block = getBlock(blockIndex(x, y, z));
+			block.data.putInt(blockPos(x, y, z), value);
+			block.dirty = true;
+			return;
+		}
+		setValue(x, y, z, (double) value);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getValue(int, int, int)
+	 */
+	@Override
+	public double getValue(int x, int y, int z)
+	{
+		Block block = getBlock(blockIndex(x, y, z));
+		int pos = blockPos(x, y, z);
+		switch (bitDepth)
+		{
+		case 8: return block.data.get(pos) & 0x00FF;
+		case 16: return block.data.getShort(pos) & 0x00FFFF;
+		case 24: return block.data.getInt(pos);
+		default: return block.data.getFloat(pos);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setValue(int, int, int, double)
+	 */
+	@Override
+	public void setValue(int x, int y, int z, double value)
+	{
+		Block block = getBlock(blockIndex(x, y, z));
+		int pos = blockPos(x, y, z);
+		switch (bitDepth)
+		{
+		case 8:
+			block.data.put(pos, (byte) (Math.min(Math.max(value, 0), 255) + .5));
+			break;
+		case 16:
+			block.data.putShort(pos, ShortStackWrapper.toShort(value));
+			break;
+		case 24:
+			block.data.putInt(pos, (int) value);
+			break;
+		default:
+			block.data.putFloat(pos, (float) value);
+		}
+		block.dirty = true;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getValue(int)
+	 */
+	@Override
+	public double getValue(int index)
+	{
+		int sizeXY = sizeX * sizeY;
+		int xy = index % sizeXY;
+		return getValue(xy % sizeX, xy / sizeX, index / sizeXY);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setValue(int, double)
+	 */
+	@Override
+	public void setValue(int index, double value)
+	{
+		int sizeXY = sizeX * sizeY;
+		int xy = index % sizeXY;
+		setValue(xy % sizeX, xy / sizeX, index / sizeXY, value);
+	}
+
+
+	/**
+	 * Returns the index of the block containing the given voxel.
+	 */
+	private int blockIndex(int x, int y, int z)
+	{
+		return ((z / blockSizeZ) * nBlocksY + y / blockSize) * nBlocksX + x / blockSize;
+	}
+
+	/**
+	 * Returns the position in bytes of the given voxel within its block.
+	 */
+	private int blockPos(int x, int y, int z)
+	{
+		int bs = blockSize;
+		return (((z % blockSizeZ) * bs + y % bs) * bs + x % bs) * bytesPerVoxel;
+	}
+
+
+	// ==================================================
+	// Access to lines and slices
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineX(int, int, double[])
+	 */
+	@Override
+	public void getLineX(int y, int z, double[] buffer)
+	{
+		for (int x = 0; x < sizeX; x++)
+		{
+			buffer[x] = getValue(x, y, z);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineX(int, int, double[])
+	 */
+	@Override
+	public void setLineX(int y, int z, double[] buffer)
+	{
+		for (int x = 0; x < sizeX; x++)
+		{
+			setValue(x, y, z, buffer[x]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineY(int, int, double[])
+	 */
+	@Override
+	public void getLineY(int x, int z, double[] buffer)
+	{
+		for (int y = 0; y < sizeY; y++)
+		{
+			buffer[y] = getValue(x, y, z);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineY(int, int, double[])
+	 */
+	@Override
+	public void setLineY(int x, int z, double[] buffer)
+	{
+		for (int y = 0; y < sizeY; y++)
+		{
+			setValue(x, y, z, buffer[y]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineZ(int, int, double[])
+	 */
+	@Override
+	public void getLineZ(int x, int y, double[] buffer)
+	{
+		for (int z = 0; z < sizeZ; z++)
+		{
+			buffer[z] = getValue(x, y, z);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineZ(int, int, double[])
+	 */
+	@Override
+	public void setLineZ(int x, int y, double[] buffer)
+	{
+		for (int z = 0; z < sizeZ; z++)
+		{
+			setValue(x, y, z, buffer[z]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSliceValues(int, double[])
+	 */
+	@Override
+	public void getSliceValues(int z, double[] buffer)
+	{
+		for (int y = 0, i = 0; y < sizeY; y++)
+		{
+			for (int x = 0; x < sizeX; x++, i++)
+			{
+				buffer[i] = getValue(x, y, z);
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setSliceValues(int, double[])
+	 */
+	@Override
+	public void setSliceValues(int z, double[] buffer)
+	{
+		for (int y = 0, i = 0; y < sizeY; y++)
+		{
+			for (int x = 0; x < sizeX; x++, i++)
+			{
+				setValue(x, y, z, buffer[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,510 @@
+/**
+ *
+ */
+package inra.ijpb.data.image;
+
+import ij.ImageStack;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * <p>
+ * A 3D image whose voxels are stored outside of the Java heap, within direct
+ * buffers (one buffer for each slice). Such images do not need to be managed
+ * by the garbage collector, and the memory can be released explicitly by
+ * calling the <code>release</code> method. This is useful for intermediate
+ * images of long-running processes, that would otherwise fill the heap with
+ * large arrays.
+ * </p>
+ *
+ * <p>
+ * Gray8, gray16 (unsigned) and float data are supported, as well as int
+ * values (bit depth 24) used for label images, as for IntStackWrapper. Conversion from and
+ * to <code>ImageStack</code> instances are provided. Algorithms that accept an
+ * {@link Image3DFactory} can allocate their intermediate images out of the
+ * heap by using {@link #FACTORY}. The 3D morphological filters (opening,
+ * closing, gradient, top-hats) do not accept a factory, as structuring
+ * elements operate on ImageStack instances, and allocate their intermediate
+ * images within the heap.
+ * </p>
+ *
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	ImageStack stack = IJ.getImage().getStack();
+ *	DirectImage3D image = DirectImage3D.fromStack(stack);
+ *	...
+ *	ImageStack result = image.toStack();
+ *	image.release();
+ *}</pre>
+ *
+ * @see Image3DFactory
+ * @see ByteStackWrapper
+ * @see ShortStackWrapper
+ * @see FloatStackWrapper
+ *
+ * @author David Legland
+ *
+ */
+public class DirectImage3D implements Image3D
+{
+	// ==================================================
+	// Static factory
+
+	/**
+	 * Factory that creates direct images, so that algorithms can store
+	 * their intermediate results out of the Java heap. Released images can
+	 * not be used anymore.
+	 */
+	public static final Image3DFactory FACTORY = new Image3DFactory()
+	{
+		public Image3D create(int sizeX, int sizeY, int sizeZ, int bitDepth)
+		{
+			return new DirectImage3D(sizeX, sizeY, sizeZ, bitDepth);
+		}
+
+		public void release(Image3D image)
+		{
+			((DirectImage3D) image).release();
+		}
+	};
+
+
+	// ==================================================
+	// Static methods
+
+	/**
+	 * Creates a new direct image with the same size, type and values as the
+	 * input stack.
+	 *
+	 * @param stack
+	 *            a gray8, gray16, float, or int (24-bit) stack
+	 * @return a new direct image
+	 */
+	public static final DirectImage3D fromStack(ImageStack stack)
+	{
+		int sizeX = stack.getWidth();
+		int sizeY = stack.getHeight();
+		int sizeZ = stack.getSize();
+		DirectImage3D image = new DirectImage3D(sizeX, sizeY, sizeZ, stack.getBitDepth());
+
+		for (int z = 0; z < sizeZ; z++)
+		{
+			Object pixels = stack.getPixels(z + 1);
+			switch (image.bitDepth)
+			{
+			case 8: image.bytes[z].put((byte[]) pixels).clear(); break;
+			case 16: image.shorts[z].put((short[]) pixels).clear(); break;
+			case 24: image.ints[z].put((int[]) pixels).clear(); break;
+			default: image.floats[z].put((float[]) pixels).clear();
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Releases the memory of a direct buffer without waiting for garbage
+	 * collection, if the platform allows it.
+	 */
+	private static final void freeDirectBuffer(ByteBuffer buffer)
+	{
+		try
+		{
+			// Java 9 and later
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			invokeCleaner.invoke(field.get(null), buffer);
+			return;
+		}
+		catch (Exception ex)
+		{
+		}
+
+		try
+		{
+			// Java 8 and earlier
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null)
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+		}
+		catch (Exception ex)
+		{
+			// memory will be released by garbage collection
+		}
+	}
+
+
+	// ==================================================
+	// Class variables
+
+	int sizeX;
+	int sizeY;
+	int sizeZ;
+
+	/** The number of bits of each voxel: 8, 16, 24 (for int) or 32 */
+	int bitDepth;
+
+	/** The buffers containing the data of each slice */
+	ByteBuffer[] bytes;
+
+	/** Views of the slices for gray16 images */
+	ShortBuffer[] shorts;
+
+	/** Views of the slices for float images */
+	FloatBuffer[] floats;
+
+	/** Views of the slices for int images */
+	IntBuffer[] ints;
+
+
+	// ==================================================
+	// Constructor
+
+	/**
+	 * Creates a new direct image containing only zeros.
+	 *
+	 * @param sizeX
+	 *            the size of the image in the x direction
+	 * @param sizeY
+	 *            the size of the image in the y direction
+	 * @param sizeZ
+	 *            the size of the image in the z direction
+	 * @param bitDepth
+	 *            the bit depth of the image, either 8, 16 or 32 (float), or
+	 *            24 for int values
+	 */
+	public DirectImage3D(int sizeX, int sizeY, int sizeZ, int bitDepth)
+	{
+		if (bitDepth != 8 && bitDepth != 16 && bitDepth != 24 && bitDepth != 32)
+		{
+			throw new IllegalArgumentException("Requires a bit depth equal to 8, 16, 24 or 32");
+		}
+
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+		this.bitDepth = bitDepth;
+
+		int sliceBytes = sizeX * sizeY * (bitDepth == 24 ? 4 : bitDepth / 8);
+		this.bytes = new ByteBuffer[sizeZ];
+		if (bitDepth == 16)
+			this.shorts = new ShortBuffer[sizeZ];
+		else if (bitDepth == 24)
+			this.ints = new IntBuffer[sizeZ];
+		else if (bitDepth == 32)
+			this.floats = new FloatBuffer[sizeZ];
+
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ByteBuffer buffer = ByteBuffer.allocateDirect(sliceBytes);
+			buffer.order(ByteOrder.nativeOrder());
+			this.bytes[z] = buffer;
+			if (bitDepth == 16)
+				this.shorts[z] = buffer.asShortBuffer();
+			else if (bitDepth == 24)
+				this.ints[z] = buffer.asIntBuffer();
+			else if (bitDepth == 32)
+				this.floats[z] = buffer.asFloatBuffer();
+		}
+	}
+
+
+	// ==================================================
+	// General methods
+
+	/**
+	 * Converts this image into a new ImageStack with the same type.
+	 *
+	 * @return a new ImageStack containing the values of this image
+	 */
+	public ImageStack toStack()
+	{
+		ImageStack stack = bitDepth == 24 ? IntStackWrapper.createStack(sizeX, sizeY, sizeZ)
+				: ImageStack.create(sizeX, sizeY, sizeZ, bitDepth);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			Object pixels = stack.getPixels(z + 1);
+			switch (bitDepth)
+			{
+			case 8: bytes[z].duplicate().get((byte[]) pixels); break;
+			case 16: shorts[z].duplicate().get((short[]) pixels); break;
+			case 24: ints[z].duplicate().get((int[]) pixels); break;
+			default: floats[z].duplicate().get((float[]) pixels);
+			}
+		}
+		return stack;
+	}
+
+	/**
+	 * Releases the memory used by this image. The image can not be used
+	 * after calling this method.
+	 */
+	public void release()
+	{
+		if (this.bytes == null)
+			return;
+
+		ByteBuffer[] buffers = this.bytes;
+		this.bytes = null;
+		this.shorts = null;
+		this.ints = null;
+		this.floats = null;
+		for (ByteBuffer buffer : buffers)
+		{
+			freeDirectBuffer(buffer);
+		}
+	}
+
+	/**
+	 * @return true if the memory of this image was released
+	 */
+	public boolean isReleased()
+	{
+		return this.bytes == null;
+	}
+
+	/**
+	 * @return the bit depth of the image, either 8, 16, 24 (int) or 32
+	 */
+	public int getBitDepth()
+	{
+		return bitDepth;
+	}
+
+
+	// ==================================================
+	// Access to voxels
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeX()
+	 */
+	@Override
+	public int getSizeX()
+	{
+		return sizeX;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeY()
+	 */
+	@Override
+	public int getSizeY()
+	{
+		return sizeY;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeZ()
+	 */
+	@Override
+	public int getSizeZ()
+	{
+		return sizeZ;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#get(int, int, int)
+	 */
+	@Override
+	public int get(int x, int y, int z)
+	{
+		return (int) getSliceValue(z, y * sizeX + x);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#set(int, int, int, int)
+	 */
+	@Override
+	public void set(int x, int y, int z, int value)
+	{
+		setSliceValue(z, y * sizeX + x, value);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getValue(int, int, int)
+	 */
+	@Override
+	public double getValue(int x, int y, int z)
+	{
+		return getSliceValue(z, y * sizeX + x);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setValue(int, int, int, double)
+	 */
+	@Override
+	public void setValue(int x, int y, int z, double value)
+	{
+		setSliceValue(z, y * sizeX + x, value);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getValue(int)
+	 */
+	@Override
+	public double getValue(int index)
+	{
+		int sizeXY = sizeX * sizeY;
+		return getSliceValue(index / sizeXY, index % sizeXY);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setValue(int, double)
+	 */
+	@Override
+	public void setValue(int index, double value)
+	{
+		int sizeXY = sizeX * sizeY;
+		setSliceValue(index / sizeXY, index % sizeXY, value);
+	}
+
+	/**
+	 * Returns the value at the given position within a slice.
+	 */
+	private double getSliceValue(int z, int index)
+	{
+		switch (bitDepth)
+		{
+		case 8: return bytes[z].get(index) & 0x00FF;
+		case 16: return shorts[z].get(index) & 0x00FFFF;
+		case 24: return ints[z].get(index);
+		default: return floats[z].get(index);
+		}
+	}
+
+	/**
+	 * Changes the value at the given position within a slice, using the same
+	 * conversion rules as the stack wrappers.
+	 */
+	private void setSliceValue(int z, int index, double value)
+	{
+		switch (bitDepth)
+		{
+		case 8:
+			bytes[z].put(index, (byte) (Math.min(Math.max(value, 0), 255) + .5));
+			break;
+		case 16:
+			shorts[z].put(index, ShortStackWrapper.toShort(value));
+			break;
+		case 24:
+			ints[z].put(index, (int) value);
+			break;
+		default:
+			floats[z].put(index, (float) value);
+		}
+	}
+
+
+	// ==================================================
+	// Access to lines and slices
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineX(int, int, double[])
+	 */
+	@Override
+	public void getLineX(int y, int z, double[] buffer)
+	{
+		for (int x = 0, index = y * sizeX; x < sizeX; x++, index++)
+		{
+			buffer[x] = getSliceValue(z, index);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineX(int, int, double[])
+	 */
+	@Override
+	public void setLineX(int y, int z, double[] buffer)
+	{
+		for (int x = 0, index = y * sizeX; x < sizeX; x++, index++)
+		{
+			setSliceValue(z, index, buffer[x]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineY(int, int, double[])
+	 */
+	@Override
+	public void getLineY(int x, int z, double[] buffer)
+	{
+		for (int y = 0, index = x; y < sizeY; y++, index += sizeX)
+		{
+			buffer[y] = getSliceValue(z, index);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineY(int, int, double[])
+	 */
+	@Override
+	public void setLineY(int x, int z, double[] buffer)
+	{
+		for (int y = 0, index = x; y < sizeY; y++, index += sizeX)
+		{
+			setSliceValue(z, index, buffer[y]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineZ(int, int, double[])
+	 */
+	@Override
+	public void getLineZ(int x, int y, double[] buffer)
+	{
+		int index = y * sizeX + x;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			buffer[z] = getSliceValue(z, index);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineZ(int, int, double[])
+	 */
+	@Override
+	public void setLineZ(int x, int y, double[] buffer)
+	{
+		int index = y * sizeX + x;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			setSliceValue(z, index, buffer[z]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSliceValues(int, double[])
+	 */
+	@Override
+	public void getSliceValues(int z, double[] buffer)
+	{
+		int sizeXY = sizeX * sizeY;
+		for (int i = 0; i < sizeXY; i++)
+		{
+			buffer[i] = getSliceValue(z, i);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setSliceValues(int, double[])
+	 */
+	@Override
+	public void setSliceValues(int z, double[] buffer)
+	{
+		int sizeXY = sizeX * sizeY;
+		for (int i = 0; i < sizeXY; i++)
+		{
+			setSliceValue(z, i, buffer[i]);
+		}
+	}
+}
@@ -53,6 +53,33 @@ public class FloatStackWrapper implements Image3D
 		}
 	}
 	
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeX()
+	 */
+	@Override
+	public int getSizeX()
+	{
+		return sizeX;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeY()
+	 */
+	@Override
+	public int getSizeY()
+	{
+		return sizeY;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeZ()
+	 */
+	@Override
+	public int getSizeZ()
+	{
+		return sizeZ;
+	}
+
 	/* (non-Javadoc)
 	 * @see inra.ijpb.data.image.Image3D#get(int, int, int)
 	 */
@@ -89,4 +116,137 @@ public class FloatStackWrapper implements Image3D
 		slices[z][y * sizeX + x] = (float) value;
 	}
 
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getValue(int)
+	 */
+	@Override
+	public double getValue(int index)
+	{
+		int sizeXY = sizeX * sizeY;
+		return slices[index / sizeXY][index % sizeXY];
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setValue(int, double)
+	 */
+	@Override
+	public void setValue(int index, double value)
+	{
+		int sizeXY = sizeX * sizeY;
+		slices[index / sizeXY][index % sizeXY] = (float) value;
+	}
+
+
+	// ==================================================
+	// Access to lines and slices
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineX(int, int, double[])
+	 */
+	@Override
+	public void getLineX(int y, int z, double[] buffer)
+	{
+		float[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			buffer[x] = slice[offset + x];
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineX(int, int, double[])
+	 */
+	@Override
+	public void setLineX(int y, int z, double[] buffer)
+	{
+		float[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			double value = buffer[x];
+			slice[offset + x] = (float) value;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineY(int, int, double[])
+	 */
+	@Override
+	public void getLineY(int x, int z, double[] buffer)
+	{
+		float[] slice = slices[z];
+		for (int y = 0, offset = x; y < sizeY; y++, offset += sizeX)
+		{
+			buffer[y] = slice[offset];
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineY(int, int, double[])
+	 */
+	@Override
+	public void setLineY(int x, int z, double[] buffer)
+	{
+		float[] slice = slices[z];
+		for (int y = 0, offset = x; y < sizeY; y++, offset += sizeX)
+		{
+			double value = buffer[y];
+			slice[offset] = (float) value;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineZ(int, int, double[])
+	 */
+	@Override
+	public void getLineZ(int x, int y, double[] buffer)
+	{
+		int offset = y * sizeX + x;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			buffer[z] = slices[z][offset];
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineZ(int, int, double[])
+	 */
+	@Override
+	public void setLineZ(int x, int y, double[] buffer)
+	{
+		int offset = y * sizeX + x;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			double value = buffer[z];
+			slices[z][offset] = (float) value;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSliceValues(int, double[])
+	 */
+	@Override
+	public void getSliceValues(int z, double[] buffer)
+	{
+		float[] slice = slices[z];
+		for (int i = 0; i < slice.length; i++)
+		{
+			buffer[i] = slice[i];
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setSliceValues(int, double[])
+	 */
+	@Override
+	public void setSliceValues(int z, double[] buffer)
+	{
+		float[] slice = slices[z];
+		for (int i = 0; i < slice.length; i++)
+		{
+			double value = buffer[i];
+			slice[i] = (float) value;
+		}
+	}
 }
@@ -9,6 +9,13 @@ package inra.ijpb.data.image;
  * bounds. Data can be accessed either as integer or as double. 
  * 
  * <p>
+ * Values can also be accessed by entire lines along each direction, or by
+ * entire slices, using buffers of double. This avoids one method call per
+ * voxel for algorithms that scan the whole image, and makes it possible to
+ * process lines along the z direction using contiguous arrays.
+ * </p>
+ * 
+ * <p>
  * Example of use:
  *<pre>{@code
  *	ImageStack stack = IJ.getImage().getStack();
@@ -21,6 +28,21 @@ package inra.ijpb.data.image;
  */
 public interface Image3D 
 {
+	/**
+	 * @return the size of the image in the x direction
+	 */
+	public int getSizeX();
+
+	/**
+	 * @return the size of the image in the y direction
+	 */
+	public int getSizeY();
+
+	/**
+	 * @return the size of the image in the z direction
+	 */
+	public int getSizeZ();
+
 	/**
 	 * Returns the value at the specified coordinates as an integer.
 	 * 
@@ -76,4 +98,130 @@ public interface Image3D
 	 *            the new value at the specified position
 	 */
 	public void setValue(int x, int y, int z, double value);
+	
+	/**
+	 * Returns the value at the specified linear index as a double. The linear
+	 * index of the voxel (x,y,z) is <code>(z * sizeY + y) * sizeX + x</code>.
+	 * 
+	 * @param index
+	 *            the linear index of the voxel
+	 * @return the value at the specified position
+	 */
+	public double getValue(int index);
+
+	/**
+	 * Changes the value at the specified linear index, using a double to
+	 * specify the new value. The linear index of the voxel (x,y,z) is
+	 * <code>(z * sizeY + y) * sizeX + x</code>.
+	 * 
+	 * @param index
+	 *            the linear index of the voxel
+	 * @param value
+	 *            the new value at the specified position
+	 */
+	public void setValue(int index, double value);
+	
+	
+	// ==================================================
+	// Access to lines and slices
+	
+	/**
+	 * Copies the values of a line along the x direction into a buffer.
+	 * 
+	 * @param y
+	 *            the y-coordinate of the line
+	 * @param z
+	 *            the z-coordinate of the line
+	 * @param buffer
+	 *            the array that will contain the values, with at least sizeX
+	 *            elements
+	 */
+	public void getLineX(int y, int z, double[] buffer);
+
+	/**
+	 * Changes the values of a line along the x direction.
+	 * 
+	 * @param y
+	 *            the y-coordinate of the line
+	 * @param z
+	 *            the z-coordinate of the line
+	 * @param buffer
+	 *            the array containing the new values, with at least sizeX
+	 *            elements
+	 */
+	public void setLineX(int y, int z, double[] buffer);
+
+	/**
+	 * Copies the values of a line along the y direction into a buffer.
+	 * 
+	 * @param x
+	 *            the x-coordinate of the line
+	 * @param z
+	 *            the z-coordinate of the line
+	 * @param buffer
+	 *            the array that will contain the values, with at least sizeY
+	 *            elements
+	 */
+	public void getLineY(int x, int z, double[] buffer);
+
+	/**
+	 * Changes the values of a line along the y direction.
+	 * 
+	 * @param x
+	 *            the x-coordinate of the line
+	 * @param z
+	 *            the z-coordinate of the line
+	 * @param buffer
+	 *            the array containing the new values, with at least sizeY
+	 *            elements
+	 */
+	public void setLineY(int x, int z, double[] buffer);
+
+	/**
+	 * Copies the values of a line along the z direction into a buffer.
+	 * 
+	 * @param x
+	 *            the x-coordinate of the line
+	 * @param y
+	 *            the y-coordinate of the line
+	 * @param buffer
+	 *            the array that will contain the values, with at least sizeZ
+	 *            elements
+	 */
+	public void getLineZ(int x, int y, double[] buffer);
+
+	/**
+	 * Changes the values of a line along the z direction.
+	 * 
+	 * @param x
+	 *            the x-coordinate of the line
+	 * @param y
+	 *            the y-coordinate of the line
+	 * @param buffer
+	 *            the array containing the new values, with at least sizeZ
+	 *            elements
+	 */
+	public void setLineZ(int x, int y, double[] buffer);
+
+	/**
+	 * Copies the values of a slice into a buffer, in row-major order.
+	 * 
+	 * @param z
+	 *            the z-coordinate of the slice (0-indexed)
+	 * @param buffer
+	 *            the array that will contain the values, with at least
+	 *            sizeX*sizeY elements
+	 */
+	public void getSliceValues(int z, double[] buffer);
+
+	/**
+	 * Changes the values of a slice, in row-major order.
+	 * 
+	 * @param z
+	 *            the z-coordinate of the slice (0-indexed)
+	 * @param buffer
+	 *            the array containing the new values, with at least
+	 *            sizeX*sizeY elements
+	 */
+	public void setSliceValues(int z, double[] buffer);
 }
@@ -0,0 +1,52 @@
+/**
+ *
+ */
+package inra.ijpb.data.image;
+
+/**
+ * Creates the 3D images used by algorithms for storing intermediate or final
+ * results. This makes it possible to choose where the images are stored, for
+ * example within the Java heap using {@link Images3D#STACK_FACTORY}, or out
+ * of the heap using {@link DirectImage3D#FACTORY}. Factories are currently
+ * accepted by the imposition of minima in 3D, see
+ * {@link inra.ijpb.morphology.MinimaAndMaxima3D}.
+ *
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	Image3DFactory factory = DirectImage3D.FACTORY;
+ *	Image3D image = factory.create(sizeX, sizeY, sizeZ, 32);
+ *	...
+ *	factory.release(image);
+ *}</pre>
+ *
+ * @author David Legland
+ *
+ */
+public interface Image3DFactory
+{
+	/**
+	 * Creates a new 3D image containing only zeros.
+	 *
+	 * @param sizeX
+	 *            the size of the image in the x direction
+	 * @param sizeY
+	 *            the size of the image in the y direction
+	 * @param sizeZ
+	 *            the size of the image in the z direction
+	 * @param bitDepth
+	 *            the bit depth of the image, either 8, 16 or 32 (float), or
+	 *            24 for int values such as large label images
+	 * @return a new 3D image
+	 */
+	public Image3D create(int sizeX, int sizeY, int sizeZ, int bitDepth);
+
+	/**
+	 * Releases the memory used by an image created by this factory, when the
+	 * image is not used anymore.
+	 *
+	 * @param image
+	 *            an image created by this factory
+	 */
+	public void release(Image3D image);
+}
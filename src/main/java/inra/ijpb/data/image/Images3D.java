@@ -12,6 +12,26 @@ import ij.process.ImageProcessor;
  */
 public class Images3D 
 {
+	/**
+	 * Factory that creates 3D images stored within ImageStack instances, in
+	 * the Java heap.
+	 */
+	public static final Image3DFactory STACK_FACTORY = new Image3DFactory()
+	{
+		public Image3D create(int sizeX, int sizeY, int sizeZ, int bitDepth)
+		{
+			// stacks of int created by ImageJ are not initialized to zero
+			if (bitDepth == 24)
+				return new IntStackWrapper(IntStackWrapper.createStack(sizeX, sizeY, sizeZ));
+			return createWrapper(ImageStack.create(sizeX, sizeY, sizeZ, bitDepth));
+		}
+
+		public void release(Image3D image)
+		{
+			// memory is released by garbage collection
+		}
+	};
+
 	/**
 	 * Private constructor to prevent class instantiation.
 	 */
@@ -21,7 +41,11 @@ public class Images3D
 
 	/**
 	 * Converts the input ImageStack into an instance of Image3D, depending on
-	 * the data type stored in the stack.
+	 * the data type stored in the stack. The int arrays of 24-bit stacks are
+	 * considered as 32-bit integer values, as used for int label images.
+	 * Virtual stacks are accessed through a read-only wrapper that reads
+	 * slices on the calling thread, and that does not need to be closed. Use
+	 * {@link VirtualStackWrapper} directly for reading slices in advance.
 	 * 
 	 * @param stack
 	 *            the input ImageStack to convert
@@ -29,11 +53,17 @@ public class Images3D
 	 *         values in original stack
 	 */
 	public final static Image3D createWrapper(ImageStack stack) {
+		if (stack.isVirtual()) {
+			return new VirtualStackWrapper(stack, 0);
+		}
+		
 		switch(stack.getBitDepth()) {
 		case 8:
 			return new ByteStackWrapper(stack);
 		case 16:
 			return new ShortStackWrapper(stack);
+		case 24:
+			return new IntStackWrapper(stack);
 		case 32:
 			return new FloatStackWrapper(stack);
 		default:
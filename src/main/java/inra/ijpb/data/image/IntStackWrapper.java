@@ -0,0 +1,501 @@
+/**
+ * 
+ */
+package inra.ijpb.data.image;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.io.FileInfo;
+import ij.io.TiffDecoder;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Access the data of a 3D image containing values stored as 32-bit integers,
+ * typically label images with more labels than can be represented exactly
+ * with float values.
+ * 
+ * <p>
+ * The values are stored within the int arrays of a 24-bit ImageStack. The
+ * <code>getVoxel</code> method of ImageStack only returns the lower 24 bits
+ * of each value, so the values should be accessed through this wrapper.
+ * As stacks created by <code>ImageStack.create</code> are filled with opaque
+ * black (a non-zero int value), new label stacks should be created with the
+ * <code>createStack</code> method.
+ * </p>
+ * 
+ * <p>
+ * ImageJ displays such stacks as RGB images, and saves them as RGB files in
+ * which the upper byte of each value is set to 255. Label stacks should be
+ * saved with the <code>saveTiff</code> method, that creates 32-bit integer
+ * TIFF files, and opened with the <code>openTiff</code> method.
+ * </p>
+ * 
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	ImageStack stack = IntStackWrapper.createStack(sizeX, sizeY, sizeZ);
+ *	Image3D labels = new IntStackWrapper(stack);
+ *	labels.set(0, 0, 0, 20000000);
+ *	int label = labels.get(0, 0, 0);
+ *}</pre>
+ * 
+ * @see ByteStackWrapper
+ * @see ShortStackWrapper
+ * @see FloatStackWrapper
+ * 
+ * @author David Legland
+ *
+ */
+public class IntStackWrapper implements Image3D
+{
+	int[][] slices;
+	
+	int sizeX;
+	int sizeY;
+	int sizeZ;
+	
+	public IntStackWrapper(ImageStack stack) 
+	{
+		// Check type
+		if (stack.getBitDepth() != 24) 
+		{
+			throw new IllegalArgumentException("Requires a stack of int arrays");
+		}
+		
+		// store stack size
+		this.sizeX = stack.getWidth();
+		this.sizeY = stack.getHeight();
+		this.sizeZ = stack.getSize();
+
+		// Convert slices type
+		this.slices = new int[sizeZ][];
+		Object[] array = stack.getImageArray();
+		for (int i = 0; i < sizeZ; i++) 
+		{
+			slices[i] = (int[]) array[i];
+		}
+	}
+	
+	/**
+	 * Creates a new stack of int arrays, with all values equal to zero.
+	 * 
+	 * @param sizeX
+	 *            the width of the stack
+	 * @param sizeY
+	 *            the height of the stack
+	 * @param sizeZ
+	 *            the number of slices of the stack
+	 * @return a new 24-bit stack containing only zero values
+	 */
+	public static final ImageStack createStack(int sizeX, int sizeY, int sizeZ)
+	{
+		ImageStack stack = new ImageStack(sizeX, sizeY);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			stack.addSlice(new ColorProcessor(sizeX, sizeY, new int[sizeX * sizeY]));
+		}
+		return stack;
+	}
+	
+	/**
+	 * Saves a stack of int values into an uncompressed TIFF file with 32-bit
+	 * integer samples, such that all the bits of each value are kept. Saving
+	 * the stack with ImageJ would create an RGB file, and set the upper byte
+	 * of each value to 255. The resulting file can be opened by ImageJ as a
+	 * 32-bit image, and read back without loss by the <code>openTiff</code>
+	 * method.
+	 * 
+	 * @param stack
+	 *            a 24-bit stack containing int values
+	 * @param file
+	 *            the file to write
+	 * @throws IOException
+	 *             if the file can not be written, or if the data are larger
+	 *             than 4 GB
+	 */
+	public static final void saveTiff(ImageStack stack, File file)
+			throws IOException
+	{
+		if (stack.getBitDepth() != 24)
+		{
+			throw new IllegalArgumentException("Requires a stack of int arrays");
+		}
+		int sizeX = stack.getWidth();
+		int sizeY = stack.getHeight();
+		int sizeZ = stack.getSize();
+
+		// the file is organized as header, image file directories (IFD),
+		// description, and contiguous slices. Only the first IFD contains
+		// the description.
+		byte[] description = ("ImageJ=" + IJ.getVersion() + "\nimages=" + sizeZ
+				+ "\nslices=" + sizeZ + "\n\0").getBytes("US-ASCII");
+		int firstIfdSize = 2 + 11 * 12 + 4;
+		int ifdSize = 2 + 10 * 12 + 4;
+		long descOffset = 8 + firstIfdSize + (sizeZ - 1L) * ifdSize;
+		long dataOffset = descOffset + description.length;
+		long sliceBytes = (long) sizeX * sizeY * 4;
+		if (dataOffset + sliceBytes * sizeZ > 0xFFFFFFFFL)
+		{
+			throw new IOException("Can not save more than 4 GB within a TIFF file");
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 1 << 16));
+		try
+		{
+			// header with big endian byte order
+			out.writeShort(0x4D4D);
+			out.writeShort(42);
+			out.writeInt(8);
+
+			for (int z = 0; z < sizeZ; z++)
+			{
+				out.writeShort(z == 0 ? 11 : 10);
+				writeEntry(out, 256, 4, 1, sizeX);
+				writeEntry(out, 257, 4, 1, sizeY);
+				writeEntry(out, 258, 3, 1, 32);
+				writeEntry(out, 259, 3, 1, 1);
+				writeEntry(out, 262, 3, 1, 1);
+				if (z == 0)
+					writeEntry(out, 270, 2, description.length, descOffset);
+				writeEntry(out, 273, 4, 1, dataOffset + z * sliceBytes);
+				writeEntry(out, 277, 3, 1, 1);
+				writeEntry(out, 278, 4, 1, sizeY);
+				writeEntry(out, 279, 4, 1, sliceBytes);
+				writeEntry(out, 339, 3, 1, 1);
+				long next = z < sizeZ - 1 ? 8 + firstIfdSize + (long) z * ifdSize : 0;
+				out.writeInt((int) next);
+			}
+			out.write(description);
+
+			ByteBuffer buffer = ByteBuffer.allocate((int) sliceBytes);
+			for (int z = 0; z < sizeZ; z++)
+			{
+				buffer.clear();
+				buffer.asIntBuffer().put((int[]) stack.getPixels(z + 1));
+				out.write(buffer.array());
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes an entry of an image file directory, containing either a single
+	 * value or the offset of the values. Short values are left-justified.
+	 */
+	private static final void writeEntry(DataOutputStream out, int tag,
+			int type, int count, long value) throws IOException
+	{
+		out.writeShort(tag);
+		out.writeShort(type);
+		out.writeInt(count);
+		if (type == 3)
+		{
+			out.writeShort((int) value);
+			out.writeShort(0);
+		}
+		else
+		{
+			out.writeInt((int) value);
+		}
+	}
+
+	/**
+	 * Opens a label image from a TIFF file, and returns a stack of int
+	 * values. Files with 32-bit integer samples, such as the ones created by
+	 * the <code>saveTiff</code> method, are read without loss. Other files are
+	 * opened with ImageJ. For RGB files, the upper (alpha) byte of each value
+	 * is discarded, as ImageJ sets it to 255 when saving int values as RGB.
+	 * For gray level images, the values are converted to int.
+	 * 
+	 * @param file
+	 *            the TIFF file to open
+	 * @return a new 24-bit stack containing the int values
+	 * @throws IOException
+	 *             if the file can not be read
+	 */
+	public static final ImageStack openTiff(File file) throws IOException
+	{
+		TiffDecoder decoder = new TiffDecoder(file.getAbsoluteFile().getParent() + File.separator, file.getName());
+		FileInfo[] infos = decoder.getTiffInfo();
+		if (infos == null || infos.length == 0)
+		{
+			throw new IOException("Could not read TIFF header of file: " + file.getName());
+		}
+
+		FileInfo info = infos[0];
+		boolean intSamples = info.fileType == FileInfo.GRAY32_INT
+				|| info.fileType == FileInfo.GRAY32_UNSIGNED;
+		if (!intSamples || info.compression > FileInfo.COMPRESSION_NONE)
+		{
+			return openWithImageJ(file);
+		}
+
+		int sizeX = info.width;
+		int sizeY = info.height;
+		int sizeZ = infos.length > 1 ? infos.length : info.nImages;
+		long sliceBytes = (long) sizeX * sizeY * 4;
+		ImageStack stack = createStack(sizeX, sizeY, sizeZ);
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			ByteBuffer buffer = ByteBuffer.allocate((int) sliceBytes);
+			buffer.order(info.intelByteOrder ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+			for (int z = 0; z < sizeZ; z++)
+			{
+				long offset = infos.length > 1 ? infos[z].getOffset()
+						: info.getOffset() + z * (sliceBytes + info.gapBetweenImages);
+				raf.seek(offset);
+				raf.readFully(buffer.array());
+				buffer.clear();
+				buffer.asIntBuffer().get((int[]) stack.getPixels(z + 1));
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+		return stack;
+	}
+
+	/**
+	 * Opens an image file with ImageJ, and converts its values to int.
+	 */
+	private static final ImageStack openWithImageJ(File file) throws IOException
+	{
+		ImagePlus imagePlus = IJ.openImage(file.getPath());
+		if (imagePlus == null)
+		{
+			throw new IOException("Could not open file: " + file.getName());
+		}
+
+		ImageStack image = imagePlus.getStack();
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+		int sizeZ = image.getSize();
+		ImageStack stack = createStack(sizeX, sizeY, sizeZ);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor slice = image.getProcessor(z + 1);
+			int[] pixels = (int[]) stack.getPixels(z + 1);
+			boolean rgb = image.getBitDepth() == 24;
+			for (int i = 0; i < pixels.length; i++)
+			{
+				pixels[i] = rgb ? slice.get(i) & 0x00FFFFFF : (int) slice.getf(i);
+			}
+		}
+		return stack;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeX()
+	 */
+	@Override
+	public int getSizeX()
+	{
+		return sizeX;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeY()
+	 */
+	@Override
+	public int getSizeY()
+	{
+		return sizeY;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeZ()
+	 */
+	@Override
+	public int getSizeZ()
+	{
+		return sizeZ;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#get(int, int, int)
+	 */
+	@Override
+	public int get(int x, int y, int z) 
+	{
+		return slices[z][y * sizeX + x];
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#set(int, int, int, int)
+	 */
+	@Override
+	public void set(int x, int y, int z, int value)
+	{
+		slices[z][y * sizeX + x] = value;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getValue(int, int, int)
+	 */
+	@Override
+	public double getValue(int x, int y, int z)
+	{
+		return slices[z][y * sizeX + x];
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setValue(int, int, int, double)
+	 */
+	@Override
+	public void setValue(int x, int y, int z, double value) 
+	{
+		slices[z][y * sizeX + x] = (int) value;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getValue(int)
+	 */
+	@Override
+	public double getValue(int index)
+	{
+		int sizeXY = sizeX * sizeY;
+		return slices[index / sizeXY][index % sizeXY];
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setValue(int, double)
+	 */
+	@Override
+	public void setValue(int index, double value)
+	{
+		int sizeXY = sizeX * sizeY;
+		slices[index / sizeXY][index % sizeXY] = (int) value;
+	}
+
+
+	// ==================================================
+	// Access to lines and slices
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineX(int, int, double[])
+	 */
+	@Override
+	public void getLineX(int y, int z, double[] buffer)
+	{
+		int[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			buffer[x] = slice[offset + x];
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineX(int, int, double[])
+	 */
+	@Override
+	public void setLineX(int y, int z, double[] buffer)
+	{
+		int[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			double value = buffer[x];
+			slice[offset + x] = (int) value;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineY(int, int, double[])
+	 */
+	@Override
+	public void getLineY(int x, int z, double[] buffer)
+	{
+		int[] slice = slices[z];
+		for (int y = 0, offset = x; y < sizeY; y++, offset += sizeX)
+		{
+			buffer[y] = slice[offset];
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineY(int, int, double[])
+	 */
+	@Override
+	public void setLineY(int x, int z, double[] buffer)
+	{
+		int[] slice = slices[z];
+		for (int y = 0, offset = x; y < sizeY; y++, offset += sizeX)
+		{
+			double value = buffer[y];
+			slice[offset] = (int) value;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineZ(int, int, double[])
+	 */
+	@Override
+	public void getLineZ(int x, int y, double[] buffer)
+	{
+		int offset = y * sizeX + x;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			buffer[z] = slices[z][offset];
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineZ(int, int, double[])
+	 */
+	@Override
+	public void setLineZ(int x, int y, double[] buffer)
+	{
+		int offset = y * sizeX + x;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			double value = buffer[z];
+			slices[z][offset] = (int) value;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSliceValues(int, double[])
+	 */
+	@Override
+	public void getSliceValues(int z, double[] buffer)
+	{
+		int[] slice = slices[z];
+		for (int i = 0; i < slice.length; i++)
+		{
+			buffer[i] = slice[i];
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setSliceValues(int, double[])
+	 */
+	@Override
+	public void setSliceValues(int z, double[] buffer)
+	{
+		int[] slice = slices[z];
+		for (int i = 0; i < slice.length; i++)
+		{
+			double value = buffer[i];
+			slice[i] = (int) value;
+		}
+	}
+}
@@ -0,0 +1,566 @@
+/**
+ *
+ */
+package inra.ijpb.data.image;
+
+import ij.io.FileInfo;
+import ij.io.TiffDecoder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ * Access the data of a 3D image stored in a raw file, by mapping the file
+ * into memory. The voxels are read and written directly within the file, so
+ * that images larger than the available memory can be processed. Gray8, gray16
+ * (unsigned) and float data are supported.
+ * </p>
+ *
+ * <p>
+ * As a single mapped buffer can not exceed 2GB, the file is mapped using
+ * several regions. The size of the regions is a multiple of the size of a
+ * voxel, so that a voxel is never split between two regions.
+ * </p>
+ *
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	MappedImage3D image = MappedImage3D.openTiff(new File("volume.tif"), false);
+ *	int val = image.get(0, 0, 0);
+ *	...
+ *	image.close();
+ *}</pre>
+ *
+ * @see ByteStackWrapper
+ * @see ShortStackWrapper
+ * @see FloatStackWrapper
+ *
+ * @author David Legland
+ *
+ */
+public class MappedImage3D implements Image3D, Closeable
+{
+	// ==================================================
+	// Constants
+
+	/**
+	 * The default size of the mapped regions, in bytes.
+	 */
+	public static final long DEFAULT_REGION_SIZE = 1L << 30;
+
+
+	// ==================================================
+	// Static factories
+
+	/**
+	 * Opens an uncompressed TIFF file as a mapped image. The file must have
+	 * been saved with contiguous slices, as done by ImageJ.
+	 *
+	 * @param file
+	 *            the TIFF file to open
+	 * @param writable
+	 *            indicates whether the file can be modified
+	 * @return a new mapped image
+	 * @throws IOException
+	 *             if the file can not be read, or is not a contiguous
+	 *             uncompressed gray8, gray16 or float TIFF file
+	 */
+	public static final MappedImage3D openTiff(File file, boolean writable)
+			throws IOException
+	{
+		TiffDecoder decoder = new TiffDecoder(file.getAbsoluteFile().getParent() + File.separator, file.getName());
+		FileInfo[] infos = decoder.getTiffInfo();
+		if (infos == null || infos.length == 0)
+		{
+			throw new IOException("Could not read TIFF header of file: " + file.getName());
+		}
+
+		FileInfo info = infos[0];
+		if (info.compression > FileInfo.COMPRESSION_NONE)
+		{
+			throw new IOException("Requires an uncompressed TIFF file");
+		}
+
+		int bitDepth;
+		switch (info.fileType)
+		{
+		case FileInfo.GRAY8: bitDepth = 8; break;
+		case FileInfo.GRAY16_UNSIGNED: bitDepth = 16; break;
+		case FileInfo.GRAY32_FLOAT: bitDepth = 32; break;
+		default:
+			throw new IOException("Can not map TIFF files with type " + info.fileType);
+		}
+
+		// compute number of slices, and check they are contiguous
+		long sliceBytes = (long) info.width * info.height * (bitDepth / 8);
+		int sizeZ = info.nImages;
+		if (infos.length > 1)
+		{
+			for (int i = 1; i < infos.length; i++)
+			{
+				if (infos[i].getOffset() != info.getOffset() + i * sliceBytes)
+				{
+					throw new IOException("Requires a TIFF file with contiguous slices");
+				}
+			}
+			sizeZ = infos.length;
+		}
+		else if (sizeZ > 1 && info.gapBetweenImages != 0)
+		{
+			throw new IOException("Requires a TIFF file with contiguous slices");
+		}
+
+		ByteOrder order = info.intelByteOrder ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+		return new MappedImage3D(file, info.getOffset(), info.width,
+				info.height, sizeZ, bitDepth, order, writable);
+	}
+
+	/**
+	 * Creates a new raw file with the given size, and maps it into memory.
+	 * An existing file is overwritten. All the voxels are initialized to 0.
+	 *
+	 * @param file
+	 *            the raw file to create
+	 * @param sizeX
+	 *            the size of the image in the x direction
+	 * @param sizeY
+	 *            the size of the image in the y direction
+	 * @param sizeZ
+	 *            the size of the image in the z direction
+	 * @param bitDepth
+	 *            the bit depth of the image, either 8, 16 or 32
+	 * @param order
+	 *            the byte order used for storing voxel values
+	 * @return a new writable mapped image
+	 * @throws IOException
+	 *             if the file can not be created
+	 */
+	public static final MappedImage3D createRaw(File file, int sizeX,
+			int sizeY, int sizeZ, int bitDepth, ByteOrder order)
+			throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			raf.setLength(0);
+			raf.setLength((long) sizeX * sizeY * sizeZ * (bitDepth / 8));
+		}
+		finally
+		{
+			raf.close();
+		}
+		return new MappedImage3D(file, 0, sizeX, sizeY, sizeZ, bitDepth, order, true);
+	}
+
+
+	// ==================================================
+	// Class variables
+
+	int sizeX;
+	int sizeY;
+	int sizeZ;
+
+	/** The number of bits of each voxel: 8, 16 or 32 */
+	int bitDepth;
+
+	/** The number of bytes of each voxel */
+	int bytesPerVoxel;
+
+	/** Indicates whether the file can be modified */
+	boolean writable;
+
+	/** The file containing the data */
+	RandomAccessFile file;
+
+	/** The mapped regions of the file */
+	MappedByteBuffer[] regions;
+
+	/** The number of bits used for coding the position within a region */
+	int regionShift;
+
+	/** The mask used for computing the position within a region */
+	long regionMask;
+
+
+	// ==================================================
+	// Constructors
+
+	/**
+	 * Maps a raw file into memory.
+	 *
+	 * @param file
+	 *            the raw file containing the data
+	 * @param offset
+	 *            the number of bytes before the first voxel
+	 * @param sizeX
+	 *            the size of the image in the x direction
+	 * @param sizeY
+	 *            the size of the image in the y direction
+	 * @param sizeZ
+	 *            the size of the image in the z direction
+	 * @param bitDepth
+	 *            the bit depth of the image, either 8, 16 or 32
+	 * @param order
+	 *            the byte order used for storing voxel values
+	 * @param writable
+	 *            indicates whether the file can be modified
+	 * @throws IOException
+	 *             if the file can not be mapped, or is too small for the
+	 *             image size
+	 */
+	public MappedImage3D(File file, long offset, int sizeX, int sizeY,
+			int sizeZ, int bitDepth, ByteOrder order, boolean writable)
+			throws IOException
+	{
+		this(file, offset, sizeX, sizeY, sizeZ, bitDepth, order, writable, DEFAULT_REGION_SIZE);
+	}
+
+	/**
+	 * Maps a raw file into memory, using regions with the specified size.
+	 *
+	 * @param regionSize
+	 *            the size of the mapped regions, as a power of two greater
+	 *            than or equal to 4
+	 */
+	MappedImage3D(File file, long offset, int sizeX, int sizeY,
+			int sizeZ, int bitDepth, ByteOrder order, boolean writable,
+			long regionSize) throws IOException
+	{
+		if (bitDepth != 8 && bitDepth != 16 && bitDepth != 32)
+		{
+			throw new IllegalArgumentException("Requires a bit depth equal to 8, 16 or 32");
+		}
+		if (regionSize < 4 || Long.bitCount(regionSize) != 1 || regionSize > DEFAULT_REGION_SIZE)
+		{
+			throw new IllegalArgumentException("Region size must be a power of two between 4 and 2^30");
+		}
+
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+		this.bitDepth = bitDepth;
+		this.bytesPerVoxel = bitDepth / 8;
+		this.writable = writable;
+		this.regionShift = Long.numberOfTrailingZeros(regionSize);
+		this.regionMask = regionSize - 1;
+
+		long dataSize = (long) sizeX * sizeY * sizeZ * bytesPerVoxel;
+		this.file = new RandomAccessFile(file, writable ? "rw" : "r");
+		try
+		{
+			if (this.file.length() < offset + dataSize)
+			{
+				throw new IOException("File " + file.getName() + " is too small for a "
+						+ sizeX + "x" + sizeY + "x" + sizeZ + " image");
+			}
+
+			// map each region of the file
+			FileChannel channel = this.file.getChannel();
+			FileChannel.MapMode mode = writable ? FileChannel.MapMode.READ_WRITE
+					: FileChannel.MapMode.READ_ONLY;
+			int nRegions = (int) ((dataSize + regionSize - 1) / regionSize);
+			this.regions = new MappedByteBuffer[nRegions];
+			for (int i = 0; i < nRegions; i++)
+			{
+				long start = i * regionSize;
+				long size = Math.min(regionSize, dataSize - start);
+				this.regions[i] = channel.map(mode, offset + start, size);
+				this.regions[i].order(order);
+			}
+		}
+		catch (IOException ex)
+		{
+			this.file.close();
+			throw ex;
+		}
+	}
+
+
+	// ==================================================
+	// General methods
+
+	/**
+	 * Writes the modified voxels to the file. Does nothing for read-only
+	 * images.
+	 */
+	public void flush()
+	{
+		if (!writable)
+			return;
+		for (MappedByteBuffer region : this.regions)
+		{
+			region.force();
+		}
+	}
+
+	/**
+	 * Writes the modified voxels, and closes the file. The regions are
+	 * unmapped when the image is garbage collected.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		flush();
+		this.file.close();
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeX()
+	 */
+	@Override
+	public int getSizeX()
+	{
+		return sizeX;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeY()
+	 */
+	@Override
+	public int getSizeY()
+	{
+		return sizeY;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeZ()
+	 */
+	@Override
+	public int getSizeZ()
+	{
+		return sizeZ;
+	}
+
+	/**
+	 * @return the bit depth of the image, either 8, 16 or 32
+	 */
+	public int getBitDepth()
+	{
+		return bitDepth;
+	}
+
+	/**
+	 * @return true if the voxels of the image can be modified
+	 */
+	public boolean isWritable()
+	{
+		return writable;
+	}
+
+
+	// ==================================================
+	// Access to voxels by linear index
+
+	/**
+	 * Returns the value at the specified linear index as a double. Contrary
+	 * to {@link #getValue(int)}, this method can address images with more
+	 * than 2^31 voxels.
+	 *
+	 * @param index
+	 *            the linear index of the voxel
+	 * @return the value at the specified position
+	 */
+	public double getValue(long index)
+	{
+		long pos = index * bytesPerVoxel;
+		MappedByteBuffer region = regions[(int) (pos >>> regionShift)];
+		int p = (int) (pos & regionMask);
+		switch (bitDepth)
+		{
+		case 8: return region.get(p) & 0x00FF;
+		case 16: return region.getShort(p) & 0x00FFFF;
+		default: return region.getFloat(p);
+		}
+	}
+
+	/**
+	 * Changes the value at the specified linear index. Contrary to
+	 * {@link #setValue(int, double)}, this method can address images with
+	 * more than 2^31 voxels.
+	 *
+	 * @param index
+	 *            the linear index of the voxel
+	 * @param value
+	 *            the new value at the specified position
+	 */
+	public void setValue(long index, double value)
+	{
+		long pos = index * bytesPerVoxel;
+		MappedByteBuffer region = regions[(int) (pos >>> regionShift)];
+		int p = (int) (pos & regionMask);
+		switch (bitDepth)
+		{
+		case 8:
+			region.put(p, (byte) (Math.min(Math.max(value, 0), 255) + .5));
+			break;
+		case 16:
+			region.putShort(p, ShortStackWrapper.toShort(value));
+			break;
+		default:
+			region.putFloat(p, (float) value);
+		}
+	}
+
+	private long index(int x, int y, int z)
+	{
+		return ((long) z * sizeY + y) * sizeX + x;
+	}
+
+
+	// ==================================================
+	// Implementation of the Image3D interface
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#get(int, int, int)
+	 */
+	@Override
+	public int get(int x, int y, int z)
+	{
+		return (int) getValue(index(x, y, z));
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#set(int, int, int, int)
+	 */
+	@Override
+	public void set(int x, int y, int z, int value)
+	{
+		setValue(index(x, y, z), (double) value);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getValue(int, int, int)
+	 */
+	@Override
+	public double getValue(int x, int y, int z)
+	{
+		return getValue(index(x, y, z));
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setValue(int, int, int, double)
+	 */
+	@Override
+	public void setValue(int x, int y, int z, double value)
+	{
+		setValue(index(x, y, z), value);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getValue(int)
+	 */
+	@Override
+	public double getValue(int index)
+	{
+		return getValue((long) index);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setValue(int, double)
+	 */
+	@Override
+	public void setValue(int index, double value)
+	{
+		setValue((long) index, value);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineX(int, int, double[])
+	 */
+	@Override
+	public void getLineX(int y, int z, double[] buffer)
+	{
+		getValues(index(0, y, z), 1, sizeX, buffer);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineX(int, int, double[])
+	 */
+	@Override
+	public void setLineX(int y, int z, double[] buffer)
+	{
+		setValues(index(0, y, z), 1, sizeX, buffer);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineY(int, int, double[])
+	 */
+	@Override
+	public void getLineY(int x, int z, double[] buffer)
+	{
+		getValues(index(x, 0, z), sizeX, sizeY, buffer);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineY(int, int, double[])
+	 */
+	@Override
+	public void setLineY(int x, int z, double[] buffer)
+	{
+		setValues(index(x, 0, z), sizeX, sizeY, buffer);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineZ(int, int, double[])
+	 */
+	@Override
+	public void getLineZ(int x, int y, double[] buffer)
+	{
+		getValues(index(x, y, 0), (long) sizeX * sizeY, sizeZ, buffer);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineZ(int, int, double[])
+	 */
+	@Override
+	public void setLineZ(int x, int y, double[] buffer)
+	{
+		setValues(index(x, y, 0), (long) sizeX * sizeY, sizeZ, buffer);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSliceValues(int, double[])
+	 */
+	@Override
+	public void getSliceValues(int z, double[] buffer)
+	{
+		getValues(index(0, 0, z), 1, sizeX * sizeY, buffer);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setSliceValues(int, double[])
+	 */
+	@Override
+	public void setSliceValues(int z, double[] buffer)
+	{
+		setValues(index(0, 0, z), 1, sizeX * sizeY, buffer);
+	}
+
+	/**
+	 * Reads regularly spaced voxels into a buffer.
+	 */
+	private void getValues(long index, long step, int count, double[] buffer)
+	{
+		for (int i = 0; i < count; i++, index += step)
+		{
+			buffer[i] = getValue(index);
+		}
+	}
+
+	/**
+	 * Writes the values of a buffer into regularly spaced voxels.
+	 */
+	private void setValues(long index, long step, int count, double[] buffer)
+	{
+		for (int i = 0; i < count; i++, index += step)
+		{
+			setValue(index, buffer[i]);
+		}
+	}
+}
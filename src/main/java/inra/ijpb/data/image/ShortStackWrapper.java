@@ -55,6 +55,33 @@ public class ShortStackWrapper implements Image3D
 		}
 	}
 	
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeX()
+	 */
+	@Override
+	public int getSizeX()
+	{
+		return sizeX;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeY()
+	 */
+	@Override
+	public int getSizeY()
+	{
+		return sizeY;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeZ()
+	 */
+	@Override
+	public int getSizeZ()
+	{
+		return sizeZ;
+	}
+
 	/* (non-Javadoc)
 	 * @see inra.ijpb.data.image.Image3D#get(int, int, int)
 	 */
@@ -70,7 +97,7 @@ public class ShortStackWrapper implements Image3D
 	@Override
 	public void set(int x, int y, int z, int value)
 	{
-		slices[z][y * sizeX + x] = (short) max(min(value, 65535), 0);
+		slices[z][y * sizeX + x] = toShort(value);
 	}
 
 	/* (non-Javadoc)
@@ -88,7 +115,147 @@ public class ShortStackWrapper implements Image3D
 	@Override
 	public void setValue(int x, int y, int z, double value) 
 	{
-		slices[z][y * sizeX + x] = (short) max(min(value, 65535), 0);
+		slices[z][y * sizeX + x] = toShort(value);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getValue(int)
+	 */
+	@Override
+	public double getValue(int index)
+	{
+		int sizeXY = sizeX * sizeY;
+		return slices[index / sizeXY][index % sizeXY] & 0x00FFFF;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setValue(int, double)
+	 */
+	@Override
+	public void setValue(int index, double value)
+	{
+		int sizeXY = sizeX * sizeY;
+		slices[index / sizeXY][index % sizeXY] = toShort(value);
 	}
 
+
+	// ==================================================
+	// Access to lines and slices
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineX(int, int, double[])
+	 */
+	@Override
+	public void getLineX(int y, int z, double[] buffer)
+	{
+		short[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			buffer[x] = slice[offset + x] & 0x00FFFF;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineX(int, int, double[])
+	 */
+	@Override
+	public void setLineX(int y, int z, double[] buffer)
+	{
+		short[] slice = slices[z];
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			slice[offset + x] = toShort(buffer[x]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineY(int, int, double[])
+	 */
+	@Override
+	public void getLineY(int x, int z, double[] buffer)
+	{
+		short[] slice = slices[z];
+		for (int y = 0, offset = x; y < sizeY; y++, offset += sizeX)
+		{
+			buffer[y] = slice[offset] & 0x00FFFF;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineY(int, int, double[])
+	 */
+	@Override
+	public void setLineY(int x, int z, double[] buffer)
+	{
+		short[] slice = slices[z];
+		for (int y = 0, offset = x; y < sizeY; y++, offset += sizeX)
+		{
+			slice[offset] = toShort(buffer[y]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineZ(int, int, double[])
+	 */
+	@Override
+	public void getLineZ(int x, int y, double[] buffer)
+	{
+		int offset = y * sizeX + x;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			buffer[z] = slices[z][offset] & 0x00FFFF;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineZ(int, int, double[])
+	 */
+	@Override
+	public void setLineZ(int x, int y, double[] buffer)
+	{
+		int offset = y * sizeX + x;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			slices[z][offset] = toShort(buffer[z]);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSliceValues(int, double[])
+	 */
+	@Override
+	public void getSliceValues(int z, double[] buffer)
+	{
+		short[] slice = slices[z];
+		for (int i = 0; i < slice.length; i++)
+		{
+			buffer[i] = slice[i] & 0x00FFFF;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setSliceValues(int, double[])
+	 */
+	@Override
+	public void setSliceValues(int z, double[] buffer)
+	{
+		short[] slice = slices[z];
+		for (int i = 0; i < slice.length; i++)
+		{
+			slice[i] = toShort(buffer[i]);
+		}
+	}
+
+	/**
+	 * Converts a value to the short stored within the slices, by clamping it
+	 * between 0 and 65535 and rounding to the nearest integer. Used by all the
+	 * setters to ensure they store the same short for a given value, and
+	 * shared with the other implementations of 16-bit images.
+	 */
+	static final short toShort(double value)
+	{
+		return (short) (max(min(value, 65535), 0) + .5);
+	}
 }
@@ -0,0 +1,246 @@
+/**
+ *
+ */
+package inra.ijpb.data.image;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Reads the slices of an ImageStack on a background thread, anticipating the
+ * slices that will be requested next. This is mostly useful for virtual
+ * stacks, for which each call to <code>getProcessor</code> reads the slice
+ * from the disk.
+ * </p>
+ *
+ * <p>
+ * When a slice is requested, the reading of the next slices in the
+ * direction of the last requests is scheduled, so that reading from the disk
+ * and processing of slices are performed in parallel. Only the slices close
+ * to the last requested slice are kept in memory.
+ * </p>
+ *
+ * Example of use:
+ * <pre><code>
+ * ImageStack stack = imagePlus.getStack(); // possibly virtual
+ * SlicePrefetcher prefetcher = new SlicePrefetcher(stack, 4);
+ * try
+ * {
+ *     for (int z = 0; z &lt; stack.getSize(); z++)
+ *     {
+ *         ImageProcessor slice = prefetcher.getSlice(z);
+ *         ...
+ *     }
+ * }
+ * finally
+ * {
+ *     prefetcher.close();
+ * }
+ * </code></pre>
+ *
+ * @see VirtualStackWrapper
+ * @see SliceWindowProcessor
+ *
+ * @author David Legland
+ *
+ */
+public class SlicePrefetcher implements Closeable
+{
+	// ==================================================
+	// Constants
+
+	/**
+	 * The default number of slices read in advance.
+	 */
+	public static final int DEFAULT_PREFETCH = 4;
+
+
+	// ==================================================
+	// Class variables
+
+	/** The stack to read slices from */
+	ImageStack stack;
+
+	/** The number of slices in the stack */
+	int sizeZ;
+
+	/** The number of slices read in advance */
+	int prefetch;
+
+	/** The executor used for reading the slices */
+	ExecutorService executor;
+
+	/** The slices that are read or being read, indexed by their 0-based index */
+	Map<Integer, Future<ImageProcessor>> slices = new HashMap<Integer, Future<ImageProcessor>>();
+
+	/** The index of the last requested slice */
+	int lastIndex = -1;
+
+	/** The direction of the requests, either +1 or -1 */
+	int direction = 1;
+
+
+	// ==================================================
+	// Constructors
+
+	/**
+	 * Creates a new prefetcher for the given stack, using the default number
+	 * of prefetched slices.
+	 *
+	 * @param stack
+	 *            the stack to read slices from
+	 */
+	public SlicePrefetcher(ImageStack stack)
+	{
+		this(stack, DEFAULT_PREFETCH);
+	}
+
+	/**
+	 * Creates a new prefetcher for the given stack.
+	 *
+	 * @param stack
+	 *            the stack to read slices from
+	 * @param prefetch
+	 *            the number of slices read in advance
+	 */
+	public SlicePrefetcher(ImageStack stack, int prefetch)
+	{
+		if (prefetch < 0)
+		{
+			throw new IllegalArgumentException("Number of prefetched slices must be positive");
+		}
+		this.stack = stack;
+		this.sizeZ = stack.getSize();
+		this.prefetch = prefetch;
+
+		// use a single daemon thread, that terminates when it is idle, so
+		// that prefetchers that are not closed do not keep threads alive
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory()
+				{
+					public Thread newThread(Runnable r)
+					{
+						Thread thread = new Thread(r, "SlicePrefetcher");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		this.executor = executor;
+	}
+
+
+	// ==================================================
+	// Methods
+
+	/**
+	 * Returns the slice with the given index, waiting for the slice to be
+	 * read if necessary, and schedules the reading of the next slices.
+	 *
+	 * @param z
+	 *            the index of the slice, between 0 and stack.getSize()-1
+	 * @return the processor of the slice
+	 */
+	public synchronized ImageProcessor getSlice(int z)
+	{
+		if (z < 0 || z >= sizeZ)
+		{
+			throw new IllegalArgumentException("Slice index out of bounds: " + z);
+		}
+
+		// update the direction only for slices that were not anticipated, to
+		// allow algorithms to access previous slices
+		if (!slices.containsKey(z) && lastIndex >= 0 && z != lastIndex)
+		{
+			direction = z > lastIndex ? 1 : -1;
+		}
+		lastIndex = z;
+
+		Future<ImageProcessor> future = request(z);
+		for (int i = 1; i <= prefetch; i++)
+		{
+			int z2 = z + i * direction;
+			if (z2 < 0 || z2 >= sizeZ)
+				break;
+			request(z2);
+		}
+
+		// discard slices that are far from the current one
+		Iterator<Map.Entry<Integer, Future<ImageProcessor>>> iter = slices.entrySet().iterator();
+		while (iter.hasNext())
+		{
+			Map.Entry<Integer, Future<ImageProcessor>> entry = iter.next();
+			if (Math.abs(entry.getKey() - z) > prefetch + 1)
+			{
+				entry.getValue().cancel(false);
+				iter.remove();
+			}
+		}
+
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while reading slice " + (z + 1), ex);
+		}
+		catch (ExecutionException ex)
+		{
+			throw new RuntimeException("Could not read slice " + (z + 1), ex.getCause());
+		}
+	}
+
+	/**
+	 * Schedules the reading of a slice if it was not already requested.
+	 */
+	private Future<ImageProcessor> request(final int z)
+	{
+		Future<ImageProcessor> future = slices.get(z);
+		if (future == null)
+		{
+			future = executor.submit(new Callable<ImageProcessor>()
+			{
+				public ImageProcessor call()
+				{
+					return stack.getProcessor(z + 1);
+				}
+			});
+			slices.put(z, future);
+		}
+		return future;
+	}
+
+	/**
+	 * Stops the background thread, and releases the slices kept in memory.
+	 */
+	public synchronized void close()
+	{
+		executor.shutdownNow();
+		slices.clear();
+	}
+
+	/**
+	 * @return the stack slices are read from
+	 */
+	public ImageStack getStack()
+	{
+		return stack;
+	}
+}
@@ -0,0 +1,227 @@
+/**
+ *
+ */
+package inra.ijpb.data.image;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+
+/**
+ * <p>
+ * Processes a 3D image slice by slice, by sliding a window of consecutive
+ * slices along the Z direction. The input slices are read in advance by a
+ * {@link SlicePrefetcher}, and each result slice is written as soon as it is
+ * computed. Only the slices within the window are kept in memory, making it
+ * possible to process virtual stacks, and to write the result within an
+ * image stored on disk such as a {@link MappedImage3D} or a
+ * {@link ChunkedImage3D}.
+ * </p>
+ *
+ * <p>
+ * The processing is defined by an implementation of the {@link Operator}
+ * interface, that specifies the radius of the window, an optional processing
+ * applied once to each slice entering the window (typically in-plane
+ * filtering), and the computation of the result slice from the window.
+ * </p>
+ *
+ * Example of use:
+ * <pre><code>
+ * ImageStack stack = imagePlus.getStack(); // possibly virtual
+ * SliceWindowProcessor.Operator op = CubeStrel.fromRadius(2).dilationOperator();
+ * MappedImage3D result = MappedImage3D.createRaw(file, sizeX, sizeY, sizeZ, 8);
+ * new SliceWindowProcessor(op).process(stack, result);
+ * result.close();
+ * </code></pre>
+ *
+ * @author David Legland
+ *
+ */
+public class SliceWindowProcessor extends AlgoStub
+{
+	// ==================================================
+	// Inner interface
+
+	/**
+	 * The operation applied on each window of slices.
+	 */
+	public interface Operator
+	{
+		/**
+		 * @return the number of slices before and after the current slice
+		 *         that are required to compute the result slice
+		 */
+		public int getRadius();
+
+		/**
+		 * Prepares a slice when it enters the window. This method is called
+		 * only once for each slice, and can be used for computing in-plane
+		 * operations. The input slice must not be modified.
+		 *
+		 * @param slice
+		 *            the input slice
+		 * @return the slice to store within the window (can be the input
+		 *         slice)
+		 */
+		public ImageProcessor prepare(ImageProcessor slice);
+
+		/**
+		 * Computes a result slice from the window of prepared slices. The
+		 * window contains 2 * radius + 1 slices, the current slice being
+		 * located at index radius. Slices located outside of the image are
+		 * null.
+		 *
+		 * @param window
+		 *            the window of prepared slices around the current slice
+		 * @return the result slice
+		 */
+		public ImageProcessor process(ImageProcessor[] window);
+	}
+
+
+	// ==================================================
+	// Class variables
+
+	/** The operation to apply */
+	Operator operator;
+
+	/** The number of slices read in advance */
+	int prefetch;
+
+
+	// ==================================================
+	// Constructors
+
+	/**
+	 * Creates a new processor using the default number of prefetched slices.
+	 *
+	 * @param operator
+	 *            the operation to apply on each window of slices
+	 */
+	public SliceWindowProcessor(Operator operator)
+	{
+		this(operator, SlicePrefetcher.DEFAULT_PREFETCH);
+	}
+
+	/**
+	 * Creates a new processor.
+	 *
+	 * @param operator
+	 *            the operation to apply on each window of slices
+	 * @param prefetch
+	 *            the number of slices read in advance, in addition to the
+	 *            slices of the window
+	 */
+	public SliceWindowProcessor(Operator operator, int prefetch)
+	{
+		this.operator = operator;
+		this.prefetch = prefetch;
+	}
+
+
+	// ==================================================
+	// Processing methods
+
+	/**
+	 * Processes the input stack, and returns the result in a new stack.
+	 *
+	 * @param image
+	 *            the input stack, possibly virtual
+	 * @return a new stack containing the result slices, or null if the
+	 *         processing was interrupted
+	 */
+	public ImageStack process(ImageStack image)
+	{
+		ImageStack result = new ImageStack(image.getWidth(), image.getHeight());
+		if (!process(image, result, null))
+			return null;
+		return result;
+	}
+
+	/**
+	 * Processes the input stack, and writes the result slices within the
+	 * given 3D image, as soon as they are computed.
+	 *
+	 * @param image
+	 *            the input stack, possibly virtual
+	 * @param result
+	 *            the 3D image that will contain the result, with the same size
+	 *            as input image
+	 * @return the result image, or null if the processing was interrupted. In
+	 *         the latter case, the result image is only partially written.
+	 */
+	public Image3D process(ImageStack image, Image3D result)
+	{
+		if (!process(image, null, result))
+			return null;
+		return result;
+	}
+
+	/**
+	 * Processes the input stack, and writes the result either in the result
+	 * stack or in the result image. Returns false if the processing was
+	 * interrupted.
+	 */
+	private boolean process(ImageStack image, ImageStack resultStack, Image3D result)
+	{
+		int sizeZ = image.getSize();
+		int radius = operator.getRadius();
+		int windowSize = 2 * radius + 1;
+		double[] buffer = result != null ? new double[image.getWidth() * image.getHeight()] : null;
+
+		SlicePrefetcher prefetcher = new SlicePrefetcher(image, radius + prefetch);
+		try
+		{
+			// initialize the window with the first slices, the current slice
+			// being at index radius
+			ImageProcessor[] window = new ImageProcessor[windowSize];
+			for (int i = 0; i <= radius && i < sizeZ; i++)
+			{
+				window[radius + i] = operator.prepare(prefetcher.getSlice(i));
+			}
+
+			for (int z = 0; z < sizeZ; z++)
+			{
+				if (Thread.currentThread().isInterrupted())
+					return false;
+				fireProgressChanged(this, z, sizeZ);
+
+				// shift the window by one slice
+				if (z > 0)
+				{
+					System.arraycopy(window, 1, window, 0, windowSize - 1);
+					int z2 = z + radius;
+					window[windowSize - 1] = z2 < sizeZ ? operator.prepare(prefetcher.getSlice(z2)) : null;
+				}
+
+				// compute and store the result slice
+				ImageProcessor slice = operator.process(window);
+				if (resultStack != null)
+				{
+					resultStack.addSlice(image.getSliceLabel(z + 1), slice);
+				}
+				else
+				{
+					for (int i = 0; i < buffer.length; i++)
+					{
+						buffer[i] = slice.getf(i);
+					}
+					result.setSliceValues(z, buffer);
+				}
+			}
+			fireProgressChanged(this, 1, 1);
+			return true;
+		}
+		catch (RuntimeException ex)
+		{
+			// the prefetcher fails when interrupted while waiting for a slice
+			if (Thread.currentThread().isInterrupted())
+				return false;
+			throw ex;
+		}
+		finally
+		{
+			prefetcher.close();
+		}
+	}
+}
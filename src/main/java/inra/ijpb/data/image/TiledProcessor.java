@@ -0,0 +1,719 @@
+/**
+ *
+ */
+package inra.ijpb.data.image;
+
+import ij.Prefs;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import ij.util.ThreadUtil;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.data.border.BorderPadding;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Processes a planar image by splitting it into square tiles, that are
+ * processed in parallel. Each tile is extended by a halo containing the
+ * neighbor pixels required to compute the result within the tile. Only the
+ * result within the tile (without the halo) is kept, such that the result of
+ * local operators is the same as when processing the whole image, as long as
+ * the halo is at least as large as the radius of the operator.
+ * </p>
+ *
+ * <p>
+ * The halo is clipped at image boundaries, so that the operator sees the
+ * actual image border when a tile touches it, and handles it as it would for
+ * the whole image.
+ * </p>
+ *
+ * <p>
+ * Global operators, such as geodesic reconstruction, are processed by the
+ * {@link #iterate(ImageProcessor, Operator)} method, that repeatedly processes
+ * the tiles within the image, exchanging the values of the halos between
+ * neighbor tiles, until no tile is modified anymore.
+ * </p>
+ *
+ * <p>
+ * Images larger than the Java array size can be processed by storing them as
+ * 3D images with a single slice, for example using {@link MappedImage3D} or
+ * {@link ChunkedImage3D}. Tiles are then read from and written to the 3D
+ * images, such that only the tiles being processed are kept in memory.
+ * </p>
+ *
+ * Example of use:
+ * <pre><code>
+ * ImageProcessor image = IJ.getImage().getProcessor();
+ * final Strel strel = SquareStrel.fromRadius(5);
+ * TiledProcessor.Operator op = new TiledProcessor.Operator()
+ * {
+ *     public ImageProcessor process(ImageProcessor tile, int x0, int y0)
+ *     {
+ *         return strel.dilation(tile);
+ *     }
+ * };
+ * ImageProcessor result = new TiledProcessor(1024, 5).process(image, op);
+ * </code></pre>
+ *
+ * @see inra.ijpb.morphology.Morphology.Operation#applyTiled(ImageProcessor,
+ *      inra.ijpb.morphology.Strel, int)
+ * @see SliceWindowProcessor
+ *
+ * @author David Legland
+ *
+ */
+public class TiledProcessor extends AlgoStub
+{
+	// ==================================================
+	// Constants
+
+	/**
+	 * The default size of tiles, in pixels.
+	 */
+	public static final int DEFAULT_TILE_SIZE = 1024;
+
+
+	// ==================================================
+	// Inner interface
+
+	/**
+	 * The operation applied on each tile.
+	 */
+	public interface Operator
+	{
+		/**
+		 * Computes the result of the operation on a tile. The input tile
+		 * contains the pixels of the tile and of its halo, and must not be
+		 * modified.
+		 *
+		 * @param tile
+		 *            the pixels of the tile and its halo
+		 * @param x0
+		 *            the x-coordinate of the upper-left corner of the tile
+		 *            (including halo) within the image
+		 * @param y0
+		 *            the y-coordinate of the upper-left corner of the tile
+		 *            (including halo) within the image
+		 * @return the result of the operation, with the same size as the tile
+		 */
+		public ImageProcessor process(ImageProcessor tile, int x0, int y0);
+	}
+
+
+	// ==================================================
+	// Class variables
+
+	/** The size of the tiles, without the halo */
+	int tileSize;
+
+	/** The number of pixels added on each side of the tiles */
+	int halo;
+
+	/** The number of threads used for processing the tiles */
+	int nThreads = Math.max(Prefs.getThreads(), 1);
+
+
+	// ==================================================
+	// Constructors
+
+	/**
+	 * Creates a new processor using the default tile size.
+	 *
+	 * @param halo
+	 *            the number of pixels added on each side of the tiles
+	 */
+	public TiledProcessor(int halo)
+	{
+		this(DEFAULT_TILE_SIZE, halo);
+	}
+
+	/**
+	 * Creates a new processor.
+	 *
+	 * @param tileSize
+	 *            the size of the tiles, without the halo
+	 * @param halo
+	 *            the number of pixels added on each side of the tiles
+	 */
+	public TiledProcessor(int tileSize, int halo)
+	{
+		if (tileSize < 1)
+		{
+			throw new IllegalArgumentException("Tile size must be at least 1");
+		}
+		if (halo < 0)
+		{
+			throw new IllegalArgumentException("Halo width must be positive");
+		}
+		this.tileSize = tileSize;
+		this.halo = halo;
+	}
+
+
+	// ==================================================
+	// Setters
+
+	/**
+	 * Changes the number of threads used for processing the tiles. Default
+	 * value is given by ImageJ preferences.
+	 *
+	 * @param nThreads
+	 *            the number of threads
+	 */
+	public void setThreadNumber(int nThreads)
+	{
+		this.nThreads = Math.max(nThreads, 1);
+	}
+
+
+	// ==================================================
+	// Processing methods
+
+	/**
+	 * Processes each tile of the input image, and returns the result in a
+	 * new image. The type of the result image is the type of the images
+	 * returned by the operator.
+	 *
+	 * @param image
+	 *            the image to process
+	 * @param operator
+	 *            the operation to apply on each tile
+	 * @return a new image containing the result of the operation, or null if
+	 *         the processing was interrupted
+	 */
+	public ImageProcessor process(final ImageProcessor image, final Operator operator)
+	{
+		final int sizeX = image.getWidth();
+		final int sizeY = image.getHeight();
+
+		// the result is created from the first computed tile
+		final ImageProcessor[] result = new ImageProcessor[1];
+		TileStorage target = new TileStorage()
+		{
+			public ImageProcessor read(int x0, int y0, int width, int height)
+			{
+				throw new UnsupportedOperationException();
+			}
+
+			public void write(ImageProcessor tile, int[] box)
+			{
+				ImageProcessor resultImage;
+				synchronized (result)
+				{
+					if (result[0] == null)
+						result[0] = tile.createProcessor(sizeX, sizeY);
+					resultImage = result[0];
+				}
+				copyTile(tile, resultImage, box);
+			}
+		};
+
+		if (!processTiles(new ProcessorStorage(image), operator, target, sizeX, sizeY))
+			return null;
+		return result[0];
+	}
+
+	/**
+	 * <p>
+	 * Processes each tile of a planar image stored as a 3D image with a
+	 * single slice, and writes the result within another 3D image. The tiles
+	 * are read and written through the Image3D interface, making it possible
+	 * to process images larger than the Java array size when they are stored
+	 * out of the heap, for example using {@link MappedImage3D} or
+	 * {@link ChunkedImage3D}.
+	 * </p>
+	 *
+	 * <p>
+	 * The type of the tiles given to the operator depends on the type of the
+	 * image: 8-bit, 16-bit or int values for the {@link ByteStackWrapper},
+	 * {@link ShortStackWrapper} and {@link IntStackWrapper} classes, and for
+	 * the 3D images with the corresponding bit depth, and float values
+	 * otherwise.
+	 * </p>
+	 *
+	 * @param image
+	 *            the image to process, with a single slice
+	 * @param operator
+	 *            the operation to apply on each tile
+	 * @param target
+	 *            the image that will contain the result, with the same size as
+	 *            the input image
+	 * @return the target image, or null if the processing was interrupted
+	 */
+	public Image3D process(Image3D image, Operator operator, Image3D target)
+	{
+		checkPlanar(image);
+		checkPlanar(target);
+		if (!processTiles(new Image3DStorage(image), operator,
+				new Image3DStorage(target), image.getSizeX(), image.getSizeY()))
+			return null;
+		return target;
+	}
+
+	/**
+	 * Processes each tile of the source, and writes the result within the
+	 * target.
+	 *
+	 * @return false if the processing was interrupted
+	 */
+	private boolean processTiles(final TileStorage source, final Operator operator,
+			final TileStorage target, final int sizeX, final int sizeY)
+	{
+		final int nTilesX = (sizeX + tileSize - 1) / tileSize;
+		final int nTiles = nTilesX * ((sizeY + tileSize - 1) / tileSize);
+
+		// the worker threads stop when the calling thread is interrupted
+		final AtomicBoolean stopped = new AtomicBoolean(Thread.currentThread().isInterrupted());
+		final AtomicInteger ai = new AtomicInteger(0);
+		final AtomicInteger done = new AtomicInteger(0);
+
+		Thread[] threads = ThreadUtil.createThreadArray(Math.min(nThreads, nTiles));
+		for (int ithread = 0; ithread < threads.length; ithread++)
+		{
+			threads[ithread] = new Thread()
+			{
+				public void run()
+				{
+					for (int k = ai.getAndIncrement(); k < nTiles; k = ai.getAndIncrement())
+					{
+						if (stopped.get())
+							return;
+						int[] box = tileBox(k, nTilesX, sizeX, sizeY);
+						ImageProcessor tile = source.read(box[4], box[5],
+								box[6] - box[4], box[7] - box[5]);
+						ImageProcessor res = operator.process(tile, box[4], box[5]);
+						target.write(res, box);
+						fireProgressChanged(TiledProcessor.this, done.incrementAndGet(), nTiles);
+					}
+				}
+			};
+		}
+		startAndJoin(threads, stopped);
+
+		return !stopped.get();
+	}
+
+	/**
+	 * <p>
+	 * Repeatedly processes the tiles of the input image, until the image
+	 * does not change anymore. The result of each tile is written within the
+	 * image, such that the next tiles use the updated values within their
+	 * halo. After the first pass, only the tiles whose neighborhood was
+	 * modified during the previous pass are processed again.
+	 * </p>
+	 *
+	 * <p>
+	 * The operator must be monotonic, i.e. it must either only increase or
+	 * only decrease the values of the pixels, and must return the same type
+	 * of image as the input tile. This is the case of geodesic
+	 * reconstructions. Tiles may be processed while neighbor tiles are
+	 * modified, resulting in some tiles reading older values within their
+	 * halo; such tiles are processed again during the next pass.
+	 * </p>
+	 *
+	 * @param image
+	 *            the image to process, that will be modified
+	 * @param operator
+	 *            the operation to apply on each tile
+	 * @return the number of passes over the tiles, or -1 if the processing
+	 *         was interrupted
+	 */
+	public int iterate(ImageProcessor image, Operator operator)
+	{
+		return iterateTiles(new ProcessorStorage(image), operator,
+				image.getWidth(), image.getHeight());
+	}
+
+	/**
+	 * Repeatedly processes the tiles of a planar image stored as a 3D image
+	 * with a single slice, until the image does not change anymore. The
+	 * tiles are read and written through the Image3D interface, making it
+	 * possible to process images stored out of the heap.
+	 *
+	 * @see #iterate(ImageProcessor, Operator)
+	 * @see #process(Image3D, Operator, Image3D)
+	 *
+	 * @param image
+	 *            the image to process, with a single slice, that will be
+	 *            modified
+	 * @param operator
+	 *            the operation to apply on each tile
+	 * @return the number of passes over the tiles, or -1 if the processing
+	 *         was interrupted
+	 */
+	public int iterate(Image3D image, Operator operator)
+	{
+		checkPlanar(image);
+		return iterateTiles(new Image3DStorage(image), operator,
+				image.getSizeX(), image.getSizeY());
+	}
+
+	private int iterateTiles(final TileStorage image, final Operator operator,
+			final int sizeX, final int sizeY)
+	{
+		final int nTilesX = (sizeX + tileSize - 1) / tileSize;
+		final int nTilesY = (sizeY + tileSize - 1) / tileSize;
+		final int nTiles = nTilesX * nTilesY;
+
+		// the tiles modified during the previous and the current passes
+		boolean[] modified = new boolean[nTiles];
+		final boolean[] modified2 = new boolean[nTiles];
+
+		// the worker threads stop when the calling thread is interrupted
+		final AtomicBoolean stopped = new AtomicBoolean(false);
+
+		int nPasses = 0;
+		boolean changed = true;
+		while (changed)
+		{
+			if (stopped.get() || Thread.currentThread().isInterrupted())
+			{
+				stopped.set(true);
+				break;
+			}
+			nPasses++;
+			fireStatusChanged(this, "Tiled processing, pass " + nPasses);
+
+			// select the tiles to process during this pass
+			final int[] tiles = selectTiles(modified, nPasses == 1, nTilesX, nTilesY);
+			final AtomicInteger ai = new AtomicInteger(0);
+			final AtomicBoolean passChanged = new AtomicBoolean(false);
+
+			Thread[] threads = ThreadUtil.createThreadArray(Math.min(nThreads, tiles.length));
+			for (int ithread = 0; ithread < threads.length; ithread++)
+			{
+				threads[ithread] = new Thread()
+				{
+					public void run()
+					{
+						for (int i = ai.getAndIncrement(); i < tiles.length; i = ai.getAndIncrement())
+						{
+							if (stopped.get())
+								return;
+							int k = tiles[i];
+							int[] box = tileBox(k, nTilesX, sizeX, sizeY);
+							ImageProcessor tile = image.read(box[4], box[5],
+									box[6] - box[4], box[7] - box[5]);
+							ImageProcessor res = operator.process(tile, box[4], box[5]);
+
+							if (!equalTile(res, tile, box))
+							{
+								image.write(res, box);
+								modified2[k] = true;
+								passChanged.set(true);
+							}
+						}
+					}
+				};
+			}
+			startAndJoin(threads, stopped);
+
+			changed = passChanged.get();
+			System.arraycopy(modified2, 0, modified, 0, nTiles);
+			Arrays.fill(modified2, false);
+		}
+
+		fireStatusChanged(this, "");
+		return stopped.get() ? -1 : nPasses;
+	}
+
+	/**
+	 * Starts the threads and waits for them to finish. If the calling thread
+	 * is interrupted, the threads are asked to stop, and the interrupted
+	 * status of the calling thread is restored once they have finished.
+	 */
+	private static final void startAndJoin(Thread[] threads, AtomicBoolean stopped)
+	{
+		for (Thread thread : threads)
+		{
+			thread.start();
+		}
+
+		boolean interrupted = false;
+		for (Thread thread : threads)
+		{
+			while (thread.isAlive())
+			{
+				try
+				{
+					thread.join();
+				}
+				catch (InterruptedException ex)
+				{
+					interrupted = true;
+					stopped.set(true);
+				}
+			}
+		}
+
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Checks that a 3D image contains a single slice.
+	 */
+	private static final void checkPlanar(Image3D image)
+	{
+		if (image.getSizeZ() != 1)
+		{
+			throw new IllegalArgumentException("Requires a 3D image with a single slice");
+		}
+	}
+
+	/**
+	 * Returns the indices of the tiles to process during a pass, i.e. the
+	 * tiles whose halo intersects a tile modified during previous pass.
+	 */
+	private int[] selectTiles(boolean[] modified, boolean all,
+			int nTilesX, int nTilesY)
+	{
+		// the number of neighbor tiles covered by the halo, in each direction
+		int range = (halo + tileSize - 1) / tileSize;
+
+		int[] tiles = new int[modified.length];
+		int count = 0;
+		for (int ty = 0; ty < nTilesY; ty++)
+		{
+			for (int tx = 0; tx < nTilesX; tx++)
+			{
+				boolean process = all;
+				for (int dy = -range; dy <= range && !process; dy++)
+				{
+					int ty2 = ty + dy;
+					if (ty2 < 0 || ty2 >= nTilesY)
+						continue;
+					for (int dx = -range; dx <= range && !process; dx++)
+					{
+						int tx2 = tx + dx;
+						if (tx2 >= 0 && tx2 < nTilesX && modified[ty2 * nTilesX + tx2])
+							process = true;
+					}
+				}
+				if (process)
+					tiles[count++] = ty * nTilesX + tx;
+			}
+		}
+		return Arrays.copyOf(tiles, count);
+	}
+
+	/**
+	 * Computes the bounds of a tile, as an array containing the bounds of the
+	 * tile (xmin, ymin, xmax, ymax), followed by the bounds of the tile with
+	 * its halo clipped to image bounds. Upper bounds are exclusive.
+	 */
+	private int[] tileBox(int k, int nTilesX, int sizeX, int sizeY)
+	{
+		int x0 = (k % nTilesX) * tileSize;
+		int y0 = (k / nTilesX) * tileSize;
+		int x1 = Math.min(x0 + tileSize, sizeX);
+		int y1 = Math.min(y0 + tileSize, sizeY);
+		return new int[] { x0, y0, x1, y1,
+				Math.max(x0 - halo, 0), Math.max(y0 - halo, 0),
+				Math.min(x1 + halo, sizeX), Math.min(y1 + halo, sizeY) };
+	}
+
+	/**
+	 * Copies the pixels of the tile, without the halo, within the target
+	 * image.
+	 */
+	private static final void copyTile(ImageProcessor tile, ImageProcessor target, int[] box)
+	{
+		int width = box[2] - box[0];
+		int tileSizeX = tile.getWidth();
+		int sizeX = target.getWidth();
+		Object pixels = tile.getPixels();
+		Object pixels2 = target.getPixels();
+		for (int y = box[1]; y < box[3]; y++)
+		{
+			int offset = (y - box[5]) * tileSizeX + box[0] - box[4];
+			System.arraycopy(pixels, offset, pixels2, y * sizeX + box[0], width);
+		}
+	}
+
+	/**
+	 * Checks if the pixels of the two tiles are equal, without considering
+	 * the halo.
+	 */
+	private static final boolean equalTile(ImageProcessor tile1, ImageProcessor tile2, int[] box)
+	{
+		// compare integer values to keep all bits of int pixels
+		boolean isFloat = tile1 instanceof FloatProcessor;
+		int tileSizeX = tile1.getWidth();
+		for (int y = box[1]; y < box[3]; y++)
+		{
+			int offset = (y - box[5]) * tileSizeX - box[4];
+			for (int x = box[0]; x < box[2]; x++)
+			{
+				if (isFloat ? tile1.getf(offset + x) != tile2.getf(offset + x)
+						: tile1.get(offset + x) != tile2.get(offset + x))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a rectangular region of a planar image stored as a 3D image with
+	 * a single slice. This can be used by operators that need the tiles of
+	 * other images, such as the mask of a geodesic reconstruction.
+	 *
+	 * @see #process(Image3D, Operator, Image3D)
+	 *
+	 * @param image
+	 *            the image to read, with a single slice
+	 * @param x0
+	 *            the x-coordinate of the upper-left corner of the region
+	 * @param y0
+	 *            the y-coordinate of the upper-left corner of the region
+	 * @param width
+	 *            the width of the region
+	 * @param height
+	 *            the height of the region
+	 * @return a new ImageProcessor containing the values of the region
+	 */
+	public static final ImageProcessor readTile(Image3D image, int x0, int y0,
+			int width, int height)
+	{
+		return new Image3DStorage(image).read(x0, y0, width, height);
+	}
+
+
+	// ==================================================
+	// Storage of tiles
+
+	/**
+	 * Reads and writes the tiles of an image.
+	 */
+	private interface TileStorage
+	{
+		/**
+		 * Reads the pixels of a rectangular region into a new image.
+		 */
+		public ImageProcessor read(int x0, int y0, int width, int height);
+
+		/**
+		 * Writes the pixels of a tile, without the halo.
+		 */
+		public void write(ImageProcessor tile, int[] box);
+	}
+
+	/**
+	 * Reads and writes tiles within an ImageProcessor.
+	 */
+	private static class ProcessorStorage implements TileStorage
+	{
+		ImageProcessor image;
+
+		ProcessorStorage(ImageProcessor image)
+		{
+			this.image = image;
+		}
+
+		public ImageProcessor read(int x0, int y0, int width, int height)
+		{
+			return BorderPadding.crop(image, x0, y0, width, height);
+		}
+
+		public void write(ImageProcessor tile, int[] box)
+		{
+			copyTile(tile, image, box);
+		}
+	}
+
+	/**
+	 * Reads and writes tiles within the first slice of a 3D image. Accesses
+	 * to the image are synchronized, as 3D images stored out of the heap are
+	 * not necessarily thread-safe.
+	 */
+	private static class Image3DStorage implements TileStorage
+	{
+		Image3D image;
+
+		/** The bit depth of the tiles: 8, 16, 24 (int) or 32 */
+		int bitDepth;
+
+		Image3DStorage(Image3D image)
+		{
+			this.image = image;
+			this.bitDepth = bitDepth(image);
+		}
+
+		public ImageProcessor read(int x0, int y0, int width, int height)
+		{
+			ImageProcessor tile;
+			switch (bitDepth)
+			{
+			case 8: tile = new ByteProcessor(width, height); break;
+			case 16: tile = new ShortProcessor(width, height); break;
+			case 24: tile = new ColorProcessor(width, height); break;
+			default: tile = new FloatProcessor(width, height);
+			}
+
+			synchronized (image)
+			{
+				for (int y = 0, i = 0; y < height; y++)
+				{
+					for (int x = 0; x < width; x++, i++)
+					{
+						if (bitDepth == 24)
+							tile.set(i, image.get(x0 + x, y0 + y, 0));
+						else
+							tile.setf(i, (float) image.getValue(x0 + x, y0 + y, 0));
+					}
+				}
+			}
+			return tile;
+		}
+
+		public void write(ImageProcessor tile, int[] box)
+		{
+			// int values are copied as is, to keep all bits of labels
+			boolean isInt = tile instanceof ColorProcessor;
+			int tileSizeX = tile.getWidth();
+			synchronized (image)
+			{
+				for (int y = box[1]; y < box[3]; y++)
+				{
+					int offset = (y - box[5]) * tileSizeX - box[4];
+					for (int x = box[0]; x < box[2]; x++)
+					{
+						if (isInt)
+							image.set(x, y, 0, tile.get(offset + x));
+						else
+							image.setValue(x, y, 0, tile.getf(offset + x));
+					}
+				}
+			}
+		}
+
+		/**
+		 * Returns the bit depth of the values stored within a 3D image, or 32
+		 * if it can not be determined.
+		 */
+		private static final int bitDepth(Image3D image)
+		{
+			if (image instanceof ByteStackWrapper)
+				return 8;
+			if (image instanceof ShortStackWrapper)
+				return 16;
+			if (image instanceof IntStackWrapper)
+				return 24;
+			if (image instanceof MappedImage3D)
+				return ((MappedImage3D) image).getBitDepth();
+			if (image instanceof ChunkedImage3D)
+				return ((ChunkedImage3D) image).getBitDepth();
+			if (image instanceof DirectImage3D)
+				return ((DirectImage3D) image).getBitDepth();
+			return 32;
+		}
+	}
+}
@@ -0,0 +1,344 @@
+/**
+ *
+ */
+package inra.ijpb.data.image;
+
+import ij.ImageStack;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+
+import java.io.Closeable;
+
+/**
+ * <p>
+ * Read-only access to the data of a virtual stack, whose slices are read
+ * from the disk when they are accessed. The slices can be read by a
+ * {@link SlicePrefetcher}, that anticipates the slices that will be accessed
+ * next. Only a few slices are kept in memory, making it possible to process
+ * images larger than the available memory.
+ * </p>
+ *
+ * <p>
+ * When slices are read in advance, a background thread is used, and the
+ * wrapper must be closed after use to stop it. Wrappers created with a
+ * number of prefetched slices equal to zero, such as the ones returned by
+ * {@link Images3D#createWrapper(ImageStack)}, read the slices on the calling
+ * thread and do not need to be closed.
+ * </p>
+ *
+ * <p>
+ * Algorithms that scan the image slice by slice, in forward or backward
+ * order, benefit most from this representation. Trying to modify the values
+ * throws an UnsupportedOperationException. This class is not thread-safe.
+ * </p>
+ *
+ * <p>
+ * Example of use:
+ *<pre>{@code
+ *	ImageStack stack = imagePlus.getStack(); // a virtual stack
+ *	VirtualStackWrapper image = new VirtualStackWrapper(stack);
+ *	double value = image.getValue(10, 20, 30);
+ *	...
+ *	image.close();
+ *}</pre>
+ *
+ * @see SlicePrefetcher
+ * @see Images3D#createWrapper(ImageStack)
+ *
+ * @author David Legland
+ *
+ */
+public class VirtualStackWrapper implements Image3D, Closeable
+{
+	// ==================================================
+	// Class variables
+
+	/** The stack to read slices from */
+	ImageStack stack;
+
+	/** The object used to read the slices in advance, or null */
+	SlicePrefetcher prefetcher;
+
+	int sizeX;
+	int sizeY;
+	int sizeZ;
+
+	/** The index of the last accessed slice, or -1 */
+	int currentZ = -1;
+	/** The last accessed slice */
+	ImageProcessor currentSlice;
+
+	/** The index of the slice accessed before the current one, or -1 */
+	int previousZ = -1;
+	/** The slice accessed before the current one */
+	ImageProcessor previousSlice;
+
+
+	// ==================================================
+	// Constructors
+
+	/**
+	 * Creates a new wrapper using the default number of prefetched slices.
+	 *
+	 * @param stack
+	 *            the (virtual) stack to read
+	 */
+	public VirtualStackWrapper(ImageStack stack)
+	{
+		this(stack, SlicePrefetcher.DEFAULT_PREFETCH);
+	}
+
+	/**
+	 * Creates a new wrapper.
+	 *
+	 * @param stack
+	 *            the (virtual) stack to read
+	 * @param prefetch
+	 *            the number of slices read in advance, or 0 to read the
+	 *            slices on the calling thread
+	 */
+	public VirtualStackWrapper(ImageStack stack, int prefetch)
+	{
+		if (prefetch < 0)
+		{
+			throw new IllegalArgumentException("Number of prefetched slices must be positive");
+		}
+		this.stack = stack;
+		this.sizeX = stack.getWidth();
+		this.sizeY = stack.getHeight();
+		this.sizeZ = stack.getSize();
+		if (prefetch > 0)
+			this.prefetcher = new SlicePrefetcher(stack, prefetch);
+	}
+
+
+	// ==================================================
+	// Management of slices
+
+	/**
+	 * Returns the processor of a slice. The two last accessed slices are kept
+	 * to avoid requesting the prefetcher for each voxel, as scanning
+	 * algorithms often access the current and the previous slices.
+	 */
+	private ImageProcessor getSlice(int z)
+	{
+		if (z == currentZ)
+			return currentSlice;
+
+		ImageProcessor slice;
+		if (z == previousZ)
+			slice = previousSlice;
+		else if (prefetcher != null)
+			slice = prefetcher.getSlice(z);
+		else
+			slice = stack.getProcessor(z + 1);
+
+		previousZ = currentZ;
+		previousSlice = currentSlice;
+		currentZ = z;
+		currentSlice = slice;
+		return slice;
+	}
+
+	private static final double getValue(ImageProcessor slice, int index)
+	{
+		// keep all bits of int values
+		if (slice instanceof ColorProcessor)
+			return slice.get(index);
+		return slice.getf(index);
+	}
+
+	/**
+	 * Stops the thread used for reading slices in advance, if any, and
+	 * releases the slices kept in memory.
+	 */
+	public void close()
+	{
+		if (prefetcher != null)
+			prefetcher.close();
+		currentZ = -1;
+		currentSlice = null;
+		previousZ = -1;
+		previousSlice = null;
+	}
+
+
+	// ==================================================
+	// Implementation of the Image3D interface
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeX()
+	 */
+	@Override
+	public int getSizeX()
+	{
+		return sizeX;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeY()
+	 */
+	@Override
+	public int getSizeY()
+	{
+		return sizeY;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSizeZ()
+	 */
+	@Override
+	public int getSizeZ()
+	{
+		return sizeZ;
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#get(int, int, int)
+	 */
+	@Override
+	public int get(int x, int y, int z)
+	{
+		return (int) getValue(getSlice(z), y * sizeX + x);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#set(int, int, int, int)
+	 */
+	@Override
+	public void set(int x, int y, int z, int value)
+	{
+		throw new UnsupportedOperationException("Virtual stacks can not be modified");
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getValue(int, int, int)
+	 */
+	@Override
+	public double getValue(int x, int y, int z)
+	{
+		return getValue(getSlice(z), y * sizeX + x);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setValue(int, int, int, double)
+	 */
+	@Override
+	public void setValue(int x, int y, int z, double value)
+	{
+		throw new UnsupportedOperationException("Virtual stacks can not be modified");
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getValue(int)
+	 */
+	@Override
+	public double getValue(int index)
+	{
+		int sizeXY = sizeX * sizeY;
+		return getValue(getSlice(index / sizeXY), index % sizeXY);
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setValue(int, double)
+	 */
+	@Override
+	public void setValue(int index, double value)
+	{
+		throw new UnsupportedOperationException("Virtual stacks can not be modified");
+	}
+
+
+	// ==================================================
+	// Access to lines and slices
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineX(int, int, double[])
+	 */
+	@Override
+	public void getLineX(int y, int z, double[] buffer)
+	{
+		ImageProcessor slice = getSlice(z);
+		int offset = y * sizeX;
+		for (int x = 0; x < sizeX; x++)
+		{
+			buffer[x] = getValue(slice, offset + x);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineX(int, int, double[])
+	 */
+	@Override
+	public void setLineX(int y, int z, double[] buffer)
+	{
+		throw new UnsupportedOperationException("Virtual stacks can not be modified");
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineY(int, int, double[])
+	 */
+	@Override
+	public void getLineY(int x, int z, double[] buffer)
+	{
+		ImageProcessor slice = getSlice(z);
+		for (int y = 0, offset = x; y < sizeY; y++, offset += sizeX)
+		{
+			buffer[y] = getValue(slice, offset);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineY(int, int, double[])
+	 */
+	@Override
+	public void setLineY(int x, int z, double[] buffer)
+	{
+		throw new UnsupportedOperationException("Virtual stacks can not be modified");
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getLineZ(int, int, double[])
+	 */
+	@Override
+	public void getLineZ(int x, int y, double[] buffer)
+	{
+		int offset = y * sizeX + x;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			buffer[z] = getValue(getSlice(z), offset);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setLineZ(int, int, double[])
+	 */
+	@Override
+	public void setLineZ(int x, int y, double[] buffer)
+	{
+		throw new UnsupportedOperationException("Virtual stacks can not be modified");
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#getSliceValues(int, double[])
+	 */
+	@Override
+	public void getSliceValues(int z, double[] buffer)
+	{
+		ImageProcessor slice = getSlice(z);
+		int sizeXY = sizeX * sizeY;
+		for (int i = 0; i < sizeXY; i++)
+		{
+			buffer[i] = getValue(slice, i);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see inra.ijpb.data.image.Image3D#setSliceValues(int, double[])
+	 */
+	@Override
+	public void setSliceValues(int z, double[] buffer)
+	{
+		throw new UnsupportedOperationException("Virtual stacks can not be modified");
+	}
+}
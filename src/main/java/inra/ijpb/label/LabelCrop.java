@@ -0,0 +1,327 @@
+/**
+ *
+ */
+package inra.ijpb.label;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * A lazy binary view on a single label of a label image, restricted to the
+ * bounding box of the label and eventually enlarged by a border. No pixel data
+ * is copied until one of the <code>createProcessor()</code> or
+ * <code>createStack()</code> methods is called, making it possible to iterate
+ * over all the regions of a large image without allocating all the crops at
+ * the same time.
+ *
+ * Example of use:
+ * <pre><code>
+ * ImageStack labelImage = ...
+ * LabelCrop[] crops = LabelCrop.createAll(labelImage, 1);
+ * for (LabelCrop crop : crops)
+ * {
+ *     ImageStack binary = crop.createStack();
+ *     // process binary image of current region
+ * }
+ * </code></pre>
+ *
+ * @see LabelImages#cropLabels(ImageStack, int[], int)
+ *
+ * @author David Legland
+ *
+ */
+public class LabelCrop
+{
+	// ==============================================================
+	// Class variables
+
+	/** The planar label image, or null if the view is based on a stack */
+	ImageProcessor image2d;
+
+	/** The 3D label image, or null if the view is based on a planar image */
+	ImageStack image3d;
+
+	/** The label of the region */
+	int label;
+
+	/** The number of pixels or voxels added on each side of the crop */
+	int border;
+
+	/**
+	 * The bounding box of the label within the original image: xmin, xmax,
+	 * ymin, ymax, and zmin, zmax for 3D images (inclusive bounds).
+	 */
+	int[] box;
+
+
+	// ==============================================================
+	// Constructors
+
+	/**
+	 * Creates a view on a label of a planar label image.
+	 *
+	 * @param image
+	 *            the planar label image
+	 * @param label
+	 *            the label of the region
+	 * @param box
+	 *            the bounding box of the label, as xmin, xmax, ymin, ymax
+	 * @param border
+	 *            the number of pixels to add on each side of the crop
+	 */
+	public LabelCrop(ImageProcessor image, int label, int[] box, int border)
+	{
+		this.image2d = image;
+		this.label = label;
+		this.box = box;
+		this.border = border;
+	}
+
+	/**
+	 * Creates a view on a label of a 3D label image.
+	 *
+	 * @param image
+	 *            the 3D label image
+	 * @param label
+	 *            the label of the region
+	 * @param box
+	 *            the bounding box of the label, as xmin, xmax, ymin, ymax,
+	 *            zmin, zmax
+	 * @param border
+	 *            the number of voxels to add on each side of the crop
+	 */
+	public LabelCrop(ImageStack image, int label, int[] box, int border)
+	{
+		this.image3d = image;
+		this.label = label;
+		this.box = box;
+		this.border = border;
+	}
+
+
+	// ==============================================================
+	// Static factories
+
+	/**
+	 * Creates the views of all the labels within a planar label image. The
+	 * bounding boxes of all the labels are computed during a single pass over
+	 * the image.
+	 *
+	 * @param image
+	 *            a planar label image
+	 * @param border
+	 *            the number of pixels to add on each side of the crops
+	 * @return the views of all the labels, by increasing label
+	 */
+	public static final LabelCrop[] createAll(ImageProcessor image, int border)
+	{
+		return createAll(image, LabelStatistics.compute(image), border);
+	}
+
+	/**
+	 * Creates the views of all the labels within a planar label image, using
+	 * previously computed label statistics.
+	 *
+	 * @param image
+	 *            a planar label image
+	 * @param stats
+	 *            the statistics of the label image
+	 * @param border
+	 *            the number of pixels to add on each side of the crops
+	 * @return the views of all the labels, by increasing label
+	 */
+	public static final LabelCrop[] createAll(ImageProcessor image, LabelStatistics stats, int border)
+	{
+		int[] labels = stats.getLabels();
+		int[][] boxes = stats.getBoundingBoxes();
+		LabelCrop[] crops = new LabelCrop[labels.length];
+		for (int i = 0; i < labels.length; i++)
+		{
+			crops[i] = new LabelCrop(image, labels[i], boxes[i], border);
+		}
+		return crops;
+	}
+
+	/**
+	 * Creates the views of all the labels within a 3D label image. The
+	 * bounding boxes of all the labels are computed during a single pass over
+	 * the image.
+	 *
+	 * @param image
+	 *            a 3D label image
+	 * @param border
+	 *            the number of voxels to add on each side of the crops
+	 * @return the views of all the labels, by increasing label
+	 */
+	public static final LabelCrop[] createAll(ImageStack image, int border)
+	{
+		return createAll(image, LabelStatistics.compute(image), border);
+	}
+
+	/**
+	 * Creates the views of all the labels within a 3D label image, using
+	 * previously computed label statistics.
+	 *
+	 * @param image
+	 *            a 3D label image
+	 * @param stats
+	 *            the statistics of the label image
+	 * @param border
+	 *            the number of voxels to add on each side of the crops
+	 * @return the views of all the labels, by increasing label
+	 */
+	public static final LabelCrop[] createAll(ImageStack image, LabelStatistics stats, int border)
+	{
+		int[] labels = stats.getLabels();
+		int[][] boxes = stats.getBoundingBoxes();
+		LabelCrop[] crops = new LabelCrop[labels.length];
+		for (int i = 0; i < labels.length; i++)
+		{
+			crops[i] = new LabelCrop(image, labels[i], boxes[i], border);
+		}
+		return crops;
+	}
+
+
+	// ==============================================================
+	// Accessors
+
+	/**
+	 * @return the label of the region
+	 */
+	public int getLabel()
+	{
+		return label;
+	}
+
+	/**
+	 * @return the bounding box of the label within the original image
+	 */
+	public int[] getBoundingBox()
+	{
+		return box;
+	}
+
+	/**
+	 * @return true if the view is based on a 3D image
+	 */
+	public boolean is3D()
+	{
+		return image3d != null;
+	}
+
+	/**
+	 * @return the width of the cropped image, including borders
+	 */
+	public int getWidth()
+	{
+		return box[1] - box[0] + 1 + 2 * border;
+	}
+
+	/**
+	 * @return the height of the cropped image, including borders
+	 */
+	public int getHeight()
+	{
+		return box[3] - box[2] + 1 + 2 * border;
+	}
+
+	/**
+	 * @return the number of slices of the cropped image, including borders, or
+	 *         1 for planar images
+	 */
+	public int getSize()
+	{
+		return image3d == null ? 1 : box[5] - box[4] + 1 + 2 * border;
+	}
+
+	/**
+	 * Returns the value of the binary view at the specified position, given in
+	 * the coordinates of the cropped image.
+	 *
+	 * @param x
+	 *            the x-coordinate within the crop
+	 * @param y
+	 *            the y-coordinate within the crop
+	 * @param z
+	 *            the z-coordinate within the crop (0 for planar images)
+	 * @return 255 if the position belongs to the label, 0 otherwise
+	 */
+	public int get(int x, int y, int z)
+	{
+		int x0 = x + box[0] - border;
+		int y0 = y + box[2] - border;
+		if (x0 < box[0] || x0 > box[1] || y0 < box[2] || y0 > box[3])
+			return 0;
+
+		if (image3d == null)
+		{
+			return LabelImages.getLabel(image2d, x0, y0) == label ? 255 : 0;
+		}
+
+		int z0 = z + box[4] - border;
+		if (z0 < box[4] || z0 > box[5])
+			return 0;
+		return LabelImages.getLabel(image3d.getProcessor(z0 + 1), x0, y0) == label ? 255 : 0;
+	}
+
+
+	// ==============================================================
+	// Materialization
+
+	/**
+	 * Creates the binary planar image corresponding to this view.
+	 *
+	 * @return a new binary image containing only the label
+	 */
+	public ImageProcessor createProcessor()
+	{
+		if (image2d == null)
+		{
+			throw new IllegalStateException("Requires a view on a planar image");
+		}
+
+		ImageProcessor result = new ByteProcessor(getWidth(), getHeight());
+		copySlice(image2d, result);
+		return result;
+	}
+
+	/**
+	 * Creates the binary 3D image corresponding to this view.
+	 *
+	 * @return a new binary 3D image containing only the label
+	 */
+	public ImageStack createStack()
+	{
+		if (image3d == null)
+		{
+			throw new IllegalStateException("Requires a view on a 3D image");
+		}
+
+		ImageStack result = ImageStack.create(getWidth(), getHeight(), getSize(), 8);
+		for (int z = box[4], z2 = border; z <= box[5]; z++, z2++)
+		{
+			copySlice(image3d.getProcessor(z + 1), result.getProcessor(z2 + 1));
+		}
+		return result;
+	}
+
+	/**
+	 * Copies the pixels of the label within the bounding box of the source
+	 * slice into the target slice.
+	 */
+	private void copySlice(ImageProcessor source, ImageProcessor target)
+	{
+		for (int y = box[2], y2 = border; y <= box[3]; y++, y2++)
+		{
+			for (int x = box[0], x2 = border; x <= box[1]; x++, x2++)
+			{
+				if (LabelImages.getLabel(source, x, y) == label)
+				{
+					target.set(x2, y2, 255);
+				}
+			}
+		}
+	}
+}
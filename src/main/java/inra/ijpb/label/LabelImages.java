@@ -8,17 +8,25 @@ import static java.lang.Math.min;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
+import ij.Prefs;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import ij.process.ShortProcessor;
+import ij.util.ThreadUtil;
+import inra.ijpb.data.LongIntHashMap;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
+import inra.ijpb.data.image.IntStackWrapper;
 
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Utility methods for label images (stored as 8-, 16- or 32-bits).
@@ -82,7 +90,9 @@ public class LabelImages
 	 * @param nLabels
 	 *            expected number of labels in new image
 	 * @return a new ImageStack with type adapted to store the expected
-	 *         number of labels
+	 *         number of labels. For more than 2^23 labels, the labels are
+	 *         stored as int values within a 24-bit stack.
+	 * @see inra.ijpb.data.image.IntStackWrapper
 	 */
 	public static final ImageStack createLabelStack(int width, int height,
 			int depth, int nLabels)
@@ -101,11 +111,71 @@ public class LabelImages
 		} 
 		else 
 		{
-			IJ.error("Too many classes");
-			return null;
+			// labels are stored as int values, and can be accessed using
+			// an IntStackWrapper
+			return IntStackWrapper.createStack(width, height, depth);
 		}
 	}
 	
+	/**
+	 * Returns the label of a pixel within a label image, identified by its
+	 * linear index. For images stored as arrays of int (ColorProcessor), the
+	 * integer value is returned as is, making it possible to process labels
+	 * that can not be represented exactly as float values.
+	 * 
+	 * @param image
+	 *            a label image
+	 * @param index
+	 *            the linear index of the pixel
+	 * @return the label of the pixel
+	 */
+	public static final int getLabel(ImageProcessor image, int index)
+	{
+		if (image instanceof ColorProcessor)
+			return image.get(index);
+		return (int) image.getf(index);
+	}
+	
+	/**
+	 * Returns the label of a pixel within a label image. For images stored as
+	 * arrays of int (ColorProcessor), the integer value is returned as is.
+	 * 
+	 * @param image
+	 *            a label image
+	 * @param x
+	 *            the x-coordinate of the pixel
+	 * @param y
+	 *            the y-coordinate of the pixel
+	 * @return the label of the pixel
+	 */
+	public static final int getLabel(ImageProcessor image, int x, int y)
+	{
+		if (image instanceof ColorProcessor)
+			return image.get(x, y);
+		return (int) image.getf(x, y);
+	}
+	
+	/**
+	 * Changes the label of a pixel within a label image. For images stored as
+	 * arrays of int (ColorProcessor), the integer value is stored as is.
+	 * 
+	 * @param image
+	 *            a label image
+	 * @param x
+	 *            the x-coordinate of the pixel
+	 * @param y
+	 *            the y-coordinate of the pixel
+	 * @param label
+	 *            the new label of the pixel
+	 */
+	public static final void setLabel(ImageProcessor image, int x, int y, int label)
+	{
+		if (image instanceof ColorProcessor)
+			image.set(x, y, label);
+		else
+			image.setf(x, y, label);
+	}
+	
 	/**
 	 * <p>
 	 * Creates a new label image from a set of binary images. The label values
@@ -178,6 +248,7 @@ public class LabelImages
 		int sizeZ = image.getSize();
 		
 		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+		Image3D labels = Images3D.createWrapper(image);
 		
 		for (int z = 0; z < sizeZ - 1; z++) 
 		{
@@ -185,12 +256,12 @@ public class LabelImages
 			{
 				for (int x = 0; x < sizeX - 1; x++)
 				{
-					double value = image.getVoxel(x, y, z);
-					if (image.getVoxel(x+1, y, z) != value)
+					double value = labels.getValue(x, y, z);
+					if (labels.getValue(x+1, y, z) != value)
 						result.setVoxel(x, y, z, 255);
-					if (image.getVoxel(x, y+1, z) != value)
+					if (labels.getValue(x, y+1, z) != value)
 						result.setVoxel(x, y, z, 255);
-					if (image.getVoxel(x, y, z+1) != value)
+					if (labels.getValue(x, y, z+1) != value)
 						result.setVoxel(x, y, z, 255);
 				}
 			}
@@ -214,17 +285,24 @@ public class LabelImages
         String newName = imagePlus.getShortTitle() + "-crop"; 
         ImagePlus croppedPlus;
         
+        // retrieve the bounds of the label from the label statistics
+        int[] box = LabelStatistics.get(imagePlus).getBoundingBox(label);
+        if (box == null)
+        {
+        	throw new IllegalArgumentException("Label " + label + " was not found within image");
+        }
+        
         // Compute the cropped image
         if (imagePlus.getStackSize() == 1) 
         {
             ImageProcessor image = imagePlus.getProcessor();
-            ImageProcessor cropped = LabelImages.cropLabel(image, label, border);
+            ImageProcessor cropped = new LabelCrop(image, label, box, border).createProcessor();
             croppedPlus = new ImagePlus(newName, cropped);
         }
         else
         {
             ImageStack image = imagePlus.getStack();
-            ImageStack cropped = LabelImages.cropLabel(image, label, border);
+            ImageStack cropped = new LabelCrop(image, label, box, border).createStack();
             croppedPlus = new ImagePlus(newName, cropped);
         }
 
@@ -273,29 +351,10 @@ public class LabelImages
 			}
 		}
 
-		// Compute size of result, taking into account border
-		int sizeX2 = (xmax - xmin + 1 + 2 * border);
-		int sizeY2 = (ymax - ymin + 1 + 2 * border);
-
-		// allocate memory for result image
-		ImageProcessor result = new ByteProcessor(sizeX2, sizeY2);
-		
-		// fill result with binary label
-		for (int y = ymin, y2 = border; y <= ymax; y++, y2++) 
-		{
-			for (int x = xmin, x2 = border; x <= xmax; x++, x2++) 
-			{
-				if ((image.get(x, y)) == label)
-				{
-					result.set(x2, y2, 255);
-				}
-			}
-		}
-
-		return result;
+		int[] box = new int[] {xmin, xmax, ymin, ymax};
+		return new LabelCrop(image, label, box, border).createProcessor();
 	}
 	
-
 	/**
 	 * Returns a binary image that contains only the selected particle or
 	 * region, by automatically cropping the image and eventually adding some
@@ -312,6 +371,7 @@ public class LabelImages
 		int sizeX = image.getWidth();
 		int sizeY = image.getHeight();
 		int sizeZ = image.getSize();
+		Image3D labels = Images3D.createWrapper(image);
 		
 		// Initialize label bounds
 		int xmin = Integer.MAX_VALUE;
@@ -329,7 +389,7 @@ public class LabelImages
 				for (int x = 0; x < sizeX; x++)
 				{
 					// process only specified label
-					int val = (int) image.getVoxel(x, y, z);
+					int val = labels.get(x, y, z);
 					if (val != label)
 					{
 						continue;
@@ -346,31 +406,156 @@ public class LabelImages
 			}
 		}
 		
-		// Compute size of result, taking into account border
-		int sizeX2 = (xmax - xmin + 1 + 2 * border);
-		int sizeY2 = (ymax - ymin + 1 + 2 * border);
-		int sizeZ2 = (zmax - zmin + 1 + 2 * border);
-
-		// allocate memory for result image
-		ImageStack result = ImageStack.create(sizeX2, sizeY2, sizeZ2, 8);
+		int[] box = new int[] {xmin, xmax, ymin, ymax, zmin, zmax};
+		return new LabelCrop(image, label, box, border).createStack();
+	}
+	
+	/**
+	 * Crops all the labels of a label image, and returns the binary images of
+	 * all the labels. The bounding boxes of the labels are obtained from the
+	 * statistics of the label image, and the crops are computed in parallel.
+	 * 
+	 * @see #cropLabel(ImagePlus, int, int)
+	 * 
+	 * @param imagePlus
+	 *            an image containing label of particles
+	 * @param border
+	 *            the number of pixels or voxels to add to each side of the
+	 *            particles
+	 * @return an array of binary images, one for each label, by increasing
+	 *         label
+	 */
+	public static final ImagePlus[] cropLabels(ImagePlus imagePlus, int border)
+	{
+		LabelStatistics stats = LabelStatistics.get(imagePlus);
+		int[] labels = stats.getLabels();
 		
-		// fill result with binary label
-		for (int z = zmin, z2 = border; z <= zmax; z++, z2++) 
+		// create lazy views for all labels, and compute the crops
+		LabelCrop[] crops;
+		if (imagePlus.getStackSize() == 1)
+			crops = LabelCrop.createAll(imagePlus.getProcessor(), stats, border);
+		else
+			crops = LabelCrop.createAll(imagePlus.getStack(), stats, border);
+		Object[] images = createCrops(crops);
+		
+		String baseName = imagePlus.getShortTitle() + "-crop-";
+		ImagePlus[] result = new ImagePlus[labels.length];
+		for (int i = 0; i < labels.length; i++)
+		{
+			String newName = baseName + labels[i];
+			if (images[i] instanceof ImageStack)
+				result[i] = new ImagePlus(newName, (ImageStack) images[i]);
+			else
+				result[i] = new ImagePlus(newName, (ImageProcessor) images[i]);
+			result[i].copyScale(imagePlus);
+		}
+		return result;
+	}
+	
+	/**
+	 * Crops several labels of a planar label image. The bounding boxes of all
+	 * the labels are computed during a single pass over the image, then the
+	 * crops are computed in parallel.
+	 * 
+	 * @see #cropLabel(ImageProcessor, int, int)
+	 * 
+	 * @param image
+	 *            an image containing label of particles
+	 * @param labels
+	 *            the labels of the particles to crop
+	 * @param border
+	 *            the number of pixels to add to each side of the particles
+	 * @return an array of binary images, in the same order as the labels. If a
+	 *         label is not found within the image, the corresponding image is
+	 *         null.
+	 */
+	public static final ImageProcessor[] cropLabels(ImageProcessor image, int[] labels, int border)
+	{
+		int[][] boxes = new LabelIndex(labels).boundingBoxes(image);
+		
+		LabelCrop[] crops = new LabelCrop[labels.length];
+		for (int i = 0; i < labels.length; i++)
+		{
+			if (boxes[i][0] <= boxes[i][1])
+				crops[i] = new LabelCrop(image, labels[i], boxes[i], border);
+		}
+		
+		Object[] images = createCrops(crops);
+		ImageProcessor[] result = new ImageProcessor[labels.length];
+		for (int i = 0; i < labels.length; i++)
+		{
+			result[i] = (ImageProcessor) images[i];
+		}
+		return result;
+	}
+	
+	/**
+	 * Crops several labels of a 3D label image. The bounding boxes of all the
+	 * labels are computed during a single pass over the image, then the crops
+	 * are computed in parallel.
+	 * 
+	 * @see #cropLabel(ImageStack, int, int)
+	 * 
+	 * @param image
+	 *            a 3D image containing label of particles
+	 * @param labels
+	 *            the labels of the particles to crop
+	 * @param border
+	 *            the number of voxels to add to each side of the particles
+	 * @return an array of binary images, in the same order as the labels. If a
+	 *         label is not found within the image, the corresponding image is
+	 *         null.
+	 */
+	public static final ImageStack[] cropLabels(ImageStack image, int[] labels, int border)
+	{
+		int[][] boxes = new LabelIndex(labels).boundingBoxes(image);
+		
+		LabelCrop[] crops = new LabelCrop[labels.length];
+		for (int i = 0; i < labels.length; i++)
+		{
+			if (boxes[i][0] <= boxes[i][1])
+				crops[i] = new LabelCrop(image, labels[i], boxes[i], border);
+		}
+		
+		Object[] images = createCrops(crops);
+		ImageStack[] result = new ImageStack[labels.length];
+		for (int i = 0; i < labels.length; i++)
+		{
+			result[i] = (ImageStack) images[i];
+		}
+		return result;
+	}
+	
+	/**
+	 * Materializes the binary images of the crops, using several threads.
+	 * Null crops result in null images.
+	 */
+	private static final Object[] createCrops(final LabelCrop[] crops)
+	{
+		final Object[] images = new Object[crops.length];
+		final int nThreads = Math.max(Math.min(Prefs.getThreads(), crops.length), 1);
+		final AtomicInteger ai = new AtomicInteger(0);
+		
+		Thread[] threads = ThreadUtil.createThreadArray(nThreads);
+		for (int ithread = 0; ithread < threads.length; ithread++)
 		{
-			for (int y = ymin, y2 = border; y <= ymax; y++, y2++) 
+			threads[ithread] = new Thread()
 			{
-				for (int x = xmin, x2 = border; x <= xmax; x++, x2++) 
+				public void run()
 				{
-					if (((int) image.getVoxel(x, y, z)) == label)
+					for (int i = ai.getAndIncrement(); i < crops.length; i = ai.getAndIncrement())
 					{
-						result.setVoxel(x2, y2, z2, 255);
+						LabelCrop crop = crops[i];
+						if (crop == null)
+							continue;
+						images[i] = crop.is3D() ? crop.createStack() : crop.createProcessor();
 					}
 				}
-			}
+			};
 		}
+		ThreadUtil.startAndJoin(threads);
 		
-		return result;
-
+		return images;
 	}
 	
 	/**
@@ -394,10 +579,14 @@ public class LabelImages
 		ImagePlus resultPlus;
 		String newName = labelImage.getShortTitle() + "-sizeOpening";
         
+		// use the label statistics to identify labels with enough elements
+		LabelStatistics stats = LabelStatistics.get(labelImage);
+		int[] labelsToKeep = labelsWithMinCount(stats.getLabels(), stats.getCounts(), minElementCount);
+		
         if (isPlanar) 
         {
             ImageProcessor image = labelImage.getProcessor();
-            ImageProcessor result = LabelImages.areaOpening(image, minElementCount);
+            ImageProcessor result = keepLabels(image, labelsToKeep);
             if (!(result instanceof ColorProcessor))
     			result.setLut(image.getLut());
             resultPlus = new ImagePlus(newName, result);    		
@@ -405,7 +594,7 @@ public class LabelImages
         else
         {
             ImageStack image = labelImage.getStack();
-            ImageStack result = LabelImages.volumeOpening(image, minElementCount);
+            ImageStack result = keepLabels(image, labelsToKeep);
         	result.setColorModel(image.getColorModel());
             resultPlus = new ImagePlus(newName, result);
         }
@@ -437,21 +626,7 @@ public class LabelImages
 		int[] areas = pixelCount(labelImage, labels);
 		
 		// find labels with sufficient area
-		ArrayList<Integer> labelsToKeep = new ArrayList<Integer>(labels.length);
-		for (int i = 0; i < labels.length; i++) 
-		{
-			if (areas[i] >= nPixelMin) 
-			{
-				labelsToKeep.add(labels[i]);
-			}
-		}
-		
-		// Convert array list into int array
-		int[] labels2 = new int[labelsToKeep.size()];
-		for (int i = 0; i < labelsToKeep.size(); i++) 
-		{
-			labels2[i] = labelsToKeep.get(i);
-		}
+		int[] labels2 = labelsWithMinCount(labels, areas, nPixelMin);
 		
 		// keep only necessary labels
 		ImageProcessor result = keepLabels(labelImage, labels2);
@@ -479,10 +654,27 @@ public class LabelImages
 		int[] vols = LabelImages.voxelCount(labelImage, labels);
 		
 		// find labels with sufficient area
+		int[] labels2 = labelsWithMinCount(labels, vols, nVoxelMin);
+		
+		// keep only necessary labels
+		ImageStack result = keepLabels(labelImage, labels2); 
+
+		// update display info
+		result.setColorModel(labelImage.getColorModel());
+    	
+		return result;
+	}
+	
+	/**
+	 * Returns the labels whose number of elements is greater than or equal to
+	 * the specified minimal count.
+	 */
+	private static final int[] labelsWithMinCount(int[] labels, int[] counts, int minCount)
+	{
 		ArrayList<Integer> labelsToKeep = new ArrayList<Integer>(labels.length);
 		for (int i = 0; i < labels.length; i++)
 		{
-			if (vols[i] >= nVoxelMin)
+			if (counts[i] >= minCount)
 			{
 				labelsToKeep.add(labels[i]);
 			}
@@ -494,14 +686,7 @@ public class LabelImages
 		{
 			labels2[i] = labelsToKeep.get(i);
 		}
-		
-		// keep only necessary labels
-		ImageStack result = keepLabels(labelImage, labels2); 
-
-		// update display info
-		result.setColorModel(labelImage.getColorModel());
-    	
-		return result;
+		return labels2;
 	}
 	
 	/**
@@ -593,6 +778,7 @@ public class LabelImages
 		int sizeZ = image.getSize();
 		
 		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, 24);
+		Image3D labels = Images3D.createWrapper(image);
 		
 		int bgColorCode = bgColor.getRGB();
 		
@@ -602,7 +788,7 @@ public class LabelImages
 			{
 				for (int x = 0; x < sizeX; x++) 
 				{
-					int index = (int) image.getVoxel(x, y, z);
+					int index = labels.get(x, y, z);
 					if (index == 0) 
 					{
 						result.setVoxel(x, y, z, bgColorCode);
@@ -634,6 +820,7 @@ public class LabelImages
 		} else {
 			removeBorderLabels(imagePlus.getStack());
 		}
+		LabelStatistics.invalidate(imagePlus);
 	}
 
 	/**
@@ -697,6 +884,7 @@ public class LabelImages
 		int sizeX = image.getWidth();
 		int sizeY = image.getHeight();
 		int sizeZ = image.getSize();
+		Image3D labelValues = Images3D.createWrapper(image);
 		
 		TreeSet<Integer> labelSet = new TreeSet<Integer>();
 	
@@ -705,8 +893,8 @@ public class LabelImages
 		{
 			for (int x = 0; x < sizeX; x++) 
 			{
-				labelSet.add((int) image.getVoxel(x, y, 0));
-				labelSet.add((int) image.getVoxel(x, y, sizeZ - 1));
+				labelSet.add(labelValues.get(x, y, 0));
+				labelSet.add(labelValues.get(x, y, sizeZ - 1));
 			}
 		}
 		
@@ -715,8 +903,8 @@ public class LabelImages
 		{
 			for (int x = 0; x < sizeX; x++)
 			{
-				labelSet.add((int) image.getVoxel(x, 0, z));
-				labelSet.add((int) image.getVoxel(x, sizeY - 1, z));
+				labelSet.add(labelValues.get(x, 0, z));
+				labelSet.add(labelValues.get(x, sizeY - 1, z));
 			}
 		}
 		
@@ -725,8 +913,8 @@ public class LabelImages
 		{
 			for (int y = 0; y < sizeY; y++) 
 			{
-				labelSet.add((int) image.getVoxel(0, y, z));
-				labelSet.add((int) image.getVoxel(sizeX - 1, y, z));
+				labelSet.add(labelValues.get(0, y, z));
+				labelSet.add(labelValues.get(sizeX - 1, y, z));
 			}
 		}
 	
@@ -756,19 +944,28 @@ public class LabelImages
 		ImagePlus resultPlus;
 		String newName = imagePlus.getShortTitle() + "-largest";
 		
+		// identify the largest label from the label statistics
+		LabelStatistics stats = LabelStatistics.get(imagePlus);
+		if (stats.size() == 0)
+		{
+			throw new RuntimeException("Can not select a label in an empty image");
+		}
+		int largestLabel = stats.getLargestLabel();
+		int[] box = stats.getBoundingBox(largestLabel);
+		
 		// Dispatch to appropriate function depending on dimension
 		if (imagePlus.getStackSize() == 1) 
 		{
 			// process planar image
 			ImageProcessor image = imagePlus.getProcessor();
-			ImageProcessor result = keepLargestLabel(image);
+			ImageProcessor result = binarizeLabel(image, largestLabel, box);
 			resultPlus = new ImagePlus(newName, result);
 		} 
 		else 
 		{
 			// process image stack
 			ImageStack image = imagePlus.getStack();
-			ImageStack result = keepLargestLabel(image);
+			ImageStack result = binarizeLabel(image, largestLabel, box);
 			resultPlus = new ImagePlus(newName, result);
 		}
 		
@@ -844,6 +1041,7 @@ public class LabelImages
 		// find the label of the largest particle
 		int[] volumes = voxelCount(image, labels);		
 		int largestLabel = labels[indexOfMax(volumes)];
+		Image3D labelValues = Images3D.createWrapper(image);
 		
 		// convert label image to binary image
 		for (int z = 0; z < sizeZ; z++) 
@@ -852,7 +1050,7 @@ public class LabelImages
 			{
 				for (int x = 0; x < sizeX; x++) 
 				{
-					int label = (int) image.getVoxel(x, y, z); 
+					int label = labelValues.get(x, y, z); 
 					if (label == largestLabel)
 						result.setVoxel(x, y, z, 255);
 					else
@@ -864,6 +1062,47 @@ public class LabelImages
 		return result;
 	}
 
+	/**
+	 * Creates a binary image containing only the specified label, by scanning
+	 * only the bounding box of the label.
+	 */
+	private static final ImageProcessor binarizeLabel(ImageProcessor image, int label, int[] box)
+	{
+		ImageProcessor result = new ByteProcessor(image.getWidth(), image.getHeight());
+		for (int y = box[2]; y <= box[3]; y++) 
+		{
+			for (int x = box[0]; x <= box[1]; x++) 
+			{
+				if ((int) image.getf(x, y) == label)
+					result.set(x, y, 255);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Creates a binary 3D image containing only the specified label, by
+	 * scanning only the bounding box of the label.
+	 */
+	private static final ImageStack binarizeLabel(ImageStack image, int label, int[] box)
+	{
+		ImageStack result = ImageStack.create(image.getWidth(), image.getHeight(), image.getSize(), 8);
+		for (int z = box[4]; z <= box[5]; z++) 
+		{
+			ImageProcessor slice = image.getProcessor(z + 1);
+			ImageProcessor resSlice = result.getProcessor(z + 1);
+			for (int y = box[2]; y <= box[3]; y++) 
+			{
+				for (int x = box[0]; x <= box[1]; x++) 
+				{
+					if ((int) slice.getf(x, y) == label)
+						resSlice.set(x, y, 255);
+				}
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Removes the regions corresponding to the largest label from a label image.
 	 * 
@@ -872,11 +1111,40 @@ public class LabelImages
 	 */
 	public static final void removeLargestLabel(ImagePlus imagePlus)
 	{
-		// Dispatch to appropriate function depending on dimension
-		if (imagePlus.getStackSize() == 1) 
-			removeLargestLabel(imagePlus.getProcessor());
+		LabelStatistics stats = LabelStatistics.get(imagePlus);
+		if (stats.size() == 0)
+		{
+			// if no label is found, there is nothing to remove...
+			return;
+		}
+		int largestLabel = stats.getLargestLabel();
+		int[] box = stats.getBoundingBox(largestLabel);
+		
+		// remove elements of the largest label within its bounding box
+		int nSlices = imagePlus.getStackSize();
+		int zmin = nSlices == 1 ? 0 : box[4];
+		int zmax = nSlices == 1 ? 0 : box[5];
+		for (int z = zmin; z <= zmax; z++)
+		{
+			ImageProcessor slice = nSlices == 1 ? imagePlus.getProcessor() : imagePlus.getStack().getProcessor(z + 1);
+			for (int y = box[2]; y <= box[3]; y++)
+			{
+				for (int x = box[0]; x <= box[1]; x++) 
+				{
+					if ((int) slice.getf(x, y) == largestLabel)
+						slice.setf(x, y, 0);
+				}
+			}
+		}
+		
+		// invalidate the statistics of other images sharing the same pixels
+		if (nSlices == 1)
+			LabelStatistics.invalidate(imagePlus.getProcessor());
 		else
-			removeLargestLabel(imagePlus.getStack());
+			LabelStatistics.invalidate(imagePlus.getStack());
+		
+		// the statistics of the other labels are not modified
+		LabelStatistics.attach(imagePlus, stats.removeLabels(largestLabel));
 	}
 
 	/**
@@ -914,6 +1182,7 @@ public class LabelImages
 					image.setf(x, y, 0);
 			}
 		}
+		LabelStatistics.invalidate(image);
 	}
 
 	/**
@@ -941,6 +1210,7 @@ public class LabelImages
 		// find the label of the largest particle
 		int[] volumes = voxelCount(image, labels);
 		int largestLabel = labels[indexOfMax(volumes)];
+		Image3D labelValues = Images3D.createWrapper(image);
 		
 		// remove voxels belonging to the largest label
 		for (int z = 0; z < sizeZ; z++)
@@ -949,12 +1219,13 @@ public class LabelImages
 			{
 				for (int x = 0; x < sizeX; x++) 
 				{
-					int label = (int) image.getVoxel(x, y, z); 
+					int label = labelValues.get(x, y, z); 
 					if (label == largestLabel)
-						image.setVoxel(x, y, z, 0);
+						labelValues.set(x, y, z, 0);
 				}
 			}
 		}
+		LabelStatistics.invalidate(image);
 	}
 
 	/**
@@ -994,31 +1265,9 @@ public class LabelImages
 	 */
     public static final int[] pixelCount(ImageProcessor image, int[] labels) 
     {
-    	// image size
-	    int width 	= image.getWidth();
-	    int height 	= image.getHeight();
-	
-        // create associative array to identify the index of each label
-	    HashMap<Integer, Integer> labelIndices = mapLabelIndices(labels);
-
-        // initialize result
-		int nLabels = labels.length;
-		int[] counts = new int[nLabels];
-	
-		// count all pixels belonging to the particle
-	    for (int y = 0; y < height; y++) 
-	    {
-	        for (int x = 0; x < width; x++) 
-	        {
-	        	int label = (int) image.getf(x, y);
-	        	if (label == 0)
-					continue;
-				int labelIndex = labelIndices.get(label);
-				counts[labelIndex]++;
-	        }
-	    }	
-	    
-	    return counts;
+        // create associative array to identify the index of each label, and
+        // count all pixels belonging to each particle
+	    return new LabelIndex(labels).pixelCount(image);
 	}
 
 	/**
@@ -1035,36 +1284,11 @@ public class LabelImages
 	public final static int[] voxelCount(ImageStack image, int[] labels) 
 	{
         // create associative array to know index of each label
-		HashMap<Integer, Integer> labelIndices = mapLabelIndices(labels);
-
-        // initialize result
-		int nLabels = labels.length;
-		int[] counts = new int[nLabels];
-
-		// size of image
-		int sizeX = image.getWidth();
-		int sizeY = image.getHeight();
-		int sizeZ = image.getSize();
+		LabelIndex labelIndices = new LabelIndex(labels);
 
 		// iterate on image voxels
 		IJ.showStatus("Count label voxels...");
-        for (int z = 0; z < sizeZ; z++) 
-        {
-        	IJ.showProgress(z, sizeZ);
-        	for (int y = 0; y < sizeY; y++)
-        	{
-        		for (int x = 0; x < sizeX; x++)
-        		{
-        			int label = (int) image.getVoxel(x, y, z);
-					// do not consider background
-					if (label == 0)
-						continue;
-					int labelIndex = labelIndices.get(label);
-					counts[labelIndex]++;
-        		}
-        	}
-        }
-        
+		int[] counts = labelIndices.voxelCount(image);
 		IJ.showStatus("");
         return counts;
 	}
@@ -1093,39 +1317,62 @@ public class LabelImages
      */
     public final static int[] findAllLabels(ImageStack image) 
     {
-        int sizeX = image.getWidth();
-        int sizeY = image.getHeight();
-        int sizeZ = image.getSize();
-        
-        TreeSet<Integer> labels = new TreeSet<Integer> ();
-        
-        // iterate on image pixels
-        for (int z = 0; z < sizeZ; z++) 
-        {
-        	IJ.showProgress(z, sizeZ);
-        	for (int y = 0; y < sizeY; y++)  
-        	{
-        		for (int x = 0; x < sizeX; x++)
-        		{
-        			labels.add((int) image.getVoxel(x, y, z));
-        		}
-        	}
-        }
-        IJ.showProgress(1);
-        
-        // remove 0 if it exists
-        if (labels.contains(0))
-            labels.remove(0);
-        
-        // convert to array of integers
-        int[] array = new int[labels.size()];
-        Iterator<Integer> iterator = labels.iterator();
-        for (int i = 0; i < labels.size(); i++) 
-            array[i] = iterator.next();
-        
-        return array;
+		// use a wrapper to also process labels stored as int values
+		return findAllLabels(Images3D.createWrapper(image));
     }
 
+	/**
+	 * Returns the set of unique labels existing in the given 3D image,
+	 * excluding the value zero (used for background).
+	 * 
+	 * @param image
+	 *            a 3D label image
+	 * @return the list of unique labels present in image (without background)
+	 */
+	public final static int[] findAllLabels(Image3D image)
+	{
+		int sizeX = image.getSizeX();
+		int sizeY = image.getSizeY();
+		int sizeZ = image.getSizeZ();
+
+		// collect unique labels without boxing them
+		LongIntHashMap labelSet = new LongIntHashMap();
+		int[] labels = new int[16];
+		int nLabels = 0;
+		int lastLabel = 0;
+
+		// iterate on image voxels, line by line
+		double[] line = new double[sizeX];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			IJ.showProgress(z, sizeZ);
+			for (int y = 0; y < sizeY; y++)
+			{
+				image.getLineX(y, z, line);
+				for (int x = 0; x < sizeX; x++)
+				{
+					int label = (int) line[x];
+					// ignore background, and labels repeated along the line
+					if (label == 0 || label == lastLabel)
+						continue;
+					lastLabel = label;
+
+					if (labelSet.putIfAbsent(label, nLabels) == nLabels)
+					{
+						if (nLabels == labels.length)
+							labels = Arrays.copyOf(labels, nLabels * 2);
+						labels[nLabels++] = label;
+					}
+				}
+			}
+		}
+		IJ.showProgress(1);
+
+		labels = Arrays.copyOf(labels, nLabels);
+		Arrays.sort(labels);
+		return labels;
+	}
+
     /**
      * Returns the set of unique labels existing in the given image, excluding 
      * the value zero (used for background).
@@ -1200,6 +1447,7 @@ public class LabelImages
 			ImageStack image = imagePlus.getStack();
 			removeLabels(image, labels, newLabel);
 		}
+		LabelStatistics.invalidate(imagePlus);
 	}
 
 	/**
@@ -1225,6 +1473,7 @@ public class LabelImages
 			ImageStack image = imagePlus.getStack();
 			replaceLabels(image, labels, newLabel);
 		}
+		LabelStatistics.invalidate(imagePlus);
 	}
 
 	/**
@@ -1236,26 +1485,7 @@ public class LabelImages
 	 */
 	public static final void removeLabels(ImageProcessor image, int[] labels, int newLabel)
 	{
-		int sizeX = image.getWidth();
-		int sizeY = image.getHeight();
-		
-		TreeSet<Integer> labelSet = new TreeSet<Integer>();
-		for (int i = 0; i < labels.length; i++)
-		{
-			labelSet.add(labels[i]);
-		}
-		
-		for (int y = 0; y < sizeY; y++)
-		{
-			for (int x = 0; x < sizeX; x++)
-			{
-				int value = (int) image.getf(x, y); 
-				if (value == newLabel)
-					continue;
-				if (labelSet.contains(value)) 
-					image.setf(x, y, newLabel);
-			}
-		}
+		LabelMapping.replace(labels, newLabel).applyInPlace(image);
 	}
 
 	/**
@@ -1267,6 +1497,13 @@ public class LabelImages
 	 */
 	public static final void replaceLabels(ImageProcessor image, float[] labels, float newLabel)
 	{
+		LabelMapping mapping = createMapping(labels, newLabel);
+		if (mapping != null)
+		{
+			mapping.applyInPlace(image);
+			return;
+		}
+		
 		int sizeX = image.getWidth();
 		int sizeY = image.getHeight();
 		
@@ -1287,6 +1524,7 @@ public class LabelImages
 					image.setf(x, y, newLabel);
 			}
 		}
+		LabelStatistics.invalidate(image);
 	}
 
 	/**
@@ -1298,30 +1536,7 @@ public class LabelImages
 	 */
 	public static final void removeLabels(ImageStack image, int[] labels, int newLabel)
 	{
-		int sizeX = image.getWidth();
-		int sizeY = image.getHeight();
-		int sizeZ = image.getSize();
-		
-		TreeSet<Integer> labelSet = new TreeSet<Integer>();
-		for (int i = 0; i < labels.length; i++) 
-		{
-			labelSet.add(labels[i]);
-		}
-		
-		for (int z = 0; z < sizeZ; z++) 
-		{
-			for (int y = 0; y < sizeY; y++)
-			{
-				for (int x = 0; x < sizeX; x++) 
-				{
-					int value = (int) image.getVoxel(x, y, z); 
-					if (value == newLabel)
-						continue;
-					if (labelSet.contains(value)) 
-						image.setVoxel(x, y, z, newLabel);
-				}
-			}
-		}
+		LabelMapping.replace(labels, newLabel).applyInPlace(image);
 	}
 
 	/**
@@ -1333,6 +1548,13 @@ public class LabelImages
 	 */
 	public static final void replaceLabels(ImageStack image, float[] labels, float newLabel)
 	{
+		LabelMapping mapping = createMapping(labels, newLabel);
+		if (mapping != null)
+		{
+			mapping.applyInPlace(image);
+			return;
+		}
+		
 		int sizeX = image.getWidth();
 		int sizeY = image.getHeight();
 		int sizeZ = image.getSize();
@@ -1357,6 +1579,30 @@ public class LabelImages
 				}
 			}
 		}
+		LabelStatistics.invalidate(image);
+	}
+
+	/**
+	 * Creates the mapping that replaces floating point labels, or returns null
+	 * if one of the values is not a positive integer. Values are replaced only
+	 * if they are exactly equal to one of the labels.
+	 */
+	private static final LabelMapping createMapping(float[] labels, float newLabel)
+	{
+		if (newLabel < 0 || newLabel != (int) newLabel)
+			return null;
+		
+		int[] intLabels = new int[labels.length];
+		for (int i = 0; i < labels.length; i++)
+		{
+			if (labels[i] < 0 || labels[i] != (int) labels[i])
+				return null;
+			intLabels[i] = (int) labels[i];
+		}
+		
+		LabelMapping mapping = LabelMapping.replace(intLabels, (int) newLabel);
+		mapping.exactValues = true;
+		return mapping;
 	}
 
 	/**
@@ -1404,30 +1650,7 @@ public class LabelImages
 	 */
 	public static final ImageProcessor keepLabels(ImageProcessor image, int[] labels) 
 	{
-		int sizeX = image.getWidth();
-		int sizeY = image.getHeight();
-		
-		ImageProcessor result = image.createProcessor(sizeX,  sizeY);
-		
-		TreeSet<Integer> labelSet = new TreeSet<Integer>();
-		for (int i = 0; i < labels.length; i++) 
-		{
-			labelSet.add(labels[i]);
-		}
-		
-		for (int y = 0; y < sizeY; y++) 
-		{
-			for (int x = 0; x < sizeX; x++)
-			{
-				int value = (int) image.getf(x, y); 
-				if (value == 0)
-					continue;
-				if (labelSet.contains(value)) 
-					result.setf(x, y, value);
-			}
-		}
-		
-		return result;
+		return LabelMapping.keep(labels).apply(image);
 	}
 
 	/**
@@ -1441,34 +1664,57 @@ public class LabelImages
 	 */
 	public static final ImageStack keepLabels(ImageStack image, int[] labels) 
 	{
-		int sizeX = image.getWidth();
-		int sizeY = image.getHeight();
-		int sizeZ = image.getSize();
-		
-		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, image.getBitDepth());
-		
-		TreeSet<Integer> labelSet = new TreeSet<Integer>();
-		for (int i = 0; i < labels.length; i++)
+		return LabelMapping.keep(labels).apply(image);
+	}
+	
+	/**
+	 * Replaces the labels of a label image by consecutive values from 1 to the
+	 * number of labels, while preserving the order of labels. This method
+	 * changes directly the values within the image.
+	 * 
+	 * @param imagePlus
+	 *            an ImagePlus containing a planar or 3D label image
+	 */
+	public static final void remapLabels(ImagePlus imagePlus)
+	{
+		// Dispatch to appropriate function depending on dimension
+		if (imagePlus.getStackSize() == 1) 
 		{
-			labelSet.add(labels[i]);
-		}
-		
-		for (int z = 0; z < sizeZ; z++) 
+			remapLabels(imagePlus.getProcessor());
+		} 
+		else 
 		{
-			for (int y = 0; y < sizeY; y++)
-			{
-				for (int x = 0; x < sizeX; x++)
-				{
-					int value = (int) image.getVoxel(x, y, z); 
-					if (value == 0)
-						continue;
-					if (labelSet.contains(value)) 
-						result.setVoxel(x, y, z, value);
-				}
-			}
+			remapLabels(imagePlus.getStack());
 		}
-		
-		return result;
+		LabelStatistics.invalidate(imagePlus);
+	}
+
+	/**
+	 * Replaces the labels of a planar label image by consecutive values from 1
+	 * to the number of labels, while preserving the order of labels. This
+	 * method changes directly the values within the image.
+	 * 
+	 * @param image
+	 *            a planar label image
+	 */
+	public static final void remapLabels(ImageProcessor image)
+	{
+		int[] labels = LabelStatistics.compute(image).getLabels();
+		LabelMapping.consecutive(labels).applyInPlace(image);
+	}
+
+	/**
+	 * Replaces the labels of a 3D label image by consecutive values from 1 to
+	 * the number of labels, while preserving the order of labels. This method
+	 * changes directly the values within the image.
+	 * 
+	 * @param image
+	 *            a 3D label image
+	 */
+	public static final void remapLabels(ImageStack image)
+	{
+		int[] labels = LabelStatistics.compute(image).getLabels();
+		LabelMapping.consecutive(labels).applyInPlace(image);
 	}
 	
 	/**
@@ -1484,41 +1730,11 @@ public class LabelImages
 	 */
 	public static final FloatProcessor applyLut(ImageProcessor labelImage, double[] values) 
 	{
-		int width = labelImage.getWidth(); 
-		int height = labelImage.getHeight(); 
-		
-		FloatProcessor resultImage = new FloatProcessor(width, height);
-		
         // extract particle labels
         int[] labels = LabelImages.findAllLabels(labelImage);
         
-        // create associative array to know index of each label
-        HashMap<Integer, Integer> labelIndices = mapLabelIndices(labels);
-
-		for (int y = 0; y < height; y++) 
-		{
-			for (int x = 0; x < width; x++) 
-			{
-				int label = (int) labelImage.getf(x, y);
-				if (label == 0)
-				{
-					resultImage.setf(x, y, Float.NaN);
-					continue;
-				}
-				
-				int index = labelIndices.get(label);
-				
-				if (index >= values.length) {
-					throw new RuntimeException("Try to access index " + index + 
-							" in array with " + values.length + " values");
-				}
-				
-				double value = values[index];
-				resultImage.setf(x, y, (float) value);
-			}
-		}
-		
-		return resultImage;
+        // associate each label to its value, using several threads
+        return LabelMapping.mapValues(labelImage, labels, values);
 	}
 	
 	/**
@@ -1534,47 +1750,51 @@ public class LabelImages
 	 */
 	public static final ImageStack applyLut(ImageStack labelImage, double[] values) 
 	{
-		int sizeX = labelImage.getWidth(); 
-		int sizeY = labelImage.getHeight(); 
-		int sizeZ = labelImage.getSize(); 
-		
-		ImageStack resultImage = ImageStack.create(sizeX, sizeY, sizeZ, 32);
-		
         // extract particle labels
         int[] labels = LabelImages.findAllLabels(labelImage);
         
-        // create associative array to know index of each label
-        HashMap<Integer, Integer> labelIndices = mapLabelIndices(labels);
+        // associate each label to its value, using several threads
+        return LabelMapping.mapValues(labelImage, labels, values);
+	}
 
-        // Iterate over voxels to change their color
-        for (int z = 0; z < sizeZ; z++) 
-        {
-			for (int y = 0; y < sizeY; y++) 
+	/**
+	 * Applies the given Look-up table to the input label image, and stores
+	 * the result within another image. Input and output images can be stored
+	 * out of memory, for example using
+	 * {@link inra.ijpb.data.image.ChunkedImage3D}.
+	 * 
+	 * @param labelImage
+	 *            a 3D label image
+	 * @param values
+	 *            a set of values associated to each unique label
+	 * @param result
+	 *            the 3D image that will contain for each voxel, either the
+	 *            value associated to the corresponding label, or NaN if the
+	 *            voxel is background
+	 */
+	public static final void applyLut(Image3D labelImage, double[] values, Image3D result) 
+	{
+		// associate each label to the index of its value
+		int[] labels = LabelImages.findAllLabels(labelImage);
+		LabelIndex labelIndices = new LabelIndex(labels);
+
+		int sizeX = labelImage.getSizeX();
+		int sizeY = labelImage.getSizeY();
+		int sizeZ = labelImage.getSizeZ();
+		double[] line = new double[sizeX];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
 			{
+				labelImage.getLineX(y, z, line);
 				for (int x = 0; x < sizeX; x++)
 				{
-					int label = (int) labelImage.getVoxel(x, y, z);
-					if (label == 0)
-					{
-						resultImage.setVoxel(x, y, z, Double.NaN);
-						continue;
-					}
-
-					int index = labelIndices.get(label);
-					
-					if (index >= values.length) 
-					{
-						throw new RuntimeException("Try to access index " + index + 
-								" in array with " + values.length + " values");
-					}
-					
-					double value = values[index];
-					resultImage.setVoxel(x, y, z, value);
+					int label = (int) line[x];
+					line[x] = label == 0 ? Double.NaN : values[labelIndices.indexOf(label)];
 				}
+				result.setLineX(y, z, line);
 			}
 		}
-        
-        return resultImage;
 	}
 
 	/**
@@ -1584,6 +1804,7 @@ public class LabelImages
 	 *            an array of labels
 	 * @return a HashMap instance with each label as key, and the index of the
 	 *         label in array as value.
+	 * @see LabelIndex
 	 */
 	public static final HashMap<Integer, Integer> mapLabelIndices(int[] labels)
 	{
@@ -0,0 +1,341 @@
+/**
+ *
+ */
+package inra.ijpb.label;
+
+import ij.IJ;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.data.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Associates each label of a label image to its index within an array of
+ * labels. When the labels are positive and the largest label is moderate, the
+ * index is retrieved from a dense look-up table; otherwise a primitive hash
+ * map is used. In both cases,
+ * no object is allocated and no boxing occurs when retrieving the index of a
+ * label, making it possible to use it within pixel loops.
+ *
+ * The class also provides bulk methods that compute the number of elements,
+ * the sum of values, or the bounding box of all labels in a single pass over
+ * the image.
+ *
+ * Example of use:
+ * <pre><code>
+ * ImageProcessor labelImage = ...
+ * int[] labels = LabelImages.findAllLabels(labelImage);
+ * LabelIndex index = new LabelIndex(labels);
+ * int[] counts = index.pixelCount(labelImage);
+ * int i = index.indexOf(labels[3]); // returns 3
+ * </code></pre>
+ *
+ * @author David Legland
+ *
+ */
+public class LabelIndex
+{
+	// ==============================================================
+	// Constants
+
+	/**
+	 * The largest label for which a dense look-up table is always used. For
+	 * larger labels, a dense table is used only if it is not too sparse.
+	 */
+	public static final int MAX_DENSE_LABEL = 1 << 20;
+
+
+	// ==============================================================
+	// Class variables
+
+	/** The array of labels, in the order of their indices */
+	int[] labels;
+
+	/** The dense look-up table, or null if the hash map is used */
+	int[] lut;
+
+	/** The hash map from labels to indices, or null if the LUT is used */
+	LongIntHashMap map;
+
+
+	// ==============================================================
+	// Constructors
+
+	/**
+	 * Creates a new index for the specified labels. Labels are expected to be
+	 * distinct. Negative labels are indexed using the hash map.
+	 *
+	 * @param labels
+	 *            the array of labels
+	 */
+	public LabelIndex(int[] labels)
+	{
+		this.labels = labels;
+
+		int minLabel = 0;
+		int maxLabel = 0;
+		for (int label : labels)
+		{
+			minLabel = Math.min(minLabel, label);
+			maxLabel = Math.max(maxLabel, label);
+		}
+
+		int nLabels = labels.length;
+		if (minLabel >= 0 && (maxLabel <= MAX_DENSE_LABEL || maxLabel / 8 <= nLabels))
+		{
+			this.lut = new int[maxLabel + 1];
+			Arrays.fill(this.lut, -1);
+			for (int i = 0; i < nLabels; i++)
+			{
+				this.lut[labels[i]] = i;
+			}
+		}
+		else
+		{
+			this.map = new LongIntHashMap(nLabels);
+			for (int i = 0; i < nLabels; i++)
+			{
+				this.map.put(labels[i], i);
+			}
+		}
+	}
+
+
+	// ==============================================================
+	// Accessors
+
+	/**
+	 * Returns the index of the given label, or -1 if the label is not
+	 * indexed.
+	 *
+	 * @param label
+	 *            the label to look for
+	 * @return the index of the label, or -1
+	 */
+	public final int indexOf(int label)
+	{
+		if (lut != null)
+		{
+			return label >= 0 && label < lut.length ? lut[label] : -1;
+		}
+		return map.get(label, -1);
+	}
+
+	/**
+	 * @param label
+	 *            the label to look for
+	 * @return true if the label is indexed
+	 */
+	public final boolean contains(int label)
+	{
+		return indexOf(label) >= 0;
+	}
+
+	/**
+	 * @return the number of indexed labels
+	 */
+	public int size()
+	{
+		return labels.length;
+	}
+
+	/**
+	 * @return the array of indexed labels
+	 */
+	public int[] getLabels()
+	{
+		return labels;
+	}
+
+
+	// ==============================================================
+	// Bulk methods
+
+	/**
+	 * Counts the number of pixels of each label within a planar label image.
+	 *
+	 * @param image
+	 *            a planar label image
+	 * @return an array with as many elements as the number of labels,
+	 *         containing the number of pixels of each label
+	 */
+	public int[] pixelCount(ImageProcessor image)
+	{
+		int[] counts = new int[labels.length];
+		int nPixels = image.getWidth() * image.getHeight();
+		for (int i = 0; i < nPixels; i++)
+		{
+			int index = indexOf(LabelImages.getLabel(image, i));
+			if (index >= 0)
+				counts[index]++;
+		}
+		return counts;
+	}
+
+	/**
+	 * Counts the number of voxels of each label within a 3D label image.
+	 *
+	 * @param image
+	 *            a 3D label image
+	 * @return an array with as many elements as the number of labels,
+	 *         containing the number of voxels of each label
+	 */
+	public int[] voxelCount(ImageStack image)
+	{
+		int[] counts = new int[labels.length];
+		int nPixels = image.getWidth() * image.getHeight();
+		int sizeZ = image.getSize();
+		for (int z = 0; z < sizeZ; z++)
+		{
+			IJ.showProgress(z, sizeZ);
+			ImageProcessor slice = image.getProcessor(z + 1);
+			for (int i = 0; i < nPixels; i++)
+			{
+				int index = indexOf(LabelImages.getLabel(slice, i));
+				if (index >= 0)
+					counts[index]++;
+			}
+		}
+		IJ.showProgress(1, 1);
+		return counts;
+	}
+
+	/**
+	 * Computes the sum of the values of each label within a planar image.
+	 *
+	 * @param labelImage
+	 *            a planar label image
+	 * @param values
+	 *            an image with the same size, containing the values to sum
+	 * @return an array with as many elements as the number of labels,
+	 *         containing the sum of values for each label
+	 */
+	public double[] sum(ImageProcessor labelImage, ImageProcessor values)
+	{
+		double[] sums = new double[labels.length];
+		int nPixels = labelImage.getWidth() * labelImage.getHeight();
+		for (int i = 0; i < nPixels; i++)
+		{
+			int index = indexOf(LabelImages.getLabel(labelImage, i));
+			if (index >= 0)
+				sums[index] += values.getf(i);
+		}
+		return sums;
+	}
+
+	/**
+	 * Computes the sum of the values of each label within a 3D image.
+	 *
+	 * @param labelImage
+	 *            a 3D label image
+	 * @param values
+	 *            a 3D image with the same size, containing the values to sum
+	 * @return an array with as many elements as the number of labels,
+	 *         containing the sum of values for each label
+	 */
+	public double[] sum(ImageStack labelImage, ImageStack values)
+	{
+		double[] sums = new double[labels.length];
+		int nPixels = labelImage.getWidth() * labelImage.getHeight();
+		for (int z = 1; z <= labelImage.getSize(); z++)
+		{
+			ImageProcessor slice = labelImage.getProcessor(z);
+			ImageProcessor valueSlice = values.getProcessor(z);
+			for (int i = 0; i < nPixels; i++)
+			{
+				int index = indexOf(LabelImages.getLabel(slice, i));
+				if (index >= 0)
+					sums[index] += valueSlice.getf(i);
+			}
+		}
+		return sums;
+	}
+
+	/**
+	 * Computes the bounding box of each label within a planar label image.
+	 * For labels not found in the image, the minimum bounds are set to
+	 * Integer.MAX_VALUE and the maximum bounds to Integer.MIN_VALUE.
+	 *
+	 * @param image
+	 *            a planar label image
+	 * @return an array with as many rows as the number of labels, containing
+	 *         for each label the values xmin, xmax, ymin, ymax (inclusive)
+	 */
+	public int[][] boundingBoxes(ImageProcessor image)
+	{
+		int nLabels = labels.length;
+		int[][] boxes = new int[nLabels][];
+		for (int i = 0; i < nLabels; i++)
+		{
+			boxes[i] = new int[] { Integer.MAX_VALUE, Integer.MIN_VALUE,
+					Integer.MAX_VALUE, Integer.MIN_VALUE };
+		}
+
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+		for (int y = 0; y < sizeY; y++)
+		{
+			for (int x = 0; x < sizeX; x++)
+			{
+				int index = indexOf(LabelImages.getLabel(image, x, y));
+				if (index < 0)
+					continue;
+				int[] box = boxes[index];
+				if (x < box[0]) box[0] = x;
+				if (x > box[1]) box[1] = x;
+				if (y < box[2]) box[2] = y;
+				if (y > box[3]) box[3] = y;
+			}
+		}
+		return boxes;
+	}
+
+	/**
+	 * Computes the bounding box of each label within a 3D label image. For
+	 * labels not found in the image, the minimum bounds are set to
+	 * Integer.MAX_VALUE and the maximum bounds to Integer.MIN_VALUE.
+	 *
+	 * @param image
+	 *            a 3D label image
+	 * @return an array with as many rows as the number of labels, containing
+	 *         for each label the values xmin, xmax, ymin, ymax, zmin, zmax
+	 *         (inclusive)
+	 */
+	public int[][] boundingBoxes(ImageStack image)
+	{
+		int nLabels = labels.length;
+		int[][] boxes = new int[nLabels][];
+		for (int i = 0; i < nLabels; i++)
+		{
+			boxes[i] = new int[] { Integer.MAX_VALUE, Integer.MIN_VALUE,
+					Integer.MAX_VALUE, Integer.MIN_VALUE,
+					Integer.MAX_VALUE, Integer.MIN_VALUE };
+		}
+
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+		int sizeZ = image.getSize();
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor slice = image.getProcessor(z + 1);
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					int index = indexOf(LabelImages.getLabel(slice, x, y));
+					if (index < 0)
+						continue;
+					int[] box = boxes[index];
+					if (x < box[0]) box[0] = x;
+					if (x > box[1]) box[1] = x;
+					if (y < box[2]) box[2] = y;
+					if (y > box[3]) box[3] = y;
+					if (z < box[4]) box[4] = z;
+					if (z > box[5]) box[5] = z;
+				}
+			}
+		}
+		return boxes;
+	}
+}
@@ -0,0 +1,491 @@
+/**
+ *
+ */
+package inra.ijpb.label;
+
+import ij.ImageStack;
+import ij.Prefs;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.util.ThreadUtil;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Changes the labels of a label image according to a mapping between old and
+ * new label values. The mapping is built once, then applied to all pixels or
+ * voxels by several threads, each thread processing a block of rows or a set
+ * of slices. For 8- and 16-bits images, the mapping is first expanded into a
+ * look-up table over the whole range of pixel values, such that each pixel is
+ * processed with a single array access.
+ *
+ * Labels that are not specified in the mapping are either kept unchanged, or
+ * replaced by the background value 0, depending on the type of mapping.
+ *
+ * Example of use:
+ * <pre><code>
+ * // merges labels 3 and 4 into label 2, keeps other labels
+ * LabelMapping mapping = LabelMapping.replace(new int[]{3, 4}, 2);
+ * mapping.applyInPlace(labelImage);
+ * </code></pre>
+ *
+ * @see LabelImages#removeLabels(ImageProcessor, int[], int)
+ * @see LabelImages#keepLabels(ImageProcessor, int[])
+ * @see LabelImages#remapLabels(ImageProcessor)
+ *
+ * @author David Legland
+ *
+ */
+public class LabelMapping
+{
+	// ==============================================================
+	// Class variables
+
+	/** The index of the labels that are modified by the mapping */
+	LabelIndex index;
+
+	/** The new value of each label, in the same order as the index */
+	int[] newLabels;
+
+	/**
+	 * If true, the labels not contained in the mapping are kept unchanged,
+	 * otherwise they are replaced by 0.
+	 */
+	boolean keepOthers;
+
+	/**
+	 * If true, the values of floating point images are mapped only if they
+	 * are exactly equal to a label, otherwise they are truncated to integer.
+	 */
+	boolean exactValues = false;
+
+
+	// ==============================================================
+	// Constructors
+
+	/**
+	 * Creates a new mapping between labels.
+	 *
+	 * @param labels
+	 *            the labels to modify
+	 * @param newLabels
+	 *            the new value of each label
+	 * @param keepOthers
+	 *            if true, the labels not contained in the mapping are kept
+	 *            unchanged, otherwise they are replaced by 0
+	 */
+	public LabelMapping(int[] labels, int[] newLabels, boolean keepOthers)
+	{
+		if (labels.length != newLabels.length)
+		{
+			throw new IllegalArgumentException("Label arrays must have the same length");
+		}
+		this.index = new LabelIndex(labels);
+		this.newLabels = newLabels;
+		this.keepOthers = keepOthers;
+	}
+
+	/**
+	 * Creates a mapping that replaces all the specified labels by a new
+	 * value, and keeps the other labels unchanged.
+	 *
+	 * @param labels
+	 *            the labels to replace
+	 * @param newLabel
+	 *            the new value of the labels
+	 * @return a new mapping
+	 */
+	public static final LabelMapping replace(int[] labels, int newLabel)
+	{
+		int[] newLabels = new int[labels.length];
+		for (int i = 0; i < labels.length; i++)
+		{
+			newLabels[i] = newLabel;
+		}
+		return new LabelMapping(labels, newLabels, true);
+	}
+
+	/**
+	 * Creates a mapping that keeps only the specified labels, and replaces the
+	 * other labels by 0.
+	 *
+	 * @param labels
+	 *            the labels to keep
+	 * @return a new mapping
+	 */
+	public static final LabelMapping keep(int[] labels)
+	{
+		return new LabelMapping(labels, labels, false);
+	}
+
+	/**
+	 * Creates a mapping that associates the specified labels to the
+	 * consecutive values 1 to N, in the order of the array.
+	 *
+	 * @param labels
+	 *            the labels present in the image, usually in increasing order
+	 * @return a new mapping
+	 */
+	public static final LabelMapping consecutive(int[] labels)
+	{
+		int[] newLabels = new int[labels.length];
+		for (int i = 0; i < labels.length; i++)
+		{
+			newLabels[i] = i + 1;
+		}
+		return new LabelMapping(labels, newLabels, false);
+	}
+
+
+	// ==============================================================
+	// Methods
+
+	/**
+	 * Returns the new value of a label.
+	 *
+	 * @param label
+	 *            the label to map
+	 * @return the new value of the label
+	 */
+	public final int map(int label)
+	{
+		int i = index.indexOf(label);
+		if (i >= 0)
+			return newLabels[i];
+		return keepOthers ? label : 0;
+	}
+
+	/**
+	 * Applies the mapping by directly modifying the values of a planar label
+	 * image.
+	 *
+	 * @param image
+	 *            the label image to modify
+	 */
+	public void applyInPlace(ImageProcessor image)
+	{
+		ImageProcessor[] slices = new ImageProcessor[] { image };
+		process(slices, slices, new MappingOperator(this, image.getBitDepth()));
+		LabelStatistics.invalidate(image);
+	}
+
+	/**
+	 * Applies the mapping by directly modifying the values of a 3D label
+	 * image.
+	 *
+	 * @param image
+	 *            the label image to modify
+	 */
+	public void applyInPlace(ImageStack image)
+	{
+		ImageProcessor[] slices = getSlices(image);
+		process(slices, slices, new MappingOperator(this, image.getBitDepth()));
+		LabelStatistics.invalidate(image);
+	}
+
+	/**
+	 * Applies the mapping to a planar label image, and returns the result in
+	 * a new image with the same type.
+	 *
+	 * @param image
+	 *            the label image
+	 * @return a new label image with the mapped labels
+	 */
+	public ImageProcessor apply(ImageProcessor image)
+	{
+		ImageProcessor result = image.createProcessor(image.getWidth(), image.getHeight());
+		process(new ImageProcessor[] { image }, new ImageProcessor[] { result },
+				new MappingOperator(this, image.getBitDepth()));
+		return result;
+	}
+
+	/**
+	 * Applies the mapping to a 3D label image, and returns the result in a
+	 * new image with the same type.
+	 *
+	 * @param image
+	 *            the 3D label image
+	 * @return a new 3D label image with the mapped labels
+	 */
+	public ImageStack apply(ImageStack image)
+	{
+		ImageStack result = ImageStack.create(image.getWidth(), image.getHeight(),
+				image.getSize(), image.getBitDepth());
+		process(getSlices(image), getSlices(result),
+				new MappingOperator(this, image.getBitDepth()));
+		return result;
+	}
+
+
+	// ==============================================================
+	// Static methods for mapping labels to values
+
+	/**
+	 * Creates a new image containing for each pixel the value associated to
+	 * its label. Background pixels are set to NaN.
+	 *
+	 * @param image
+	 *            a planar label image
+	 * @param labels
+	 *            the labels of the image
+	 * @param values
+	 *            the value associated to each label
+	 * @return a new FloatProcessor containing the value of each pixel
+	 */
+	public static final FloatProcessor mapValues(ImageProcessor image, int[] labels, double[] values)
+	{
+		FloatProcessor result = new FloatProcessor(image.getWidth(), image.getHeight());
+		process(new ImageProcessor[] { image }, new ImageProcessor[] { result },
+				new ValueOperator(new LabelIndex(labels), values, image.getBitDepth()));
+		return result;
+	}
+
+	/**
+	 * Creates a new 3D image containing for each voxel the value associated
+	 * to its label. Background voxels are set to NaN.
+	 *
+	 * @param image
+	 *            a 3D label image
+	 * @param labels
+	 *            the labels of the image
+	 * @param values
+	 *            the value associated to each label
+	 * @return a new 32-bits image containing the value of each voxel
+	 */
+	public static final ImageStack mapValues(ImageStack image, int[] labels, double[] values)
+	{
+		ImageStack result = ImageStack.create(image.getWidth(), image.getHeight(),
+				image.getSize(), 32);
+		process(getSlices(image), getSlices(result),
+				new ValueOperator(new LabelIndex(labels), values, image.getBitDepth()));
+		return result;
+	}
+
+
+	// ==============================================================
+	// Parallel processing
+
+	private static final ImageProcessor[] getSlices(ImageStack image)
+	{
+		int nSlices = image.getSize();
+		ImageProcessor[] slices = new ImageProcessor[nSlices];
+		for (int z = 0; z < nSlices; z++)
+		{
+			slices[z] = image.getProcessor(z + 1);
+		}
+		return slices;
+	}
+
+	/**
+	 * Applies an operator to all the pixels of the source slices, using
+	 * several threads. When there are fewer slices than threads, the slices
+	 * are split into blocks of rows.
+	 */
+	private static final void process(final ImageProcessor[] sources,
+			final ImageProcessor[] targets, final RangeOperator op)
+	{
+		final int nSlices = sources.length;
+		final int sizeX = sources[0].getWidth();
+		final int sizeY = sources[0].getHeight();
+
+		int nThreads = Math.max(Prefs.getThreads(), 1);
+		final int nBlocks = nSlices >= nThreads ? 1 : Math.max(Math.min(4 * nThreads / nSlices, sizeY), 1);
+		final int blockSize = (int) Math.ceil((double) sizeY / nBlocks);
+		final int nTasks = nSlices * nBlocks;
+		final AtomicInteger ai = new AtomicInteger(0);
+
+		Thread[] threads = ThreadUtil.createThreadArray(Math.min(nThreads, nTasks));
+		for (int ithread = 0; ithread < threads.length; ithread++)
+		{
+			threads[ithread] = new Thread()
+			{
+				public void run()
+				{
+					for (int k = ai.getAndIncrement(); k < nTasks; k = ai.getAndIncrement())
+					{
+						int z = k / nBlocks;
+						int y0 = (k % nBlocks) * blockSize;
+						int y1 = Math.min(y0 + blockSize, sizeY);
+						if (y0 < y1)
+						{
+							op.process(sources[z], targets[z], y0 * sizeX, y1 * sizeX);
+						}
+					}
+				}
+			};
+		}
+		ThreadUtil.startAndJoin(threads);
+	}
+
+	/**
+	 * Processes the pixels of a slice within a range of pixel indices.
+	 */
+	private static interface RangeOperator
+	{
+		public void process(ImageProcessor source, ImageProcessor target, int from, int to);
+	}
+
+	/**
+	 * Applies an integer label mapping.
+	 */
+	private static class MappingOperator implements RangeOperator
+	{
+		LabelMapping mapping;
+
+		/** The mapping expanded over all values, for 8- and 16-bits images */
+		int[] table = null;
+
+		MappingOperator(LabelMapping mapping, int bitDepth)
+		{
+			this.mapping = mapping;
+			if (bitDepth == 8 || bitDepth == 16)
+			{
+				int n = bitDepth == 8 ? 256 : 65536;
+				this.table = new int[n];
+				for (int i = 0; i < n; i++)
+				{
+					this.table[i] = mapping.map(i);
+				}
+			}
+		}
+
+		public void process(ImageProcessor source, ImageProcessor target, int from, int to)
+		{
+			Object src = source.getPixels();
+			Object dst = target.getPixels();
+			if (src instanceof byte[] && dst instanceof byte[])
+			{
+				byte[] s = (byte[]) src;
+				byte[] d = (byte[]) dst;
+				for (int i = from; i < to; i++)
+				{
+					d[i] = (byte) table[s[i] & 0x00FF];
+				}
+			}
+			else if (src instanceof short[] && dst instanceof short[])
+			{
+				short[] s = (short[]) src;
+				short[] d = (short[]) dst;
+				for (int i = from; i < to; i++)
+				{
+					d[i] = (short) table[s[i] & 0x00FFFF];
+				}
+			}
+			else if (src instanceof float[] && dst instanceof float[])
+			{
+				float[] s = (float[]) src;
+				float[] d = (float[]) dst;
+				LabelIndex index = mapping.index;
+				int[] newLabels = mapping.newLabels;
+				boolean keepOthers = mapping.keepOthers;
+				boolean exact = mapping.exactValues;
+				for (int i = from; i < to; i++)
+				{
+					int label = (int) s[i];
+					int idx = index.indexOf(label);
+					if (idx >= 0 && (!exact || label == s[i]))
+						d[i] = newLabels[idx];
+					else
+						d[i] = keepOthers ? s[i] : 0;
+				}
+			}
+			else if (src instanceof int[] && dst instanceof int[])
+			{
+				int[] s = (int[]) src;
+				int[] d = (int[]) dst;
+				for (int i = from; i < to; i++)
+				{
+					d[i] = mapping.map(s[i]);
+				}
+			}
+			else
+			{
+				for (int i = from; i < to; i++)
+				{
+					float value = source.getf(i);
+					int idx = mapping.index.indexOf((int) value);
+					if (idx >= 0)
+						target.setf(i, mapping.newLabels[idx]);
+					else
+						target.setf(i, mapping.keepOthers ? value : 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Associates a floating point value to each label.
+	 */
+	private static class ValueOperator implements RangeOperator
+	{
+		LabelIndex index;
+		double[] values;
+
+		/** The values expanded over all labels, for 8- and 16-bits images */
+		float[] table = null;
+
+		ValueOperator(LabelIndex index, double[] values, int bitDepth)
+		{
+			if (index.size() > values.length)
+			{
+				throw new RuntimeException("Try to access index " + (index.size() - 1)
+						+ " in array with " + values.length + " values");
+			}
+
+			this.index = index;
+			this.values = values;
+			if (bitDepth == 8 || bitDepth == 16)
+			{
+				int n = bitDepth == 8 ? 256 : 65536;
+				this.table = new float[n];
+				for (int i = 0; i < n; i++)
+				{
+					this.table[i] = value(i);
+				}
+			}
+		}
+
+		float value(int label)
+		{
+			int idx = label == 0 ? -1 : index.indexOf(label);
+			return idx < 0 ? Float.NaN : (float) values[idx];
+		}
+
+		public void process(ImageProcessor source, ImageProcessor target, int from, int to)
+		{
+			Object src = source.getPixels();
+			float[] d = (float[]) target.getPixels();
+			if (src instanceof byte[])
+			{
+				byte[] s = (byte[]) src;
+				for (int i = from; i < to; i++)
+				{
+					d[i] = table[s[i] & 0x00FF];
+				}
+			}
+			else if (src instanceof short[])
+			{
+				short[] s = (short[]) src;
+				for (int i = from; i < to; i++)
+				{
+					d[i] = table[s[i] & 0x00FFFF];
+				}
+			}
+			else if (src instanceof int[])
+			{
+				int[] s = (int[]) src;
+				for (int i = from; i < to; i++)
+				{
+					d[i] = value(s[i]);
+				}
+			}
+			else
+			{
+				for (int i = from; i < to; i++)
+				{
+					d[i] = value((int) source.getf(i));
+				}
+			}
+		}
+	}
+}
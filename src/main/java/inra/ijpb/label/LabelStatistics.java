@@ -0,0 +1,643 @@
+/**
+ *
+ */
+package inra.ijpb.label;
+
+import ij.ImageListener;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.data.LongIntHashMap;
+import inra.ijpb.data.image.SlicePrefetcher;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Summary statistics of a label image: the list of labels, the number of
+ * pixels or voxels of each label, and the bounding box of each label. All
+ * statistics are computed during a single pass over the image.
+ *
+ * The statistics of an ImagePlus can be obtained with the
+ * <code>get(ImagePlus)</code> method, that stores the result as a property of
+ * the ImagePlus. Successive label operations applied to the same image (keep
+ * or remove largest label, size opening, crop...) can thus reuse the
+ * statistics instead of scanning the image again. The cached statistics are
+ * discarded when the pixel arrays of the image are replaced, when the image
+ * is updated from ImageJ, or when one of the <code>invalidate()</code>
+ * methods is called. Label operations of this library that modify a
+ * processor or a stack in place call <code>invalidate()</code> on the
+ * modified image, so that statistics of an ImagePlus sharing the same pixel
+ * arrays are not reused.
+ *
+ * Example of use:
+ * <pre><code>
+ * ImagePlus imagePlus = IJ.getImage();
+ * LabelStatistics stats = LabelStatistics.get(imagePlus);
+ * int largest = stats.getLargestLabel();
+ * int[] box = stats.getBoundingBox(largest);
+ * </code></pre>
+ *
+ * @see LabelIndex
+ *
+ * @author David Legland
+ *
+ */
+public class LabelStatistics
+{
+	// ==============================================================
+	// Constants
+
+	/**
+	 * The key used to store the statistics within the properties of an
+	 * ImagePlus.
+	 */
+	public static final String PROPERTY_KEY = "inra.ijpb.label.LabelStatistics";
+
+	/**
+	 * The listener that discards the cached statistics of updated or closed
+	 * images. Registered when statistics are first attached to an ImagePlus.
+	 */
+	private static ImageListener invalidationListener = null;
+
+	/**
+	 * The number of times each pixel array (or virtual stack) was reported as
+	 * modified in place. Arrays never modified are not stored.
+	 */
+	private static final Map<Object, Integer> modificationStamps = new WeakHashMap<Object, Integer>();
+
+
+	// ==============================================================
+	// Class variables
+
+	/** The labels present in the image, in increasing order */
+	int[] labels;
+
+	/** The number of pixels or voxels of each label */
+	int[] counts;
+
+	/**
+	 * The bounding box of each label, given as xmin, xmax, ymin, ymax for
+	 * planar images, and xmin, xmax, ymin, ymax, zmin, zmax for 3D images
+	 * (inclusive bounds).
+	 */
+	int[][] boxes;
+
+	/** The index of each label within the array of labels */
+	LabelIndex index;
+
+	/**
+	 * The dimensions of the image the statistics were computed from.
+	 */
+	int sizeX, sizeY, sizeZ;
+
+	/**
+	 * Weak references to the data arrays (or to the virtual stack) the
+	 * statistics were computed from, used to detect when the content of an
+	 * ImagePlus was replaced.
+	 */
+	WeakReference<?>[] sources;
+
+	/**
+	 * The modification stamps of the data arrays at the time the statistics
+	 * were attached to the image.
+	 */
+	int[] stamps;
+
+
+	// ==============================================================
+	// Constructor
+
+	private LabelStatistics(int[] labels, int[] counts, int[][] boxes)
+	{
+		this.labels = labels;
+		this.counts = counts;
+		this.boxes = boxes;
+		this.index = new LabelIndex(labels);
+	}
+
+
+	// ==============================================================
+	// Static methods
+
+	/**
+	 * Returns the statistics of the label image contained in the specified
+	 * ImagePlus. If valid statistics are stored within the properties of the
+	 * image, they are returned directly. Otherwise, they are computed and
+	 * stored within the image properties.
+	 *
+	 * @param imagePlus
+	 *            an ImagePlus containing a planar or 3D label image
+	 * @return the statistics of the label image
+	 */
+	public static final LabelStatistics get(ImagePlus imagePlus)
+	{
+		Object prop = imagePlus.getProperty(PROPERTY_KEY);
+		if (prop instanceof LabelStatistics)
+		{
+			LabelStatistics stats = (LabelStatistics) prop;
+			if (stats.isValidFor(imagePlus))
+				return stats;
+		}
+
+		LabelStatistics stats;
+		if (imagePlus.getStackSize() == 1)
+			stats = compute(imagePlus.getProcessor());
+		else
+			stats = compute(imagePlus.getStack());
+
+		attach(imagePlus, stats);
+		return stats;
+	}
+
+	/**
+	 * Removes the statistics stored within the properties of the specified
+	 * ImagePlus. This method should be called after the pixel values of the
+	 * image have been modified in place.
+	 *
+	 * @param imagePlus
+	 *            an ImagePlus containing a label image
+	 */
+	public static final void invalidate(ImagePlus imagePlus)
+	{
+		imagePlus.setProperty(PROPERTY_KEY, null);
+	}
+
+	/**
+	 * Marks the pixels of the specified planar image as modified, making the
+	 * statistics of any ImagePlus sharing the same pixel array invalid. This
+	 * method should be called after the pixel values of the image have been
+	 * modified in place.
+	 *
+	 * @param image
+	 *            a planar label image
+	 */
+	public static final void invalidate(ImageProcessor image)
+	{
+		touch(image.getPixels());
+	}
+
+	/**
+	 * Marks the voxels of the specified 3D image as modified, making the
+	 * statistics of any ImagePlus sharing the same slices invalid. This method
+	 * should be called after the voxel values of the image have been modified
+	 * in place.
+	 *
+	 * @param image
+	 *            a 3D label image
+	 */
+	public static final void invalidate(ImageStack image)
+	{
+		if (image.isVirtual())
+		{
+			touch(image);
+			return;
+		}
+
+		int nSlices = image.getSize();
+		for (int z = 0; z < nSlices; z++)
+		{
+			touch(image.getPixels(z + 1));
+		}
+	}
+
+	private static final void touch(Object data)
+	{
+		synchronized (modificationStamps)
+		{
+			Integer stamp = modificationStamps.get(data);
+			modificationStamps.put(data, stamp == null ? 1 : stamp + 1);
+		}
+	}
+
+	private static final int getStamp(Object data)
+	{
+		synchronized (modificationStamps)
+		{
+			Integer stamp = modificationStamps.get(data);
+			return stamp == null ? 0 : stamp;
+		}
+	}
+
+	/**
+	 * Stores the statistics within the properties of an ImagePlus, after
+	 * having updated the references to the image content.
+	 */
+	static final void attach(ImagePlus imagePlus, LabelStatistics stats)
+	{
+		stats.sources = createSources(imagePlus);
+		stats.stamps = new int[stats.sources.length];
+		for (int i = 0; i < stats.sources.length; i++)
+		{
+			stats.stamps[i] = getStamp(stats.sources[i].get());
+		}
+		imagePlus.setProperty(PROPERTY_KEY, stats);
+		registerListener();
+	}
+
+	private static synchronized void registerListener()
+	{
+		if (invalidationListener != null)
+			return;
+
+		invalidationListener = new ImageListener()
+		{
+			public void imageOpened(ImagePlus imp)
+			{
+			}
+
+			public void imageClosed(ImagePlus imp)
+			{
+				invalidate(imp);
+			}
+
+			public void imageUpdated(ImagePlus imp)
+			{
+				invalidate(imp);
+			}
+		};
+		ImagePlus.addImageListener(invalidationListener);
+	}
+
+	private static final WeakReference<?>[] createSources(ImagePlus imagePlus)
+	{
+		if (imagePlus.getStackSize() == 1)
+		{
+			return new WeakReference<?>[] {
+					new WeakReference<Object>(imagePlus.getProcessor().getPixels()) };
+		}
+
+		ImageStack stack = imagePlus.getStack();
+		if (stack.isVirtual())
+		{
+			// do not load all slices, consider only the stack itself
+			return new WeakReference<?>[] { new WeakReference<Object>(stack) };
+		}
+
+		int nSlices = stack.getSize();
+		WeakReference<?>[] refs = new WeakReference<?>[nSlices];
+		for (int z = 0; z < nSlices; z++)
+		{
+			refs[z] = new WeakReference<Object>(stack.getPixels(z + 1));
+		}
+		return refs;
+	}
+
+	/**
+	 * Computes the statistics of a planar label image.
+	 *
+	 * @param image
+	 *            a planar label image
+	 * @return the statistics of the label image
+	 */
+	public static final LabelStatistics compute(ImageProcessor image)
+	{
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+
+		Accumulator acc = new Accumulator(4);
+		for (int y = 0; y < sizeY; y++)
+		{
+			for (int x = 0; x < sizeX; x++)
+			{
+				int label = LabelImages.getLabel(image, x, y);
+				if (label <= 0)
+					continue;
+
+				int[] box = acc.add(label);
+				if (x < box[0]) box[0] = x;
+				if (x > box[1]) box[1] = x;
+				if (y < box[2]) box[2] = y;
+				if (y > box[3]) box[3] = y;
+			}
+		}
+
+		LabelStatistics stats = acc.createStatistics();
+		stats.sizeX = sizeX;
+		stats.sizeY = sizeY;
+		stats.sizeZ = 1;
+		return stats;
+	}
+
+	/**
+	 * Computes the statistics of a 3D label image.
+	 *
+	 * @param image
+	 *            a 3D label image
+	 * @return the statistics of the label image
+	 */
+	public static final LabelStatistics compute(ImageStack image)
+	{
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+		int sizeZ = image.getSize();
+
+		Accumulator acc = new Accumulator(6);
+
+		// slices of virtual stacks are read in advance on another thread
+		SlicePrefetcher prefetcher = image.isVirtual() ? new SlicePrefetcher(image) : null;
+		try
+		{
+			for (int z = 0; z < sizeZ; z++)
+			{
+				ImageProcessor slice = prefetcher != null ? prefetcher.getSlice(z) : image.getProcessor(z + 1);
+				for (int y = 0; y < sizeY; y++)
+				{
+					for (int x = 0; x < sizeX; x++)
+					{
+						int label = LabelImages.getLabel(slice, x, y);
+						if (label <= 0)
+							continue;
+
+						int[] box = acc.add(label);
+						if (x < box[0]) box[0] = x;
+						if (x > box[1]) box[1] = x;
+						if (y < box[2]) box[2] = y;
+						if (y > box[3]) box[3] = y;
+						if (z < box[4]) box[4] = z;
+						if (z > box[5]) box[5] = z;
+					}
+				}
+			}
+		}
+		finally
+		{
+			if (prefetcher != null)
+				prefetcher.close();
+		}
+
+		LabelStatistics stats = acc.createStatistics();
+		stats.sizeX = sizeX;
+		stats.sizeY = sizeY;
+		stats.sizeZ = sizeZ;
+		return stats;
+	}
+
+
+	// ==============================================================
+	// Methods
+
+	/**
+	 * Checks if these statistics were computed from the current content of the
+	 * specified image.
+	 */
+	private boolean isValidFor(ImagePlus imagePlus)
+	{
+		if (imagePlus.getWidth() != sizeX || imagePlus.getHeight() != sizeY
+				|| imagePlus.getStackSize() != sizeZ)
+			return false;
+		if (sources == null || stamps == null)
+			return false;
+
+		WeakReference<?>[] current = createSources(imagePlus);
+		if (current.length != sources.length)
+			return false;
+		for (int i = 0; i < current.length; i++)
+		{
+			Object ref = sources[i].get();
+			if (ref == null || ref != current[i].get())
+				return false;
+			if (getStamp(ref) != stamps[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Creates new statistics obtained after the specified labels have been
+	 * removed from the image. This avoids scanning the image again after an
+	 * operation whose effect on the statistics is known.
+	 *
+	 * @param labelsToRemove
+	 *            the labels removed from the image
+	 * @return the statistics of the image after the labels have been removed
+	 */
+	LabelStatistics removeLabels(int... labelsToRemove)
+	{
+		boolean[] removed = new boolean[labels.length];
+		int nRemoved = 0;
+		for (int label : labelsToRemove)
+		{
+			int i = index.indexOf(label);
+			if (i >= 0 && !removed[i])
+			{
+				removed[i] = true;
+				nRemoved++;
+			}
+		}
+
+		int n = labels.length - nRemoved;
+		int[] labels2 = new int[n];
+		int[] counts2 = new int[n];
+		int[][] boxes2 = new int[n][];
+		for (int i = 0, j = 0; i < labels.length; i++)
+		{
+			if (removed[i])
+				continue;
+			labels2[j] = labels[i];
+			counts2[j] = counts[i];
+			boxes2[j] = boxes[i];
+			j++;
+		}
+
+		LabelStatistics stats = new LabelStatistics(labels2, counts2, boxes2);
+		stats.sizeX = sizeX;
+		stats.sizeY = sizeY;
+		stats.sizeZ = sizeZ;
+		return stats;
+	}
+
+
+	// ==============================================================
+	// Accessors
+
+	/**
+	 * @return the labels present in the image, in increasing order
+	 */
+	public int[] getLabels()
+	{
+		return labels;
+	}
+
+	/**
+	 * @return the number of labels present in the image
+	 */
+	public int size()
+	{
+		return labels.length;
+	}
+
+	/**
+	 * @return the index of each label within the array of labels
+	 */
+	public LabelIndex getLabelIndex()
+	{
+		return index;
+	}
+
+	/**
+	 * @return the number of pixels or voxels of each label, in the same order
+	 *         as the labels
+	 */
+	public int[] getCounts()
+	{
+		return counts;
+	}
+
+	/**
+	 * @param label
+	 *            a label
+	 * @return the number of pixels or voxels of the label, or 0 if the label
+	 *         is not present within the image
+	 */
+	public int getCount(int label)
+	{
+		int i = index.indexOf(label);
+		return i < 0 ? 0 : counts[i];
+	}
+
+	/**
+	 * @return the bounding box of each label, in the same order as the labels
+	 */
+	public int[][] getBoundingBoxes()
+	{
+		return boxes;
+	}
+
+	/**
+	 * Returns the bounding box of the specified label, as an array containing
+	 * xmin, xmax, ymin, ymax (and zmin, zmax for 3D images). Bounds are
+	 * inclusive.
+	 *
+	 * @param label
+	 *            a label
+	 * @return the bounding box of the label, or null if the label is not
+	 *         present within the image
+	 */
+	public int[] getBoundingBox(int label)
+	{
+		int i = index.indexOf(label);
+		return i < 0 ? null : boxes[i];
+	}
+
+	/**
+	 * Returns the label with the largest number of pixels or voxels. In case
+	 * of equality, the smallest label is returned.
+	 *
+	 * @return the largest label, or 0 if the image contains no label
+	 */
+	public int getLargestLabel()
+	{
+		int largest = 0;
+		int maxCount = 0;
+		for (int i = 0; i < labels.length; i++)
+		{
+			if (counts[i] > maxCount)
+			{
+				maxCount = counts[i];
+				largest = labels[i];
+			}
+		}
+		return largest;
+	}
+
+
+	// ==============================================================
+	// Inner class
+
+	/**
+	 * Collects the labels, counts and bounding boxes in a single pass, without
+	 * knowing the labels beforehand.
+	 */
+	private static class Accumulator
+	{
+		int boxSize;
+		LongIntHashMap slots = new LongIntHashMap();
+		int[] labels = new int[16];
+		int[] counts = new int[16];
+		int[][] boxes = new int[16][];
+		int n = 0;
+
+		/** Cache for the last label, as labels often form runs along rows */
+		int lastLabel = 0;
+		int lastSlot = -1;
+
+		Accumulator(int boxSize)
+		{
+			this.boxSize = boxSize;
+		}
+
+		/**
+		 * Increments the count of the label, and returns its bounding box.
+		 */
+		int[] add(int label)
+		{
+			int slot;
+			if (label == lastLabel && lastSlot >= 0)
+			{
+				slot = lastSlot;
+			}
+			else
+			{
+				slot = slots.putIfAbsent(label, n);
+				if (slot == n)
+				{
+					newSlot(label);
+				}
+				lastLabel = label;
+				lastSlot = slot;
+			}
+			counts[slot]++;
+			return boxes[slot];
+		}
+
+		private void newSlot(int label)
+		{
+			if (n == labels.length)
+			{
+				int newSize = n * 2;
+				labels = Arrays.copyOf(labels, newSize);
+				counts = Arrays.copyOf(counts, newSize);
+				boxes = Arrays.copyOf(boxes, newSize);
+			}
+
+			int[] box = new int[boxSize];
+			for (int i = 0; i < boxSize; i += 2)
+			{
+				box[i] = Integer.MAX_VALUE;
+				box[i + 1] = Integer.MIN_VALUE;
+			}
+			labels[n] = label;
+			boxes[n] = box;
+			n++;
+		}
+
+		/**
+		 * Sorts the collected data by increasing label.
+		 */
+		LabelStatistics createStatistics()
+		{
+			// sort packed (label, slot) pairs to retrieve the order of slots
+			long[] keys = new long[n];
+			for (int i = 0; i < n; i++)
+			{
+				keys[i] = ((long) labels[i] << 32) | i;
+			}
+			Arrays.sort(keys);
+
+			int[] labels2 = new int[n];
+			int[] counts2 = new int[n];
+			int[][] boxes2 = new int[n][];
+			for (int i = 0; i < n; i++)
+			{
+				int slot = (int) keys[i];
+				labels2[i] = labels[slot];
+				counts2[i] = counts[slot];
+				boxes2[i] = boxes[slot];
+			}
+			return new LabelStatistics(labels2, counts2, boxes2);
+		}
+	}
+}
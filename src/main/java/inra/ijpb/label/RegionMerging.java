@@ -0,0 +1,639 @@
+/**
+ *
+ */
+package inra.ijpb.label;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
+import inra.ijpb.data.image.IntStackWrapper;
+import inra.ijpb.data.LongIntHashMap;
+import inra.ijpb.measure.RegionContacts;
+
+import java.util.Arrays;
+
+/**
+ * Merges adjacent regions of an over-segmented label image, based on the
+ * values of an intensity image (typically a gradient image) along the
+ * contacts between regions.
+ *
+ * The algorithm first computes the weighted region adjacency graph of the
+ * label image using the {@link RegionContacts} class. Edges are then
+ * processed by increasing weight using a mutable priority queue: the two
+ * regions of the edge with the lowest weight are merged as long as this
+ * weight does not exceed the threshold, and the weights of the edges incident
+ * to the merged regions are updated. Merged labels are tracked with a
+ * union-find structure, and the label image is rewritten only once at the
+ * end, using a look-up table. Pixels or voxels located on the contact between
+ * two merged regions (such as watershed lines) are assigned to the merged
+ * region.
+ *
+ * Example of use:
+ * <pre><code>
+ * ImageProcessor labels = ...
+ * ImageProcessor gradient = ...
+ * RegionMerging algo = new RegionMerging(RegionMerging.Weight.MEAN, 20);
+ * ImageProcessor result = algo.process(labels, gradient);
+ * </code></pre>
+ *
+ * @see inra.ijpb.measure.RegionContacts
+ *
+ * @author David Legland
+ *
+ */
+public class RegionMerging extends AlgoStub
+{
+	// ==============================================================
+	// Inner enumeration
+
+	/**
+	 * The different ways to compute the weight of the contact between two
+	 * regions from the values along the contact.
+	 */
+	public enum Weight
+	{
+		/** The minimum value along the contact (watershed-line minimum) */
+		MINIMUM,
+		/** The mean value along the contact */
+		MEAN;
+	}
+
+
+	// ==============================================================
+	// class variables
+
+	/** The type of weight computed for each contact */
+	Weight weight = Weight.MEAN;
+
+	/** The largest weight of the edges that can be merged */
+	double threshold;
+
+
+	// ==============================================================
+	// Constructors
+
+	/**
+	 * Creates a new region merging algorithm.
+	 *
+	 * @param weight
+	 *            the type of weight computed for each contact
+	 * @param threshold
+	 *            the largest weight of the contacts that can be merged
+	 */
+	public RegionMerging(Weight weight, double threshold)
+	{
+		this.weight = weight;
+		this.threshold = threshold;
+	}
+
+
+	// ==============================================================
+	// getter and setters
+
+	public Weight getWeight()
+	{
+		return weight;
+	}
+
+	public void setWeight(Weight weight)
+	{
+		this.weight = weight;
+	}
+
+	public double getThreshold()
+	{
+		return threshold;
+	}
+
+	public void setThreshold(double threshold)
+	{
+		this.threshold = threshold;
+	}
+
+
+	// ==============================================================
+	// Processing methods
+
+	/**
+	 * Merges the regions of a 2D or 3D label image.
+	 *
+	 * @param labelPlus
+	 *            an ImagePlus containing a 2D or 3D label image
+	 * @param valuesPlus
+	 *            an ImagePlus containing the values used to compute contact
+	 *            weights
+	 * @return a new ImagePlus containing the label image after merging
+	 */
+	public ImagePlus process(ImagePlus labelPlus, ImagePlus valuesPlus)
+	{
+		String newName = labelPlus.getShortTitle() + "-merged";
+		ImagePlus resultPlus;
+		if (labelPlus.getStackSize() == 1)
+		{
+			ImageProcessor result = process(labelPlus.getProcessor(), valuesPlus.getProcessor());
+			resultPlus = new ImagePlus(newName, result);
+		}
+		else
+		{
+			ImageStack result = process(labelPlus.getStack(), valuesPlus.getStack());
+			resultPlus = new ImagePlus(newName, result);
+		}
+
+		resultPlus.copyScale(labelPlus);
+		return resultPlus;
+	}
+
+	/**
+	 * Merges the regions of a planar label image.
+	 *
+	 * @param labelImage
+	 *            the label image
+	 * @param values
+	 *            the values used to compute contact weights
+	 * @return a new label image where merged regions share the same label
+	 */
+	public ImageProcessor process(ImageProcessor labelImage, ImageProcessor values)
+	{
+		fireStatusChanged(this, "Compute region adjacencies");
+		RegionContacts contacts = RegionContacts.compute(labelImage, values);
+
+		fireStatusChanged(this, "Merge regions");
+		int[] lut = computeMergeLut(contacts, findMaxLabel(labelImage));
+
+		fireStatusChanged(this, "Relabel image");
+		int sizeX = labelImage.getWidth();
+		int sizeY = labelImage.getHeight();
+		ImageProcessor result = labelImage.createProcessor(sizeX, sizeY);
+		for (int y = 0; y < sizeY; y++)
+		{
+			for (int x = 0; x < sizeX; x++)
+			{
+				int label = LabelImages.getLabel(labelImage, x, y);
+				if (label != 0)
+				{
+					LabelImages.setLabel(result, x, y, lut[label]);
+					continue;
+				}
+
+				// fill contact pixels between merged regions
+				int firstLabel = 0;
+				int newLabel = 0;
+				int nLabels = 0;
+				for (int k = 0; k < 4; k++)
+				{
+					int x2 = x + (k == 0 ? -1 : (k == 1 ? 1 : 0));
+					int y2 = y + (k == 2 ? -1 : (k == 3 ? 1 : 0));
+					if (x2 < 0 || y2 < 0 || x2 >= sizeX || y2 >= sizeY)
+						continue;
+					int label2 = LabelImages.getLabel(labelImage, x2, y2);
+					if (label2 == 0 || label2 == firstLabel)
+						continue;
+					if (newLabel == 0)
+					{
+						newLabel = lut[label2];
+						firstLabel = label2;
+						nLabels = 1;
+					}
+					else if (lut[label2] != newLabel)
+					{
+						newLabel = -1;
+						break;
+					}
+					else
+					{
+						nLabels++;
+					}
+				}
+				if (newLabel > 0 && nLabels > 1)
+				{
+					LabelImages.setLabel(result, x, y, newLabel);
+				}
+			}
+			fireProgressChanged(this, y, sizeY);
+		}
+		fireProgressChanged(this, 1, 1);
+
+		return result;
+	}
+
+	/**
+	 * Merges the regions of a 3D label image.
+	 *
+	 * @param labelImage
+	 *            the 3D label image
+	 * @param values
+	 *            the values used to compute contact weights
+	 * @return a new 3D label image where merged regions share the same label
+	 */
+	public ImageStack process(ImageStack labelImage, ImageStack values)
+	{
+		fireStatusChanged(this, "Compute region adjacencies");
+		RegionContacts contacts = RegionContacts.compute(labelImage, values);
+
+		fireStatusChanged(this, "Merge regions");
+		int[] lut = computeMergeLut(contacts, findMaxLabel(labelImage));
+
+		fireStatusChanged(this, "Relabel image");
+		int sizeX = labelImage.getWidth();
+		int sizeY = labelImage.getHeight();
+		int sizeZ = labelImage.getSize();
+		ImageStack result = labelImage.getBitDepth() == 24
+				? IntStackWrapper.createStack(sizeX, sizeY, sizeZ)
+				: ImageStack.create(sizeX, sizeY, sizeZ, labelImage.getBitDepth());
+
+		// labels are accessed through wrappers, to process int labels exactly
+		Image3D labels = Images3D.createWrapper(labelImage);
+		Image3D resLabels = Images3D.createWrapper(result);
+
+		int[][] shifts = new int[][] { { -1, 0, 0 }, { 1, 0, 0 }, { 0, -1, 0 },
+				{ 0, 1, 0 }, { 0, 0, -1 }, { 0, 0, 1 } };
+
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					int label = labels.get(x, y, z);
+					if (label != 0)
+					{
+						resLabels.set(x, y, z, lut[label]);
+						continue;
+					}
+
+					// fill contact voxels between merged regions
+					int firstLabel = 0;
+					int newLabel = 0;
+					int nLabels = 0;
+					for (int[] shift : shifts)
+					{
+						int x2 = x + shift[0];
+						int y2 = y + shift[1];
+						int z2 = z + shift[2];
+						if (x2 < 0 || y2 < 0 || z2 < 0 || x2 >= sizeX || y2 >= sizeY || z2 >= sizeZ)
+							continue;
+						int label2 = labels.get(x2, y2, z2);
+						if (label2 == 0 || label2 == firstLabel)
+							continue;
+						if (newLabel == 0)
+						{
+							newLabel = lut[label2];
+							firstLabel = label2;
+							nLabels = 1;
+						}
+						else if (lut[label2] != newLabel)
+						{
+							newLabel = -1;
+							break;
+						}
+						else
+						{
+							nLabels++;
+						}
+					}
+					if (newLabel > 0 && nLabels > 1)
+					{
+						resLabels.set(x, y, z, newLabel);
+					}
+				}
+			}
+			fireProgressChanged(this, z, sizeZ);
+		}
+		fireProgressChanged(this, 1, 1);
+
+		return result;
+	}
+
+	/**
+	 * Computes the look-up table that associates each label to the label of
+	 * the merged region it belongs to. The label of a merged region is the
+	 * smallest label of the regions that compose it.
+	 *
+	 * @param contacts
+	 *            the contacts between regions, with values statistics
+	 * @param maxLabel
+	 *            the largest label within the image
+	 * @return an array of size maxLabel + 1 containing the new label of each
+	 *         original label
+	 */
+	public int[] computeMergeLut(RegionContacts contacts, int maxLabel)
+	{
+		int nEdges = contacts.size();
+
+		// copy edge statistics, that will be updated during merges
+		int[] sources = new int[nEdges];
+		int[] targets = new int[nEdges];
+		int[] counts = new int[nEdges];
+		double[] sums = new double[nEdges];
+		double[] mins = new double[nEdges];
+		boolean[] alive = new boolean[nEdges];
+
+		// the incident edges of each region
+		int[][] regionEdges = new int[maxLabel + 1][];
+		int[] regionEdgeCounts = new int[maxLabel + 1];
+
+		// the map from pairs of labels to edge indices
+		LongIntHashMap edgeMap = new LongIntHashMap(nEdges);
+
+		IndexedMinHeap heap = new IndexedMinHeap(nEdges);
+		for (int i = 0; i < nEdges; i++)
+		{
+			sources[i] = contacts.getLabel1(i);
+			targets[i] = contacts.getLabel2(i);
+			counts[i] = contacts.getContactSize(i);
+			sums[i] = contacts.getMeanValue(i) * counts[i];
+			mins[i] = contacts.getMinValue(i);
+			alive[i] = true;
+			addEdge(regionEdges, regionEdgeCounts, sources[i], i);
+			addEdge(regionEdges, regionEdgeCounts, targets[i], i);
+			edgeMap.put(RegionContacts.pairKey(sources[i], targets[i]), i);
+			heap.add(i, computeWeight(counts[i], sums[i], mins[i]));
+		}
+
+		// initialize union-find parents, and the smallest label of each
+		// merged region
+		int[] parents = new int[maxLabel + 1];
+		int[] minLabels = new int[maxLabel + 1];
+		for (int i = 0; i <= maxLabel; i++)
+		{
+			parents[i] = i;
+			minLabels[i] = i;
+		}
+
+		// iterate merges by increasing edge weight
+		int nMerges = 0;
+		while (!heap.isEmpty() && heap.minKey() <= this.threshold)
+		{
+			int edge = heap.poll();
+			alive[edge] = false;
+
+			// keep the region with the most edges as root of merged region, 
+			// such that the smallest edge list is transferred
+			int root = sources[edge];
+			int other = targets[edge];
+			if (regionEdgeCounts[other] > regionEdgeCounts[root])
+			{
+				root = targets[edge];
+				other = sources[edge];
+			}
+			parents[other] = root;
+			minLabels[root] = Math.min(minLabels[root], minLabels[other]);
+			nMerges++;
+
+			// transfer incident edges of the other region to the root region
+			int nOtherEdges = regionEdgeCounts[other];
+			int[] otherEdges = regionEdges[other];
+			for (int k = 0; k < nOtherEdges; k++)
+			{
+				int e = otherEdges[k];
+				if (!alive[e])
+					continue;
+
+				int neigh = sources[e] == other ? targets[e] : sources[e];
+				int existing = edgeMap.get(RegionContacts.pairKey(root, neigh), -1);
+				if (existing >= 0 && alive[existing] && isEdgeBetween(sources, targets, existing, root, neigh))
+				{
+					// merge statistics into the existing edge
+					counts[existing] += counts[e];
+					sums[existing] += sums[e];
+					mins[existing] = Math.min(mins[existing], mins[e]);
+					alive[e] = false;
+					heap.remove(e);
+					heap.update(existing, computeWeight(counts[existing], sums[existing], mins[existing]));
+				}
+				else
+				{
+					// reconnect the edge to the root region
+					if (sources[e] == other)
+						sources[e] = root;
+					else
+						targets[e] = root;
+					edgeMap.put(RegionContacts.pairKey(root, neigh), e);
+					addEdge(regionEdges, regionEdgeCounts, root, e);
+				}
+			}
+			regionEdges[other] = null;
+			regionEdgeCounts[other] = 0;
+
+			if (nMerges % 1000 == 0)
+			{
+				fireProgressChanged(this, nEdges - heap.size(), nEdges);
+			}
+		}
+
+		// compute the final label of each region
+		int[] lut = new int[maxLabel + 1];
+		for (int i = 0; i <= maxLabel; i++)
+		{
+			int root = i;
+			while (parents[root] != root)
+			{
+				root = parents[root];
+			}
+			lut[i] = minLabels[root];
+
+			// path compression
+			int label = i;
+			while (parents[label] != root)
+			{
+				int next = parents[label];
+				parents[label] = root;
+				label = next;
+			}
+		}
+
+		return lut;
+	}
+
+	private double computeWeight(int count, double sum, double min)
+	{
+		switch (this.weight)
+		{
+		case MINIMUM:
+			return min;
+		case MEAN:
+			return sum / count;
+		default:
+			throw new RuntimeException("Unknown weight type: " + this.weight);
+		}
+	}
+
+	private static final boolean isEdgeBetween(int[] sources, int[] targets,
+			int edge, int label1, int label2)
+	{
+		return (sources[edge] == label1 && targets[edge] == label2)
+				|| (sources[edge] == label2 && targets[edge] == label1);
+	}
+
+	private static final void addEdge(int[][] regionEdges, int[] counts, int label, int edge)
+	{
+		int[] edges = regionEdges[label];
+		int n = counts[label];
+		if (edges == null)
+		{
+			edges = new int[4];
+			regionEdges[label] = edges;
+		}
+		else if (n == edges.length)
+		{
+			edges = Arrays.copyOf(edges, n * 2);
+			regionEdges[label] = edges;
+		}
+		edges[n] = edge;
+		counts[label] = n + 1;
+	}
+
+	private static final int findMaxLabel(ImageProcessor image)
+	{
+		int maxLabel = 0;
+		int nPixels = image.getWidth() * image.getHeight();
+		for (int i = 0; i < nPixels; i++)
+		{
+			maxLabel = Math.max(maxLabel, LabelImages.getLabel(image, i));
+		}
+		return maxLabel;
+	}
+
+	private static final int findMaxLabel(ImageStack image)
+	{
+		int maxLabel = 0;
+		for (int z = 1; z <= image.getSize(); z++)
+		{
+			maxLabel = Math.max(maxLabel, findMaxLabel(image.getProcessor(z)));
+		}
+		return maxLabel;
+	}
+
+
+	// ==============================================================
+	// Inner class
+
+	/**
+	 * A binary min-heap of integer indices with double keys, that keeps track
+	 * of the position of each index in order to update or remove entries in
+	 * logarithmic time.
+	 */
+	private static final class IndexedMinHeap
+	{
+		int[] heap;
+		int[] positions;
+		double[] keys;
+		int size = 0;
+
+		IndexedMinHeap(int capacity)
+		{
+			heap = new int[capacity];
+			positions = new int[capacity];
+			keys = new double[capacity];
+			Arrays.fill(positions, -1);
+		}
+
+		boolean isEmpty()
+		{
+			return size == 0;
+		}
+
+		int size()
+		{
+			return size;
+		}
+
+		double minKey()
+		{
+			return keys[heap[0]];
+		}
+
+		void add(int index, double key)
+		{
+			keys[index] = key;
+			heap[size] = index;
+			positions[index] = size;
+			size++;
+			siftUp(size - 1);
+		}
+
+		int poll()
+		{
+			int index = heap[0];
+			removeAt(0);
+			return index;
+		}
+
+		void remove(int index)
+		{
+			int pos = positions[index];
+			if (pos >= 0)
+			{
+				removeAt(pos);
+			}
+		}
+
+		void update(int index, double key)
+		{
+			int pos = positions[index];
+			double oldKey = keys[index];
+			keys[index] = key;
+			if (key < oldKey)
+				siftUp(pos);
+			else
+				siftDown(pos);
+		}
+
+		private void removeAt(int pos)
+		{
+			positions[heap[pos]] = -1;
+			size--;
+			if (pos == size)
+				return;
+
+			// move the last entry to the free position, and restore heap order
+			int moved = heap[size];
+			heap[pos] = moved;
+			positions[moved] = pos;
+			siftUp(pos);
+			if (positions[moved] == pos)
+				siftDown(pos);
+		}
+
+		private void siftUp(int pos)
+		{
+			int index = heap[pos];
+			double key = keys[index];
+			while (pos > 0)
+			{
+				int parent = (pos - 1) >> 1;
+				if (keys[heap[parent]] <= key)
+					break;
+				heap[pos] = heap[parent];
+				positions[heap[pos]] = pos;
+				pos = parent;
+			}
+			heap[pos] = index;
+			positions[index] = pos;
+		}
+
+		private void siftDown(int pos)
+		{
+			int index = heap[pos];
+			double key = keys[index];
+			while (true)
+			{
+				int child = 2 * pos + 1;
+				if (child >= size)
+					break;
+				if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]])
+					child++;
+				if (keys[heap[child]] >= key)
+					break;
+				heap[pos] = heap[child];
+				positions[heap[pos]] = pos;
+				pos = child;
+			}
+			heap[pos] = index;
+			positions[index] = pos;
+		}
+	}
+}
@@ -0,0 +1,536 @@
+/**
+ *
+ */
+package inra.ijpb.label;
+
+import ij.ImageStack;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
+import inra.ijpb.data.image.IntStackWrapper;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * <p>
+ * Run-length encoded representation of a 3D label image. Each row of the
+ * image is represented by the list of its runs, a run being a maximal
+ * sequence of consecutive voxels with the same non-zero label. Background
+ * voxels are not stored.
+ * </p>
+ *
+ * <p>
+ * The encoding is computed in a single pass over the image. Measurements
+ * (voxel count, bounding box, centroid, inertia moments, number of
+ * transitions) are then computed from the runs, making their cost
+ * proportional to the number of runs instead of the number of voxels. This is
+ * especially efficient for sparse label images, containing few regions
+ * within a large background.
+ * </p>
+ *
+ * Example of use:
+ * <pre><code>
+ * ImageStack labelImage = ...
+ * RunLengthLabelImage rle = RunLengthLabelImage.fromStack(labelImage);
+ * int[] labels = rle.findAllLabels();
+ * int[] counts = rle.voxelCount(labels);
+ * double[][] centroids = rle.centroids(labels);
+ * ImageStack result = rle.toStack(16);
+ * </code></pre>
+ *
+ * @see LabelIndex
+ *
+ * @author David Legland
+ *
+ */
+public class RunLengthLabelImage
+{
+	// ==============================================================
+	// Class variables
+
+	/** The size of the image in the X direction */
+	int sizeX;
+	/** The size of the image in the Y direction */
+	int sizeY;
+	/** The size of the image in the Z direction */
+	int sizeZ;
+
+	/**
+	 * The index of the first run of each row, with an additional element for
+	 * the end of the last row. The runs of the row (y,z) have indices between
+	 * rowStarts[z * sizeY + y] (inclusive) and rowStarts[z * sizeY + y + 1]
+	 * (exclusive).
+	 */
+	int[] rowStarts;
+
+	/** The x-coordinate of the first voxel of each run */
+	int[] runStarts;
+	/** The number of voxels of each run */
+	int[] runLengths;
+	/** The label of each run */
+	int[] runLabels;
+
+	/** The number of runs */
+	int runCount;
+
+
+	// ==============================================================
+	// Static factories
+
+	/**
+	 * Computes the run-length encoding of a 3D label image.
+	 *
+	 * @param image
+	 *            a 3D label image
+	 * @return the run-length encoded label image
+	 */
+	public static final RunLengthLabelImage fromStack(ImageStack image)
+	{
+		return fromImage(Images3D.createWrapper(image));
+	}
+
+	/**
+	 * Computes the run-length encoding of a 3D label image.
+	 *
+	 * @param image
+	 *            a 3D label image
+	 * @return the run-length encoded label image
+	 */
+	public static final RunLengthLabelImage fromImage(Image3D image)
+	{
+		int sizeX = image.getSizeX();
+		int sizeY = image.getSizeY();
+		int sizeZ = image.getSizeZ();
+		RunLengthLabelImage result = new RunLengthLabelImage(sizeX, sizeY, sizeZ);
+
+		double[] line = new double[sizeX];
+		int row = 0;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++, row++)
+			{
+				result.rowStarts[row] = result.runCount;
+				image.getLineX(y, z, line);
+
+				int x = 0;
+				while (x < sizeX)
+				{
+					int label = (int) line[x];
+					if (label == 0)
+					{
+						x++;
+						continue;
+					}
+
+					// find the end of the run
+					int x0 = x;
+					while (x < sizeX && (int) line[x] == label)
+						x++;
+					result.addRun(x0, x - x0, label);
+				}
+			}
+		}
+		result.rowStarts[row] = result.runCount;
+
+		return result;
+	}
+
+
+	// ==============================================================
+	// Constructor
+
+	/**
+	 * Creates a new empty run-length label image.
+	 */
+	private RunLengthLabelImage(int sizeX, int sizeY, int sizeZ)
+	{
+		if ((long) sizeY * sizeZ >= Integer.MAX_VALUE)
+		{
+			throw new IllegalArgumentException("Image has too many rows");
+		}
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.sizeZ = sizeZ;
+
+		this.rowStarts = new int[sizeY * sizeZ + 1];
+		int capacity = 256;
+		this.runStarts = new int[capacity];
+		this.runLengths = new int[capacity];
+		this.runLabels = new int[capacity];
+	}
+
+	private void addRun(int x0, int length, int label)
+	{
+		if (runCount == runStarts.length)
+		{
+			int capacity = runCount * 2;
+			runStarts = Arrays.copyOf(runStarts, capacity);
+			runLengths = Arrays.copyOf(runLengths, capacity);
+			runLabels = Arrays.copyOf(runLabels, capacity);
+		}
+		runStarts[runCount] = x0;
+		runLengths[runCount] = length;
+		runLabels[runCount] = label;
+		runCount++;
+	}
+
+
+	// ==============================================================
+	// Conversion methods
+
+	/**
+	 * Converts this run-length encoded image into a new ImageStack.
+	 *
+	 * @param bitDepth
+	 *            the bit depth of the result stack (8, 16, 24 or 32). A bit
+	 *            depth of 24 stores the labels as int values.
+	 * @return a new ImageStack containing the label of each voxel
+	 */
+	public ImageStack toStack(int bitDepth)
+	{
+		ImageStack result = bitDepth == 24 ? IntStackWrapper.createStack(sizeX, sizeY, sizeZ)
+				: ImageStack.create(sizeX, sizeY, sizeZ, bitDepth);
+		Image3D image = Images3D.createWrapper(result);
+
+		for (int row = 0; row < sizeY * sizeZ; row++)
+		{
+			int offset = row * sizeX;
+			for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++)
+			{
+				int index = offset + runStarts[i];
+				int label = runLabels[i];
+				for (int n = 0; n < runLengths[i]; n++)
+				{
+					image.setValue(index + n, label);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the label of a voxel, by searching within the runs of the
+	 * corresponding row.
+	 *
+	 * @param x
+	 *            the x-coordinate of the voxel
+	 * @param y
+	 *            the y-coordinate of the voxel
+	 * @param z
+	 *            the z-coordinate of the voxel
+	 * @return the label of the voxel, or 0 for background voxels
+	 */
+	public int get(int x, int y, int z)
+	{
+		int row = z * sizeY + y;
+		int lo = rowStarts[row];
+		int hi = rowStarts[row + 1] - 1;
+
+		// binary search of the last run starting before x
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (runStarts[mid] <= x)
+				lo = mid + 1;
+			else
+				hi = mid - 1;
+		}
+		if (hi >= rowStarts[row] && x < runStarts[hi] + runLengths[hi])
+			return runLabels[hi];
+		return 0;
+	}
+
+
+	// ==============================================================
+	// Measurement methods
+
+	/**
+	 * Returns the set of unique labels within the image, excluding the
+	 * background.
+	 *
+	 * @return the sorted list of labels present in image
+	 */
+	public int[] findAllLabels()
+	{
+		TreeSet<Integer> labels = new TreeSet<Integer>();
+		int previous = 0;
+		for (int i = 0; i < runCount; i++)
+		{
+			// avoid boxing for successive runs with same label
+			if (runLabels[i] != previous)
+			{
+				previous = runLabels[i];
+				labels.add(previous);
+			}
+		}
+
+		int[] array = new int[labels.size()];
+		int i = 0;
+		for (int label : labels)
+			array[i++] = label;
+		return array;
+	}
+
+	/**
+	 * Counts the number of voxels of each label.
+	 *
+	 * @param labels
+	 *            the labels to process
+	 * @return an array with as many elements as the number of labels,
+	 *         containing the number of voxels of each label
+	 */
+	public int[] voxelCount(int[] labels)
+	{
+		LabelIndex labelIndex = new LabelIndex(labels);
+		int[] counts = new int[labels.length];
+		for (int i = 0; i < runCount; i++)
+		{
+			int index = labelIndex.indexOf(runLabels[i]);
+			if (index >= 0)
+				counts[index] += runLengths[i];
+		}
+		return counts;
+	}
+
+	/**
+	 * Computes the bounding box of each label. For labels not found in the
+	 * image, the minimum bounds are set to Integer.MAX_VALUE and the maximum
+	 * bounds to Integer.MIN_VALUE.
+	 *
+	 * @param labels
+	 *            the labels to process
+	 * @return an array with as many rows as the number of labels, containing
+	 *         for each label the values xmin, xmax, ymin, ymax, zmin, zmax
+	 *         (inclusive)
+	 */
+	public int[][] boundingBoxes(int[] labels)
+	{
+		LabelIndex labelIndex = new LabelIndex(labels);
+		int nLabels = labels.length;
+		int[][] boxes = new int[nLabels][];
+		for (int i = 0; i < nLabels; i++)
+		{
+			boxes[i] = new int[] { Integer.MAX_VALUE, Integer.MIN_VALUE,
+					Integer.MAX_VALUE, Integer.MIN_VALUE,
+					Integer.MAX_VALUE, Integer.MIN_VALUE };
+		}
+
+		for (int row = 0; row < sizeY * sizeZ; row++)
+		{
+			int y = row % sizeY;
+			int z = row / sizeY;
+			for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++)
+			{
+				int index = labelIndex.indexOf(runLabels[i]);
+				if (index < 0)
+					continue;
+
+				int x0 = runStarts[i];
+				int x1 = x0 + runLengths[i] - 1;
+				int[] box = boxes[index];
+				if (x0 < box[0]) box[0] = x0;
+				if (x1 > box[1]) box[1] = x1;
+				if (y < box[2]) box[2] = y;
+				if (y > box[3]) box[3] = y;
+				if (z < box[4]) box[4] = z;
+				if (z > box[5]) box[5] = z;
+			}
+		}
+		return boxes;
+	}
+
+	/**
+	 * Computes the centroid of each label, in voxel coordinates.
+	 *
+	 * @param labels
+	 *            the labels to process
+	 * @return the centroid of each label, as an array of double[3]
+	 */
+	public double[][] centroids(int[] labels)
+	{
+		LabelIndex labelIndex = new LabelIndex(labels);
+		int nLabels = labels.length;
+		int[] counts = new int[nLabels];
+		double[][] centroids = new double[nLabels][3];
+
+		for (int row = 0; row < sizeY * sizeZ; row++)
+		{
+			int y = row % sizeY;
+			int z = row / sizeY;
+			for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++)
+			{
+				int index = labelIndex.indexOf(runLabels[i]);
+				if (index < 0)
+					continue;
+
+				// the sum of x-coordinates over the run
+				int n = runLengths[i];
+				double sumX = n * (runStarts[i] + (n - 1) * .5);
+				centroids[index][0] += sumX;
+				centroids[index][1] += (double) y * n;
+				centroids[index][2] += (double) z * n;
+				counts[index] += n;
+			}
+		}
+
+		for (int i = 0; i < nLabels; i++)
+		{
+			centroids[i][0] /= counts[i];
+			centroids[i][1] /= counts[i];
+			centroids[i][2] /= counts[i];
+		}
+		return centroids;
+	}
+
+	/**
+	 * Computes the centroid and the centered second order moments of each
+	 * label, taking into account the spatial calibration. The moments are
+	 * normalized by the number of voxels, and correspond to the coefficients
+	 * of the inertia matrix used by the
+	 * {@link inra.ijpb.measure.GeometricMeasures3D#inertiaEllipsoid(ImageStack, int[], double[])}
+	 * method.
+	 *
+	 * @param labels
+	 *            the labels to process
+	 * @param resol
+	 *            the spatial calibration of the image, or null for unit
+	 *            spacing
+	 * @return an array with as many rows as the number of labels, containing
+	 *         for each label the values cx, cy, cz, Ixx, Iyy, Izz, Ixy, Ixz,
+	 *         Iyz
+	 */
+	public double[][] moments(int[] labels, double[] resol)
+	{
+		if (resol == null)
+		{
+			resol = new double[] { 1, 1, 1 };
+		}
+
+		// compute centroids with calibration
+		double[][] centroids = centroids(labels);
+		int nLabels = labels.length;
+		double[][] res = new double[nLabels][9];
+		for (int i = 0; i < nLabels; i++)
+		{
+			res[i][0] = centroids[i][0] * resol[0];
+			res[i][1] = centroids[i][1] * resol[1];
+			res[i][2] = centroids[i][2] * resol[2];
+		}
+
+		LabelIndex labelIndex = new LabelIndex(labels);
+		int[] counts = new int[nLabels];
+		for (int row = 0; row < sizeY * sizeZ; row++)
+		{
+			int y = row % sizeY;
+			int z = row / sizeY;
+			for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++)
+			{
+				int index = labelIndex.indexOf(runLabels[i]);
+				if (index < 0)
+					continue;
+				double[] mom = res[index];
+
+				// coordinates of the first voxel relative to centroid
+				int n = runLengths[i];
+				double x0 = runStarts[i] * resol[0] - mom[0];
+				double y2 = y * resol[1] - mom[1];
+				double z2 = z * resol[2] - mom[2];
+
+				// sum of k and of k^2, for k from 0 to n-1
+				double sumK = (double) n * (n - 1) * .5;
+				double sumK2 = (n - 1) * (double) n * (2 * n - 1) / 6;
+
+				// sums of centered x and of its square over the run
+				double sumX = n * x0 + resol[0] * sumK;
+				double sumX2 = n * x0 * x0 + 2 * x0 * resol[0] * sumK
+						+ resol[0] * resol[0] * sumK2;
+
+				mom[3] += sumX2;
+				mom[4] += n * y2 * y2;
+				mom[5] += n * z2 * z2;
+				mom[6] += sumX * y2;
+				mom[7] += sumX * z2;
+				mom[8] += n * y2 * z2;
+				counts[index] += n;
+			}
+		}
+
+		// normalize by number of voxels in each region
+		for (int i = 0; i < nLabels; i++)
+		{
+			for (int k = 3; k < 9; k++)
+			{
+				res[i][k] /= counts[i];
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Counts the number of transitions between each label and the other
+	 * labels or the background, along the X direction. As runs are maximal,
+	 * each run contributes one transition at each end, except at image
+	 * borders where the transition is counted only if
+	 * <code>countBorder</code> is true.
+	 *
+	 * @param labels
+	 *            the labels to process
+	 * @param countBorder
+	 *            specifies whether the image borders are considered as
+	 *            transitions
+	 * @return the number of transitions of each label along the X direction
+	 */
+	public int[] transitionsX(int[] labels, boolean countBorder)
+	{
+		LabelIndex labelIndex = new LabelIndex(labels);
+		int[] counts = new int[labels.length];
+		for (int i = 0; i < runCount; i++)
+		{
+			int index = labelIndex.indexOf(runLabels[i]);
+			if (index < 0)
+				continue;
+
+			if (countBorder || runStarts[i] > 0)
+				counts[index]++;
+			if (countBorder || runStarts[i] + runLengths[i] < sizeX)
+				counts[index]++;
+		}
+		return counts;
+	}
+
+
+	// ==============================================================
+	// Accessors
+
+	/**
+	 * @return the size of the image in the X direction
+	 */
+	public int getSizeX()
+	{
+		return sizeX;
+	}
+
+	/**
+	 * @return the size of the image in the Y direction
+	 */
+	public int getSizeY()
+	{
+		return sizeY;
+	}
+
+	/**
+	 * @return the size of the image in the Z direction
+	 */
+	public int getSizeZ()
+	{
+		return sizeZ;
+	}
+
+	/**
+	 * @return the number of runs within the image
+	 */
+	public int getRunCount()
+	{
+		return runCount;
+	}
+}
@@ -11,10 +11,10 @@ import ij.measure.ResultsTable;
 import ij.process.ImageProcessor;
 import inra.ijpb.binary.BinaryImages;
 import inra.ijpb.label.LabelImages;
+import inra.ijpb.label.LabelIndex;
 
 import java.awt.Point;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Locale;
 
 /**
@@ -153,7 +153,7 @@ public class GeometricMeasures2D
 	public final static double[][] boundingBox(ImageProcessor labelImage, int[] labels)
 	{
         // create associative array to know index of each label
-        HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
+        LabelIndex labelIndices = new LabelIndex(labels);
 
         // initialize result
 		int nLabels = labels.length;
@@ -181,7 +181,9 @@ public class GeometricMeasures2D
 				// do not consider background
 				if (label == 0)
 					continue;
-				int labelIndex = labelIndices.get(label);
+				int labelIndex = labelIndices.indexOf(label);
+				if (labelIndex < 0)
+					continue;
 
 				// update bounding box of current label
 				boxes[labelIndex][0] = min(boxes[labelIndex][0], x);
@@ -334,7 +336,7 @@ public class GeometricMeasures2D
 	{
 		// create associative array to know index of each label
 		int nLabels = labels.length;
-        HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
+        LabelIndex labelIndices = new LabelIndex(labels);
 
 		// pre-compute LUT corresponding to resolution and number of directions
 		IJ.showStatus("Compute LUT...");
@@ -390,7 +392,9 @@ public class GeometricMeasures2D
 					index += (int) image.getf(x + 1, y + 1) == label ? 8 : 0;
 
 					// retriev label index from label value
-					int labelIndex = labelIndices.get(label);
+					int labelIndex = labelIndices.indexOf(label);
+					if (labelIndex < 0)
+						continue;
 
 					// update measure for current label
 					perimeters[labelIndex] += lut[index];
@@ -1006,7 +1010,7 @@ public class GeometricMeasures2D
 	{
 		// create associative array to know index of each label
 		int nLabels = labels.length;
-        HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
+        LabelIndex labelIndices = new LabelIndex(labels);
 
 		// allocate memory for result
 		int[] counts = new int[nLabels];
@@ -1024,10 +1028,10 @@ public class GeometricMeasures2D
 					continue;
 
 				// do not process labels that are not in the input list 
-				if (!labelIndices.containsKey(label))
+				if (!labelIndices.contains(label))
 					continue;
 				
-				int index = labelIndices.get(label);
+				int index = labelIndices.indexOf(label);
 				centroids[index][0] += x;
 				centroids[index][1] += y;
 				counts[index]++;
@@ -1067,7 +1071,7 @@ public class GeometricMeasures2D
 		int nLabels = labels.length;
 
 		// create associative array to know index of each label
-        HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
+        LabelIndex labelIndices = new LabelIndex(labels);
 
 		// allocate memory for result
 		int[] counts = new int[nLabels];
@@ -1086,7 +1090,9 @@ public class GeometricMeasures2D
 				if (label == 0)
 					continue;
 
-				int index = labelIndices.get(label);
+				int index = labelIndices.indexOf(label);
+				if (index < 0)
+					continue;
 				cx[index] += x;
 				cy[index] += y;
 				counts[index]++;
@@ -1109,7 +1115,9 @@ public class GeometricMeasures2D
 				if (label == 0)
 					continue;
 
-				int index = labelIndices.get(label);
+				int index = labelIndices.indexOf(label);
+				if (index < 0)
+					continue;
 				double x2 = x - cx[index];
 				double y2 = y - cy[index];
 				Ixx[index] += x2 * x2;
@@ -14,10 +14,12 @@ import ij.ImageStack;
 import ij.measure.ResultsTable;
 import inra.ijpb.binary.BinaryImages;
 import inra.ijpb.data.Cursor3D;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
 import inra.ijpb.label.LabelImages;
+import inra.ijpb.label.LabelIndex;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 
 import Jama.Matrix;
 import Jama.SingularValueDecomposition;
@@ -103,8 +105,11 @@ public class GeometricMeasures3D
 	 */
 	public final static double[][] boundingBox(ImageStack labelImage, int[] labels) 
 	{
+		// use a wrapper to also read labels stored as int values
+		Image3D labelValues = Images3D.createWrapper(labelImage);
+
         // create associative array to know index of each label
-		HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
+		LabelIndex labelIndices = new LabelIndex(labels);
 
         // initialize result
 		int nLabels = labels.length;
@@ -133,18 +138,18 @@ public class GeometricMeasures3D
         	{
         		for (int x = 0; x < sizeX; x++)
         		{
-        			int label = (int) labelImage.getVoxel(x, y, z);
+        			int label = (int) labelValues.getValue(x, y, z);
         			
 					// do not consider background
 					if (label == 0)
 						continue;
 					
 					// do not processes labels not in the list
-					if (!labelIndices.containsKey(label))
+					if (!labelIndices.contains(label))
 						continue;
 
 					// update bounding box of current label
-					int labelIndex = labelIndices.get(label);
+					int labelIndex = labelIndices.indexOf(label);
 					boxes[labelIndex][0] = min(boxes[labelIndex][0], x);
 					boxes[labelIndex][1] = max(boxes[labelIndex][1], x);
 					boxes[labelIndex][2] = min(boxes[labelIndex][2], y);
@@ -350,6 +355,9 @@ public class GeometricMeasures3D
 	public final static double surfaceAreaCrofton(ImageStack image, int label, 
 			double[] resol, int nDirs) 
 	{
+		// use a wrapper to also read labels stored as int values
+		Image3D imageValues = Images3D.createWrapper(image);
+
     	// pre-compute LUT corresponding to resolution and number of directions
 		double[] surfLut = computeSurfaceAreaLut(resol, nDirs);
 
@@ -370,14 +378,14 @@ public class GeometricMeasures3D
         		{
         			// Compute index of local configuration
         			int index = 0;
-        			index += image.getVoxel(x, y, z) == label ? 1 : 0;
-        			index += image.getVoxel(x + 1, y, z) == label ? 2 : 0;
-        			index += image.getVoxel(x, y + 1, z) == label ? 4 : 0;
-        			index += image.getVoxel(x + 1, y + 1, z) == label ? 8 : 0;
-        			index += image.getVoxel(x, y, z + 1) == label ? 16 : 0;
-        			index += image.getVoxel(x + 1, y, z + 1) == label ? 32 : 0;
-        			index += image.getVoxel(x, y + 1, z + 1) == label ? 64 : 0;
-        			index += image.getVoxel(x + 1, y + 1, z + 1) == label ? 128 : 0;
+        			index += imageValues.getValue(x, y, z) == label ? 1 : 0;
+        			index += imageValues.getValue(x + 1, y, z) == label ? 2 : 0;
+        			index += imageValues.getValue(x, y + 1, z) == label ? 4 : 0;
+        			index += imageValues.getValue(x + 1, y + 1, z) == label ? 8 : 0;
+        			index += imageValues.getValue(x, y, z + 1) == label ? 16 : 0;
+        			index += imageValues.getValue(x + 1, y, z + 1) == label ? 32 : 0;
+        			index += imageValues.getValue(x, y + 1, z + 1) == label ? 64 : 0;
+        			index += imageValues.getValue(x + 1, y + 1, z + 1) == label ? 128 : 0;
         			
         			// update lut
         			surf += surfLut[index];
@@ -532,6 +540,9 @@ public class GeometricMeasures3D
 	 */
 	private static int countTransitionsD1(ImageStack image, int label, boolean countBorder) 
 	{
+		// use a wrapper to also read labels stored as int values
+		Image3D imageValues = Images3D.createWrapper(image);
+
 		int sizeX = image.getWidth();
 		int sizeY = image.getHeight();
 		int sizeZ = image.getSize();
@@ -547,14 +558,14 @@ public class GeometricMeasures3D
         	{
 
         		// Count border of image
-        		previous = image.getVoxel(0, y, z);
+        		previous = imageValues.getValue(0, y, z);
         		if (countBorder && previous == label)
         			count++;
 
         		// count middle of image
         		for (int x = 0; x < sizeX; x++) 
         		{
-            		current = image.getVoxel(x, y, z);
+            		current = imageValues.getValue(x, y, z);
             		// identify transition using Exclusive OR
         			if (previous == label ^ current == label) 
         				count++;
@@ -574,6 +585,9 @@ public class GeometricMeasures3D
 	 */
 	private static int countTransitionsD2(ImageStack image, int label, boolean countBorder) 
 	{
+		// use a wrapper to also read labels stored as int values
+		Image3D imageValues = Images3D.createWrapper(image);
+
 		int sizeX = image.getWidth();
 		int sizeY = image.getHeight();
 		int sizeZ = image.getSize();
@@ -589,14 +603,14 @@ public class GeometricMeasures3D
     		{
 
         		// Count border of image
-        		previous = image.getVoxel(x, 0, z);
+        		previous = imageValues.getValue(x, 0, z);
         		if (countBorder && previous == label)
         			count++;
 
         		// count middle of image
             	for (int y = 0; y < sizeY; y++) 
             	{
-            		current = image.getVoxel(x, y, z);
+            		current = imageValues.getValue(x, y, z);
             		// Identify transition by using Exclusive or
         			if (previous == label ^ current == label) 
         				count++;
@@ -616,6 +630,9 @@ public class GeometricMeasures3D
 	 */
 	private static int countTransitionsD3(ImageStack image, int label, boolean countBorder) 
 	{
+		// use a wrapper to also read labels stored as int values
+		Image3D imageValues = Images3D.createWrapper(image);
+
 		int sizeX = image.getWidth();
 		int sizeY = image.getHeight();
 		int sizeZ = image.getSize();
@@ -631,14 +648,14 @@ public class GeometricMeasures3D
 	    		{
 	
 	    		// Count border of image
-	    		previous = image.getVoxel(x, y, 0);
+	    		previous = imageValues.getValue(x, y, 0);
 	    		if (countBorder && previous == label)
 	    			count++;
 	
 	    		// count middle of image
 	            for (int z = 0; z < sizeZ; z++)
 	            {
-	        		current = image.getVoxel(x, y, z);
+	        		current = imageValues.getValue(x, y, z);
             		// identify transition using Exclusive OR
 	    			if (previous == label ^ current == label)
 	    				count++;
@@ -875,8 +892,11 @@ public class GeometricMeasures3D
 	private final static double[] sumOfLutContributions(ImageStack image, int[] labels, 
 			double[] lut)
 	{    
+		// use a wrapper to also read labels stored as int values
+		Image3D imageValues = Images3D.createWrapper(image);
+
         // create associative array to know index of each label
-		HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
+		LabelIndex labelIndices = new LabelIndex(labels);
 
        // initialize result
 		int nLabels = labels.length;
@@ -906,7 +926,7 @@ public class GeometricMeasures3D
 						{
 							for (int x2 = x; x2 <= x + 1; x2++) 
 							{
-								int label = (int) image.getVoxel(x2, y2, z2);
+								int label = (int) imageValues.getValue(x2, y2, z2);
 								// do not consider background
 								if (label == 0)
 									continue;
@@ -928,16 +948,18 @@ public class GeometricMeasures3D
 					{
 	        			// Compute index of local configuration
 	        			int index = 0;
-	        			index += image.getVoxel(x, y, z) 			== label ? 1 : 0;
-	        			index += image.getVoxel(x + 1, y, z) 		== label ? 2 : 0;
-	        			index += image.getVoxel(x, y + 1, z) 		== label ? 4 : 0;
-	        			index += image.getVoxel(x + 1, y + 1, z) 	== label ? 8 : 0;
-	        			index += image.getVoxel(x, y, z + 1) 		== label ? 16 : 0;
-	        			index += image.getVoxel(x + 1, y, z + 1) 	== label ? 32 : 0;
-	        			index += image.getVoxel(x, y + 1, z + 1) 	== label ? 64 : 0;
-	        			index += image.getVoxel(x + 1, y + 1, z + 1) == label ? 128 : 0;
-
-	        			int labelIndex = labelIndices.get(label);
+	        			index += imageValues.getValue(x, y, z) 			== label ? 1 : 0;
+	        			index += imageValues.getValue(x + 1, y, z) 		== label ? 2 : 0;
+	        			index += imageValues.getValue(x, y + 1, z) 		== label ? 4 : 0;
+	        			index += imageValues.getValue(x + 1, y + 1, z) 	== label ? 8 : 0;
+	        			index += imageValues.getValue(x, y, z + 1) 		== label ? 16 : 0;
+	        			index += imageValues.getValue(x + 1, y, z + 1) 	== label ? 32 : 0;
+	        			index += imageValues.getValue(x, y + 1, z + 1) 	== label ? 64 : 0;
+	        			index += imageValues.getValue(x + 1, y + 1, z + 1) == label ? 128 : 0;
+
+	        			int labelIndex = labelIndices.indexOf(label);
+	        			if (labelIndex < 0)
+	        				continue;
 	        			surfaces[labelIndex] += lut[index];
 					}
         		}
@@ -960,9 +982,12 @@ public class GeometricMeasures3D
 	public final static double[][] centroids(ImageStack labelImage,
 			int[] labels) 
 	{
+		// use a wrapper to also read labels stored as int values
+		Image3D labelValues = Images3D.createWrapper(labelImage);
+
 		// create associative array to know index of each label
 		int nLabels = labels.length;
-        HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
+        LabelIndex labelIndices = new LabelIndex(labels);
 
 		// allocate memory for result
 		int[] counts = new int[nLabels];
@@ -978,16 +1003,16 @@ public class GeometricMeasures3D
 			{
 				for (int x = 0; x < sizeX; x++)
 				{
-					int label = (int) labelImage.getVoxel(x, y, z);
+					int label = (int) labelValues.getValue(x, y, z);
 					if (label == 0)
 						continue;
 
 					// do not process labels that are not in the input list 
-					if (!labelIndices.containsKey(label))
+					if (!labelIndices.contains(label))
 						continue;
 					
 					// increment centroid and count for current label
-					int index = labelIndices.get(label);
+					int index = labelIndices.indexOf(label);
 					centroids[index][0] += x;
 					centroids[index][1] += y;
 					centroids[index][2] += z;
@@ -1110,6 +1135,9 @@ public class GeometricMeasures3D
 	public static final double[][] inertiaEllipsoid(ImageStack image,
 			int[] labels, double[] resol)
 	{
+		// use a wrapper to also read labels stored as int values
+		Image3D imageValues = Images3D.createWrapper(image);
+
         // Check validity of parameters
         if (image==null) return null;
         
@@ -1129,7 +1157,7 @@ public class GeometricMeasures3D
         int sizeZ = image.getSize();
         
     	// create associative array to know index of each label
-    	HashMap<Integer, Integer> labelIndices = LabelImages.mapLabelIndices(labels);
+    	LabelIndex labelIndices = new LabelIndex(labels);
 
         // ensure valid resolution
         if (resol == null)
@@ -1158,12 +1186,14 @@ public class GeometricMeasures3D
     			for (int x = 0; x < sizeX; x++)
     			{
     				// do not process background voxels
-    				int label = (int) image.getVoxel(x, y, z);
+    				int label = (int) imageValues.getValue(x, y, z);
     				if (label == 0)
     					continue;
 
     				// convert label to its index
-    				int index = labelIndices.get(label);
+    				int index = labelIndices.indexOf(label);
+    				if (index < 0)
+    					continue;
 
     				// update sum coordinates, taking into account the spatial calibration 
     				cx[index] += x * resol[0];
@@ -1190,12 +1220,14 @@ public class GeometricMeasures3D
     			for (int x = 0; x < sizeX; x++) 
     			{
     				// do not process background voxels
-    				int label = (int) image.getVoxel(x, y, z);
+    				int label = (int) imageValues.getValue(x, y, z);
     				if (label == 0)
     					continue;
 
     				// convert label to its index
-    				int index = labelIndices.get(label);
+    				int index = labelIndices.indexOf(label);
+    				if (index < 0)
+    					continue;
 
     				// convert coordinates relative to centroid 
     				double x2 = x * resol[0] - cx[index];
@@ -1432,6 +1464,10 @@ public class GeometricMeasures3D
 	private final static Cursor3D[] findPositionOfMaxValues(ImageStack image,
 			ImageStack labelImage, int[] labels)
 	{
+		// use wrappers to also read labels stored as int values
+		Image3D labelValues = Images3D.createWrapper(labelImage);
+		Image3D imageValues = Images3D.createWrapper(image);
+
 		int width 	= labelImage.getWidth();
 		int height 	= labelImage.getHeight();
 		int depth 	= labelImage.getSize(); 
@@ -1472,7 +1508,7 @@ public class GeometricMeasures3D
 			{
 				for (int x = 0; x < width; x++) 
 				{
-					int label = (int) labelImage.getVoxel(x, y, z);
+					int label = (int) labelValues.getValue(x, y, z);
 
 					// do not process pixels that do not belong to particle
 					if (label==0)
@@ -1481,7 +1517,7 @@ public class GeometricMeasures3D
 					index = labelIndex[label];
 
 					// update values and positions
-					value = image.getVoxel(x, y, z);
+					value = imageValues.getValue(x, y, z);
 					if (value > maxValues[index])
 					{
 						posMax[index].set(x, y, z);
@@ -6,9 +6,9 @@ import ij.measure.Calibration;
 import ij.measure.ResultsTable;
 import ij.process.ImageProcessor;
 import inra.ijpb.label.LabelImages;
+import inra.ijpb.label.LabelIndex;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 
 /**
  * Mother class to extract measures from pairs of grayscale and 
@@ -49,10 +49,7 @@ public class LabeledVoxelsMeasure {
 		int numLabels = labels.length;
 		
 		// create associative hash table to know the index of each label
-		HashMap<Integer, Integer> labelIndices = new HashMap<Integer, Integer>();
-        for (int i = 0; i < numLabels; i++) {
-        	labelIndices.put( labels[i], i );
-        }
+		LabelIndex labelIndices = new LabelIndex( labels );
 
 		// initialize lists of voxels per object
         // unchecked cast
@@ -77,7 +74,7 @@ public class LabeledVoxelsMeasure {
 				{
 					int labelValue = (int) labelsIP.getf( x, y );
 					if( labelValue != 0)
-						objectVoxels[ labelIndices.get( labelValue ) ].add( (double) grayIP.getf(x, y) );
+						objectVoxels[ labelIndices.indexOf( labelValue ) ].add( (double) grayIP.getf(x, y) );
 				}
 			
 			IJ.showProgress( z, numSlices );
@@ -8,7 +8,6 @@ import ij.ImageStack;
 import ij.process.ImageProcessor;
 
 import java.util.Set;
-import java.util.TreeSet;
 
 /**
  * Contains several methods for extracting the set of adjacencies between
@@ -20,6 +19,10 @@ import java.util.TreeSet;
  * values with the values of neighbors shifted by two pixels in the X, Y or Z
  * directions.
  * 
+ * Adjacencies are computed by the {@link RegionContacts} class, that can also
+ * be used directly to measure the size of each contact and the values of an
+ * intensity image along contacts.
+ * 
  * Usage:
  * 
  * <pre>
@@ -81,46 +84,7 @@ public class RegionAdjacencyGraph
 	 */
 	public static final Set<LabelPair> computeAdjacencies(ImageProcessor image)
 	{
-		int width = image.getWidth();
-		int height = image.getHeight();
-		
-		TreeSet<LabelPair> list = new TreeSet<LabelPair>();
-		
-		// transitions in x direction
-		for (int y = 0; y < height; y++)
-		{
-			for (int x = 0; x < width - 2; x++)
-			{
-				int label = (int) image.getf(x, y);
-				if (label == 0)
-					continue;
-				int label2 = (int) image.getf(x + 2, y);
-				if (label2 == 0 || label2 == label)
-					continue;
-				
-				LabelPair pair = new LabelPair(label, label2);
-				list.add(pair);
-			}
-		}
-		
-		// transitions in y direction
-		for (int y = 0; y < height - 2; y++)
-		{
-			for (int x = 0; x < width; x++)
-			{
-				int label = (int) image.getf(x, y);
-				if (label == 0)
-					continue;
-				int label2 = (int) image.getf(x, y + 2);
-				if (label2 == 0 || label2 == label)
-					continue;
-				
-				LabelPair pair = new LabelPair(label, label2);
-				list.add(pair);
-			}
-		}
-		
-		return list;
+		return RegionContacts.compute(image, null).getLabelPairs();
 	}
 	
 	/**
@@ -132,73 +96,7 @@ public class RegionAdjacencyGraph
 	 */
 	public static final Set<LabelPair> computeAdjacencies(ImageStack image)
 	{
-		int width = image.getWidth();
-		int height = image.getHeight();
-		int depth = image.getSize();
-		
-		TreeSet<LabelPair> list = new TreeSet<LabelPair>();
-		
-		// transitions in x direction
-		for (int z = 0; z < depth; z++)
-		{
-			for (int y = 0; y < height; y++)
-			{
-				for (int x = 0; x < width - 2; x++)
-				{
-					int label = (int) image.getVoxel(x, y, z);
-					if (label == 0)
-						continue;
-					int label2 = (int) image.getVoxel(x + 2, y, z);
-					if (label2 == 0 || label2 == label)
-						continue;
-
-					LabelPair pair = new LabelPair(label, label2);
-					list.add(pair);
-				}
-			}
-		}
-
-		// transitions in y direction
-		for (int z = 0; z < depth; z++)
-		{
-			for (int y = 0; y < height - 2; y++)
-			{
-				for (int x = 0; x < width; x++)
-				{
-					int label = (int) image.getVoxel(x, y, z);
-					if (label == 0)
-						continue;
-					int label2 = (int) image.getVoxel(x, y + 2, z);
-					if (label2 == 0 || label2 == label)
-						continue;
-
-					LabelPair pair = new LabelPair(label, label2);
-					list.add(pair);
-				}
-			}
-		}
-
-		// transitions in z direction
-		for (int z = 0; z < depth - 2; z++)
-		{
-			for (int y = 0; y < height; y++)
-			{
-				for (int x = 0; x < width; x++)
-				{
-					int label = (int) image.getVoxel(x, y, z);
-					if (label == 0)
-						continue;
-					int label2 = (int) image.getVoxel(x, y, z + 2);
-					if (label2 == 0 || label2 == label)
-						continue;
-
-					LabelPair pair = new LabelPair(label, label2);
-					list.add(pair);
-				}
-			}
-		}
-	
-		return list;
+		return RegionContacts.compute(image, null).getLabelPairs();
 	}
 
 	/**
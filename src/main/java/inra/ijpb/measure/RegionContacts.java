@@ -0,0 +1,555 @@
+/**
+ *
+ */
+package inra.ijpb.measure;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.Prefs;
+import ij.measure.ResultsTable;
+import ij.process.ImageProcessor;
+import ij.util.ThreadUtil;
+import inra.ijpb.data.LongIntHashMap;
+import inra.ijpb.label.LabelImages;
+import inra.ijpb.measure.RegionAdjacencyGraph.LabelPair;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes the adjacencies between regions of a label image, together with
+ * measurements of the contact between each pair of adjacent regions: the
+ * number of contact pixels or voxels, and the minimum, maximum and mean value
+ * of an intensity image (typically a gradient image) along the contact.
+ *
+ * The definition of adjacency is the same as for the
+ * <code>RegionAdjacencyGraph</code> class: two regions are adjacent if their
+ * labels are found on each side of a pixel or voxel, in the X, Y or Z
+ * direction. This makes it possible to process label images obtained after a
+ * watershed transform, where regions are separated by a one-pixel-thick line.
+ * The pixel or voxel in the middle is considered as belonging to the contact,
+ * and is counted only once per pair even if the pair is found along several
+ * directions.
+ *
+ * Label pairs are encoded as packed long integers and stored within a
+ * primitive hash map, and 3D images are processed in parallel by slabs of
+ * slices.
+ *
+ * Usage:
+ *
+ * <pre>
+ * <code>
+ * // compute adjacencies and the mean gradient along each contact
+ * ImageStack labels = ...
+ * ImageStack gradient = ...
+ * RegionContacts contacts = RegionContacts.compute(labels, gradient);
+ *
+ * // display the contact size and the mean gradient of each adjacency
+ * for (int i = 0; i &lt; contacts.size(); i++)
+ * 	System.out.println("(" + contacts.getLabel1(i) + "," + contacts.getLabel2(i) + "): "
+ * 		+ contacts.getContactSize(i) + ", " + contacts.getMeanValue(i));
+ * </code>
+ * </pre>
+ *
+ * @see RegionAdjacencyGraph
+ *
+ * @author dlegland
+ *
+ */
+public class RegionContacts
+{
+	// ===================================================================
+	// Static methods
+
+	/**
+	 * Computes the contacts between regions of a label image, that can be
+	 * either planar or 3D.
+	 *
+	 * @param labelPlus
+	 *            an ImagePlus containing a 2D or 3D label image
+	 * @param valuesPlus
+	 *            an ImagePlus containing intensity values measured along the
+	 *            contacts, or null
+	 * @return the contacts between the regions of the label image
+	 */
+	public static final RegionContacts compute(ImagePlus labelPlus, ImagePlus valuesPlus)
+	{
+		if (labelPlus.getStackSize() == 1)
+		{
+			ImageProcessor values = valuesPlus == null ? null : valuesPlus.getProcessor();
+			return compute(labelPlus.getProcessor(), values);
+		}
+		else
+		{
+			ImageStack values = valuesPlus == null ? null : valuesPlus.getStack();
+			return compute(labelPlus.getStack(), values);
+		}
+	}
+
+	/**
+	 * Computes the contacts between regions of a planar label image.
+	 *
+	 * @param labelImage
+	 *            a planar label image
+	 * @param values
+	 *            an image with the same size as the label image, containing
+	 *            the values to measure along the contacts, or null
+	 * @return the contacts between the regions of the label image
+	 */
+	public static final RegionContacts compute(final ImageProcessor labelImage,
+			final ImageProcessor values)
+	{
+		final int sizeX = labelImage.getWidth();
+		final int sizeY = labelImage.getHeight();
+		checkSize(values == null || (values.getWidth() == sizeX && values.getHeight() == sizeY));
+
+		// Split image into slabs of rows processed by different threads
+		final int nThreads = Math.max(Math.min(Prefs.getThreads(), sizeY), 1);
+		final int slabSize = (int) Math.ceil((double) sizeY / nThreads);
+		final Accumulator[] accumulators = new Accumulator[nThreads];
+		final AtomicInteger ai = new AtomicInteger(0);
+
+		Thread[] threads = ThreadUtil.createThreadArray(nThreads);
+		for (int ithread = 0; ithread < threads.length; ithread++)
+		{
+			threads[ithread] = new Thread()
+			{
+				public void run()
+				{
+					for (int k = ai.getAndIncrement(); k < nThreads; k = ai.getAndIncrement())
+					{
+						Accumulator acc = new Accumulator();
+						accumulators[k] = acc;
+
+						int ymin = slabSize * k;
+						int ymax = Math.min(slabSize * (k + 1), sizeY);
+						for (int y = ymin; y < ymax; y++)
+						{
+							for (int x = 0; x < sizeX; x++)
+							{
+								long keyX = 0, keyY = 0;
+								if (x > 0 && x < sizeX - 1)
+								{
+									keyX = pairKey(LabelImages.getLabel(labelImage, x - 1, y),
+											LabelImages.getLabel(labelImage, x + 1, y));
+								}
+								if (y > 0 && y < sizeY - 1)
+								{
+									keyY = pairKey(LabelImages.getLabel(labelImage, x, y - 1),
+											LabelImages.getLabel(labelImage, x, y + 1));
+								}
+								if (keyX == 0 && keyY == 0)
+									continue;
+
+								double value = values == null ? Double.NaN : values.getf(x, y);
+								if (keyX != 0)
+									acc.add(keyX, value);
+								if (keyY != 0 && keyY != keyX)
+									acc.add(keyY, value);
+							}
+						}
+					}
+				}
+			};
+		}
+		ThreadUtil.startAndJoin(threads);
+
+		return merge(accumulators);
+	}
+
+	/**
+	 * Computes the contacts between regions of a 3D label image.
+	 *
+	 * @param labelImage
+	 *            a 3D label image
+	 * @param values
+	 *            a 3D image with the same size as the label image, containing
+	 *            the values to measure along the contacts, or null
+	 * @return the contacts between the regions of the label image
+	 */
+	public static final RegionContacts compute(final ImageStack labelImage,
+			final ImageStack values)
+	{
+		final int sizeX = labelImage.getWidth();
+		final int sizeY = labelImage.getHeight();
+		final int sizeZ = labelImage.getSize();
+		checkSize(values == null || (values.getWidth() == sizeX
+				&& values.getHeight() == sizeY && values.getSize() == sizeZ));
+
+		// Split image into slabs of slices processed by different threads
+		final int nThreads = Math.max(Math.min(Prefs.getThreads(), sizeZ), 1);
+		final int slabSize = (int) Math.ceil((double) sizeZ / nThreads);
+		final Accumulator[] accumulators = new Accumulator[nThreads];
+		final AtomicInteger ai = new AtomicInteger(0);
+
+		Thread[] threads = ThreadUtil.createThreadArray(nThreads);
+		for (int ithread = 0; ithread < threads.length; ithread++)
+		{
+			threads[ithread] = new Thread()
+			{
+				public void run()
+				{
+					for (int k = ai.getAndIncrement(); k < nThreads; k = ai.getAndIncrement())
+					{
+						Accumulator acc = new Accumulator();
+						accumulators[k] = acc;
+
+						int zmin = slabSize * k;
+						int zmax = Math.min(slabSize * (k + 1), sizeZ);
+						for (int z = zmin; z < zmax; z++)
+						{
+							ImageProcessor slice = labelImage.getProcessor(z + 1);
+							ImageProcessor prev = z > 0 ? labelImage.getProcessor(z) : null;
+							ImageProcessor next = z < sizeZ - 1 ? labelImage.getProcessor(z + 2) : null;
+							ImageProcessor valueSlice = values == null ? null : values.getProcessor(z + 1);
+
+							for (int y = 0; y < sizeY; y++)
+							{
+								for (int x = 0; x < sizeX; x++)
+								{
+									long keyX = 0, keyY = 0, keyZ = 0;
+									if (x > 0 && x < sizeX - 1)
+									{
+										keyX = pairKey(LabelImages.getLabel(slice, x - 1, y),
+												LabelImages.getLabel(slice, x + 1, y));
+									}
+									if (y > 0 && y < sizeY - 1)
+									{
+										keyY = pairKey(LabelImages.getLabel(slice, x, y - 1),
+												LabelImages.getLabel(slice, x, y + 1));
+									}
+									if (prev != null && next != null)
+									{
+										keyZ = pairKey(LabelImages.getLabel(prev, x, y),
+												LabelImages.getLabel(next, x, y));
+									}
+									if (keyX == 0 && keyY == 0 && keyZ == 0)
+										continue;
+
+									double value = valueSlice == null ? Double.NaN : valueSlice.getf(x, y);
+									if (keyX != 0)
+										acc.add(keyX, value);
+									if (keyY != 0 && keyY != keyX)
+										acc.add(keyY, value);
+									if (keyZ != 0 && keyZ != keyX && keyZ != keyY)
+										acc.add(keyZ, value);
+								}
+							}
+						}
+					}
+				}
+			};
+		}
+		ThreadUtil.startAndJoin(threads);
+
+		return merge(accumulators);
+	}
+
+	private static final void checkSize(boolean valid)
+	{
+		if (!valid)
+		{
+			throw new IllegalArgumentException("Label and value images must have the same size");
+		}
+	}
+
+	/**
+	 * Encodes a pair of labels as a single long value, with the lowest label
+	 * in the upper 32 bits. Returns 0 if one of the labels is background, or
+	 * if both labels are equal.
+	 *
+	 * @param label1
+	 *            the first label
+	 * @param label2
+	 *            the second label
+	 * @return the key corresponding to the pair of labels, or 0
+	 */
+	public static final long pairKey(int label1, int label2)
+	{
+		if (label1 == 0 || label2 == 0 || label1 == label2)
+			return 0;
+		if (label1 > label2)
+		{
+			int tmp = label1;
+			label1 = label2;
+			label2 = tmp;
+		}
+		return ((long) label1 << 32) | (label2 & 0x00FFFFFFFFL);
+	}
+
+	/**
+	 * Merges the partial results computed by each thread, and sorts the edges
+	 * by increasing label pair.
+	 */
+	private static final RegionContacts merge(Accumulator[] accumulators)
+	{
+		Accumulator global = accumulators[0];
+		for (int i = 1; i < accumulators.length; i++)
+		{
+			global.addAll(accumulators[i]);
+		}
+
+		long[] keys = global.map.keys();
+		Arrays.sort(keys);
+
+		RegionContacts res = new RegionContacts(keys.length);
+		for (int i = 0; i < keys.length; i++)
+		{
+			int index = global.map.get(keys[i], -1);
+			res.labels1[i] = (int) (keys[i] >>> 32);
+			res.labels2[i] = (int) keys[i];
+			res.counts[i] = global.counts[index];
+			res.sums[i] = global.sums[index];
+			res.mins[i] = global.mins[index];
+			res.maxs[i] = global.maxs[index];
+		}
+		return res;
+	}
+
+
+	// ===================================================================
+	// Class variables
+
+	int[] labels1;
+	int[] labels2;
+	int[] counts;
+	double[] sums;
+	double[] mins;
+	double[] maxs;
+
+
+	// ===================================================================
+	// Constructor
+
+	private RegionContacts(int nEdges)
+	{
+		this.labels1 = new int[nEdges];
+		this.labels2 = new int[nEdges];
+		this.counts = new int[nEdges];
+		this.sums = new double[nEdges];
+		this.mins = new double[nEdges];
+		this.maxs = new double[nEdges];
+	}
+
+
+	// ===================================================================
+	// Accessors
+
+	/**
+	 * @return the number of adjacencies between regions
+	 */
+	public int size()
+	{
+		return labels1.length;
+	}
+
+	/**
+	 * @param index
+	 *            the index of the adjacency
+	 * @return the lowest label of the adjacency
+	 */
+	public int getLabel1(int index)
+	{
+		return labels1[index];
+	}
+
+	/**
+	 * @param index
+	 *            the index of the adjacency
+	 * @return the highest label of the adjacency
+	 */
+	public int getLabel2(int index)
+	{
+		return labels2[index];
+	}
+
+	/**
+	 * Returns the index of the adjacency between the two labels, or -1 if the
+	 * regions are not adjacent.
+	 *
+	 * @param label1
+	 *            the first label
+	 * @param label2
+	 *            the second label
+	 * @return the index of the adjacency, or -1
+	 */
+	public int indexOf(int label1, int label2)
+	{
+		LabelPair pair = new LabelPair(label1, label2);
+		int lo = 0, hi = labels1.length - 1;
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			int l1 = labels1[mid];
+			int l2 = labels2[mid];
+			if (l1 < pair.label1 || (l1 == pair.label1 && l2 < pair.label2))
+				lo = mid + 1;
+			else if (l1 > pair.label1 || l2 > pair.label2)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param index
+	 *            the index of the adjacency
+	 * @return the number of pixels or voxels that compose the contact between
+	 *         the two regions
+	 */
+	public int getContactSize(int index)
+	{
+		return counts[index];
+	}
+
+	/**
+	 * @param index
+	 *            the index of the adjacency
+	 * @return the mean value along the contact between the two regions, or
+	 *         NaN if no value image was specified
+	 */
+	public double getMeanValue(int index)
+	{
+		return sums[index] / counts[index];
+	}
+
+	/**
+	 * @param index
+	 *            the index of the adjacency
+	 * @return the minimum value along the contact between the two regions, or
+	 *         NaN if no value image was specified
+	 */
+	public double getMinValue(int index)
+	{
+		return mins[index];
+	}
+
+	/**
+	 * @param index
+	 *            the index of the adjacency
+	 * @return the maximum value along the contact between the two regions, or
+	 *         NaN if no value image was specified
+	 */
+	public double getMaxValue(int index)
+	{
+		return maxs[index];
+	}
+
+	/**
+	 * Converts the adjacencies into a set of label pairs, as returned by the
+	 * <code>RegionAdjacencyGraph</code> class.
+	 *
+	 * @return the set of adjacencies
+	 */
+	public Set<LabelPair> getLabelPairs()
+	{
+		TreeSet<LabelPair> set = new TreeSet<LabelPair>();
+		for (int i = 0; i < labels1.length; i++)
+		{
+			set.add(new LabelPair(labels1[i], labels2[i]));
+		}
+		return set;
+	}
+
+	/**
+	 * Creates a new ResultsTable with one row per adjacency, containing the
+	 * two labels, the size of the contact, and the statistics of values
+	 * along the contact.
+	 *
+	 * @return a new ResultsTable
+	 */
+	public ResultsTable createTable()
+	{
+		ResultsTable table = new ResultsTable();
+		for (int i = 0; i < labels1.length; i++)
+		{
+			table.incrementCounter();
+			table.addValue("Label 1", labels1[i]);
+			table.addValue("Label 2", labels2[i]);
+			table.addValue("ContactSize", counts[i]);
+			table.addValue("MeanValue", getMeanValue(i));
+			table.addValue("MinValue", mins[i]);
+			table.addValue("MaxValue", maxs[i]);
+		}
+		return table;
+	}
+
+
+	// ===================================================================
+	// Inner class
+
+	/**
+	 * Accumulates contact statistics within a single thread. Edges are
+	 * indexed in the order of their discovery, and statistics are stored in
+	 * growable primitive arrays.
+	 */
+	private static final class Accumulator
+	{
+		LongIntHashMap map = new LongIntHashMap();
+		int[] counts = new int[16];
+		double[] sums = new double[16];
+		double[] mins = new double[16];
+		double[] maxs = new double[16];
+
+		void add(long key, double value)
+		{
+			int n = map.size();
+			int index = map.putIfAbsent(key, n);
+			if (index == n)
+			{
+				if (n == counts.length)
+				{
+					counts = Arrays.copyOf(counts, n * 2);
+					sums = Arrays.copyOf(sums, n * 2);
+					mins = Arrays.copyOf(mins, n * 2);
+					maxs = Arrays.copyOf(maxs, n * 2);
+				}
+				mins[n] = value;
+				maxs[n] = value;
+			}
+			else
+			{
+				mins[index] = Math.min(mins[index], value);
+				maxs[index] = Math.max(maxs[index], value);
+			}
+			counts[index]++;
+			sums[index] += value;
+		}
+
+		void addAll(Accumulator acc)
+		{
+			long[] keys = acc.map.keys();
+			int[] indices = acc.map.values();
+			for (int i = 0; i < keys.length; i++)
+			{
+				int src = indices[i];
+				int n = map.size();
+				int index = map.putIfAbsent(keys[i], n);
+				if (index == n)
+				{
+					if (n == counts.length)
+					{
+						counts = Arrays.copyOf(counts, n * 2);
+						sums = Arrays.copyOf(sums, n * 2);
+						mins = Arrays.copyOf(mins, n * 2);
+						maxs = Arrays.copyOf(maxs, n * 2);
+					}
+					counts[n] = acc.counts[src];
+					sums[n] = acc.sums[src];
+					mins[n] = acc.mins[src];
+					maxs[n] = acc.maxs[src];
+				}
+				else
+				{
+					counts[index] += acc.counts[src];
+					sums[index] += acc.sums[src];
+					mins[index] = Math.min(mins[index], acc.mins[src]);
+					maxs[index] = Math.max(maxs[index], acc.maxs[src]);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,242 @@
+/**
+ *
+ */
+package inra.ijpb.morphology;
+
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.morphology.tree.ComponentTree;
+import inra.ijpb.morphology.tree.ComponentTree.Attribute;
+import inra.ijpb.morphology.tree.ComponentTree.Rule;
+
+/**
+ * <p>
+ * Collection of static methods for grayscale attribute filters, such as area
+ * openings and closings, computed from the component tree of the image.
+ * </p>
+ *
+ * <p>
+ * An attribute opening removes the bright components of the upper level sets
+ * whose attribute is lower than the given threshold, and an attribute closing
+ * removes the dark components of the lower level sets. The computation time
+ * does not depend on the value of the threshold.
+ * </p>
+ *
+ * <p>
+ * Example of use:
+ * <pre><code>
+ * ImageProcessor image = IJ.getImage().getProcessor();
+ * ImageProcessor result = AttributeFiltering.areaOpening(image, 100);
+ * ImagePlus res = new ImagePlus("Area Opening", result);
+ * res.show();
+ * </code></pre>
+ *
+ * @see inra.ijpb.morphology.tree.ComponentTree
+ *
+ * @author David Legland
+ *
+ */
+public class AttributeFiltering
+{
+	/**
+	 * Private constructor to prevent class instantiation.
+	 */
+	private AttributeFiltering()
+	{
+	}
+
+	// ==============================================================
+	// Planar images
+
+	/**
+	 * Computes the grayscale area opening of a planar image, using the
+	 * connectivity 4. The bright structures with less than
+	 * <code>minArea</code> pixels are removed.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits planar image
+	 * @param minArea
+	 *            the minimal number of pixels of the structures to keep
+	 * @return the result of the area opening
+	 */
+	public static final ImageProcessor areaOpening(ImageProcessor image, int minArea)
+	{
+		return attributeOpening(image, Attribute.AREA, minArea, Rule.DIRECT, 4);
+	}
+
+	/**
+	 * Computes the grayscale area closing of a planar image, using the
+	 * connectivity 4. The dark structures with less than
+	 * <code>minArea</code> pixels are removed.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits planar image
+	 * @param minArea
+	 *            the minimal number of pixels of the structures to keep
+	 * @return the result of the area closing
+	 */
+	public static final ImageProcessor areaClosing(ImageProcessor image, int minArea)
+	{
+		return attributeClosing(image, Attribute.AREA, minArea, Rule.DIRECT, 4);
+	}
+
+	/**
+	 * Computes the grayscale height opening of a planar image, using the
+	 * connectivity 4. The bright structures whose height with respect to
+	 * their surrounding is lower than <code>minHeight</code> are removed.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits planar image
+	 * @param minHeight
+	 *            the minimal height of the structures to keep
+	 * @return the result of the height opening
+	 */
+	public static final ImageProcessor heightOpening(ImageProcessor image, int minHeight)
+	{
+		return attributeOpening(image, Attribute.HEIGHT, minHeight, Rule.DIRECT, 4);
+	}
+
+	/**
+	 * Computes the grayscale height closing of a planar image, using the
+	 * connectivity 4. The dark structures whose depth with respect to their
+	 * surrounding is lower than <code>minHeight</code> are removed.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits planar image
+	 * @param minHeight
+	 *            the minimal depth of the structures to keep
+	 * @return the result of the height closing
+	 */
+	public static final ImageProcessor heightClosing(ImageProcessor image, int minHeight)
+	{
+		return attributeClosing(image, Attribute.HEIGHT, minHeight, Rule.DIRECT, 4);
+	}
+
+	/**
+	 * Computes an attribute opening of a planar image, by filtering the nodes
+	 * of its max-tree.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits planar image
+	 * @param attribute
+	 *            the attribute used for selecting nodes
+	 * @param threshold
+	 *            the minimal value of the attribute for the nodes to keep
+	 * @param rule
+	 *            the filtering rule
+	 * @param conn
+	 *            the connectivity, either 4 or 8
+	 * @return the result of the attribute opening
+	 */
+	public static final ImageProcessor attributeOpening(ImageProcessor image,
+			Attribute attribute, double threshold, Rule rule, int conn)
+	{
+		ComponentTree tree = ComponentTree.maxTree(image, conn);
+		return tree.filter(tree.selectNodes(attribute, threshold), rule);
+	}
+
+	/**
+	 * Computes an attribute closing of a planar image, by filtering the nodes
+	 * of its min-tree.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits planar image
+	 * @param attribute
+	 *            the attribute used for selecting nodes
+	 * @param threshold
+	 *            the minimal value of the attribute for the nodes to keep
+	 * @param rule
+	 *            the filtering rule
+	 * @param conn
+	 *            the connectivity, either 4 or 8
+	 * @return the result of the attribute closing
+	 */
+	public static final ImageProcessor attributeClosing(ImageProcessor image,
+			Attribute attribute, double threshold, Rule rule, int conn)
+	{
+		ComponentTree tree = ComponentTree.minTree(image, conn);
+		return tree.filter(tree.selectNodes(attribute, threshold), rule);
+	}
+
+
+	// ==============================================================
+	// 3D images
+
+	/**
+	 * Computes the grayscale volume opening of a 3D image, using the
+	 * connectivity 6. The bright structures with less than
+	 * <code>minVolume</code> voxels are removed.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits 3D image
+	 * @param minVolume
+	 *            the minimal number of voxels of the structures to keep
+	 * @return the result of the volume opening
+	 */
+	public static final ImageStack volumeOpening(ImageStack image, int minVolume)
+	{
+		return attributeOpening(image, Attribute.AREA, minVolume, Rule.DIRECT, 6);
+	}
+
+	/**
+	 * Computes the grayscale volume closing of a 3D image, using the
+	 * connectivity 6. The dark structures with less than
+	 * <code>minVolume</code> voxels are removed.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits 3D image
+	 * @param minVolume
+	 *            the minimal number of voxels of the structures to keep
+	 * @return the result of the volume closing
+	 */
+	public static final ImageStack volumeClosing(ImageStack image, int minVolume)
+	{
+		return attributeClosing(image, Attribute.AREA, minVolume, Rule.DIRECT, 6);
+	}
+
+	/**
+	 * Computes an attribute opening of a 3D image, by filtering the nodes of
+	 * its max-tree.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits 3D image
+	 * @param attribute
+	 *            the attribute used for selecting nodes
+	 * @param threshold
+	 *            the minimal value of the attribute for the nodes to keep
+	 * @param rule
+	 *            the filtering rule
+	 * @param conn
+	 *            the connectivity, either 6 or 26
+	 * @return the result of the attribute opening
+	 */
+	public static final ImageStack attributeOpening(ImageStack image,
+			Attribute attribute, double threshold, Rule rule, int conn)
+	{
+		ComponentTree tree = ComponentTree.maxTree(image, conn);
+		return tree.filterStack(tree.selectNodes(attribute, threshold), rule);
+	}
+
+	/**
+	 * Computes an attribute closing of a 3D image, by filtering the nodes of
+	 * its min-tree.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits 3D image
+	 * @param attribute
+	 *            the attribute used for selecting nodes
+	 * @param threshold
+	 *            the minimal value of the attribute for the nodes to keep
+	 * @param rule
+	 *            the filtering rule
+	 * @param conn
+	 *            the connectivity, either 6 or 26
+	 * @return the result of the attribute closing
+	 */
+	public static final ImageStack attributeClosing(ImageStack image,
+			Attribute attribute, double threshold, Rule rule, int conn)
+	{
+		ComponentTree tree = ComponentTree.minTree(image, conn);
+		return tree.filterStack(tree.selectNodes(attribute, threshold), rule);
+	}
+}
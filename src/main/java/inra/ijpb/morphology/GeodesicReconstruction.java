@@ -4,6 +4,10 @@
 package inra.ijpb.morphology;
 
 import ij.process.ImageProcessor;
+import inra.ijpb.data.border.BorderPadding;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.TiledProcessor;
+import inra.ijpb.morphology.geodrec.BorderConnectedComponents;
 import inra.ijpb.morphology.geodrec.GeodesicReconstructionAlgo;
 import inra.ijpb.morphology.geodrec.GeodesicReconstructionHybrid;
 import inra.ijpb.morphology.geodrec.GeodesicReconstructionType;
@@ -45,7 +49,8 @@ public abstract class GeodesicReconstruction
 
 	/**
 	 * Removes the border of the input image, by performing a geodesic
-	 * reconstruction initialized with image boundary.
+	 * reconstruction initialized with image boundary. Binary images are
+	 * processed by labeling the connected components of the foreground.
 	 * 
 	 * @see #fillHoles(ImageProcessor)
 	 * 
@@ -54,6 +59,12 @@ public abstract class GeodesicReconstruction
 	 */
 	public final static ImageProcessor killBorders(ImageProcessor image) 
 	{
+		// binary images are processed by labeling connected components
+		if (BorderConnectedComponents.isBinary(image))
+		{
+			return BorderConnectedComponents.killBorders(image, 4);
+		}
+
 		// Image size
 		int width = image.getWidth();
 		int height = image.getHeight();
@@ -87,7 +98,8 @@ public abstract class GeodesicReconstruction
 	/**
 	 * Fills the holes in the input image, by (1) inverting the image, (2) 
 	 * performing a geodesic reconstruction initialized with inverted image
-	 * boundary and (3) by inverting the result.
+	 * boundary and (3) by inverting the result. Binary images are processed
+	 * by labeling the connected components of the background.
 	 * 
 	 * @see #killBorders(ImageProcessor)
 	 * 
@@ -96,6 +108,12 @@ public abstract class GeodesicReconstruction
 	 */
 	public final static ImageProcessor fillHoles(ImageProcessor image) 
 	{
+		// binary images are processed by labeling connected components
+		if (BorderConnectedComponents.isBinary(image))
+		{
+			return BorderConnectedComponents.fillHoles(image, 4);
+		}
+
 		// Image size
 		int width = image.getWidth();
 		int height = image.getHeight();
@@ -181,4 +199,187 @@ public abstract class GeodesicReconstruction
 				GeodesicReconstructionType.BY_EROSION, connectivity);
 		return algo.applyTo(marker, mask);
 	}
+
+	/**
+	 * Computes the geodesic reconstruction by dilation of the marker image
+	 * under the mask image, by splitting the images into tiles that are
+	 * processed in parallel. The tiles are reconstructed independently, and
+	 * the values at tile boundaries are exchanged between neighbor tiles
+	 * until the result is stable.
+	 * 
+	 * @see inra.ijpb.data.image.TiledProcessor#iterate(ImageProcessor,
+	 *      TiledProcessor.Operator)
+	 * 
+	 * @param marker
+	 *            input marker image
+	 * @param mask
+	 *            mask image
+	 * @param connectivity
+	 *            planar connectivity (4 or 8)
+	 * @param tileSize
+	 *            the size of the tiles
+	 * @return the result of geodesic reconstruction, or null if the
+	 *         reconstruction was interrupted
+	 */
+	public final static ImageProcessor reconstructByDilationTiled(
+			ImageProcessor marker, ImageProcessor mask, int connectivity,
+			int tileSize)
+	{
+		return reconstructTiled(marker, mask, GeodesicReconstructionType.BY_DILATION,
+				connectivity, tileSize);
+	}
+
+	/**
+	 * Computes the geodesic reconstruction by erosion of the marker image
+	 * over the mask image, by splitting the images into tiles that are
+	 * processed in parallel. The tiles are reconstructed independently, and
+	 * the values at tile boundaries are exchanged between neighbor tiles
+	 * until the result is stable.
+	 * 
+	 * @see inra.ijpb.data.image.TiledProcessor#iterate(ImageProcessor,
+	 *      TiledProcessor.Operator)
+	 * 
+	 * @param marker
+	 *            input marker image
+	 * @param mask
+	 *            mask image
+	 * @param connectivity
+	 *            planar connectivity (4 or 8)
+	 * @param tileSize
+	 *            the size of the tiles
+	 * @return the result of geodesic reconstruction, or null if the
+	 *         reconstruction was interrupted
+	 */
+	public final static ImageProcessor reconstructByErosionTiled(
+			ImageProcessor marker, ImageProcessor mask, int connectivity,
+			int tileSize)
+	{
+		return reconstructTiled(marker, mask, GeodesicReconstructionType.BY_EROSION,
+				connectivity, tileSize);
+	}
+
+	/**
+	 * Computes the geodesic reconstruction by dilation of a planar marker
+	 * image under a planar mask image, both stored as 3D images with a single
+	 * slice. The tiles are read from and written to the 3D images, making it
+	 * possible to process images larger than the Java array size, for
+	 * example using {@link inra.ijpb.data.image.MappedImage3D} or
+	 * {@link inra.ijpb.data.image.ChunkedImage3D}. The marker image is
+	 * modified in place.
+	 * 
+	 * @see inra.ijpb.data.image.TiledProcessor#iterate(Image3D,
+	 *      TiledProcessor.Operator)
+	 * 
+	 * @param marker
+	 *            input marker image, with a single slice, that will contain
+	 *            the result
+	 * @param mask
+	 *            mask image, with a single slice
+	 * @param connectivity
+	 *            planar connectivity (4 or 8)
+	 * @param tileSize
+	 *            the size of the tiles
+	 * @return the marker image containing the result of geodesic
+	 *         reconstruction, or null if the reconstruction was interrupted
+	 */
+	public final static Image3D reconstructByDilationTiled(Image3D marker,
+			Image3D mask, int connectivity, int tileSize)
+	{
+		return reconstructTiled(marker, mask, GeodesicReconstructionType.BY_DILATION,
+				connectivity, tileSize);
+	}
+
+	/**
+	 * Computes the geodesic reconstruction by erosion of a planar marker
+	 * image over a planar mask image, both stored as 3D images with a single
+	 * slice. The marker image is modified in place.
+	 * 
+	 * @see #reconstructByDilationTiled(Image3D, Image3D, int, int)
+	 * 
+	 * @param marker
+	 *            input marker image, with a single slice, that will contain
+	 *            the result
+	 * @param mask
+	 *            mask image, with a single slice
+	 * @param connectivity
+	 *            planar connectivity (4 or 8)
+	 * @param tileSize
+	 *            the size of the tiles
+	 * @return the marker image containing the result of geodesic
+	 *         reconstruction, or null if the reconstruction was interrupted
+	 */
+	public final static Image3D reconstructByErosionTiled(Image3D marker,
+			Image3D mask, int connectivity, int tileSize)
+	{
+		return reconstructTiled(marker, mask, GeodesicReconstructionType.BY_EROSION,
+				connectivity, tileSize);
+	}
+
+	private final static ImageProcessor reconstructTiled(ImageProcessor marker,
+			final ImageProcessor mask, GeodesicReconstructionType type,
+			int connectivity, int tileSize)
+	{
+		TiledProcessor.Operator op = new TiledReconstruction(type, connectivity)
+		{
+			ImageProcessor readMask(int x0, int y0, int width, int height)
+			{
+				return BorderPadding.crop(mask, x0, y0, width, height);
+			}
+		};
+
+		// the marker is copied into the result, that is updated in place
+		ImageProcessor result = marker.duplicate();
+		if (new TiledProcessor(tileSize, 1).iterate(result, op) < 0)
+			return null;
+		return result;
+	}
+
+	private final static Image3D reconstructTiled(Image3D marker,
+			final Image3D mask, GeodesicReconstructionType type,
+			int connectivity, int tileSize)
+	{
+		TiledProcessor.Operator op = new TiledReconstruction(type, connectivity)
+		{
+			ImageProcessor readMask(int x0, int y0, int width, int height)
+			{
+				return TiledProcessor.readTile(mask, x0, y0, width, height);
+			}
+		};
+
+		if (new TiledProcessor(tileSize, 1).iterate(marker, op) < 0)
+			return null;
+		return marker;
+	}
+
+	/**
+	 * Reconstructs a tile of the marker within the corresponding tile of the
+	 * mask. The reconstruction is monotonic, and the pixels of a tile depend
+	 * only on the adjacent pixels of the neighbor tiles, so a halo of one
+	 * pixel is enough. The values propagate through tile boundaries over
+	 * successive passes.
+	 */
+	private static abstract class TiledReconstruction implements TiledProcessor.Operator
+	{
+		GeodesicReconstructionType type;
+		int connectivity;
+
+		TiledReconstruction(GeodesicReconstructionType type, int connectivity)
+		{
+			this.type = type;
+			this.connectivity = connectivity;
+		}
+
+		/**
+		 * Reads the tile of the mask with the given bounds.
+		 */
+		abstract ImageProcessor readMask(int x0, int y0, int width, int height);
+
+		public ImageProcessor process(ImageProcessor tile, int x0, int y0)
+		{
+			ImageProcessor maskTile = readMask(x0, y0, tile.getWidth(), tile.getHeight());
+			GeodesicReconstructionAlgo algo = new GeodesicReconstructionHybrid(
+					type, connectivity);
+			return algo.applyTo(tile, maskTile);
+		}
+	}
 }
@@ -4,8 +4,10 @@
 package inra.ijpb.morphology;
 
 import ij.ImageStack;
+import inra.ijpb.morphology.geodrec.BorderConnectedComponents;
 import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DAlgo;
 import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DHybrid0Float;
+import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DHybrid0Gray16;
 import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DHybrid0Gray8;
 import inra.ijpb.morphology.geodrec.GeodesicReconstructionByDilation3DScanning;
 import inra.ijpb.morphology.geodrec.GeodesicReconstructionByDilation3DScanningGray8;
@@ -49,15 +51,23 @@ public abstract class GeodesicReconstruction3D
 
 	/**
 	 * Removes the border of the input image, by performing a geodesic 
-	 * reconstruction initialized with image boundary.
+	 * reconstruction initialized with image boundary. Binary images are
+	 * processed by labeling the connected components of the foreground.
 	 *  
 	 * @see #fillHoles(ImageStack)
 	 * 
 	 * @param image the image to process
-	 * @return a new image with borders removed
+	 * @return a new image with borders removed, or null if the computation
+	 *         was interrupted
 	 */
 	public final static ImageStack killBorders(ImageStack image)
 	{
+		// binary images are processed by labeling connected components
+		if (BorderConnectedComponents.isBinary(image))
+		{
+			return BorderConnectedComponents.killBorders(image, 6);
+		}
+
 		// Image size
 		int width = image.getWidth();
 		int height = image.getHeight();
@@ -77,6 +87,8 @@ public abstract class GeodesicReconstruction3D
 		}
 		// Reconstruct image from borders to find touching structures
 		ImageStack result = reconstructByDilation(markers, image);
+		if (result == null)
+			return null;
 
 		// removes result from original image
 		for (int z = 0; z < depth; z++)
@@ -97,15 +109,23 @@ public abstract class GeodesicReconstruction3D
 	/**
 	 * Fills the holes in the input image, by (1) inverting the image, (2) 
 	 * performing a geodesic reconstruction initialized with inverted image
-	 * boundary and (3) by inverting the result.
+	 * boundary and (3) by inverting the result. Binary images are processed
+	 * by labeling the connected components of the background.
 	 * 
 	 * @see #killBorders(ImageStack)
 	 * 
 	 * @param image the image to process
-	 * @return a new image with holes filled
+	 * @return a new image with holes filled, or null if the computation was
+	 *         interrupted
 	 */
 	public final static ImageStack fillHoles(ImageStack image) 
 	{
+		// binary images are processed by labeling connected components
+		if (BorderConnectedComponents.isBinary(image))
+		{
+			return BorderConnectedComponents.fillHoles(image, 6);
+		}
+
 		// Image size
 		int width = image.getWidth();
 		int height = image.getHeight();
@@ -134,7 +154,8 @@ public abstract class GeodesicReconstruction3D
 	 * 
 	 * @param marker input marker image
 	 * @param mask mask image
-	 * @return the result of 3D geodesic reconstruction
+	 * @return the result of 3D geodesic reconstruction, or null if the
+	 *         reconstruction was interrupted
 	 */
 	public final static ImageStack reconstructByDilation(ImageStack marker,
 			ImageStack mask)
@@ -145,6 +166,11 @@ public abstract class GeodesicReconstruction3D
 			algo = new GeodesicReconstruction3DHybrid0Gray8(
 					GeodesicReconstructionType.BY_DILATION);
 		} 
+		else if (marker.getBitDepth() == 16 && mask.getBitDepth() == 16)
+		{
+			algo = new GeodesicReconstruction3DHybrid0Gray16(
+					GeodesicReconstructionType.BY_DILATION);
+		}
 		else if (marker.getBitDepth() == 32 && mask.getBitDepth() == 32)
 		{
 			algo = new GeodesicReconstruction3DHybrid0Float(
@@ -164,7 +190,8 @@ public abstract class GeodesicReconstruction3D
 	 * @param marker input marker image
 	 * @param mask mask image
 	 * @param connectivity 3d connectivity (6 or 26)
-	 * @return the result of 3D geodesic reconstruction
+	 * @return the result of 3D geodesic reconstruction, or null if the
+	 *         reconstruction was interrupted
 	 */
 	public final static ImageStack reconstructByDilation(ImageStack marker,
 			ImageStack mask, int connectivity)
@@ -175,6 +202,11 @@ public abstract class GeodesicReconstruction3D
 			algo = new GeodesicReconstruction3DHybrid0Gray8(
 					GeodesicReconstructionType.BY_DILATION, connectivity);
 		} 
+		else if (marker.getBitDepth() == 16 && mask.getBitDepth() == 16)
+		{
+			algo = new GeodesicReconstruction3DHybrid0Gray16(
+					GeodesicReconstructionType.BY_DILATION, connectivity);
+		}
 		else if (marker.getBitDepth() == 32 && mask.getBitDepth() == 32)
 		{
 			algo = new GeodesicReconstruction3DHybrid0Float(
@@ -216,7 +248,8 @@ public abstract class GeodesicReconstruction3D
 	 * 
 	 * @param marker input marker image
 	 * @param mask mask image
-	 * @return the result of 3D geodesic reconstruction
+	 * @return the result of 3D geodesic reconstruction, or null if the
+	 *         reconstruction was interrupted
 	 */
 	public final static ImageStack reconstructByErosion(ImageStack marker,
 			ImageStack mask)
@@ -228,6 +261,11 @@ public abstract class GeodesicReconstruction3D
 					GeodesicReconstructionType.BY_EROSION);
 
 		} 
+		else if (marker.getBitDepth() == 16 && mask.getBitDepth() == 16)
+		{
+			algo = new GeodesicReconstruction3DHybrid0Gray16(
+					GeodesicReconstructionType.BY_EROSION);
+		}
 		else if (marker.getBitDepth() == 32 && mask.getBitDepth() == 32)
 		{
 			algo = new GeodesicReconstruction3DHybrid0Float(
@@ -247,7 +285,8 @@ public abstract class GeodesicReconstruction3D
 	 * @param marker input marker image
 	 * @param mask mask image
 	 * @param connectivity 3d connectivity (6 or 26)
-	 * @return the result of 3D geodesic reconstruction
+	 * @return the result of 3D geodesic reconstruction, or null if the
+	 *         reconstruction was interrupted
 	 */
 	public final static ImageStack reconstructByErosion(ImageStack marker,
 			ImageStack mask, int connectivity)
@@ -262,6 +301,11 @@ public abstract class GeodesicReconstruction3D
 			algo = new GeodesicReconstruction3DHybrid0Gray8(
 					GeodesicReconstructionType.BY_EROSION, connectivity);
 		}
+		else if (marker.getBitDepth() == 16 && mask.getBitDepth() == 16)
+		{
+			algo = new GeodesicReconstruction3DHybrid0Gray16(
+					GeodesicReconstructionType.BY_EROSION, connectivity);
+		}
 		else if (marker.getBitDepth() == 32 && mask.getBitDepth() == 32)
 		{
 			algo = new GeodesicReconstruction3DHybrid0Float(
@@ -18,7 +18,10 @@ import inra.ijpb.morphology.geodrec.GeodesicReconstructionType;
  * 
  * Regional extrema algorithms are based on flood-filling-like algorithms, 
  * whereas extended extrema and extrema imposition algorithms use geodesic 
- * reconstruction algorithm.
+ * reconstruction algorithm. When extended extrema are required for several
+ * values of the dynamic, the class
+ * {@link inra.ijpb.morphology.tree.ExtendedExtrema} computes them all from a
+ * single component tree.
  * 
  * See the books of Serra and Soille for further details.
  * 
@@ -34,6 +37,7 @@ import inra.ijpb.morphology.geodrec.GeodesicReconstructionType;
  * </code></pre>
  * 
  * @see GeodesicReconstruction
+ * @see inra.ijpb.morphology.tree.ExtendedExtrema
  * 
  * @author David Legland
  *
@@ -4,6 +4,10 @@
 package inra.ijpb.morphology;
 
 import ij.ImageStack;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Image3DFactory;
+import inra.ijpb.morphology.geodrec.GeodesicReconstruction3DHybrid1Image3D;
+import inra.ijpb.morphology.geodrec.GeodesicReconstructionType;
 import inra.ijpb.morphology.extrema.ExtremaType;
 import inra.ijpb.morphology.extrema.RegionalExtrema3DAlgo;
 import inra.ijpb.morphology.extrema.RegionalExtrema3DByFlooding;
@@ -28,6 +32,7 @@ import inra.ijpb.morphology.extrema.RegionalExtrema3DByFlooding;
  * @see MinimaAndMaxima
  * @see GeodesicReconstruction3D
  * @see FloodFill
+ * @see inra.ijpb.morphology.tree.ExtendedExtrema
  * 
  * @author David Legland
  * 
@@ -101,6 +106,9 @@ public class MinimaAndMaxima3D
 		addValue(mask, 1);
 	
 		ImageStack rec = GeodesicReconstruction3D.reconstructByDilation(image, mask, conn);
+		if( null == rec )
+			return null;
+
 		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, 8);
 	
 		for (int z = 0; z < sizeZ; z++) 
@@ -201,6 +209,8 @@ public class MinimaAndMaxima3D
 	
 		ImageStack rec = GeodesicReconstruction3D.reconstructByErosion(marker,
 				image, conn);
+		if( null == rec )
+			return null;
 
 		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, 8);
 		for (int z = 0; z < sizeZ; z++)
@@ -281,6 +291,9 @@ public class MinimaAndMaxima3D
 
 		ImageStack rec = GeodesicReconstruction3D.reconstructByDilation(image, mask, conn);
 
+		if( null == rec )
+			return null;
+
 		return regionalMaxima(rec, conn);
 	}
 	
@@ -333,6 +346,9 @@ public class MinimaAndMaxima3D
 
 		ImageStack rec = GeodesicReconstruction3D.reconstructByDilation( image, mask, conn, binaryMask );
 
+		if( null == rec )
+			return null;
+
 		return regionalMaxima(rec, conn);
 	}
 
@@ -504,6 +520,74 @@ public class MinimaAndMaxima3D
 		return GeodesicReconstruction3D.reconstructByErosion(marker, mask, conn);
 	}
 
+	/**
+	 * Imposes the minima given by marker image into the input image, using 
+	 * the specified connectivity. The intermediate images and the result are
+	 * created by the given factory, making it possible to store them out of
+	 * the Java heap. Intermediate images are released before returning.
+	 * 
+	 * @param image
+	 *            the 3D image to process
+	 * @param minima
+	 *            a 3D binary image of minima 
+	 * @param conn
+	 *            the connectivity for minima, that should be either 6 or 26
+	 * @param factory
+	 *            the factory used for creating intermediate and result images
+	 * @return the result of minima imposition, as a float image created by
+	 *         the factory
+	 */
+	public final static Image3D imposeMinima(Image3D image,
+			Image3D minima, int conn, Image3DFactory factory) 
+	{
+		if ( Thread.currentThread().isInterrupted() )					
+			return null;
+
+		int sizeX = image.getSizeX();
+		int sizeY = image.getSizeY();
+		int sizeZ = image.getSizeZ();
+
+		Image3D marker = factory.create(sizeX, sizeY, sizeZ, 32);
+		Image3D mask = factory.create(sizeX, sizeY, sizeZ, 32);
+
+		double[] imageLine = new double[sizeX];
+		double[] minimaLine = new double[sizeX];
+		double[] markerLine = new double[sizeX];
+		for (int z = 0; z < sizeZ; z++) 
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				image.getLineX(y, z, imageLine);
+				minima.getLineX(y, z, minimaLine);
+				for (int x = 0; x < sizeX; x++) 
+				{
+					if (minimaLine[x] > 0) 
+					{
+						markerLine[x] = 0;
+						imageLine[x] = 0;
+					} 
+					else 
+					{
+						markerLine[x] = Float.MAX_VALUE;
+						imageLine[x] = imageLine[x] + 1;
+					}
+				}
+				marker.setLineX(y, z, markerLine);
+				mask.setLineX(y, z, imageLine);
+			}
+		}
+
+		Image3D result = factory.create(sizeX, sizeY, sizeZ, 32);
+		GeodesicReconstruction3DHybrid1Image3D algo = new GeodesicReconstruction3DHybrid1Image3D(
+				GeodesicReconstructionType.BY_EROSION, conn);
+		Image3D rec = algo.applyTo(marker, mask, result);
+		factory.release(marker);
+		factory.release(mask);
+		if (null == rec)
+			factory.release(result);
+		return rec;
+	}
+
 	/**
 	 * Adds the specified value to each voxel of the 3D stack.
 	 * 
@@ -9,7 +9,12 @@ import ij.ImageStack;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
+import inra.ijpb.data.border.BorderManager;
+import inra.ijpb.data.border.BorderManager3D;
+import inra.ijpb.data.border.BorderPadding;
 import inra.ijpb.data.image.ColorImages;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.TiledProcessor;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -165,6 +170,161 @@ public class Morphology
 					"Unable to process the " + this + " morphological operation");
 		}
 		
+		/**
+		 * Applies the current operator to a padded copy of the input image,
+		 * and crops the result. The values of the pixels outside of the image
+		 * are computed only once, according to the border type, before
+		 * applying the operator.
+		 * 
+		 * @param image
+		 *            the image to process
+		 * @param strel
+		 *            the structuring element to use
+		 * @param borderType
+		 *            the type of border used for computing the values of
+		 *            pixels outside of the image
+		 * @return the result of morphological operation applied to image
+		 */
+		public ImageProcessor apply(ImageProcessor image, Strel strel,
+				BorderManager.Type borderType)
+		{
+			// compute border width in each direction 
+			int[] size = strel.getSize();
+			int[] offset = strel.getOffset();
+			int rx = haloWidth(size[0], offset[0]);
+			int ry = haloWidth(size[1], offset[1]);
+			
+			BorderManager border = borderType.createBorderManager(image);
+			ImageProcessor padded = BorderPadding.pad(image, rx, rx, ry, ry, border);
+			ImageProcessor result = apply(padded, strel);
+			return BorderPadding.crop(result, rx, ry, image.getWidth(), image.getHeight());
+		}
+		
+		/**
+		 * Applies the current operator to the input image, by splitting the
+		 * image into tiles that are processed in parallel. Each tile is
+		 * extended by a halo whose width is computed from the size of the
+		 * structuring element, so that the result is the same as when
+		 * processing the whole image.
+		 * 
+		 * @see inra.ijpb.data.image.TiledProcessor
+		 * 
+		 * @param image
+		 *            the image to process
+		 * @param strel
+		 *            the structuring element to use
+		 * @param tileSize
+		 *            the size of the tiles, without the halo
+		 * @return the result of morphological operation applied to image, or
+		 *         null if the processing was interrupted
+		 */
+		public ImageProcessor applyTiled(ImageProcessor image, final Strel strel,
+				int tileSize)
+		{
+			TiledProcessor.Operator op = new TiledProcessor.Operator()
+			{
+				public ImageProcessor process(ImageProcessor tile, int x0, int y0)
+				{
+					return apply(tile, strel);
+				}
+			};
+			return new TiledProcessor(tileSize, haloWidth(strel)).process(image, op);
+		}
+		
+		/**
+		 * Applies the current operator to a planar image stored as a 3D image
+		 * with a single slice, by splitting the image into tiles that are
+		 * processed in parallel. The tiles are read from and written to the
+		 * 3D images, making it possible to process images larger than the
+		 * Java array size, for example using
+		 * {@link inra.ijpb.data.image.MappedImage3D} or
+		 * {@link inra.ijpb.data.image.ChunkedImage3D}.
+		 * 
+		 * @see #applyTiled(ImageProcessor, Strel, int)
+		 * 
+		 * @param image
+		 *            the image to process, with a single slice
+		 * @param strel
+		 *            the structuring element to use
+		 * @param target
+		 *            the image that will contain the result, with the same
+		 *            size as the input image
+		 * @param tileSize
+		 *            the size of the tiles, without the halo
+		 * @return the target image, or null if the processing was interrupted
+		 */
+		public Image3D applyTiled(Image3D image, final Strel strel,
+				Image3D target, int tileSize)
+		{
+			TiledProcessor.Operator op = new TiledProcessor.Operator()
+			{
+				public ImageProcessor process(ImageProcessor tile, int x0, int y0)
+				{
+					return apply(tile, strel);
+				}
+			};
+			return new TiledProcessor(tileSize, haloWidth(strel)).process(image, op, target);
+		}
+		
+		/**
+		 * Applies the current operator to a padded copy of the input 3D
+		 * image, and crops the result. The values of the voxels outside of
+		 * the image are computed only once, according to the border type,
+		 * before applying the operator.
+		 * 
+		 * @param image
+		 *            the 3D image to process
+		 * @param strel
+		 *            the structuring element to use
+		 * @param borderType
+		 *            the type of border used for computing the values of
+		 *            voxels outside of the image
+		 * @return the result of morphological operation applied to image
+		 */
+		public ImageStack apply(ImageStack image, Strel3D strel,
+				BorderManager3D.Type borderType)
+		{
+			// compute border width in each direction 
+			int[] size = strel.getSize();
+			int[] offset = strel.getOffset();
+			int rx = haloWidth(size[0], offset[0]);
+			int ry = haloWidth(size[1], offset[1]);
+			// planar structuring elements do not require border along z
+			int rz = size.length > 2 ? haloWidth(size[2], offset[2]) : 0;
+			
+			BorderManager3D border = borderType.createBorderManager(image);
+			ImageStack padded = BorderPadding.pad(image, rx, rx, ry, ry, rz, rz, border);
+			ImageStack result = apply(padded, strel);
+			return BorderPadding.crop(result, rx, ry, rz, 
+					image.getWidth(), image.getHeight(), image.getSize());
+		}
+		
+		/**
+		 * Computes the width of the halo of the tiles, from the largest
+		 * extent of the structuring element.
+		 */
+		private int haloWidth(Strel strel)
+		{
+			int[] size = strel.getSize();
+			int[] offset = strel.getOffset();
+			return Math.max(haloWidth(size[0], offset[0]),
+					haloWidth(size[1], offset[1]));
+		}
+		
+		/**
+		 * Computes the number of pixels to add on each side of the image,
+		 * given the size and the offset of the structuring element in one
+		 * direction. Operators that apply the structuring element twice
+		 * require twice the radius.
+		 */
+		private int haloWidth(int size, int offset)
+		{
+			int radius = Math.max(offset, size - 1 - offset);
+			boolean twice = this == OPENING || this == CLOSING 
+					|| this == TOPHAT || this == BOTTOMHAT;
+			return twice ? 2 * radius : radius;
+		}
+		
 		public String toString() 
 		{
 			return this.label;
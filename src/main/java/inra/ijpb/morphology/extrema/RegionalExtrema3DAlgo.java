@@ -4,6 +4,7 @@
 package inra.ijpb.morphology.extrema;
 
 import ij.ImageStack;
+import inra.ijpb.algo.AlgoStub;
 
 /**
  * Interface for appying regional extrema (regional mininma and regional maxima).
@@ -22,7 +23,7 @@ import ij.ImageStack;
  * @author David Legland
  *
  */
-public abstract class RegionalExtrema3DAlgo 
+public abstract class RegionalExtrema3DAlgo extends AlgoStub
 {
 	// ==============================================================
 	// class variables
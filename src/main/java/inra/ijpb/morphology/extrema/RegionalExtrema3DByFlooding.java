@@ -1,8 +1,11 @@
 package inra.ijpb.morphology.extrema;
 
-import static java.lang.Math.max;
 import static java.lang.Math.min;
 import ij.ImageStack;
+import inra.ijpb.algo.ProgressCounter;
+import inra.ijpb.data.OffsetNeighborhood3D;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
 import inra.ijpb.morphology.FloodFill;
 
 /**
@@ -36,41 +39,34 @@ public class RegionalExtrema3DByFlooding extends RegionalExtrema3DAlgo
 	
 	/**
 	 * Computes regional minima in float 3D image <code>image</code>, using
-	 * flood-filling-like algorithm.  
+	 * flood-filling-like algorithm. The neighbors of each voxel are visited
+	 * using the precomputed shifts of the neighborhood, and bounds are
+	 * checked only for voxels on the image border.
 	 */
-	// This methods calls the methods with specific connectivity.
 	ImageStack regionalExtremaFloat(ImageStack image) 
-	{
-		switch (this.connectivity) 
-		{
-		case 6:
-			return regionalExtremaFloatC6(image);
-		case 26:
-			return regionalExtremaFloatC26(image);
-		default:
-			throw new IllegalArgumentException(
-					"Connectivity must be either 6 or 26, not "
-							+ this.connectivity);
-		}
-	}
-	
-	/**
-	 * Computes regional minima in float 3D image <code>image</code>, using
-	 * flood-filling-like algorithm with 6 connectivity.
-	 */
-	ImageStack regionalExtremaFloatC6(ImageStack image) 
 	{
 		int sizeX = image.getWidth();
 		int sizeY = image.getHeight();
 		int sizeZ = image.getSize();
 
+		// create the neighborhood (also checks connectivity)
+		OffsetNeighborhood3D neigh = OffsetNeighborhood3D.create(sizeX, sizeY,
+				sizeZ, this.connectivity);
+
 		// create binary image for result, filled with 255.
 		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, 8);
 		fillStack(result, 255);
 
+		// access voxels through wrappers
+		Image3D values = Images3D.createWrapper(image);
+		Image3D resultValues = Images3D.createWrapper(result);
+
 		// initialize local data depending on extrema type
 		final int sign = this.extremaType == ExtremaType.MINIMA ? 1 : -1;
 
+		// monitor progression and cancellation
+		ProgressCounter progress = new ProgressCounter(this, (double) sizeX * sizeY * sizeZ);
+
 		// iterate on image voxels
 		for (int z = 0; z < sizeZ; z++) 
 		{
@@ -78,120 +74,46 @@ public class RegionalExtrema3DByFlooding extends RegionalExtrema3DAlgo
 			{
 				for (int x = 0; x < sizeX; x++) 
 				{
-					// Check if current voxel was already processed
-					if (result.getVoxel(x, y, z) == 0)
-						continue;
-					
-					// current value
-					double currentValue = image.getVoxel(x, y, z) * sign;
-					
-					// compute extremum value in 6-neighborhood
-					double value = currentValue;
-					if (x > 0) 
-						value = min(value, image.getVoxel(x-1, y, z) * sign); 
-					if (x < sizeX - 1) 
-						value = min(value, image.getVoxel(x+1, y, z) * sign); 
-					if (y > 0) 
-						value = min(value, image.getVoxel(x, y-1, z) * sign); 
-					if (y < sizeY - 1) 
-						value = min(value, image.getVoxel(x, y+1, z) * sign);
-					if (z > 0) 
-						value = min(value, image.getVoxel(x, y, z-1) * sign); 
-					if (z < sizeZ - 1) 
-						value = min(value, image.getVoxel(x, y, z+1) * sign); 
-
-					// if one of the neighbors has lower value, the local pixel 
-					// is not a minima. All connected pixels with same value are 
-					// set to the marker for non-minima.
-					if (value < currentValue) {
-						FloodFill.floodFillFloat(image, x, y, z, result, 0, 6);
-					}
-				}
-			}
-		}		
-
-		return result;
-	}
-
-	/**
-	 * Computes regional minima in float 3D image <code>image</code>, using
-	 * flood-filling-like algorithm with 6 connectivity.
-	 */
-	ImageStack regionalExtremaFloatC26(ImageStack image)
-	{
-		int sizeX = image.getWidth();
-		int sizeY = image.getHeight();
-		int sizeZ = image.getSize();
-
-		// create binary image for result, filled with 255.
-		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, 8);
-		fillStack(result, 255);
-
-		// initialize local data depending on extrema type
-		final int sign = this.extremaType == ExtremaType.MINIMA ? 1 : -1;
+					if (!progress.increment())
+						return null;
 
-		// iterate on image voxels
-		for (int z = 0; z < sizeZ; z++) 
-		{
-			for (int y = 0; y < sizeY; y++) 
-			{
-				for (int x = 0; x < sizeX; x++)
-				{
 					// Check if current voxel was already processed
-					if (result.getVoxel(x, y, z) == 0)
+					if (resultValues.getValue(x, y, z) == 0)
 						continue;
 					
 					// current value
-					double currentValue = image.getVoxel(x, y, z) * sign;
-					
-					// compute extremum value in 26-neighborhood
-					double value = currentValue;
-					for (int z2 = max(z-1, 0); z2 <= min(z+1, sizeZ-1); z2++) 
-					{
-						for (int y2 = max(y-1, 0); y2 <= min(y+1, sizeY-1); y2++) 
-						{
-							for (int x2 = max(x-1, 0); x2 <= min(x+1, sizeX-1); x2++) 
-							{
-								value = min(value, image.getVoxel(x2, y2, z2) * sign);
-							}
-						}
-					}
+					double currentValue = values.getValue(x, y, z) * sign;
 					
+					// compute extremum value in neighborhood
+					double value = neighborhoodMin(values, null, neigh, x, y, z, sign);
+
 					// if one of the neighbors has lower value, the local pixel 
 					// is not a minima. All connected pixels with same value are 
 					// set to the marker for non-minima.
 					if (value < currentValue) 
 					{
-						FloodFill.floodFillFloat(image, x, y, z, result, 0, 26);
+						FloodFill.floodFillFloat(image, x, y, z, result, 0, this.connectivity);
 					}
 				}
 			}
 		}		
 
+		progress.finish();
 		return result;
 	}
 	
 	@Override
 	public ImageStack applyTo(ImageStack inputImage, ImageStack maskImage) 
 	{
-		switch (this.connectivity)
-		{
-		case 6:
-			return regionalExtremaFloatC6(inputImage, maskImage);
-		case 26:
-			return regionalExtremaFloatC26(inputImage, maskImage);
-		default:
-			throw new IllegalArgumentException(
-					"Connectivity must be either 6 or 26, not "
-							+ this.connectivity);
-		}
+		return regionalExtremaFloat(inputImage, maskImage);
 	}
 	
 	/**
 	 * Computes regional extrema in float 3D image <code>image</code>, using
-	 * flood-filling-like algorithm with 6 connectivity.
+	 * flood-filling-like algorithm, and considering only the voxels within
+	 * the binary mask.
 	 */
-	ImageStack regionalExtremaFloatC6(ImageStack image, ImageStack mask) 
+	ImageStack regionalExtremaFloat(ImageStack image, ImageStack mask) 
 	{
 		if ( Thread.currentThread().isInterrupted() )					
 			return null;
@@ -200,13 +122,25 @@ public class RegionalExtrema3DByFlooding extends RegionalExtrema3DAlgo
 		int sizeY = image.getHeight();
 		int sizeZ = image.getSize();
 
+		// create the neighborhood (also checks connectivity)
+		OffsetNeighborhood3D neigh = OffsetNeighborhood3D.create(sizeX, sizeY,
+				sizeZ, this.connectivity);
+
 		// create binary image for result, filled with 255.
 		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, 8);
 		fillStack(result, 255);
 
+		// access voxels through wrappers
+		Image3D values = Images3D.createWrapper(image);
+		Image3D maskValues = Images3D.createWrapper(mask);
+		Image3D resultValues = Images3D.createWrapper(result);
+
 		// initialize local data depending on extrema type
 		final int sign = this.extremaType == ExtremaType.MINIMA ? 1 : -1;
 
+		// monitor progression and cancellation
+		ProgressCounter progress = new ProgressCounter(this, (double) sizeX * sizeY * sizeZ);
+
 		// iterate on image voxels
 		for (int z = 0; z < sizeZ; z++) 
 		{
@@ -214,117 +148,62 @@ public class RegionalExtrema3DByFlooding extends RegionalExtrema3DAlgo
 			{
 				for (int x = 0; x < sizeX; x++) 
 				{
+					if (!progress.increment())
+						return null;
+
 					// Check if the voxel is in the binary mask
-					if (mask.getVoxel(x, y, z) == 0)
+					if (maskValues.getValue(x, y, z) == 0)
 						continue;
 
 					// Check if current voxel was already processed
-					if (result.getVoxel(x, y, z) == 0)
+					if (resultValues.getValue(x, y, z) == 0)
 						continue;
 					
 					// current value
-					double currentValue = image.getVoxel(x, y, z) * sign;
-					
-					// compute extremum value in 6-neighborhood
-					double value = currentValue;
-					if (x > 0 && mask.getVoxel(x - 1, y, z) != 0)
-						value = min(value, image.getVoxel(x - 1, y, z) * sign);
-					
-					if (x < sizeX - 1 && mask.getVoxel(x + 1, y, z) != 0)
-						value = min(value, image.getVoxel(x + 1, y, z) * sign);
-					
-					if (y > 0 && mask.getVoxel(x, y - 1, z) != 0)
-						value = min(value, image.getVoxel(x, y - 1, z) * sign);
-					
-					if (y < sizeY - 1 && mask.getVoxel(x, y + 1, z) != 0)
-						value = min(value, image.getVoxel(x, y + 1, z) * sign);
+					double currentValue = values.getValue(x, y, z) * sign;
 					
-					if (z > 0 && mask.getVoxel(x, y, z - 1) != 0)
-						value = min(value, image.getVoxel(x, y, z - 1) * sign);
-					
-					if (z < sizeZ - 1 && mask.getVoxel(x, y, z + 1) != 0)
-						value = min(value, image.getVoxel(x, y, z + 1) * sign);
+					// compute extremum value in neighborhood, within mask
+					double value = neighborhoodMin(values, maskValues, neigh, x, y, z, sign);
 
 					// if one of the neighbors has lower value, the local pixel 
 					// is not a minima. All connected pixels with same value are 
 					// set to the marker for non-minima.
 					if (value < currentValue) 
 					{
-						FloodFill.floodFillFloat(image, x, y, z, result, 0, 6);
+						FloodFill.floodFillFloat(image, x, y, z, result, 0, this.connectivity);
 					}
 				}
 			}
 		}		
 
+		progress.finish();
 		return result;
 	}
-
+	
 	/**
-	 * Computes regional extrema in float 3D image <code>image</code>, using
-	 * flood-filling-like algorithm with 26 connectivity.
+	 * Computes the minimum of the signed values of a voxel and of its
+	 * neighbors, considering only the neighbors within the mask if it is not
+	 * null. Neighbors are computed from the shifts of the neighborhood, so
+	 * that images with more than 2^31 voxels can be processed.
 	 */
-	ImageStack regionalExtremaFloatC26(ImageStack image, ImageStack mask)
+	static final double neighborhoodMin(Image3D values, Image3D mask,
+			OffsetNeighborhood3D neigh, int x, int y, int z, int sign)
 	{
-		if ( Thread.currentThread().isInterrupted() )					
-			return null;
-		
-		int sizeX = image.getWidth();
-		int sizeY = image.getHeight();
-		int sizeZ = image.getSize();
-
-		// create binary image for result, filled with 255.
-		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, 8);
-		fillStack(result, 255);
-
-		// initialize local data depending on extrema type
-		final int sign = this.extremaType == ExtremaType.MINIMA ? 1 : -1;
-
-		// iterate on image voxels
-		for (int z = 0; z < sizeZ; z++) 
+		double value = values.getValue(x, y, z) * sign;
+		boolean interior = neigh.isInterior(x, y, z);
+		for (int n = 0; n < neigh.size(); n++)
 		{
-			for (int y = 0; y < sizeY; y++) 
-			{
-				for (int x = 0; x < sizeX; x++)
-				{
-					// Check if the voxel is in the binary mask
-					if (mask.getVoxel(x, y, z) == 0)
-						continue;
-
-					// Check if current voxel was already processed
-					if (result.getVoxel(x, y, z) == 0)
-						continue;
-					
-					// current value
-					double currentValue = image.getVoxel(x, y, z);
-					
-					// compute extremum value in 26-neighborhood
-					double value = currentValue * sign;
-					for (int z2 = max(z-1, 0); z2 <= min(z+1, sizeZ-1); z2++) 
-					{
-						for (int y2 = max(y-1, 0); y2 <= min(y+1, sizeY-1); y2++) 
-						{
-							for (int x2 = max(x-1, 0); x2 <= min(x+1, sizeX-1); x2++)
-							{
-								if (mask.getVoxel(x2, y2, z2) != 0)
-									value = min(value, image.getVoxel(x2, y2, z2) * sign);
-							}
-						}
-					}
-					
-					// if one of the neighbors has lower value, the local pixel 
-					// is not a minima. All connected pixels with same value are 
-					// set to the marker for non-minima.
-					if (value < currentValue * sign) 
-					{
-						FloodFill.floodFillFloat(image, x, y, z, result, 0, 26);
-					}
-				}
-			}
-		}		
-
-		return result;
+			if (!interior && !neigh.contains(x, y, z, n))
+				continue;
+			int x2 = x + neigh.getShiftX(n);
+			int y2 = y + neigh.getShiftY(n);
+			int z2 = z + neigh.getShiftZ(n);
+			if (mask == null || mask.getValue(x2, y2, z2) != 0)
+				value = min(value, values.getValue(x2, y2, z2) * sign);
+		}
+		return value;
 	}
-	
+
 	/**
 	 * Fills the 3D image with the given value.
 	 */
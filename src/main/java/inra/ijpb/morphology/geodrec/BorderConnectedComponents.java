@@ -0,0 +1,403 @@
+/**
+ *
+ */
+package inra.ijpb.morphology.geodrec;
+
+import java.util.Arrays;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+/**
+ * Fast versions of holes filling and border removal for binary images, based
+ * on a single connected components labeling.
+ *
+ * The components of the background (for holes filling) or of the foreground
+ * (for border removal) are labeled within one raster scan using union-find,
+ * while keeping track of the components that touch the image border. A second
+ * scan updates the pixels of the selected components. The results are the
+ * same as the ones obtained with geodesic reconstruction, but the computation
+ * time does not depend on the geometry of the regions.
+ *
+ * Binary images are 8-bits images containing only the values 0 and 255.
+ *
+ * @see inra.ijpb.morphology.GeodesicReconstruction#fillHoles(ImageProcessor)
+ * @see inra.ijpb.morphology.GeodesicReconstruction3D#fillHoles(ImageStack)
+ *
+ * @author David Legland
+ *
+ */
+public class BorderConnectedComponents
+{
+	/**
+	 * Private constructor to prevent class instantiation.
+	 */
+	private BorderConnectedComponents()
+	{
+	}
+
+	// ==============================================================
+	// Binary image detection
+
+	/**
+	 * Checks if the input image is an 8-bits image containing only the
+	 * values 0 and 255.
+	 *
+	 * @param image
+	 *            the image to check
+	 * @return true if the image is binary
+	 */
+	public static final boolean isBinary(ImageProcessor image)
+	{
+		if (!(image instanceof ByteProcessor))
+			return false;
+		return isBinary((byte[]) image.getPixels());
+	}
+
+	/**
+	 * Checks if the input image is an 8-bits image containing only the
+	 * values 0 and 255.
+	 *
+	 * @param image
+	 *            the 3D image to check
+	 * @return true if the image is binary
+	 */
+	public static final boolean isBinary(ImageStack image)
+	{
+		if (image.getBitDepth() != 8 || image.isVirtual())
+			return false;
+		for (int z = 1; z <= image.getSize(); z++)
+		{
+			if (!isBinary((byte[]) image.getPixels(z)))
+				return false;
+		}
+		return true;
+	}
+
+	private static final boolean isBinary(byte[] pixels)
+	{
+		for (byte b : pixels)
+		{
+			if (b != 0 && b != (byte) 255)
+				return false;
+		}
+		return true;
+	}
+
+
+	// ==============================================================
+	// Planar images
+
+	/**
+	 * Fills the holes of a binary image, by filling the background components
+	 * that do not touch the image border.
+	 *
+	 * @param image
+	 *            the binary image to process
+	 * @param conn
+	 *            the connectivity of the background, either 4 or 8
+	 * @return a new binary image with holes filled
+	 */
+	public static final ImageProcessor fillHoles(ImageProcessor image, int conn)
+	{
+		ImageProcessor result = image.duplicate();
+		replaceComponents((byte[]) result.getPixels(), image.getWidth(),
+				image.getHeight(), (byte) 0, (byte) 255, false, conn);
+		return result;
+	}
+
+	/**
+	 * Removes the foreground components of a binary image that touch the
+	 * image border.
+	 *
+	 * @param image
+	 *            the binary image to process
+	 * @param conn
+	 *            the connectivity of the foreground, either 4 or 8
+	 * @return a new binary image with border components removed
+	 */
+	public static final ImageProcessor killBorders(ImageProcessor image, int conn)
+	{
+		ImageProcessor result = image.duplicate();
+		replaceComponents((byte[]) result.getPixels(), image.getWidth(),
+				image.getHeight(), (byte) 255, (byte) 0, true, conn);
+		return result;
+	}
+
+	/**
+	 * Replaces the value of the components with the given value, depending on
+	 * whether they touch the border or not.
+	 */
+	private static final void replaceComponents(byte[] pixels, int sizeX,
+			int sizeY, byte value, byte newValue, boolean borderComponents,
+			int conn)
+	{
+		if (conn != 4 && conn != 8)
+		{
+			throw new IllegalArgumentException("Connectivity must be 4 or 8, not " + conn);
+		}
+
+		// label the components, and identify the ones touching the border
+		UnionFind uf = new UnionFind();
+		int[] labels = new int[sizeX * sizeY];
+		for (int y = 0; y < sizeY; y++)
+		{
+			boolean borderRow = y == 0 || y == sizeY - 1;
+			for (int x = 0; x < sizeX; x++)
+			{
+				int i = y * sizeX + x;
+				if (pixels[i] != value)
+					continue;
+
+				int label = 0;
+				if (x > 0 && pixels[i - 1] == value)
+					label = labels[i - 1];
+				if (y > 0)
+				{
+					if (pixels[i - sizeX] == value)
+						label = uf.merge(label, labels[i - sizeX]);
+					if (conn == 8)
+					{
+						if (x > 0 && pixels[i - sizeX - 1] == value)
+							label = uf.merge(label, labels[i - sizeX - 1]);
+						if (x < sizeX - 1 && pixels[i - sizeX + 1] == value)
+							label = uf.merge(label, labels[i - sizeX + 1]);
+					}
+				}
+
+				boolean border = borderRow || x == 0 || x == sizeX - 1;
+				labels[i] = label == 0 ? uf.newLabel(border) : label;
+				if (border && label != 0)
+					uf.setBorder(label);
+			}
+		}
+		boolean[] touching = uf.resolveBorderFlags();
+
+		// update pixels of selected components
+		for (int i = 0; i < pixels.length; i++)
+		{
+			if (pixels[i] == value && touching[labels[i]] == borderComponents)
+				pixels[i] = newValue;
+		}
+	}
+
+
+	// ==============================================================
+	// 3D images
+
+	/**
+	 * Fills the holes of a 3D binary image, by filling the background
+	 * components that do not touch the image border.
+	 *
+	 * @param image
+	 *            the 3D binary image to process
+	 * @param conn
+	 *            the connectivity of the background, either 6 or 26
+	 * @return a new binary image with holes filled
+	 */
+	public static final ImageStack fillHoles(ImageStack image, int conn)
+	{
+		ImageStack result = image.duplicate();
+		replaceComponents(result, (byte) 0, (byte) 255, false, conn);
+		return result;
+	}
+
+	/**
+	 * Removes the foreground components of a 3D binary image that touch the
+	 * image border.
+	 *
+	 * @param image
+	 *            the 3D binary image to process
+	 * @param conn
+	 *            the connectivity of the foreground, either 6 or 26
+	 * @return a new binary image with border components removed
+	 */
+	public static final ImageStack killBorders(ImageStack image, int conn)
+	{
+		ImageStack result = image.duplicate();
+		replaceComponents(result, (byte) 255, (byte) 0, true, conn);
+		return result;
+	}
+
+	/**
+	 * Replaces the value of the components with the given value, depending on
+	 * whether they touch the border or not.
+	 */
+	private static final void replaceComponents(ImageStack image, byte value,
+			byte newValue, boolean borderComponents, int conn)
+	{
+		if (conn != 6 && conn != 26)
+		{
+			throw new IllegalArgumentException("Connectivity must be 6 or 26, not " + conn);
+		}
+
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+		int sizeZ = image.getSize();
+		byte[][] slices = new byte[sizeZ][];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			slices[z] = (byte[]) image.getPixels(z + 1);
+		}
+
+		// offsets of the neighbors already visited, as (dx, dy, dz)
+		int[][] shifts = conn == 6
+				? new int[][] { { -1, 0, 0 }, { 0, -1, 0 }, { 0, 0, -1 } }
+				: previousNeighbors26();
+
+		// label the components, and identify the ones touching the border
+		UnionFind uf = new UnionFind();
+		int[][] labels = new int[sizeZ][sizeX * sizeY];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			byte[] pixels = slices[z];
+			int[] labelSlice = labels[z];
+			boolean borderSlice = z == 0 || z == sizeZ - 1;
+			for (int y = 0; y < sizeY; y++)
+			{
+				boolean borderRow = borderSlice || y == 0 || y == sizeY - 1;
+				for (int x = 0; x < sizeX; x++)
+				{
+					int i = y * sizeX + x;
+					if (pixels[i] != value)
+						continue;
+
+					int label = 0;
+					for (int[] shift : shifts)
+					{
+						int x2 = x + shift[0];
+						int y2 = y + shift[1];
+						int z2 = z + shift[2];
+						if (x2 < 0 || x2 >= sizeX || y2 < 0 || y2 >= sizeY || z2 < 0)
+							continue;
+						int i2 = y2 * sizeX + x2;
+						if (slices[z2][i2] == value)
+							label = uf.merge(label, labels[z2][i2]);
+					}
+
+					boolean border = borderRow || x == 0 || x == sizeX - 1;
+					labelSlice[i] = label == 0 ? uf.newLabel(border) : label;
+					if (border && label != 0)
+						uf.setBorder(label);
+				}
+			}
+		}
+		boolean[] touching = uf.resolveBorderFlags();
+
+		// update voxels of selected components
+		for (int z = 0; z < sizeZ; z++)
+		{
+			byte[] pixels = slices[z];
+			int[] labelSlice = labels[z];
+			for (int i = 0; i < pixels.length; i++)
+			{
+				if (pixels[i] == value && touching[labelSlice[i]] == borderComponents)
+					pixels[i] = newValue;
+			}
+		}
+	}
+
+	/**
+	 * Returns the 13 neighbors of the 26-neighborhood that are visited before
+	 * the current voxel during a raster scan.
+	 */
+	private static final int[][] previousNeighbors26()
+	{
+		int[][] shifts = new int[13][];
+		int n = 0;
+		for (int dz = -1; dz <= 0; dz++)
+		{
+			for (int dy = -1; dy <= 1; dy++)
+			{
+				for (int dx = -1; dx <= 1; dx++)
+				{
+					if (dz == 0 && (dy > 0 || (dy == 0 && dx >= 0)))
+						continue;
+					shifts[n++] = new int[] { dx, dy, dz };
+				}
+			}
+		}
+		return shifts;
+	}
+
+
+	// ==============================================================
+	// Inner class
+
+	/**
+	 * Union-find structure for provisional labels, that also keeps track of
+	 * the labels touching the image border. Label 0 is not used.
+	 */
+	private static final class UnionFind
+	{
+		int[] parents = new int[256];
+		boolean[] border = new boolean[256];
+		int count = 1;
+
+		/**
+		 * Creates a new label, and returns its index.
+		 */
+		int newLabel(boolean touchesBorder)
+		{
+			if (count == parents.length)
+			{
+				int newSize = parents.length * 2;
+				parents = Arrays.copyOf(parents, newSize);
+				border = Arrays.copyOf(border, newSize);
+			}
+			parents[count] = count;
+			border[count] = touchesBorder;
+			return count++;
+		}
+
+		int find(int label)
+		{
+			while (parents[label] != label)
+			{
+				parents[label] = parents[parents[label]];
+				label = parents[label];
+			}
+			return label;
+		}
+
+		/**
+		 * Merges two labels, and returns the root of the result. Label 0 is
+		 * considered as "no label".
+		 */
+		int merge(int label1, int label2)
+		{
+			if (label1 == 0)
+				return find(label2);
+			int root1 = find(label1);
+			int root2 = find(label2);
+			if (root1 == root2)
+				return root1;
+
+			// always keep the smallest root, so that parents precede children
+			int root = Math.min(root1, root2);
+			int other = Math.max(root1, root2);
+			parents[other] = root;
+			border[root] |= border[other];
+			return root;
+		}
+
+		void setBorder(int label)
+		{
+			border[find(label)] = true;
+		}
+
+		/**
+		 * Returns the border flag of the component of each label.
+		 */
+		boolean[] resolveBorderFlags()
+		{
+			// parents always have a smaller index than their children
+			for (int label = 1; label < count; label++)
+			{
+				border[label] = border[find(label)];
+			}
+			return border;
+		}
+	}
+}
@@ -6,6 +6,8 @@ package inra.ijpb.morphology.geodrec;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import ij.ImageStack;
+import inra.ijpb.algo.PhaseTimer;
+import inra.ijpb.algo.ProgressCounter;
 import inra.ijpb.data.Cursor3D;
 
 import java.util.ArrayDeque;
@@ -161,7 +163,9 @@ public class GeodesicReconstruction3DHybrid0Float extends GeodesicReconstruction
 		long t0 = System.currentTimeMillis();
 		trace("Initialize result ");
 		
+		PhaseTimer phase = startPhase("initialize");
 		initializeResult();
+		phase.finish((long) sizeX * sizeY * sizeZ);
 		if (verbose) 
 		{
 			long t1 = System.currentTimeMillis();
@@ -174,7 +178,9 @@ public class GeodesicReconstruction3DHybrid0Float extends GeodesicReconstruction
 		trace("Forward iteration ");
 		showStatus("Geod. Rec. Fwd ");
 		
+		phase = startPhase("forward scan");
 		forwardScan();
+		phase.finish((long) sizeX * sizeY * sizeZ);
 		if (verbose) 
 		{
 			long t1 = System.currentTimeMillis();
@@ -187,7 +193,9 @@ public class GeodesicReconstruction3DHybrid0Float extends GeodesicReconstruction
 		trace("Backward iteration & Init Queue");
 		showStatus("Geod. Rec. Bwd ");
 		
+		phase = startPhase("backward scan");
 		backwardScanInitQueue();
+		phase.finish((long) sizeX * sizeY * sizeZ);
 		if (verbose) 
 		{
 			long t1 = System.currentTimeMillis();
@@ -199,7 +207,11 @@ public class GeodesicReconstruction3DHybrid0Float extends GeodesicReconstruction
 		trace("Process queue");
 		showStatus("Process queue");
 		
-		processQueue();
+		phase = startPhase("process queue");
+		long count = processQueue();
+		phase.finish(count);
+		if (Thread.currentThread().isInterrupted())
+			return null;
 		if (verbose)
 		{
 			long t1 = System.currentTimeMillis();
@@ -564,14 +576,17 @@ public class GeodesicReconstruction3DHybrid0Float extends GeodesicReconstruction
 		}	
 	}
 	
-	private void processQueue()
+	/**
+	 * @return the number of elements processed from the queue
+	 */
+	private long processQueue()
 	{
 		if (this.connectivity == 6) {
-			processQueueC6();
+			return processQueueC6();
 		} 
 		else
 		{
-			processQueueC26();
+			return processQueueC26();
 		}
 	}
 
@@ -579,7 +594,7 @@ public class GeodesicReconstruction3DHybrid0Float extends GeodesicReconstruction
 	 * Update result image using next pixel in the queue,
 	 * using the 6-adjacency.
 	 */
-	private void processQueueC6()
+	private long processQueueC6()
 	{
 		// sign for adapting dilation and erosion algorithms
 		final int sign = this.reconstructionType.getSign();
@@ -587,8 +602,13 @@ public class GeodesicReconstruction3DHybrid0Float extends GeodesicReconstruction
 		// the maximal value around current pixel
 		float value;
 		
-		while (!queue.isEmpty()) 
+		// check cancellation periodically
+		ProgressCounter progress = new ProgressCounter(this, 0);
+		while (!queue.isEmpty())
 		{
+			if (!progress.increment())
+				return (long) progress.getCurrent();
+
 			Cursor3D p = queue.removeFirst();
 			int x = p.getX();
 			int y = p.getY();
@@ -635,14 +655,14 @@ public class GeodesicReconstruction3DHybrid0Float extends GeodesicReconstruction
 			if (z < sizeZ - 1)
 				updateQueue(x, y, z + 1, value, sign);
 		}
-		
+		return (long) progress.getCurrent();
 	}
 
 	/**
 	 * Update result image using next pixel in the queue,
 	 * using the 26-adjacency.
 	 */
-	private void processQueueC26() 
+	private long processQueueC26() 
 	{
 		// sign for adapting dilation and erosion algorithms
 		final int sign = this.reconstructionType.getSign();
@@ -650,8 +670,13 @@ public class GeodesicReconstruction3DHybrid0Float extends GeodesicReconstruction
 		// the maximal value around current pixel
 		float value;
 		
-		while (!queue.isEmpty()) 
+		// check cancellation periodically
+		ProgressCounter progress = new ProgressCounter(this, 0);
+		while (!queue.isEmpty())
 		{
+			if (!progress.increment())
+				return (long) progress.getCurrent();
+
 			Cursor3D p = queue.removeFirst();
 			int x = p.getX();
 			int y = p.getY();
@@ -703,6 +728,7 @@ public class GeodesicReconstruction3DHybrid0Float extends GeodesicReconstruction
 				}
 			}
 		}
+		return (long) progress.getCurrent();
 	}
 
 	/**
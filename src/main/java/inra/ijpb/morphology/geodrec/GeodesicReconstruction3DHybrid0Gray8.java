@@ -6,6 +6,8 @@ package inra.ijpb.morphology.geodrec;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import ij.ImageStack;
+import inra.ijpb.algo.PhaseTimer;
+import inra.ijpb.algo.ProgressCounter;
 import inra.ijpb.data.Cursor3D;
 
 import java.util.ArrayDeque;
@@ -160,7 +162,9 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 		
 		long t0 = System.currentTimeMillis();
 		trace("Initialize result ");
+		PhaseTimer phase = startPhase("initialize");
 		initializeResult();
+		phase.finish((long) sizeX * sizeY * sizeZ);
 		if (verbose) 
 		{
 			long t1 = System.currentTimeMillis();
@@ -172,7 +176,9 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 		trace("Forward iteration ");
 		showStatus("Geod. Rec. Fwd ");
 		
+		phase = startPhase("forward scan");
 		forwardScan();
+		phase.finish((long) sizeX * sizeY * sizeZ);
 		if (verbose) 
 		{
 			long t1 = System.currentTimeMillis();
@@ -185,7 +191,9 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 		trace("Backward iteration & Init Queue");
 		showStatus("Geod. Rec. Bwd ");
 		
+		phase = startPhase("backward scan");
 		backwardScanInitQueue();
+		phase.finish((long) sizeX * sizeY * sizeZ);
 		if (verbose)
 		{
 			long t1 = System.currentTimeMillis();
@@ -197,7 +205,11 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 		trace("Process queue");
 		showStatus("Process queue");
 		
-		processQueue();
+		phase = startPhase("process queue");
+		long count = processQueue();
+		phase.finish(count);
+		if (Thread.currentThread().isInterrupted())
+			return null;
 		if (verbose) 
 		{
 			long t1 = System.currentTimeMillis();
@@ -560,15 +572,18 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 		}	
 	}
 	
-	private void processQueue()
+	/**
+	 * @return the number of elements processed from the queue
+	 */
+	private long processQueue()
 	{
 		if (this.connectivity == 6)
 		{
-			processQueueC6();
+			return processQueueC6();
 		} 
 		else 
 		{
-			processQueueC26();
+			return processQueueC26();
 		}
 	}
 
@@ -576,7 +591,7 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 	 * Update result image using next pixel in the queue,
 	 * using the 6-adjacency.
 	 */
-	private void processQueueC6() 
+	private long processQueueC6() 
 	{
 		// sign for adapting dilation and erosion algorithms
 		final int sign = this.reconstructionType.getSign();
@@ -584,8 +599,13 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 		// the maximal value around current pixel
 		int value;
 		
-		while (!queue.isEmpty()) 
+		// check cancellation periodically
+		ProgressCounter progress = new ProgressCounter(this, 0);
+		while (!queue.isEmpty())
 		{
+			if (!progress.increment())
+				return (long) progress.getCurrent();
+
 			Cursor3D p = queue.removeFirst();
 			int x = p.getX();
 			int y = p.getY();
@@ -632,14 +652,14 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 			if (z < sizeZ - 1)
 				updateQueue(x, y, z + 1, value, sign);
 		}
-		
+		return (long) progress.getCurrent();
 	}
 
 	/**
 	 * Update result image using next pixel in the queue,
 	 * using the 26-adjacency.
 	 */
-	private void processQueueC26() 
+	private long processQueueC26() 
 	{
 		// sign for adapting dilation and erosion algorithms
 		final int sign = this.reconstructionType.getSign();
@@ -647,8 +667,13 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 		// the maximal value around current pixel
 		int value;
 		
-		while (!queue.isEmpty()) 
+		// check cancellation periodically
+		ProgressCounter progress = new ProgressCounter(this, 0);
+		while (!queue.isEmpty())
 		{
+			if (!progress.increment())
+				return (long) progress.getCurrent();
+
 			Cursor3D p = queue.removeFirst();
 			int x = p.getX();
 			int y = p.getY();
@@ -699,6 +724,7 @@ public class GeodesicReconstruction3DHybrid0Gray8 extends GeodesicReconstruction
 				}
 			}
 		}
+		return (long) progress.getCurrent();
 	}
 
 	/**
@@ -6,6 +6,8 @@ package inra.ijpb.morphology.geodrec;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import ij.ImageStack;
+import inra.ijpb.algo.PhaseTimer;
+import inra.ijpb.algo.ProgressCounter;
 import inra.ijpb.data.Cursor3D;
 import inra.ijpb.data.image.Image3D;
 import inra.ijpb.data.image.Images3D;
@@ -39,10 +41,6 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 {
 	GeodesicReconstructionType reconstructionType = GeodesicReconstructionType.BY_DILATION;
 	
-	ImageStack markerStack;
-	ImageStack maskStack;
-	
-	ImageStack resultStack;
 	Image3D result;
 	Image3D mask;
 	Image3D marker;
@@ -128,21 +126,51 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 	 */
 	public ImageStack applyTo(ImageStack marker, ImageStack mask)
 	{
-		// Keep references to input images
-		this.markerStack = marker;
-		this.maskStack = mask;
+		// Create result image the same size as marker image
+		ImageStack resultStack = ImageStack.create(marker.getWidth(),
+				marker.getHeight(), marker.getSize(), marker.getBitDepth());
 		
-		this.marker = Images3D.createWrapper(marker);
-		this.mask = Images3D.createWrapper(mask);
+		if (applyTo(Images3D.createWrapper(marker),
+				Images3D.createWrapper(mask),
+				Images3D.createWrapper(resultStack)) == null)
+			return null;
+		return resultStack;
+	}
+
+	/**
+	 * Run the reconstruction algorithm using the images specified as
+	 * argument, and stores the result within the given image. The images can
+	 * be stored out of the Java heap, for example when they are created by
+	 * an {@link inra.ijpb.data.image.Image3DFactory}.
+	 * 
+	 * @param marker
+	 *            the marker image
+	 * @param mask
+	 *            the mask image
+	 * @param result
+	 *            the image that will contain the result of the reconstruction,
+	 *            with the same size as marker image
+	 * @return the result image, or null if the reconstruction was interrupted
+	 */
+	public Image3D applyTo(Image3D marker, Image3D mask, Image3D result)
+	{
+		// Keep references to input images
+		this.marker = marker;
+		this.mask = mask;
+		this.result = result;
 		
 		// Check sizes are consistent
-		this.sizeX 	= marker.getWidth();
-		this.sizeY 	= marker.getHeight();
-		this.sizeZ 	= marker.getSize();
-		if (sizeX != mask.getWidth() || sizeY != mask.getHeight() || sizeZ != mask.getSize()) 
+		this.sizeX 	= marker.getSizeX();
+		this.sizeY 	= marker.getSizeY();
+		this.sizeZ 	= marker.getSizeZ();
+		if (sizeX != mask.getSizeX() || sizeY != mask.getSizeY() || sizeZ != mask.getSizeZ()) 
 		{
 			throw new IllegalArgumentException("Marker and Mask images must have the same size");
 		}
+		if (sizeX != result.getSizeX() || sizeY != result.getSizeY() || sizeZ != result.getSizeZ()) 
+		{
+			throw new IllegalArgumentException("Marker and Result images must have the same size");
+		}
 		
 		// Check connectivity has a correct value
 		if (connectivity != 6 && connectivity != 26)
@@ -155,7 +183,9 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		long t0 = System.currentTimeMillis();
 		trace("Initialize result ");
 		
+		PhaseTimer phase = startPhase("initialize");
 		initializeResult();
+		phase.finish((long) sizeX * sizeY * sizeZ);
 		if (verbose) 
 		{
 			long t1 = System.currentTimeMillis();
@@ -168,7 +198,9 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		trace("Forward iteration ");
 		showStatus("Geod. Rec. Fwd ");
 		
+		phase = startPhase("forward scan");
 		forwardScan();
+		phase.finish((long) sizeX * sizeY * sizeZ);
 		if (verbose)
 		{
 			long t1 = System.currentTimeMillis();
@@ -181,7 +213,9 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		trace("Backward iteration ");
 		showStatus("Geod. Rec. Bwd ");
 		
+		phase = startPhase("backward scan");
 		backwardScan();
+		phase.finish((long) sizeX * sizeY * sizeZ);
 		if (verbose)
 		{
 			long t1 = System.currentTimeMillis();
@@ -193,7 +227,9 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		trace("Init queue ");
 		showStatus("Init queue");
 		
+		phase = startPhase("init queue");
 		initQueue();
+		phase.finish((long) sizeX * sizeY * sizeZ);
 		if (verbose) 
 		{
 			long t1 = System.currentTimeMillis();
@@ -205,7 +241,11 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		trace("Process queue");
 		showStatus("Process queue");
 		
-		processQueue();
+		phase = startPhase("process queue");
+		long count = processQueue();
+		phase.finish(count);
+		if (Thread.currentThread().isInterrupted())
+			return null;
 		if (verbose) 
 		{
 			long t1 = System.currentTimeMillis();
@@ -216,7 +256,7 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		// clear progression display
 		showProgress(1, 1, "");
 
-		return this.resultStack;
+		return this.result;
 	}
 
 	/**
@@ -238,74 +278,24 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 	 */
 	private void initializeResult()
 	{
-		// Create result image the same size as marker image
-		this.resultStack = ImageStack.create(sizeX, sizeY, sizeZ, markerStack.getBitDepth());
-		this.result = Images3D.createWrapper(this.resultStack);
+		// sign for adapting dilation and erosion algorithms
+		final int sign = this.reconstructionType.getSign();
 
-		if (this.reconstructionType == GeodesicReconstructionType.BY_DILATION) 
-		{
-			// Initialize the result image with the minimum value of marker and mask
-			// images
-			if (this.markerStack.getBitDepth() == 32)
-			{
-				// Initialize float result stack
-				for (int z = 0; z < sizeZ; z++) 
-				{
-					for (int y = 0; y < sizeY; y++)
-					{
-						for (int x = 0; x < sizeX; x++)
-						{
-							result.setValue(x, y, z, min(marker.getValue(x, y, z), mask.getValue(x, y, z)));
-						}
-					}
-				}
-			}
-			else
-			{
-				// Initialize integer result stack
-				for (int z = 0; z < sizeZ; z++) 
-				{
-					for (int y = 0; y < sizeY; y++)
-					{
-						for (int x = 0; x < sizeX; x++)
-						{
-							result.setValue(x, y, z, min(marker.getValue(x, y, z), mask.getValue(x, y, z)));
-						}
-					}
-				}
-			}
-		}
-		else 
+		// Initialize the result image with the minimum (for dilation) or the
+		// maximum (for erosion) value of marker and mask images
+		double[] markerLine = new double[sizeX];
+		double[] maskLine = new double[sizeX];
+		for (int z = 0; z < sizeZ; z++) 
 		{
-			// Initialize the result image with the maximum value of marker and mask
-			// images
-			if (this.markerStack.getBitDepth() == 32) 
-			{
-				// Initialize float result stack
-				for (int z = 0; z < sizeZ; z++)
-				{
-					for (int y = 0; y < sizeY; y++)
-					{
-						for (int x = 0; x < sizeX; x++)
-						{
-							result.setValue(x, y, z, max(marker.getValue(x, y, z), mask.getValue(x, y, z)));
-						}
-					}
-				}
-			} 
-			else 
+			for (int y = 0; y < sizeY; y++)
 			{
-				// Initialize integer result stack
-				for (int z = 0; z < sizeZ; z++) 
+				marker.getLineX(y, z, markerLine);
+				mask.getLineX(y, z, maskLine);
+				for (int x = 0; x < sizeX; x++)
 				{
-					for (int y = 0; y < sizeY; y++)
-					{
-						for (int x = 0; x < sizeX; x++)
-						{
-							result.setValue(x, y, z, max(marker.getValue(x, y, z), mask.getValue(x, y, z)));
-						}
-					}
+					markerLine[x] = min(markerLine[x] * sign, maskLine[x] * sign) * sign;
 				}
+				result.setLineX(y, z, markerLine);
 			}
 		}
 	}
@@ -324,7 +314,9 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 
 	/**
 	 * Update result image using pixels in the upper left neighborhood, using
-	 * the 6-adjacency, assuming pixels are stored in bytes.
+	 * the 6-adjacency. Each line is processed within a buffer, the neighbor
+	 * lines in the previous row and in the previous slice being kept in other
+	 * buffers.
 	 */
 	private void forwardScanC6() 
 	{
@@ -333,6 +325,12 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		// the maximal value around current pixel
 		double maxValue;
 
+		// buffers for current line, and for neighbor lines
+		double[] line = new double[sizeX];
+		double[] prevLine = new double[sizeX];
+		double[] prevSliceLine = new double[sizeX];
+		double[] maskLine = new double[sizeX];
+		
 		// Iterate over pixels
 		for (int z = 0; z < sizeZ; z++)
 		{
@@ -340,33 +338,49 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 			
 			for (int y = 0; y < sizeY; y++) 
 			{
+				result.getLineX(y, z, line);
+				mask.getLineX(y, z, maskLine);
+				if (z > 0)
+					result.getLineX(y, z - 1, prevSliceLine);
+				
+				boolean modified = false;
 				for (int x = 0; x < sizeX; x++) 
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
+					double currentValue = line[x] * sign;
 					maxValue = currentValue;
 					
 					// Iterate over the 3 'upper' neighbors of current pixel
 					if (x > 0) 
-						maxValue = max(maxValue, result.getValue(x - 1, y, z) * sign);
+						maxValue = max(maxValue, line[x - 1] * sign);
 					if (y > 0) 
-						maxValue = max(maxValue, result.getValue(x, y - 1, z) * sign);
+						maxValue = max(maxValue, prevLine[x] * sign);
 					if (z > 0)
-						maxValue = max(maxValue, result.getValue(x, y, z - 1) * sign);
-					
+						maxValue = max(maxValue, prevSliceLine[x] * sign);
 					
 					// update value of current voxel
-					maxValue = min(maxValue, mask.getValue(x, y, z) * sign);
-					if (maxValue > currentValue) {
-						result.setValue(x, y, z, maxValue * sign);
+					maxValue = min(maxValue, maskLine[x] * sign);
+					if (maxValue > currentValue)
+					{
+						line[x] = maxValue * sign;
+						modified = true;
 					}
 				}
+				if (modified)
+					result.setLineX(y, z, line);
+				
+				// current line becomes the previous line of next row
+				double[] tmp = prevLine;
+				prevLine = line;
+				line = tmp;
 			}
 		} // end of pixel iteration
 	}
 
 	/**
 	 * Update result image using pixels in the upper left neighborhood, using
-	 * the 26-adjacency, assuming pixels are stored using integer data types.
+	 * the 26-adjacency. Each line is processed within a buffer, the neighbor
+	 * lines in the previous row and in the previous slice being kept in other
+	 * buffers.
 	 */
 	private void forwardScanC26()
 	{
@@ -374,6 +388,12 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		// the maximal value around current pixel
 		double maxValue;
 
+		// buffers for current line, and for neighbor lines
+		double[] line = new double[sizeX];
+		double[] prevLine = new double[sizeX];
+		double[][] prevSliceLines = new double[3][sizeX];
+		double[] maskLine = new double[sizeX];
+		
 		// Iterate over pixels
 		for (int z = 0; z < sizeZ; z++) 
 		{
@@ -381,33 +401,64 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 			
 			for (int y = 0; y < sizeY; y++)
 			{
+				result.getLineX(y, z, line);
+				mask.getLineX(y, z, maskLine);
+				
+				// lines y-1, y and y+1 of previous slice
+				int ymin = max(y - 1, 0);
+				int ymax = min(y + 1, sizeY - 1);
+				if (z > 0)
+				{
+					for (int y2 = ymin; y2 <= ymax; y2++)
+						result.getLineX(y2, z - 1, prevSliceLines[y2 - y + 1]);
+				}
+				
+				boolean modified = false;
 				for (int x = 0; x < sizeX; x++)
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
+					double currentValue = line[x] * sign;
 					maxValue = currentValue;
 
-					// Iterate over neighbors of current pixel
-					int zmax = min(z + 1, sizeZ);
-					for (int z2 = max(z - 1, 0); z2 < zmax; z2++)
+					int xmin = max(x - 1, 0);
+					int xmax = min(x + 1, sizeX - 1);
+					
+					// neighbors in previous slice
+					if (z > 0)
 					{
-						int ymax = z2 == z ? y : min(y + 1, sizeY - 1); 
-						for (int y2 = max(y - 1, 0); y2 <= ymax; y2++) 
+						for (int y2 = ymin; y2 <= ymax; y2++)
 						{
-							int xmax = (z2 == z && y2 == y) ? x - 1 : min(x + 1, sizeX - 1); 
-							for (int x2 = max(x - 1, 0); x2 <= xmax; x2++) 
-							{
-								maxValue = max(maxValue, result.getValue(x2, y2, z2) * sign);
-							}
+							double[] line2 = prevSliceLines[y2 - y + 1];
+							for (int x2 = xmin; x2 <= xmax; x2++)
+								maxValue = max(maxValue, line2[x2] * sign);
 						}
 					}
+					
+					// neighbors in previous line
+					if (y > 0)
+					{
+						for (int x2 = xmin; x2 <= xmax; x2++)
+							maxValue = max(maxValue, prevLine[x2] * sign);
+					}
+					
+					// neighbor in current line
+					if (x > 0)
+						maxValue = max(maxValue, line[x - 1] * sign);
 
 					// update value of current voxel
-					maxValue = min(maxValue, mask.getValue(x, y, z) * sign);
+					maxValue = min(maxValue, maskLine[x] * sign);
 					if (maxValue > currentValue)
 					{
-						result.setValue(x, y, z, maxValue * sign);
+						line[x] = maxValue * sign;
+						modified = true;
 					}
 				}
+				if (modified)
+					result.setLineX(y, z, line);
+				
+				// current line becomes the previous line of next row
+				double[] tmp = prevLine;
+				prevLine = line;
+				line = tmp;
 			}
 		}
 	}
@@ -426,7 +477,8 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 	}
 	/**
 	 * Update result image using pixels in the lower right neighborhood, using
-	 * the 6-adjacency.
+	 * the 6-adjacency. Each line is processed within a buffer, the neighbor
+	 * lines in the next row and in the next slice being kept in other buffers.
 	 */
 	private void backwardScanC6() 
 	{
@@ -434,6 +486,12 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		// the maximal value around current pixel
 		double maxValue;
 
+		// buffers for current line, and for neighbor lines
+		double[] line = new double[sizeX];
+		double[] nextLine = new double[sizeX];
+		double[] nextSliceLine = new double[sizeX];
+		double[] maskLine = new double[sizeX];
+		
 		// Iterate over voxels
 		for (int z = sizeZ - 1; z >= 0; z--) 
 		{
@@ -441,34 +499,48 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 
 			for (int y = sizeY - 1; y >= 0; y--) 
 			{
+				result.getLineX(y, z, line);
+				mask.getLineX(y, z, maskLine);
+				if (z < sizeZ - 1)
+					result.getLineX(y, z + 1, nextSliceLine);
+				
+				boolean modified = false;
 				for (int x = sizeX - 1; x >= 0; x--)
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
+					double currentValue = line[x] * sign;
 					maxValue = currentValue;
 					
 					// Iterate over the 3 'lower' neighbors of current voxel
 					if (x < sizeX - 1)
-						maxValue = max(maxValue, result.getValue(x + 1, y, z) * sign);
+						maxValue = max(maxValue, line[x + 1] * sign);
 					if (y < sizeY - 1)
-						maxValue = max(maxValue, result.getValue(x, y + 1, z) * sign);
+						maxValue = max(maxValue, nextLine[x] * sign);
 					if (z < sizeZ - 1)
-						maxValue = max(maxValue, result.getValue(x, y, z + 1) * sign);
-					
+						maxValue = max(maxValue, nextSliceLine[x] * sign);
 
 					// update value of current voxel
-					maxValue = min(maxValue, mask.getValue(x, y, z) * sign);
+					maxValue = min(maxValue, maskLine[x] * sign);
 					if (maxValue > currentValue) 
 					{
-						result.setValue(x, y, z, maxValue * sign);
+						line[x] = maxValue * sign;
+						modified = true;
 					}
 				}
+				if (modified)
+					result.setLineX(y, z, line);
+				
+				// current line becomes the next line of previous row
+				double[] tmp = nextLine;
+				nextLine = line;
+				line = tmp;
 			}
 		}	
 	}
 	
 	/**
-	 * Update result image using pixels in the upper left neighborhood, using
-	 * the 26-adjacency.
+	 * Update result image using pixels in the lower right neighborhood, using
+	 * the 26-adjacency. Each line is processed within a buffer, the neighbor
+	 * lines in the next row and in the next slice being kept in other buffers.
 	 */
 	private void backwardScanC26() 
 	{
@@ -476,6 +548,12 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		// the maximal value around current pixel
 		double maxValue;
 	
+		// buffers for current line, and for neighbor lines
+		double[] line = new double[sizeX];
+		double[] nextLine = new double[sizeX];
+		double[][] nextSliceLines = new double[3][sizeX];
+		double[] maskLine = new double[sizeX];
+		
 		// Iterate over voxels
 		for (int z = sizeZ - 1; z >= 0; z--)
 		{
@@ -483,34 +561,64 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 	
 			for (int y = sizeY - 1; y >= 0; y--)
 			{
+				result.getLineX(y, z, line);
+				mask.getLineX(y, z, maskLine);
+				
+				// lines y-1, y and y+1 of next slice
+				int ymin = max(y - 1, 0);
+				int ymax = min(y + 1, sizeY - 1);
+				if (z < sizeZ - 1)
+				{
+					for (int y2 = ymin; y2 <= ymax; y2++)
+						result.getLineX(y2, z + 1, nextSliceLines[y2 - y + 1]);
+				}
+				
+				boolean modified = false;
 				for (int x = sizeX - 1; x >= 0; x--)
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
+					double currentValue = line[x] * sign;
 					maxValue = currentValue;
 	
-					// Iterate over neighbors of current voxel
-					int zmin = max(z - 1, 0);
-					for (int z2 = min(z + 1, sizeZ - 1); z2 >= zmin; z2--) 
+					int xmin = max(x - 1, 0);
+					int xmax = min(x + 1, sizeX - 1);
+					
+					// neighbors in next slice
+					if (z < sizeZ - 1)
 					{
-	
-						int ymin = z2 == z ? y : max(y - 1, 0); 
-						for (int y2 = min(y + 1, sizeY - 1); y2 >= ymin; y2--) 
+						for (int y2 = ymin; y2 <= ymax; y2++)
 						{
-							int xmin = (z2 == z && y2 == y) ? x : max(x - 1, 0); 
-							for (int x2 = min(x + 1, sizeX - 1); x2 >= xmin; x2--) 
-							{
-								maxValue = max(maxValue, result.getValue(x2, y2, z2) * sign);
-							}
+							double[] line2 = nextSliceLines[y2 - y + 1];
+							for (int x2 = xmin; x2 <= xmax; x2++)
+								maxValue = max(maxValue, line2[x2] * sign);
 						}
 					}
+					
+					// neighbors in next line
+					if (y < sizeY - 1)
+					{
+						for (int x2 = xmin; x2 <= xmax; x2++)
+							maxValue = max(maxValue, nextLine[x2] * sign);
+					}
+					
+					// neighbor in current line
+					if (x < sizeX - 1)
+						maxValue = max(maxValue, line[x + 1] * sign);
 	
 					// update value of current voxel
-					maxValue = min(maxValue, mask.getValue(x, y, z) * sign);
+					maxValue = min(maxValue, maskLine[x] * sign);
 					if (maxValue > currentValue)
 					{
-						result.setValue(x, y, z, maxValue * sign);
+						line[x] = maxValue * sign;
+						modified = true;
 					}
 				}
+				if (modified)
+					result.setLineX(y, z, line);
+				
+				// current line becomes the next line of previous row
+				double[] tmp = nextLine;
+				nextLine = line;
+				line = tmp;
 			}
 		}	
 	}
@@ -541,6 +649,12 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 				
 		queue = new ArrayDeque<Cursor3D>();
 		
+		// buffers for current line, and for neighbor lines
+		double[] line = new double[sizeX];
+		double[] prevLine = new double[sizeX];
+		double[] prevSliceLine = new double[sizeX];
+		double[] maskLine = new double[sizeX];
+		
 		// Iterate over pixels
 		for (int z = 0; z < sizeZ; z++)
 		{
@@ -548,22 +662,33 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 			
 			for (int y = 0; y < sizeY; y++)
 			{
+				result.getLineX(y, z, line);
+				mask.getLineX(y, z, maskLine);
+				if (z > 0)
+					result.getLineX(y, z - 1, prevSliceLine);
+				
 				for (int x = 0; x < sizeX; x++) 
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
+					double currentValue = line[x] * sign;
 					maxValue = currentValue;
 					
 					// Iterate over the 3 'upper' neighbors of current pixel
 					if (x > 0) 
-						maxValue = max(maxValue, result.getValue(x - 1, y, z) * sign);
+						maxValue = max(maxValue, line[x - 1] * sign);
 					if (y > 0) 
-						maxValue = max(maxValue, result.getValue(x, y - 1, z) * sign);
+						maxValue = max(maxValue, prevLine[x] * sign);
 					if (z > 0)
-						maxValue = max(maxValue, result.getValue(x, y, z - 1) * sign);
+						maxValue = max(maxValue, prevSliceLine[x] * sign);
 					
-					if (maxValue > currentValue)
-						updateQueue(x, y, z, maxValue, sign);
+					// add position if it can be updated
+					if (min(maxValue, maskLine[x] * sign) > currentValue)
+						queue.add(new Cursor3D(x, y, z));
 				}
+				
+				// current line becomes the previous line of next row
+				double[] tmp = prevLine;
+				prevLine = line;
+				line = tmp;
 			}
 		} // end of pixel iteration
 
@@ -583,6 +708,12 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 				
 		queue = new ArrayDeque<Cursor3D>();
 		
+		// buffers for current line, and for neighbor lines
+		double[] line = new double[sizeX];
+		double[] prevLine = new double[sizeX];
+		double[][] prevSliceLines = new double[3][sizeX];
+		double[] maskLine = new double[sizeX];
+		
 		// Iterate over pixels
 		for (int z = 0; z < sizeZ; z++)
 		{
@@ -590,43 +721,74 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 			
 			for (int y = 0; y < sizeY; y++) 
 			{
+				result.getLineX(y, z, line);
+				mask.getLineX(y, z, maskLine);
+				
+				// lines y-1, y and y+1 of previous slice
+				int ymin = max(y - 1, 0);
+				int ymax = min(y + 1, sizeY - 1);
+				if (z > 0)
+				{
+					for (int y2 = ymin; y2 <= ymax; y2++)
+						result.getLineX(y2, z - 1, prevSliceLines[y2 - y + 1]);
+				}
+				
 				for (int x = 0; x < sizeX; x++)
 				{
-					double currentValue = result.getValue(x, y, z) * sign;
+					double currentValue = line[x] * sign;
 					maxValue = currentValue;
 					
-					// Iterate over neighbors of current pixel
-					int zmax = min(z + 1, sizeZ);
-					for (int z2 = max(z - 1, 0); z2 < zmax; z2++)
+					int xmin = max(x - 1, 0);
+					int xmax = min(x + 1, sizeX - 1);
+					
+					// neighbors in previous slice
+					if (z > 0)
 					{
-						int ymax = z2 == z ? y : min(y + 1, sizeY - 1); 
-						for (int y2 = max(y - 1, 0); y2 <= ymax; y2++) 
+						for (int y2 = ymin; y2 <= ymax; y2++)
 						{
-							int xmax = (z2 == z && y2 == y) ? x - 1 : min(x + 1, sizeX - 1); 
-							for (int x2 = max(x - 1, 0); x2 <= xmax; x2++)
-							{
-								maxValue = max(maxValue, result.getValue(x2, y2, z2) * sign);
-							}
+							double[] line2 = prevSliceLines[y2 - y + 1];
+							for (int x2 = xmin; x2 <= xmax; x2++)
+								maxValue = max(maxValue, line2[x2] * sign);
 						}
 					}
+					
+					// neighbors in previous line
+					if (y > 0)
+					{
+						for (int x2 = xmin; x2 <= xmax; x2++)
+							maxValue = max(maxValue, prevLine[x2] * sign);
+					}
+					
+					// neighbor in current line
+					if (x > 0)
+						maxValue = max(maxValue, line[x - 1] * sign);
 
-					if (maxValue > currentValue)
-						updateQueue(x, y, z, maxValue, sign);
+					// add position if it can be updated
+					if (min(maxValue, maskLine[x] * sign) > currentValue)
+						queue.add(new Cursor3D(x, y, z));
 				}
+				
+				// current line becomes the previous line of next row
+				double[] tmp = prevLine;
+				prevLine = line;
+				line = tmp;
 			}
 		} // end of pixel iteration
 
 	}
 
-	private void processQueue()
+	/**
+	 * @return the number of elements processed from the queue
+	 */
+	private long processQueue()
 	{
 		if (this.connectivity == 6)
 		{
-			processQueueC6();
+			return processQueueC6();
 		} 
 		else
 		{
-			processQueueC26();
+			return processQueueC26();
 		}
 	}
 
@@ -634,7 +796,7 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 	 * Update result image using next pixel in the queue,
 	 * using the 6-adjacency.
 	 */
-	private void processQueueC6()
+	private long processQueueC6()
 	{
 		// sign for adapting dilation and erosion algorithms
 		final int sign = this.reconstructionType.getSign();
@@ -642,8 +804,13 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		// the maximal value around current pixel
 		double value;
 		
+		// check cancellation periodically
+		ProgressCounter progress = new ProgressCounter(this, 0);
 		while (!queue.isEmpty())
 		{
+			if (!progress.increment())
+				return (long) progress.getCurrent();
+
 			Cursor3D p = queue.removeFirst();
 			int x = p.getX();
 			int y = p.getY();
@@ -688,14 +855,14 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 			if (z < sizeZ - 1)
 				updateQueue(x, y, z + 1, value, sign);
 		}
-		
+		return (long) progress.getCurrent();
 	}
 
 	/**
 	 * Update result image using next pixel in the queue,
 	 * using the 26-adjacency.
 	 */
-	private void processQueueC26()
+	private long processQueueC26()
 	{
 		// sign for adapting dilation and erosion algorithms
 		final int sign = this.reconstructionType.getSign();
@@ -703,8 +870,13 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 		// the maximal value around current pixel
 		double value;
 		
-		while (!queue.isEmpty()) 
+		// check cancellation periodically
+		ProgressCounter progress = new ProgressCounter(this, 0);
+		while (!queue.isEmpty())
 		{
+			if (!progress.increment())
+				return (long) progress.getCurrent();
+
 			Cursor3D p = queue.removeFirst();
 			int x = p.getX();
 			int y = p.getY();
@@ -753,6 +925,7 @@ public class GeodesicReconstruction3DHybrid1Image3D extends	GeodesicReconstructi
 				}
 			}
 		}
+		return (long) progress.getCurrent();
 	}
 
 	/**
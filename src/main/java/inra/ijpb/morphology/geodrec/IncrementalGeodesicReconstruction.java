@@ -0,0 +1,324 @@
+/**
+ *
+ */
+package inra.ijpb.morphology.geodrec;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import ij.process.ImageProcessor;
+import inra.ijpb.data.Cursor2D;
+
+/**
+ * <p>
+ * Geodesic reconstruction that can be updated when new markers are added.
+ * </p>
+ *
+ * <p>
+ * The result of the reconstruction and the mask are kept in memory. When new
+ * marker pixels are added, only the pixels whose value is modified are
+ * propagated, using the queue-based phase of the hybrid algorithm. This makes
+ * it possible to refine the reconstruction interactively, without computing
+ * it again from scratch after each added seed.
+ * </p>
+ *
+ * <p>
+ * Example of use:
+ * <pre><code>
+ * ImageProcessor mask = IJ.getImage().getProcessor();
+ * ImageProcessor marker = mask.createProcessor(mask.getWidth(), mask.getHeight());
+ * IncrementalGeodesicReconstruction rec = new IncrementalGeodesicReconstruction(marker, mask);
+ * rec.addMarker(20, 10, 255);
+ * rec.addMarker(40, 30, 255);
+ * ImagePlus res = new ImagePlus("Reconstruction", rec.getResult());
+ * res.show();
+ * </code></pre>
+ *
+ * @see GeodesicReconstructionHybrid
+ * @see IncrementalGeodesicReconstruction3D
+ *
+ * @author David Legland
+ *
+ */
+public class IncrementalGeodesicReconstruction
+{
+	// ==============================================================
+	// Class variables
+
+	/** The type of reconstruction (by dilation or by erosion) */
+	GeodesicReconstructionType reconstructionType;
+
+	/** The connectivity of the algorithm, either 4 or 8 */
+	int connectivity;
+
+	/** The mask image */
+	ImageProcessor mask;
+
+	/** The current result of the reconstruction */
+	ImageProcessor result;
+
+	/** image width */
+	int sizeX;
+
+	/** image height */
+	int sizeY;
+
+	/** the queue containing the positions that need update */
+	Deque<Cursor2D> queue = new ArrayDeque<Cursor2D>();
+
+
+	// ==============================================================
+	// Constructors
+
+	/**
+	 * Creates a new incremental reconstruction by dilation, using the
+	 * connectivity 4, and computes the reconstruction of the initial marker.
+	 *
+	 * @param marker
+	 *            the initial marker image
+	 * @param mask
+	 *            the mask image
+	 */
+	public IncrementalGeodesicReconstruction(ImageProcessor marker, ImageProcessor mask)
+	{
+		this(marker, mask, GeodesicReconstructionType.BY_DILATION, 4);
+	}
+
+	/**
+	 * Creates a new incremental reconstruction, and computes the
+	 * reconstruction of the initial marker.
+	 *
+	 * @param marker
+	 *            the initial marker image
+	 * @param mask
+	 *            the mask image
+	 * @param type
+	 *            the type of reconstruction (erosion or dilation)
+	 * @param connectivity
+	 *            the planar connectivity to use (either 4 or 8)
+	 */
+	public IncrementalGeodesicReconstruction(ImageProcessor marker,
+			ImageProcessor mask, GeodesicReconstructionType type,
+			int connectivity)
+	{
+		if (connectivity != 4 && connectivity != 8)
+		{
+			throw new IllegalArgumentException(
+					"Connectivity must be either 4 or 8, not " + connectivity);
+		}
+		this.reconstructionType = type;
+		this.connectivity = connectivity;
+		this.mask = mask;
+		this.sizeX = mask.getWidth();
+		this.sizeY = mask.getHeight();
+
+		GeodesicReconstructionHybrid algo = new GeodesicReconstructionHybrid(type, connectivity);
+		algo.showStatus = false;
+		this.result = algo.applyTo(marker, mask);
+	}
+
+
+	// ==============================================================
+	// Accessors
+
+	/**
+	 * Returns the current result of the reconstruction. The returned image is
+	 * updated in place by subsequent additions of markers.
+	 *
+	 * @return the current result of the reconstruction
+	 */
+	public ImageProcessor getResult()
+	{
+		return this.result;
+	}
+
+	/**
+	 * @return the mask image
+	 */
+	public ImageProcessor getMask()
+	{
+		return this.mask;
+	}
+
+	/**
+	 * @return the type of reconstruction
+	 */
+	public GeodesicReconstructionType getReconstructionType()
+	{
+		return this.reconstructionType;
+	}
+
+	/**
+	 * @return the connectivity of the reconstruction
+	 */
+	public int getConnectivity()
+	{
+		return this.connectivity;
+	}
+
+
+	// ==============================================================
+	// Marker additions
+
+	/**
+	 * Adds a new marker pixel, and updates the result of the reconstruction.
+	 * The value is bounded by the value of the mask.
+	 *
+	 * @param x
+	 *            the x-coordinate of the new marker
+	 * @param y
+	 *            the y-coordinate of the new marker
+	 * @param value
+	 *            the value of the new marker
+	 * @return true if the result of the reconstruction was modified
+	 */
+	public boolean addMarker(int x, int y, double value)
+	{
+		if (!raiseValue(x, y, (float) value))
+			return false;
+		processQueue();
+		return true;
+	}
+
+	/**
+	 * Adds all the pixels of a marker image, and updates the result of the
+	 * reconstruction. Only the pixels that modify the current result are
+	 * propagated.
+	 *
+	 * @param marker
+	 *            a marker image with the same size as the mask
+	 * @return true if the result of the reconstruction was modified
+	 */
+	public boolean addMarkers(ImageProcessor marker)
+	{
+		if (marker.getWidth() != sizeX || marker.getHeight() != sizeY)
+		{
+			throw new IllegalArgumentException("Marker and Mask images must have the same size");
+		}
+
+		boolean modified = false;
+		for (int y = 0; y < sizeY; y++)
+		{
+			for (int x = 0; x < sizeX; x++)
+			{
+				if (raiseValue(x, y, marker.getf(x, y)))
+					modified = true;
+			}
+		}
+		processQueue();
+		return modified;
+	}
+
+	/**
+	 * Updates the value of the result at the given position if the new value
+	 * is greater (for dilation) or lower (for erosion), and adds the
+	 * neighbors to the queue.
+	 */
+	private boolean raiseValue(int x, int y, float value)
+	{
+		final float sign = this.reconstructionType.getSign();
+		value = min(value * sign, mask.getf(x, y) * sign);
+		if (value <= result.getf(x, y) * sign)
+			return false;
+
+		result.setf(x, y, value * sign);
+		addNeighborsToQueue(x, y, value, sign);
+		return true;
+	}
+
+
+	// ==============================================================
+	// Propagation
+
+	/**
+	 * Update result image using the positions in the queue, until the queue
+	 * is empty.
+	 */
+	private void processQueue()
+	{
+		final float sign = this.reconstructionType.getSign();
+
+		while (!queue.isEmpty())
+		{
+			Cursor2D p = queue.removeFirst();
+			int x = p.getX();
+			int y = p.getY();
+			float value = result.getf(x, y) * sign;
+
+			// compare with each one of the neighbors
+			if (connectivity == 4)
+			{
+				if (x > 0)
+					value = max(value, result.getf(x - 1, y) * sign);
+				if (x < sizeX - 1)
+					value = max(value, result.getf(x + 1, y) * sign);
+				if (y > 0)
+					value = max(value, result.getf(x, y - 1) * sign);
+				if (y < sizeY - 1)
+					value = max(value, result.getf(x, y + 1) * sign);
+			}
+			else
+			{
+				for (int y2 = max(y - 1, 0); y2 <= min(y + 1, sizeY - 1); y2++)
+				{
+					for (int x2 = max(x - 1, 0); x2 <= min(x + 1, sizeX - 1); x2++)
+					{
+						value = max(value, result.getf(x2, y2) * sign);
+					}
+				}
+			}
+
+			// bound with mask value
+			value = min(value, mask.getf(x, y) * sign);
+
+			// if no update is needed, continue to next item in queue
+			if (value <= result.getf(x, y) * sign)
+				continue;
+
+			// update result for current position, and propagate
+			result.setf(x, y, value * sign);
+			addNeighborsToQueue(x, y, value, sign);
+		}
+	}
+
+	private void addNeighborsToQueue(int x, int y, float value, float sign)
+	{
+		if (connectivity == 4)
+		{
+			if (x > 0)
+				updateQueue(x - 1, y, value, sign);
+			if (x < sizeX - 1)
+				updateQueue(x + 1, y, value, sign);
+			if (y > 0)
+				updateQueue(x, y - 1, value, sign);
+			if (y < sizeY - 1)
+				updateQueue(x, y + 1, value, sign);
+		}
+		else
+		{
+			for (int y2 = max(y - 1, 0); y2 <= min(y + 1, sizeY - 1); y2++)
+			{
+				for (int x2 = max(x - 1, 0); x2 <= min(x + 1, sizeX - 1); x2++)
+				{
+					updateQueue(x2, y2, value, sign);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the position to the queue if and only if the value can be
+	 * propagated to this position.
+	 */
+	private void updateQueue(int x, int y, float value, float sign)
+	{
+		value = min(value, mask.getf(x, y) * sign);
+		if (value > result.getf(x, y) * sign)
+		{
+			queue.add(new Cursor2D(x, y));
+		}
+	}
+}
@@ -0,0 +1,343 @@
+/**
+ *
+ */
+package inra.ijpb.morphology.geodrec;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import ij.ImageStack;
+import inra.ijpb.data.Cursor3D;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
+import inra.ijpb.morphology.GeodesicReconstruction3D;
+
+/**
+ * <p>
+ * Geodesic reconstruction of 3D images that can be updated when new markers
+ * are added.
+ * </p>
+ *
+ * <p>
+ * The result of the reconstruction and the mask are kept in memory. When new
+ * marker voxels are added, only the voxels whose value is modified are
+ * propagated, using the queue-based phase of the hybrid algorithm.
+ * </p>
+ *
+ * @see IncrementalGeodesicReconstruction
+ *
+ * @author David Legland
+ *
+ */
+public class IncrementalGeodesicReconstruction3D
+{
+	// ==============================================================
+	// Class variables
+
+	/** The type of reconstruction (by dilation or by erosion) */
+	GeodesicReconstructionType reconstructionType;
+
+	/** The connectivity of the algorithm, either 6 or 26 */
+	int connectivity;
+
+	/** The mask image */
+	ImageStack maskStack;
+
+	/** The current result of the reconstruction */
+	ImageStack resultStack;
+
+	Image3D mask;
+	Image3D result;
+
+	/** image width */
+	int sizeX;
+	/** image height */
+	int sizeY;
+	/** image depth */
+	int sizeZ;
+
+	/** the queue containing the positions that need update */
+	Deque<Cursor3D> queue = new ArrayDeque<Cursor3D>();
+
+
+	// ==============================================================
+	// Constructors
+
+	/**
+	 * Creates a new incremental reconstruction by dilation, using the
+	 * connectivity 6, and computes the reconstruction of the initial marker.
+	 *
+	 * @param marker
+	 *            the initial marker image
+	 * @param mask
+	 *            the mask image
+	 */
+	public IncrementalGeodesicReconstruction3D(ImageStack marker, ImageStack mask)
+	{
+		this(marker, mask, GeodesicReconstructionType.BY_DILATION, 6);
+	}
+
+	/**
+	 * Creates a new incremental reconstruction, and computes the
+	 * reconstruction of the initial marker.
+	 *
+	 * @param marker
+	 *            the initial marker image
+	 * @param mask
+	 *            the mask image
+	 * @param type
+	 *            the type of reconstruction (erosion or dilation)
+	 * @param connectivity
+	 *            the 3D connectivity to use (either 6 or 26)
+	 */
+	public IncrementalGeodesicReconstruction3D(ImageStack marker,
+			ImageStack mask, GeodesicReconstructionType type, int connectivity)
+	{
+		if (connectivity != 6 && connectivity != 26)
+		{
+			throw new IllegalArgumentException(
+					"Connectivity for stacks must be either 6 or 26, not " + connectivity);
+		}
+		this.reconstructionType = type;
+		this.connectivity = connectivity;
+		this.maskStack = mask;
+		this.sizeX = mask.getWidth();
+		this.sizeY = mask.getHeight();
+		this.sizeZ = mask.getSize();
+
+		if (type == GeodesicReconstructionType.BY_DILATION)
+			this.resultStack = GeodesicReconstruction3D.reconstructByDilation(marker, mask, connectivity);
+		else
+			this.resultStack = GeodesicReconstruction3D.reconstructByErosion(marker, mask, connectivity);
+
+		this.mask = Images3D.createWrapper(mask);
+		this.result = Images3D.createWrapper(this.resultStack);
+	}
+
+
+	// ==============================================================
+	// Accessors
+
+	/**
+	 * Returns the current result of the reconstruction. The returned image is
+	 * updated in place by subsequent additions of markers.
+	 *
+	 * @return the current result of the reconstruction
+	 */
+	public ImageStack getResult()
+	{
+		return this.resultStack;
+	}
+
+	/**
+	 * @return the mask image
+	 */
+	public ImageStack getMask()
+	{
+		return this.maskStack;
+	}
+
+	/**
+	 * @return the type of reconstruction
+	 */
+	public GeodesicReconstructionType getReconstructionType()
+	{
+		return this.reconstructionType;
+	}
+
+	/**
+	 * @return the connectivity of the reconstruction
+	 */
+	public int getConnectivity()
+	{
+		return this.connectivity;
+	}
+
+
+	// ==============================================================
+	// Marker additions
+
+	/**
+	 * Adds a new marker voxel, and updates the result of the reconstruction.
+	 * The value is bounded by the value of the mask.
+	 *
+	 * @param x
+	 *            the x-coordinate of the new marker
+	 * @param y
+	 *            the y-coordinate of the new marker
+	 * @param z
+	 *            the z-coordinate of the new marker
+	 * @param value
+	 *            the value of the new marker
+	 * @return true if the result of the reconstruction was modified
+	 */
+	public boolean addMarker(int x, int y, int z, double value)
+	{
+		if (!raiseValue(x, y, z, value))
+			return false;
+		processQueue();
+		return true;
+	}
+
+	/**
+	 * Adds all the voxels of a marker image, and updates the result of the
+	 * reconstruction. Only the voxels that modify the current result are
+	 * propagated.
+	 *
+	 * @param marker
+	 *            a marker image with the same size as the mask
+	 * @return true if the result of the reconstruction was modified
+	 */
+	public boolean addMarkers(ImageStack marker)
+	{
+		if (marker.getWidth() != sizeX || marker.getHeight() != sizeY
+				|| marker.getSize() != sizeZ)
+		{
+			throw new IllegalArgumentException("Marker and Mask images must have the same size");
+		}
+
+		Image3D marker3d = Images3D.createWrapper(marker);
+		boolean modified = false;
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					if (raiseValue(x, y, z, marker3d.getValue(x, y, z)))
+						modified = true;
+				}
+			}
+		}
+		processQueue();
+		return modified;
+	}
+
+	/**
+	 * Updates the value of the result at the given position if the new value
+	 * is greater (for dilation) or lower (for erosion), and adds the
+	 * neighbors to the queue.
+	 */
+	private boolean raiseValue(int x, int y, int z, double value)
+	{
+		final int sign = this.reconstructionType.getSign();
+		value = min(value * sign, mask.getValue(x, y, z) * sign);
+		if (value <= result.getValue(x, y, z) * sign)
+			return false;
+
+		result.setValue(x, y, z, value * sign);
+		addNeighborsToQueue(x, y, z, value, sign);
+		return true;
+	}
+
+
+	// ==============================================================
+	// Propagation
+
+	/**
+	 * Update result image using the positions in the queue, until the queue
+	 * is empty.
+	 */
+	private void processQueue()
+	{
+		final int sign = this.reconstructionType.getSign();
+
+		while (!queue.isEmpty())
+		{
+			Cursor3D p = queue.removeFirst();
+			int x = p.getX();
+			int y = p.getY();
+			int z = p.getZ();
+			double value = result.getValue(x, y, z) * sign;
+
+			// compare with each one of the neighbors
+			if (connectivity == 6)
+			{
+				if (x > 0)
+					value = max(value, result.getValue(x - 1, y, z) * sign);
+				if (x < sizeX - 1)
+					value = max(value, result.getValue(x + 1, y, z) * sign);
+				if (y > 0)
+					value = max(value, result.getValue(x, y - 1, z) * sign);
+				if (y < sizeY - 1)
+					value = max(value, result.getValue(x, y + 1, z) * sign);
+				if (z > 0)
+					value = max(value, result.getValue(x, y, z - 1) * sign);
+				if (z < sizeZ - 1)
+					value = max(value, result.getValue(x, y, z + 1) * sign);
+			}
+			else
+			{
+				for (int z2 = max(z - 1, 0); z2 <= min(z + 1, sizeZ - 1); z2++)
+				{
+					for (int y2 = max(y - 1, 0); y2 <= min(y + 1, sizeY - 1); y2++)
+					{
+						for (int x2 = max(x - 1, 0); x2 <= min(x + 1, sizeX - 1); x2++)
+						{
+							value = max(value, result.getValue(x2, y2, z2) * sign);
+						}
+					}
+				}
+			}
+
+			// bound with mask value
+			value = min(value, mask.getValue(x, y, z) * sign);
+
+			// if no update is needed, continue to next item in queue
+			if (value <= result.getValue(x, y, z) * sign)
+				continue;
+
+			// update result for current position, and propagate
+			result.setValue(x, y, z, value * sign);
+			addNeighborsToQueue(x, y, z, value, sign);
+		}
+	}
+
+	private void addNeighborsToQueue(int x, int y, int z, double value, int sign)
+	{
+		if (connectivity == 6)
+		{
+			if (x > 0)
+				updateQueue(x - 1, y, z, value, sign);
+			if (x < sizeX - 1)
+				updateQueue(x + 1, y, z, value, sign);
+			if (y > 0)
+				updateQueue(x, y - 1, z, value, sign);
+			if (y < sizeY - 1)
+				updateQueue(x, y + 1, z, value, sign);
+			if (z > 0)
+				updateQueue(x, y, z - 1, value, sign);
+			if (z < sizeZ - 1)
+				updateQueue(x, y, z + 1, value, sign);
+		}
+		else
+		{
+			for (int z2 = max(z - 1, 0); z2 <= min(z + 1, sizeZ - 1); z2++)
+			{
+				for (int y2 = max(y - 1, 0); y2 <= min(y + 1, sizeY - 1); y2++)
+				{
+					for (int x2 = max(x - 1, 0); x2 <= min(x + 1, sizeX - 1); x2++)
+					{
+						updateQueue(x2, y2, z2, value, sign);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the position to the queue if and only if the value can be
+	 * propagated to this position.
+	 */
+	private void updateQueue(int x, int y, int z, double value, int sign)
+	{
+		value = min(value, mask.getValue(x, y, z) * sign);
+		if (value > result.getValue(x, y, z) * sign)
+		{
+			queue.add(new Cursor3D(x, y, z));
+		}
+	}
+}
@@ -13,7 +13,8 @@
  * <ul>
  * <li>GeodesicReconstruction3DHybrid0Float for floating point images</li>
  * <li>GeodesicReconstruction3DHybrid0Gray8 for images with 255 gray levels</li>
- * <li>GeodesicReconstructionByDilation3DScanning and GeodesicReconstructionByErosion3DScanning for 16 bits images</li>
+ * <li>GeodesicReconstruction3DHybrid0Gray16 for 16 bits images</li>
+ * <li>GeodesicReconstructionByDilation3DScanning and GeodesicReconstructionByErosion3DScanning for other cases</li>
  * </ul> 
  */
 package inra.ijpb.morphology.geodrec;
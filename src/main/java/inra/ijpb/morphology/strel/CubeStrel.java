@@ -3,6 +3,10 @@
  */
 package inra.ijpb.morphology.strel;
 
+import ij.ImageStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.data.image.SliceWindowProcessor;
+
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -158,4 +162,121 @@ public class CubeStrel extends AbstractSeparableStrel3D {
 		return new CubeStrel(this.size, this.size - this.offset - 1);
 	}
 
+	/**
+	 * Performs a dilation with this structuring element. Virtual stacks are
+	 * processed slice by slice, reading slices in advance, without loading
+	 * the whole stack in memory.
+	 * 
+	 * @throws RuntimeException
+	 *             if the processing of a virtual stack is interrupted
+	 * @see inra.ijpb.morphology.strel.AbstractSeparableStrel3D#dilation(ij.ImageStack)
+	 */
+	@Override
+	public ImageStack dilation(ImageStack stack) {
+		if (stack.isVirtual() && isCentered()) {
+			ImageStack result = new SliceWindowProcessor(dilationOperator()).process(stack);
+			if (result == null) {
+				throw new RuntimeException("Dilation of virtual stack was interrupted");
+			}
+			return result;
+		}
+		return super.dilation(stack);
+	}
+
+	/**
+	 * Performs an erosion with this structuring element. Virtual stacks are
+	 * processed slice by slice, reading slices in advance, without loading
+	 * the whole stack in memory.
+	 * 
+	 * @throws RuntimeException
+	 *             if the processing of a virtual stack is interrupted
+	 * @see inra.ijpb.morphology.strel.AbstractSeparableStrel3D#erosion(ij.ImageStack)
+	 */
+	@Override
+	public ImageStack erosion(ImageStack stack) {
+		if (stack.isVirtual() && isCentered()) {
+			ImageStack result = new SliceWindowProcessor(erosionOperator()).process(stack);
+			if (result == null) {
+				throw new RuntimeException("Erosion of virtual stack was interrupted");
+			}
+			return result;
+		}
+		return super.erosion(stack);
+	}
+
+	/**
+	 * Returns an operator that computes the dilation by this structuring
+	 * element using a sliding window of slices. Each slice is dilated by a
+	 * square when it enters the window, and the result is the maximum over
+	 * the slices of the window.
+	 * 
+	 * @return the dilation operator for slice window processing
+	 * @throws IllegalArgumentException
+	 *             if the structuring element is not centered
+	 */
+	public SliceWindowProcessor.Operator dilationOperator() {
+		return new SliceOperator(true);
+	}
+
+	/**
+	 * Returns an operator that computes the erosion by this structuring
+	 * element using a sliding window of slices.
+	 * 
+	 * @return the erosion operator for slice window processing
+	 * @throws IllegalArgumentException
+	 *             if the structuring element is not centered
+	 */
+	public SliceWindowProcessor.Operator erosionOperator() {
+		return new SliceOperator(false);
+	}
+
+	/**
+	 * Checks if the structuring element is symmetric with respect to its
+	 * offset, as required for slice window processing.
+	 */
+	private boolean isCentered() {
+		return this.size == 2 * this.offset + 1;
+	}
+
+	/**
+	 * Applies a square strel on each slice, and combines the slices of the
+	 * window by computing the maximum (dilation) or minimum (erosion).
+	 */
+	private class SliceOperator implements SliceWindowProcessor.Operator {
+		boolean dilation;
+		SquareStrel square;
+
+		SliceOperator(boolean dilation) {
+			if (!isCentered()) {
+				throw new IllegalArgumentException("Requires a centered structuring element");
+			}
+			this.dilation = dilation;
+			this.square = new SquareStrel(size, offset);
+		}
+
+		public int getRadius() {
+			return offset;
+		}
+
+		public ImageProcessor prepare(ImageProcessor slice) {
+			return dilation ? square.dilation(slice) : square.erosion(slice);
+		}
+
+		public ImageProcessor process(ImageProcessor[] window) {
+			ImageProcessor result = window[offset].duplicate();
+			int nPixels = result.getWidth() * result.getHeight();
+			for (ImageProcessor slice : window) {
+				if (slice == null || slice == window[offset])
+					continue;
+				for (int i = 0; i < nPixels; i++) {
+					float value = slice.getf(i);
+					float current = result.getf(i);
+					if (dilation ? value > current : value < current)
+						result.setf(i, value);
+				}
+			}
+			return result;
+		}
+	}
+
 }
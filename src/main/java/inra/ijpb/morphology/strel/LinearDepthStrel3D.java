@@ -4,6 +4,8 @@
 package inra.ijpb.morphology.strel;
 
 import ij.ImageStack;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
 import inra.ijpb.morphology.Strel;
 
 /**
@@ -113,6 +115,10 @@ public class LinearDepthStrel3D extends AbstractInPlaceStrel3D  {
 			
 		// shifts between reference position and last position
 		int shift = this.length - this.offset - 1;
+
+		// process each z-line within a buffer
+		Image3D image = Images3D.createWrapper(stack);
+		double[] line = new double[depth];
 		
 		// create local histogram instance
 		LocalExtremumBufferGray8 localMax = new LocalExtremumBufferGray8(
@@ -123,25 +129,29 @@ public class LinearDepthStrel3D extends AbstractInPlaceStrel3D  {
 			fireProgressChanged(this, y, height);
 			for (int x = 0; x < width; x++) {
 
+				image.getLineZ(x, y, line);
+
 				// init local histogram with background values
 				localMax.fill(Strel.BACKGROUND);
 
 				// add neighbor values
 				for (int z = 0; z < Math.min(shift, depth); z++) {
-					localMax.add((int) stack.getVoxel(x, y, z));
+					localMax.add((int) line[z]);
 				}
 
 				// iterate along "middle" values
 				for (int z = 0; z < depth - shift; z++) {
-					localMax.add((int) stack.getVoxel(x, y, z + shift));
-					stack.setVoxel(x, y, z, localMax.getMax());
+					localMax.add((int) line[z + shift]);
+					line[z] = localMax.getMax();
 				}
 
 				// process pixels at the end of the line
 				for (int z = Math.max(0, depth - shift); z < depth; z++) {
 					localMax.add(Strel.BACKGROUND);
-					stack.setVoxel(x, y, z, localMax.getMax());
+					line[z] = localMax.getMax();
 				}
+
+				image.setLineZ(x, y, line);
 			}
 		}
 
@@ -160,6 +170,10 @@ public class LinearDepthStrel3D extends AbstractInPlaceStrel3D  {
 			
 		// shifts between reference position and last position
 		int shift = this.length - this.offset - 1;
+
+		// process each z-line within a buffer
+		Image3D image = Images3D.createWrapper(stack);
+		double[] line = new double[depth];
 		
 		// create local histogram instance
 		LocalExtremumBufferDouble localMax = new LocalExtremumBufferDouble(
@@ -170,25 +184,29 @@ public class LinearDepthStrel3D extends AbstractInPlaceStrel3D  {
 			fireProgressChanged(this, y, height);
 			for (int x = 0; x < width; x++) {
 
+				image.getLineZ(x, y, line);
+
 				// init local histogram with background values
 				localMax.fill(Float.NEGATIVE_INFINITY);
 
 				// add neighbor values
 				for (int z = 0; z < Math.min(shift, depth); z++) {
-					localMax.add((float) stack.getVoxel(x, y, z));
+					localMax.add((float) line[z]);
 				}
 
 				// iterate along "middle" values
 				for (int z = 0; z < depth - shift; z++) {
-					localMax.add((float) stack.getVoxel(x, y, z + shift));
-					stack.setVoxel(x, y, z, localMax.getMax());
+					localMax.add((float) line[z + shift]);
+					line[z] = localMax.getMax();
 				}
 
 				// process pixels at the end of the line
 				for (int z = Math.max(0, depth - shift); z < depth; z++) {
 					localMax.add(Float.NEGATIVE_INFINITY);
-					stack.setVoxel(x, y, z, localMax.getMax());
+					line[z] = localMax.getMax();
 				}
+
+				image.setLineZ(x, y, line);
 			}
 		}
 
@@ -224,6 +242,10 @@ public class LinearDepthStrel3D extends AbstractInPlaceStrel3D  {
 		
 		// shifts between reference position and last position
 		int shift = this.length - this.offset - 1;
+
+		// process each z-line within a buffer
+		Image3D image = Images3D.createWrapper(stack);
+		double[] line = new double[depth];
 		
 		// create local histogram instance
 		LocalExtremumBufferDouble localMin = new LocalExtremumBufferDouble(this.length,
@@ -235,25 +257,29 @@ public class LinearDepthStrel3D extends AbstractInPlaceStrel3D  {
 			fireProgressChanged(this, y, height);
 			for (int x = 0; x < width; x++) {
 
+				image.getLineZ(x, y, line);
+
 				// init local histogram with background values
 				localMin.fill(Strel.FOREGROUND);
 
 				// add neighbor values
 				for (int z = 0; z < Math.min(shift, depth); z++) {
-					localMin.add((int) stack.getVoxel(x, y, z));
+					localMin.add((int) line[z]);
 				}
 
 				// iterate along "middle" values
 				for (int z = 0; z < depth - shift; z++) {
-					localMin.add((int) stack.getVoxel(x, y, z + shift));
-					stack.setVoxel(x, y, z, localMin.getMax());
+					localMin.add((int) line[z + shift]);
+					line[z] = localMin.getMax();
 				}
 
 				// process pixels at the end of the line
 				for (int z = Math.max(0, depth - shift); z < depth; z++) {
 					localMin.add(Strel.FOREGROUND);
-					stack.setVoxel(x, y, z, localMin.getMax());
+					line[z] = localMin.getMax();
 				}
+
+				image.setLineZ(x, y, line);
 			}
 		}
 		
@@ -272,6 +298,10 @@ public class LinearDepthStrel3D extends AbstractInPlaceStrel3D  {
 		
 		// shifts between reference position and last position
 		int shift = this.length - this.offset - 1;
+
+		// process each z-line within a buffer
+		Image3D image = Images3D.createWrapper(stack);
+		double[] line = new double[depth];
 		
 		// create local histogram instance
 		LocalExtremumBufferDouble localMin = new LocalExtremumBufferDouble(
@@ -282,25 +312,29 @@ public class LinearDepthStrel3D extends AbstractInPlaceStrel3D  {
 			fireProgressChanged(this, y, height);
 			for (int x = 0; x < width; x++) {
 
+				image.getLineZ(x, y, line);
+
 				// init local histogram with background values
 				localMin.fill(Float.MAX_VALUE);
 
 				// add neighbor values
 				for (int z = 0; z < Math.min(shift, depth); z++) {
-					localMin.add((float) stack.getVoxel(x, y, z));
+					localMin.add((float) line[z]);
 				}
 
 				// iterate along "middle" values
 				for (int z = 0; z < depth - shift; z++) {
-					localMin.add((float) stack.getVoxel(x, y, z + shift));
-					stack.setVoxel(x, y, z, localMin.getMax());
+					localMin.add((float) line[z + shift]);
+					line[z] = localMin.getMax();
 				}
 
 				// process pixels at the end of the line
 				for (int z = Math.max(0, depth - shift); z < depth; z++) {
 					localMin.add(Float.MAX_VALUE);
-					stack.setVoxel(x, y, z, localMin.getMax());
+					line[z] = localMin.getMax();
 				}
+
+				image.setLineZ(x, y, line);
 			}
 		}
 		
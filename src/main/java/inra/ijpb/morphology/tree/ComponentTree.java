@@ -0,0 +1,709 @@
+/**
+ *
+ */
+package inra.ijpb.morphology.tree;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+/**
+ * <p>
+ * Component tree (max-tree or min-tree) of a planar or 3D grayscale image with
+ * 8 or 16 bits.
+ * </p>
+ *
+ * <p>
+ * The nodes of a max-tree are the connected components of the upper level
+ * sets of the image, and the nodes of a min-tree are the connected components
+ * of the lower level sets. The tree is built with the union-find algorithm of
+ * Berger et al., after sorting the pixels with a counting sort, resulting in a
+ * computation time that is almost linear with the number of pixels.
+ * </p>
+ *
+ * <p>
+ * Each node is represented by its canonical element, the pixel of the
+ * component whose parent has a different level (or the root). The parent of
+ * any other pixel is the canonical element of the node it belongs to.
+ * </p>
+ *
+ * <p>
+ * Example of use:
+ * <pre><code>
+ * ImageProcessor image = IJ.getImage().getProcessor();
+ * ComponentTree tree = ComponentTree.maxTree(image, 4);
+ * boolean[] keep = tree.selectNodes(ComponentTree.Attribute.AREA, 100);
+ * ImageProcessor result = tree.filter(keep, ComponentTree.Rule.DIRECT);
+ * </code></pre>
+ *
+ * @see inra.ijpb.morphology.AttributeFiltering
+ *
+ * @author David Legland
+ *
+ */
+public class ComponentTree
+{
+	// ==============================================================
+	// Inner enumerations
+
+	/**
+	 * The attributes that can be computed for each node of the tree.
+	 */
+	public enum Attribute
+	{
+		/** The number of pixels or voxels of the component */
+		AREA,
+		/**
+		 * The difference between the extreme value within the component and
+		 * the level of the parent component
+		 */
+		HEIGHT,
+		/** The largest side length of the bounding box of the component */
+		BOX_SIZE;
+	}
+
+	/**
+	 * The filtering rules that determine the new value of the pixels, given
+	 * the set of nodes to keep.
+	 */
+	public enum Rule
+	{
+		/**
+		 * Pixels of removed nodes take the level of the closest kept ancestor,
+		 * and pixels of kept nodes keep their level.
+		 */
+		DIRECT,
+		/**
+		 * Removed nodes take the level of their parent, and the descendants
+		 * of removed nodes are shifted by the same amount.
+		 */
+		SUBTRACTIVE;
+	}
+
+
+	// ==============================================================
+	// Class variables
+
+	/** The size of the image in each dimension */
+	int sizeX;
+	int sizeY;
+	int sizeZ;
+
+	/** The number of bits of the image, either 8 or 16 */
+	int bitDepth;
+
+	/** true for a min-tree, false for a max-tree */
+	boolean minTree;
+
+	/**
+	 * The levels of the pixels, inverted for min-trees such that both types
+	 * of trees can be processed as max-trees.
+	 */
+	int[] levels;
+
+	/** The parent of each pixel */
+	int[] parents;
+
+	/** The pixels sorted from the leaves to the root */
+	int[] sortedPixels;
+
+	/** The number of pixels within each node, indexed by canonical elements */
+	int[] areas;
+
+	/** The maximal level within each node, indexed by canonical elements */
+	int[] maxLevels;
+
+	/**
+	 * The bounding box of each node, indexed by canonical elements, as xmin,
+	 * xmax, ymin, ymax, zmin, zmax arrays. Computed on demand.
+	 */
+	int[][] boxes;
+
+
+	// ==============================================================
+	// Static factories
+
+	/**
+	 * Computes the max-tree of a planar image.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits planar image
+	 * @param conn
+	 *            the connectivity, either 4 or 8
+	 * @return the max-tree of the image
+	 */
+	public static final ComponentTree maxTree(ImageProcessor image, int conn)
+	{
+		return new ComponentTree(image, conn, false);
+	}
+
+	/**
+	 * Computes the min-tree of a planar image.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits planar image
+	 * @param conn
+	 *            the connectivity, either 4 or 8
+	 * @return the min-tree of the image
+	 */
+	public static final ComponentTree minTree(ImageProcessor image, int conn)
+	{
+		return new ComponentTree(image, conn, true);
+	}
+
+	/**
+	 * Computes the max-tree of a 3D image.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits 3D image
+	 * @param conn
+	 *            the connectivity, either 6 or 26
+	 * @return the max-tree of the image
+	 */
+	public static final ComponentTree maxTree(ImageStack image, int conn)
+	{
+		return new ComponentTree(image, conn, false);
+	}
+
+	/**
+	 * Computes the min-tree of a 3D image.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits 3D image
+	 * @param conn
+	 *            the connectivity, either 6 or 26
+	 * @return the min-tree of the image
+	 */
+	public static final ComponentTree minTree(ImageStack image, int conn)
+	{
+		return new ComponentTree(image, conn, true);
+	}
+
+
+	// ==============================================================
+	// Constructors
+
+	private ComponentTree(ImageProcessor image, int conn, boolean minTree)
+	{
+		if (conn != 4 && conn != 8)
+		{
+			throw new IllegalArgumentException("Connectivity must be 4 or 8, not " + conn);
+		}
+		this.bitDepth = checkBitDepth(image.getBitDepth());
+		this.sizeX = image.getWidth();
+		this.sizeY = image.getHeight();
+		this.sizeZ = 1;
+		this.minTree = minTree;
+
+		this.levels = new int[sizeX * sizeY];
+		readLevels(image, levels, 0);
+
+		buildTree(conn == 4 ? 6 : 26);
+	}
+
+	private ComponentTree(ImageStack image, int conn, boolean minTree)
+	{
+		if (conn != 6 && conn != 26)
+		{
+			throw new IllegalArgumentException("Connectivity must be 6 or 26, not " + conn);
+		}
+		this.bitDepth = checkBitDepth(image.getBitDepth());
+		this.sizeX = image.getWidth();
+		this.sizeY = image.getHeight();
+		this.sizeZ = image.getSize();
+		this.minTree = minTree;
+
+		this.levels = new int[sizeX * sizeY * sizeZ];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			readLevels(image.getProcessor(z + 1), levels, z * sizeX * sizeY);
+		}
+
+		buildTree(conn);
+	}
+
+	private static final int checkBitDepth(int bitDepth)
+	{
+		if (bitDepth != 8 && bitDepth != 16)
+		{
+			throw new IllegalArgumentException("Requires an image with 8 or 16 bits, not " + bitDepth);
+		}
+		return bitDepth;
+	}
+
+	private void readLevels(ImageProcessor image, int[] levels, int offset)
+	{
+		int maxValue = (1 << bitDepth) - 1;
+		int n = sizeX * sizeY;
+		for (int i = 0; i < n; i++)
+		{
+			int value = image.get(i);
+			levels[offset + i] = minTree ? maxValue - value : value;
+		}
+	}
+
+
+	// ==============================================================
+	// Tree construction
+
+	/**
+	 * Builds the tree, and computes the area and the maximal level of each
+	 * node. The connectivity is given in 3D: planar connectivities 4 and 8
+	 * correspond to 6 and 26 on images with a single slice.
+	 */
+	private void buildTree(int conn)
+	{
+		int n = levels.length;
+		sortedPixels = sortPixelsDecreasing();
+		parents = new int[n];
+
+		// the roots of the partial trees, used for union-find
+		int[] zpar = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			zpar[i] = -1;
+		}
+
+		int sizeXY = sizeX * sizeY;
+		int[] neighbors = new int[26];
+		for (int i = 0; i < n; i++)
+		{
+			int p = sortedPixels[i];
+			parents[p] = p;
+			zpar[p] = p;
+
+			int nNeighbors = computeNeighbors(p, sizeXY, conn, neighbors);
+			for (int k = 0; k < nNeighbors; k++)
+			{
+				int q = neighbors[k];
+				if (zpar[q] == -1)
+					continue;
+
+				int r = findRoot(zpar, q);
+				if (r != p)
+				{
+					parents[r] = p;
+					zpar[r] = p;
+				}
+			}
+		}
+
+		// canonicalize the tree, processing the parents before the children
+		for (int i = n - 1; i >= 0; i--)
+		{
+			int p = sortedPixels[i];
+			int q = parents[p];
+			if (levels[parents[q]] == levels[q])
+				parents[p] = parents[q];
+		}
+
+		// compute area and maximal level, processing children before parents
+		areas = new int[n];
+		maxLevels = new int[n];
+		for (int p = 0; p < n; p++)
+		{
+			areas[p] = 1;
+			maxLevels[p] = levels[p];
+		}
+		for (int i = 0; i < n - 1; i++)
+		{
+			int p = sortedPixels[i];
+			int q = parents[p];
+			areas[q] += areas[p];
+			maxLevels[q] = Math.max(maxLevels[q], maxLevels[p]);
+		}
+	}
+
+	/**
+	 * Sorts the pixels by decreasing level, using a counting sort.
+	 */
+	private int[] sortPixelsDecreasing()
+	{
+		int nLevels = 1 << bitDepth;
+		int[] counts = new int[nLevels + 1];
+		for (int level : levels)
+		{
+			counts[nLevels - 1 - level + 1]++;
+		}
+		for (int i = 1; i <= nLevels; i++)
+		{
+			counts[i] += counts[i - 1];
+		}
+
+		int[] sorted = new int[levels.length];
+		for (int p = 0; p < levels.length; p++)
+		{
+			sorted[counts[nLevels - 1 - levels[p]]++] = p;
+		}
+		return sorted;
+	}
+
+	private static final int findRoot(int[] zpar, int p)
+	{
+		int root = p;
+		while (zpar[root] != root)
+		{
+			root = zpar[root];
+		}
+
+		// path compression
+		while (zpar[p] != root)
+		{
+			int next = zpar[p];
+			zpar[p] = root;
+			p = next;
+		}
+		return root;
+	}
+
+	/**
+	 * Computes the indices of the neighbors of a pixel, and returns the
+	 * number of neighbors.
+	 */
+	private int computeNeighbors(int p, int sizeXY, int conn, int[] neighbors)
+	{
+		int z = p / sizeXY;
+		int y = (p % sizeXY) / sizeX;
+		int x = p % sizeX;
+
+		int count = 0;
+		if (conn == 6)
+		{
+			if (x > 0)
+				neighbors[count++] = p - 1;
+			if (x < sizeX - 1)
+				neighbors[count++] = p + 1;
+			if (y > 0)
+				neighbors[count++] = p - sizeX;
+			if (y < sizeY - 1)
+				neighbors[count++] = p + sizeX;
+			if (z > 0)
+				neighbors[count++] = p - sizeXY;
+			if (z < sizeZ - 1)
+				neighbors[count++] = p + sizeXY;
+			return count;
+		}
+
+		for (int z2 = Math.max(z - 1, 0); z2 <= Math.min(z + 1, sizeZ - 1); z2++)
+		{
+			for (int y2 = Math.max(y - 1, 0); y2 <= Math.min(y + 1, sizeY - 1); y2++)
+			{
+				for (int x2 = Math.max(x - 1, 0); x2 <= Math.min(x + 1, sizeX - 1); x2++)
+				{
+					int q = (z2 * sizeY + y2) * sizeX + x2;
+					if (q != p)
+						neighbors[count++] = q;
+				}
+			}
+		}
+		return count;
+	}
+
+
+	// ==============================================================
+	// Accessors
+
+	/**
+	 * @return true if this tree is a min-tree, false for a max-tree
+	 */
+	public boolean isMinTree()
+	{
+		return minTree;
+	}
+
+	/**
+	 * @return the index of the root of the tree
+	 */
+	public int getRoot()
+	{
+		return sortedPixels[sortedPixels.length - 1];
+	}
+
+	/**
+	 * Returns the parent of each pixel, as linear indices. For canonical
+	 * elements, this is the canonical element of the parent node. For other
+	 * pixels, this is the canonical element of the node containing the pixel.
+	 * The parent of the root is the root itself.
+	 *
+	 * @return the array of parents
+	 */
+	public int[] getParents()
+	{
+		return parents;
+	}
+
+	/**
+	 * Checks if a pixel is the canonical element of a node.
+	 *
+	 * @param index
+	 *            the linear index of the pixel
+	 * @return true if the pixel represents a node of the tree
+	 */
+	public boolean isCanonical(int index)
+	{
+		int q = parents[index];
+		return q == index || levels[q] != levels[index];
+	}
+
+	/**
+	 * @return the number of nodes of the tree
+	 */
+	public int getNodeCount()
+	{
+		int count = 0;
+		for (int p = 0; p < parents.length; p++)
+		{
+			if (isCanonical(p))
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the gray level of a node, identified by its canonical element.
+	 *
+	 * @param index
+	 *            the linear index of the canonical element
+	 * @return the gray level of the node in the original image
+	 */
+	public int getLevel(int index)
+	{
+		return minTree ? (1 << bitDepth) - 1 - levels[index] : levels[index];
+	}
+
+	/**
+	 * Returns the area (or the volume) of the nodes, indexed by canonical
+	 * elements. Values for other pixels are meaningless.
+	 *
+	 * @return the number of pixels or voxels of each node
+	 */
+	public int[] getAreas()
+	{
+		return areas;
+	}
+
+	/**
+	 * Returns the height of the nodes, indexed by canonical elements, as the
+	 * absolute difference between the extreme value within the node and the
+	 * level of its parent node. The height of the root is the difference
+	 * between the extreme value and the level of the root.
+	 *
+	 * @return the height of each node
+	 */
+	public int[] getHeights()
+	{
+		int[] heights = new int[levels.length];
+		for (int p = 0; p < levels.length; p++)
+		{
+			heights[p] = maxLevels[p] - levels[parents[p]];
+		}
+		int root = getRoot();
+		heights[root] = maxLevels[root] - levels[root];
+		return heights;
+	}
+
+	/**
+	 * Returns the bounding boxes of the nodes, indexed by canonical elements.
+	 * The result is an array of six arrays corresponding to xmin, xmax, ymin,
+	 * ymax, zmin and zmax (inclusive bounds).
+	 *
+	 * @return the bounding boxes of the nodes
+	 */
+	public int[][] getBoundingBoxes()
+	{
+		if (boxes == null)
+		{
+			boxes = computeBoundingBoxes();
+		}
+		return boxes;
+	}
+
+	private int[][] computeBoundingBoxes()
+	{
+		int n = levels.length;
+		int sizeXY = sizeX * sizeY;
+		int[] xmin = new int[n];
+		int[] xmax = new int[n];
+		int[] ymin = new int[n];
+		int[] ymax = new int[n];
+		int[] zmin = new int[n];
+		int[] zmax = new int[n];
+		for (int p = 0; p < n; p++)
+		{
+			int z = p / sizeXY;
+			int y = (p % sizeXY) / sizeX;
+			int x = p % sizeX;
+			xmin[p] = x;
+			xmax[p] = x;
+			ymin[p] = y;
+			ymax[p] = y;
+			zmin[p] = z;
+			zmax[p] = z;
+		}
+
+		// merge boxes of children into parents
+		for (int i = 0; i < n - 1; i++)
+		{
+			int p = sortedPixels[i];
+			int q = parents[p];
+			xmin[q] = Math.min(xmin[q], xmin[p]);
+			xmax[q] = Math.max(xmax[q], xmax[p]);
+			ymin[q] = Math.min(ymin[q], ymin[p]);
+			ymax[q] = Math.max(ymax[q], ymax[p]);
+			zmin[q] = Math.min(zmin[q], zmin[p]);
+			zmax[q] = Math.max(zmax[q], zmax[p]);
+		}
+		return new int[][] { xmin, xmax, ymin, ymax, zmin, zmax };
+	}
+
+
+	// ==============================================================
+	// Filtering
+
+	/**
+	 * Selects the nodes whose attribute is greater than or equal to the given
+	 * threshold. The root is always selected.
+	 *
+	 * @param attribute
+	 *            the attribute used for selection
+	 * @param threshold
+	 *            the minimal value of the attribute
+	 * @return a boolean array indexed by canonical elements, true for the
+	 *         nodes to keep
+	 */
+	public boolean[] selectNodes(Attribute attribute, double threshold)
+	{
+		int n = levels.length;
+		boolean[] keep = new boolean[n];
+		switch (attribute)
+		{
+		case AREA:
+			for (int p = 0; p < n; p++)
+				keep[p] = areas[p] >= threshold;
+			break;
+		case HEIGHT:
+			int[] heights = getHeights();
+			for (int p = 0; p < n; p++)
+				keep[p] = heights[p] >= threshold;
+			break;
+		case BOX_SIZE:
+			int[][] bounds = getBoundingBoxes();
+			for (int p = 0; p < n; p++)
+			{
+				int size = Math.max(bounds[1][p] - bounds[0][p], bounds[3][p] - bounds[2][p]);
+				size = Math.max(size, bounds[5][p] - bounds[4][p]) + 1;
+				keep[p] = size >= threshold;
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown attribute: " + attribute);
+		}
+		keep[getRoot()] = true;
+		return keep;
+	}
+
+	/**
+	 * Computes the filtered levels of each pixel, given the nodes to keep.
+	 */
+	private int[] filterLevels(boolean[] keep, Rule rule)
+	{
+		int n = levels.length;
+		int[] result = new int[n];
+
+		// process parents before children
+		int root = getRoot();
+		result[root] = levels[root];
+		for (int i = n - 2; i >= 0; i--)
+		{
+			int p = sortedPixels[i];
+			int q = parents[p];
+			if (levels[q] == levels[p])
+			{
+				// not a canonical element: same level as its node
+				result[p] = result[q];
+			}
+			else if (!keep[p])
+			{
+				result[p] = result[q];
+			}
+			else if (rule == Rule.DIRECT)
+			{
+				result[p] = levels[p];
+			}
+			else
+			{
+				result[p] = result[q] + levels[p] - levels[q];
+			}
+		}
+
+		// convert back to original gray levels for min-trees
+		if (minTree)
+		{
+			int maxValue = (1 << bitDepth) - 1;
+			for (int p = 0; p < n; p++)
+			{
+				result[p] = maxValue - result[p];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a new planar image by keeping only the selected nodes.
+	 *
+	 * @param keep
+	 *            a boolean array indexed by canonical elements, true for the
+	 *            nodes to keep
+	 * @param rule
+	 *            the rule used to compute the value of removed nodes
+	 * @return the filtered image
+	 */
+	public ImageProcessor filter(boolean[] keep, Rule rule)
+	{
+		if (sizeZ != 1)
+		{
+			throw new IllegalStateException("Requires a tree computed from a planar image");
+		}
+		int[] values = filterLevels(keep, rule);
+		ImageProcessor result = createProcessor();
+		for (int i = 0; i < values.length; i++)
+		{
+			result.set(i, values[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * Creates a new 3D image by keeping only the selected nodes.
+	 *
+	 * @param keep
+	 *            a boolean array indexed by canonical elements, true for the
+	 *            nodes to keep
+	 * @param rule
+	 *            the rule used to compute the value of removed nodes
+	 * @return the filtered 3D image
+	 */
+	public ImageStack filterStack(boolean[] keep, Rule rule)
+	{
+		int[] values = filterLevels(keep, rule);
+		int sizeXY = sizeX * sizeY;
+		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, bitDepth);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			ImageProcessor slice = result.getProcessor(z + 1);
+			for (int i = 0; i < sizeXY; i++)
+			{
+				slice.set(i, values[z * sizeXY + i]);
+			}
+		}
+		return result;
+	}
+
+	private ImageProcessor createProcessor()
+	{
+		if (bitDepth == 8)
+			return new ByteProcessor(sizeX, sizeY);
+		return new ShortProcessor(sizeX, sizeY);
+	}
+}
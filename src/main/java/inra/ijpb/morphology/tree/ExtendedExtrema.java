@@ -0,0 +1,365 @@
+/**
+ *
+ */
+package inra.ijpb.morphology.tree;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Computes the extended minima or maxima of a grayscale image for any value
+ * of the dynamic, after a single computation of the component tree.
+ * </p>
+ *
+ * <p>
+ * The extended minima with dynamic <code>h</code> correspond to the nodes N of
+ * the min-tree such that the difference between the level of N and the
+ * minimum within N is at most <code>h</code>, and such that the difference
+ * between the level of the parent of N and the minimum within N is greater
+ * than <code>h</code>. Once the tree is computed, the extended extrema for a
+ * given dynamic are obtained with a single traversal of the tree. The results
+ * are the same as with the <code>extendedMinima</code> and
+ * <code>extendedMaxima</code> methods of the
+ * {@link inra.ijpb.morphology.MinimaAndMaxima} class, that require a geodesic
+ * reconstruction for each value of the dynamic.
+ * </p>
+ *
+ * <p>
+ * Example of use:
+ * <pre><code>
+ * ImageProcessor image = IJ.getImage().getProcessor();
+ * ExtendedExtrema minima = ExtendedExtrema.minima(image, 4);
+ * ImageProcessor minima10 = minima.extendedExtrema(10);
+ * ImageProcessor minima20 = minima.extendedExtrema(20);
+ * </code></pre>
+ *
+ * @see inra.ijpb.morphology.MinimaAndMaxima#extendedMinima(ImageProcessor, int, int)
+ * @see ComponentTree
+ *
+ * @author David Legland
+ *
+ */
+public class ExtendedExtrema
+{
+	// ==============================================================
+	// Class variables
+
+	/** The size of the image */
+	int sizeX;
+	int sizeY;
+	int sizeZ;
+
+	/**
+	 * The levels, the parents and the maximal levels of the component tree.
+	 * The other arrays of the tree (sorted pixels, areas) are not kept, so
+	 * that the memory footprint is reduced when the instance is kept for
+	 * computing extended extrema with several dynamics.
+	 */
+	int[] levels;
+	int[] parents;
+	int[] maxLevels;
+
+	/** The index of the root of the tree */
+	int root;
+
+	/** The canonical elements of the regional extrema */
+	int[] extremaIndices;
+
+	/** The dynamic of each regional extremum */
+	int[] extremaDynamics;
+
+
+	// ==============================================================
+	// Static factories
+
+	/**
+	 * Prepares the computation of extended minima of a planar image.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits planar image
+	 * @param conn
+	 *            the connectivity, either 4 or 8
+	 * @return a new instance of ExtendedExtrema
+	 */
+	public static final ExtendedExtrema minima(ImageProcessor image, int conn)
+	{
+		return new ExtendedExtrema(ComponentTree.minTree(image, conn));
+	}
+
+	/**
+	 * Prepares the computation of extended maxima of a planar image.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits planar image
+	 * @param conn
+	 *            the connectivity, either 4 or 8
+	 * @return a new instance of ExtendedExtrema
+	 */
+	public static final ExtendedExtrema maxima(ImageProcessor image, int conn)
+	{
+		return new ExtendedExtrema(ComponentTree.maxTree(image, conn));
+	}
+
+	/**
+	 * Prepares the computation of extended minima of a 3D image.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits 3D image
+	 * @param conn
+	 *            the connectivity, either 6 or 26
+	 * @return a new instance of ExtendedExtrema
+	 */
+	public static final ExtendedExtrema minima(ImageStack image, int conn)
+	{
+		return new ExtendedExtrema(ComponentTree.minTree(image, conn));
+	}
+
+	/**
+	 * Prepares the computation of extended maxima of a 3D image.
+	 *
+	 * @param image
+	 *            an 8 or 16 bits 3D image
+	 * @param conn
+	 *            the connectivity, either 6 or 26
+	 * @return a new instance of ExtendedExtrema
+	 */
+	public static final ExtendedExtrema maxima(ImageStack image, int conn)
+	{
+		return new ExtendedExtrema(ComponentTree.maxTree(image, conn));
+	}
+
+
+	// ==============================================================
+	// Constructor
+
+	/**
+	 * Creates a new instance from a component tree. Extended minima are
+	 * obtained from min-trees, and extended maxima from max-trees.
+	 *
+	 * @param tree
+	 *            the component tree of the image
+	 */
+	public ExtendedExtrema(ComponentTree tree)
+	{
+		this.sizeX = tree.sizeX;
+		this.sizeY = tree.sizeY;
+		this.sizeZ = tree.sizeZ;
+		this.levels = tree.levels;
+		this.parents = tree.parents;
+		this.maxLevels = tree.maxLevels;
+		this.root = tree.getRoot();
+		storeDynamics(computeDynamics(tree));
+	}
+
+
+	// ==============================================================
+	// Dynamics
+
+	/**
+	 * Computes the dynamic of each regional extremum, by merging the nodes
+	 * from the leaves to the root, and keeping the most extreme leaf for each
+	 * node.
+	 */
+	private int[] computeDynamics(ComponentTree tree)
+	{
+		int[] sorted = tree.sortedPixels;
+		int n = levels.length;
+
+		int[] dyn = new int[n];
+		int[] reps = new int[n];
+		for (int p = 0; p < n; p++)
+		{
+			dyn[p] = -1;
+			reps[p] = -1;
+		}
+
+		for (int i = 0; i < n; i++)
+		{
+			int p = sorted[i];
+			if (!tree.isCanonical(p))
+				continue;
+
+			// nodes without children are regional extrema
+			if (reps[p] == -1)
+				reps[p] = p;
+			if (p == root)
+				break;
+
+			// merge with parent node, the least extreme leaf stops here
+			int q = parents[p];
+			int rep = reps[p];
+			if (reps[q] == -1)
+			{
+				reps[q] = rep;
+			}
+			else if (levels[rep] > levels[reps[q]])
+			{
+				dyn[reps[q]] = levels[reps[q]] - levels[q];
+				reps[q] = rep;
+			}
+			else
+			{
+				dyn[rep] = levels[rep] - levels[q];
+			}
+		}
+
+		// the global extremum has infinite dynamic
+		dyn[reps[root]] = Integer.MAX_VALUE;
+		return dyn;
+	}
+
+	/**
+	 * Keeps the dynamics of the regional extrema only, as they are much less
+	 * numerous than pixels.
+	 */
+	private void storeDynamics(int[] dyn)
+	{
+		int count = 0;
+		for (int p = 0; p < dyn.length; p++)
+		{
+			if (dyn[p] >= 0)
+				count++;
+		}
+
+		this.extremaIndices = new int[count];
+		this.extremaDynamics = new int[count];
+		int i = 0;
+		for (int p = 0; p < dyn.length; p++)
+		{
+			if (dyn[p] >= 0)
+			{
+				extremaIndices[i] = p;
+				extremaDynamics[i++] = dyn[p];
+			}
+		}
+	}
+
+	/**
+	 * Returns the dynamic of each regional extremum, indexed by the linear
+	 * index of the canonical element of the extremum. The value is -1 for
+	 * pixels that are not canonical elements of regional extrema, and
+	 * <code>Integer.MAX_VALUE</code> for the global extremum.
+	 *
+	 * @return the dynamics of the regional extrema
+	 */
+	public int[] getDynamics()
+	{
+		int[] dyn = new int[levels.length];
+		Arrays.fill(dyn, -1);
+		for (int i = 0; i < extremaIndices.length; i++)
+		{
+			dyn[extremaIndices[i]] = extremaDynamics[i];
+		}
+		return dyn;
+	}
+
+
+	// ==============================================================
+	// Extended extrema
+
+	/**
+	 * Computes the membership of each pixel to the extended extrema with the
+	 * given dynamic. As the sorted pixels are not kept, the membership of a
+	 * pixel is computed after the membership of its ancestors, by climbing
+	 * the tree up to a pixel already processed.
+	 */
+	private boolean[] selectPixels(int dynamic)
+	{
+		int n = levels.length;
+		boolean[] inside = new boolean[n];
+		boolean[] done = new boolean[n];
+
+		// the pixels between the current pixel and a processed ancestor
+		int[] stack = new int[64];
+		for (int p0 = 0; p0 < n; p0++)
+		{
+			int stackSize = 0;
+			int p = p0;
+			while (!done[p])
+			{
+				if (stackSize == stack.length)
+					stack = Arrays.copyOf(stack, stackSize * 2);
+				stack[stackSize++] = p;
+				if (p == root)
+					break;
+				p = parents[p];
+			}
+
+			// process parents before children
+			while (stackSize > 0)
+			{
+				p = stack[--stackSize];
+				int q = parents[p];
+				if (p == root)
+				{
+					inside[p] = maxLevels[p] - levels[p] <= dynamic;
+				}
+				else if (levels[q] == levels[p])
+				{
+					inside[p] = inside[q];
+				}
+				else
+				{
+					int extremum = maxLevels[p];
+					inside[p] = inside[q] || (extremum - levels[p] <= dynamic
+							&& extremum - levels[q] > dynamic);
+				}
+				done[p] = true;
+			}
+		}
+		return inside;
+	}
+
+	/**
+	 * Computes the extended extrema of a planar image for the given dynamic.
+	 *
+	 * @param dynamic
+	 *            the minimal difference between an extremum and its boundary
+	 * @return a binary image of the extended extrema, with value 255 within
+	 *         extrema and 0 elsewhere
+	 */
+	public ImageProcessor extendedExtrema(int dynamic)
+	{
+		if (sizeZ != 1)
+		{
+			throw new IllegalStateException("Requires a tree computed from a planar image");
+		}
+		boolean[] inside = selectPixels(dynamic);
+		ImageProcessor result = new ByteProcessor(sizeX, sizeY);
+		for (int i = 0; i < inside.length; i++)
+		{
+			if (inside[i])
+				result.set(i, 255);
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the extended extrema of a 3D image for the given dynamic.
+	 *
+	 * @param dynamic
+	 *            the minimal difference between an extremum and its boundary
+	 * @return a binary 3D image of the extended extrema, with value 255 within
+	 *         extrema and 0 elsewhere
+	 */
+	public ImageStack extendedExtremaStack(int dynamic)
+	{
+		boolean[] inside = selectPixels(dynamic);
+		int sizeXY = sizeX * sizeY;
+		ImageStack result = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			byte[] pixels = (byte[]) result.getPixels(z + 1);
+			for (int i = 0; i < sizeXY; i++)
+			{
+				if (inside[z * sizeXY + i])
+					pixels[i] = (byte) 255;
+			}
+		}
+		return result;
+	}
+}
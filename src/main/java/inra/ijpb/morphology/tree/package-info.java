@@ -0,0 +1,11 @@
+/**
+ * <p>Component trees (max-tree and min-tree) of grayscale images.</p>
+ * 
+ * <p>
+ * Component trees are used for computing attribute filters, such as
+ * grayscale area openings and closings. Static methods are provided in the
+ * {@link inra.ijpb.morphology.AttributeFiltering} class.
+ * </p>
+ */
+package inra.ijpb.morphology.tree;
+
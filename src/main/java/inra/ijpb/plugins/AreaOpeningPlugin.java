@@ -12,9 +12,9 @@ import ij.plugin.filter.PlugInFilterRunner;
 import ij.process.ImageProcessor;
 import inra.ijpb.binary.BinaryImages;
 import inra.ijpb.label.LabelImages;
+import inra.ijpb.label.LabelIndex;
 
 import java.awt.AWTEvent;
-import java.util.HashMap;
 
 /**
  * Select binary particles in a planar image based on number of pixels.
@@ -43,7 +43,7 @@ public class AreaOpeningPlugin implements ExtendedPlugInFilter, DialogListener
 	private ImageProcessor result;
 
 	private ImageProcessor labelImage;
-	private HashMap<Integer, Integer> labelMap;
+	private LabelIndex labelMap;
 	private int[] pixelCountArray;
 	
 	int minPixelCount = 100;
@@ -92,8 +92,8 @@ public class AreaOpeningPlugin implements ExtendedPlugInFilter, DialogListener
 		}
 
 		int[] labels = LabelImages.findAllLabels(labelImage);
-		this.labelMap = LabelImages.mapLabelIndices(labels);
-		this.pixelCountArray = LabelImages.pixelCount(labelImage, labels);
+		this.labelMap = new LabelIndex(labels);
+		this.pixelCountArray = this.labelMap.pixelCount(labelImage);
 		
 		return flags;
 	}
@@ -135,7 +135,7 @@ public class AreaOpeningPlugin implements ExtendedPlugInFilter, DialogListener
 				int label = (int) this.labelImage.get(i);
 				if (label > 0) 
 				{
-					int index = this.labelMap.get(label); 
+					int index = this.labelMap.indexOf(label); 
 					keepPixel = this.pixelCountArray[index] > this.minPixelCount;
 				}
 				image.set(i, keepPixel ? 255 : 0);
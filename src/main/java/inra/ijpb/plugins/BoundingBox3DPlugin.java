@@ -5,7 +5,7 @@ import ij.IJ;
 import ij.ImagePlus;
 import ij.measure.ResultsTable;
 import ij.plugin.PlugIn;
-import inra.ijpb.measure.GeometricMeasures3D;
+import inra.ijpb.label.LabelStatistics;
 
 /**
  * Plugin for measuring geometric quantities such as volume, surface area 
@@ -28,7 +28,24 @@ public class BoundingBox3DPlugin implements PlugIn {
 			return;
 		}
 		
-        ResultsTable table = GeometricMeasures3D.boundingBox(imagePlus.getStack());
+		// retrieve labels and bounds from the statistics of the label image
+		LabelStatistics stats = LabelStatistics.get(imagePlus);
+		int[] labels = stats.getLabels();
+		int[][] boxes = stats.getBoundingBoxes();
+		
+		// Create data table
+		ResultsTable table = new ResultsTable();
+		for (int i = 0; i < labels.length; i++)
+		{
+			table.incrementCounter();
+			table.addLabel(Integer.toString(labels[i]));
+			table.addValue("XMin", boxes[i][0]);
+			table.addValue("XMax", boxes[i][1]);
+			table.addValue("YMin", boxes[i][2]);
+			table.addValue("YMax", boxes[i][3]);
+			table.addValue("ZMin", boxes[i][4]);
+			table.addValue("ZMax", boxes[i][5]);
+		}
         
  		// create string for indexing results
 		String tableName = imagePlus.getShortTitle() + "-bounds"; 
@@ -1,6 +1,5 @@
 package inra.ijpb.plugins;
 
-import java.util.HashMap;
 
 import ij.IJ;
 import ij.ImagePlus;
@@ -8,7 +7,11 @@ import ij.ImageStack;
 import ij.gui.GenericDialog;
 import ij.plugin.PlugIn;
 import ij.process.ImageProcessor;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
+import inra.ijpb.data.image.IntStackWrapper;
 import inra.ijpb.label.LabelImages;
+import inra.ijpb.label.LabelIndex;
 import inra.ijpb.measure.GeometricMeasures2D;
 import inra.ijpb.measure.GeometricMeasures3D;
 
@@ -106,11 +109,7 @@ public class ExpandLabelsPlugin implements PlugIn
 		}
 		
         // create associative array to know index of each label
-		HashMap<Integer, Integer> labelIndices = new HashMap<Integer, Integer>();
-        for (int i = 0; i < nLabels; i++) 
-        {
-        	labelIndices.put(labels[i], i);
-        }
+		LabelIndex labelIndices = new LabelIndex(labels);
 
 		for (int y = 0; y < sizeY; y++)
 		{
@@ -120,7 +119,7 @@ public class ExpandLabelsPlugin implements PlugIn
 				if (label == 0)
 					continue;
 
-				int index = labelIndices.get(label);
+				int index = labelIndices.indexOf(label);
 				int x2 = x + shifts[index][0];
 				int y2 = y + shifts[index][1];
 				result.set(x2, y2, label);
@@ -145,7 +144,10 @@ public class ExpandLabelsPlugin implements PlugIn
 		
 		// allocate memory for result
 		int bitDepth = image.getBitDepth();
-		ImageStack result = ImageStack.create(sizeX2, sizeY2, sizeZ2, bitDepth);
+		ImageStack result = bitDepth == 24 ? IntStackWrapper.createStack(sizeX2, sizeY2, sizeZ2)
+				: ImageStack.create(sizeX2, sizeY2, sizeZ2, bitDepth);
+		Image3D labelValues = Images3D.createWrapper(image);
+		Image3D resultValues = Images3D.createWrapper(result);
 	
 		// compute centroids of labels
 		int[] labels = LabelImages.findAllLabels(image);
@@ -162,11 +164,7 @@ public class ExpandLabelsPlugin implements PlugIn
 		}
 		
         // create associative array to know index of each label
-		HashMap<Integer, Integer> labelIndices = new HashMap<Integer, Integer>();
-        for (int i = 0; i < nLabels; i++) 
-        {
-        	labelIndices.put(labels[i], i);
-        }
+		LabelIndex labelIndices = new LabelIndex(labels);
 
         for (int z = 0; z < sizeZ; z++)
         {
@@ -174,15 +172,15 @@ public class ExpandLabelsPlugin implements PlugIn
         	{
         		for (int x = 0; x < sizeX; x++)
         		{
-        			int label = (int) image.getVoxel(x, y, z);
+        			int label = labelValues.get(x, y, z);
         			if (label == 0)
         				continue;
 
-        			int index = labelIndices.get(label);
+        			int index = labelIndices.indexOf(label);
         			int x2 = x + shifts[index][0];
         			int y2 = y + shifts[index][1];
         			int z2 = z + shifts[index][2];
-        			result.setVoxel(x2, y2, z2, label);
+        			resultValues.set(x2, y2, z2, label);
         		}
         	}
         }
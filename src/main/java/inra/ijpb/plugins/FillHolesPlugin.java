@@ -35,6 +35,11 @@ public class FillHolesPlugin implements PlugIn
 		{
 			ImageStack stack = imagePlus.getStack();
 			ImageStack result = GeodesicReconstruction3D.fillHoles(stack);
+			if (result == null)
+			{
+				IJ.showStatus("Fill Holes was interrupted");
+				return;
+			}
 			resultPlus = new ImagePlus(newName, result);
 			
 		} 
@@ -42,6 +47,11 @@ public class FillHolesPlugin implements PlugIn
 		{
 			ImageProcessor image = imagePlus.getProcessor();
 			ImageProcessor result = GeodesicReconstruction.fillHoles(image);
+			if (result == null)
+			{
+				IJ.showStatus("Fill Holes was interrupted");
+				return;
+			}
 			resultPlus = new ImagePlus(newName, result);
 		}
 		long elapsedTime = System.currentTimeMillis() - t0;
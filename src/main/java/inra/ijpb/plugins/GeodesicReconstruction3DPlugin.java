@@ -183,6 +183,11 @@ public class GeodesicReconstruction3DPlugin implements PlugIn {
 		
 		// Compute geodesic reconstruction
 		ImageStack recProc = op.applyTo(markerProc, maskProc, conn);
+		if (recProc == null)
+		{
+			IJ.showStatus("Geodesic reconstruction was interrupted");
+			return;
+		}
 		
 		// Keep same color model
 		recProc.setColorModel(maskProc.getColorModel());
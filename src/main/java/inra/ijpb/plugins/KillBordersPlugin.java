@@ -33,6 +33,11 @@ public class KillBordersPlugin implements PlugIn
 			// Process planar images
 			ImageProcessor image = imagePlus.getProcessor();
 			ImageProcessor result = GeodesicReconstruction.killBorders(image);
+			if (result == null)
+			{
+				IJ.showStatus("Kill Borders was interrupted");
+				return;
+			}
 			if (!(result instanceof ColorProcessor))
 				result.setLut(image.getLut());
 			resultPlus = new ImagePlus(newName, result);
@@ -43,6 +48,11 @@ public class KillBordersPlugin implements PlugIn
 			// Process 3D stack
 			ImageStack image = imagePlus.getStack();
 			ImageStack result = GeodesicReconstruction3D.killBorders(image);
+			if (result == null)
+			{
+				IJ.showStatus("Kill Borders was interrupted");
+				return;
+			}
 			result.setColorModel(image.getColorModel());
 			resultPlus = new ImagePlus(newName, result);
 		} 
@@ -20,6 +20,7 @@ import inra.ijpb.morphology.MinimaAndMaxima3D;
 import inra.ijpb.morphology.Morphology;
 import inra.ijpb.morphology.Strel;
 import inra.ijpb.morphology.Strel3D;
+import inra.ijpb.morphology.tree.ExtendedExtrema;
 import inra.ijpb.util.ColorMaps;
 import inra.ijpb.util.ColorMaps.CommonLabelMaps;
 import inra.ijpb.watershed.Watershed;
@@ -43,6 +44,7 @@ import java.awt.image.ColorModel;
 import java.util.Arrays;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.swing.BorderFactory;
 import javax.swing.ButtonGroup;
@@ -254,8 +256,24 @@ public class MorphologicalSegmentation implements PlugIn {
 	/** executor service to launch threads for the plugin methods and events */
 	final ExecutorService exec = Executors.newFixedThreadPool(1);
 
-	/** thread to run the segmentation */
-	private Thread segmentationThread = null;
+	/** executor service to run the segmentation in the background */
+	final ExecutorService segmentationExec = Executors.newSingleThreadExecutor();
+
+	/** task of the running segmentation */
+	private Future<?> segmentationTask = null;
+
+	/** morphological gradient of the input image */
+	final CachedStage<ImageStack> gradientStage = new CachedStage<ImageStack>();
+	/** component tree of the image to segment, used for all dynamics */
+	final CachedStage<ExtendedExtrema> minimaTreeStage = new CachedStage<ExtendedExtrema>();
+	/** extended minima of the image to segment */
+	final CachedStage<ImageStack> minimaStage = new CachedStage<ImageStack>();
+	/** image to segment with imposed minima */
+	final CachedStage<ImageStack> imposedMinimaStage = new CachedStage<ImageStack>();
+	/** labeled extended minima */
+	final CachedStage<ImageStack> labeledMinimaStage = new CachedStage<ImageStack>();
+	/** result of the watershed */
+	final CachedStage<ImageStack> watershedStage = new CachedStage<ImageStack>();
 
 	/** text of the segmentation button when segmentation not running */
 	private String segmentText = "Run";
@@ -292,6 +310,62 @@ public class MorphologicalSegmentation implements PlugIn {
 	/** opacity to display overlays */
 	double opacity = 1.0/3.0;
 
+	/**
+	 * Result of a stage of the segmentation pipeline, together with the
+	 * parameters used to compute it. Input images are compared by reference,
+	 * so that a stage is invalidated as soon as one of the stages it depends
+	 * on is computed again.
+	 * 
+	 * @param <T>
+	 *            the type of the result of the stage
+	 */
+	static class CachedStage<T>
+	{
+		/** the input images and parameters of the stage */
+		Object[] key = null;
+		/** the result of the stage for the current key */
+		T result = null;
+
+		/**
+		 * Returns the cached result if it was computed with the same input
+		 * images and parameters.
+		 * 
+		 * @param key
+		 *            the input images and parameters of the stage
+		 * @return the cached result, or null if the stage needs to be computed
+		 */
+		synchronized T get( Object... key )
+		{
+			return Arrays.equals( this.key, key ) ? result : null;
+		}
+
+		/**
+		 * Stores the result of the stage, unless the computation was
+		 * interrupted.
+		 * 
+		 * @param result
+		 *            the result of the stage
+		 * @param key
+		 *            the input images and parameters of the stage
+		 */
+		synchronized void put( T result, Object... key )
+		{
+			if ( null == result || Thread.currentThread().isInterrupted() )
+				return;
+			this.key = key;
+			this.result = result;
+		}
+
+		/**
+		 * Removes the cached result.
+		 */
+		synchronized void clear()
+		{
+			this.key = null;
+			this.result = null;
+		}
+	}
+
 	/**
 	 * Custom window to define the plugin GUI
 	 */
@@ -821,8 +895,17 @@ public class MorphologicalSegmentation implements PlugIn {
 				//displayImage.close();
 				displayImage = null;
 			}
-			// shut down executor service
+			// shut down executor services
 			exec.shutdownNow();
+			segmentationExec.shutdownNow();
+
+			// release cached results
+			gradientStage.clear();
+			minimaTreeStage.clear();
+			minimaStage.clear();
+			imposedMinimaStage.clear();
+			labeledMinimaStage.clear();
+			watershedStage.clear();
 		}
 
 		/**
@@ -922,23 +1005,12 @@ public class MorphologicalSegmentation implements PlugIn {
 				segmentButton.setSize( segmentButton.getMinimumSize() );
 				segmentButton.repaint();
 
-				final Thread oldThread = segmentationThread;
-
-				// Thread to run the segmentation
-				Thread newThread = new Thread() {								 
+				// Task to run the segmentation. Tasks are run one after the
+				// other, so a new task waits for the previous one to finish.
+				Runnable task = new Runnable() {
 
 					public void run()
 					{
-						// Wait for the old task to finish
-						if (null != oldThread) 
-						{
-							try { 
-								IJ.log("Waiting for old task to finish...");
-								oldThread.join(); 
-							} 
-							catch (InterruptedException ie)	{ /*IJ.log("interrupted");*/ }
-						}
-
 						// read dams flag
 						calculateDams = damsCheckBox.isSelected();
 
@@ -968,111 +1040,151 @@ public class MorphologicalSegmentation implements PlugIn {
 							}
 
 							final long t1 = System.currentTimeMillis();
-							IJ.log( "Applying morphological gradient to input image..." );
-
-							if ( image.getSize() > 1 )
+							ImageStack gradient = gradientStage.get( image, gradientRadius );
+							if( null == gradient )
 							{
-								Strel3D strel = Strel3D.Shape.CUBE.fromRadius( gradientRadius );
-								image = Morphology.gradient( image, strel );
-								//(new ImagePlus("gradient", image) ).show();
+								IJ.log( "Applying morphological gradient to input image..." );
+
+								if ( image.getSize() > 1 )
+								{
+									Strel3D strel = Strel3D.Shape.CUBE.fromRadius( gradientRadius );
+									gradient = Morphology.gradient( image, strel );
+								}
+								else
+								{
+									Strel strel = Strel.Shape.SQUARE.fromRadius( gradientRadius );
+									gradient = new ImageStack(image.getWidth(), image.getHeight());
+									gradient.addSlice( Morphology.gradient( image.getProcessor( 1 ), strel ) );
+								}
+								gradientStage.put( gradient, image, gradientRadius );
+
+								final long t2 = System.currentTimeMillis();
+								IJ.log( "Morphological gradient took " + (t2-t1) + " ms.");
 							}
 							else
-							{
-								Strel strel = Strel.Shape.SQUARE.fromRadius( gradientRadius );
-								ImageProcessor gradient = 
-										Morphology.gradient( image.getProcessor( 1 ), strel );
-								image = new ImageStack(image.getWidth(), image.getHeight());
-								image.addSlice(gradient);								
-							}
+								IJ.log( "Reusing morphological gradient of radius " + gradientRadius + "." );
 
 							// store gradient image
-							gradientStack = image;
+							image = gradient;
+							gradientStack = gradient;
 
-							final long t2 = System.currentTimeMillis();
-							IJ.log( "Morphological gradient took " + (t2-t1) + " ms.");
-							
 							// macro recording
 							String[] arg = new String[] { gradientRadiusSizeText.getText() };
 							record( SET_RADIUS, arg );
 						}
 
-						IJ.log( "Running extended minima with dynamic value " + (int)dynamic + "..." );
 						final long step0 = System.currentTimeMillis();				
 
 						// Run extended minima
-						ImageStack regionalMinima = MinimaAndMaxima3D.extendedMinima( image, (int)dynamic, connectivity );
-
+						ImageStack regionalMinima = minimaStage.get( image, (int) dynamic, connectivity );
 						if( null == regionalMinima )
 						{
-							IJ.log( "The segmentation was interrupted!" );
-							IJ.showStatus( "The segmentation was interrupted!" );
-							IJ.showProgress( 1.0 );
-							return;
+							IJ.log( "Running extended minima with dynamic value " + (int)dynamic + "..." );
+							if( image.getBitDepth() == 32 )
+								regionalMinima = MinimaAndMaxima3D.extendedMinima( image, (int)dynamic, connectivity );
+							else
+							{
+								// compute the component tree once, and reuse
+								// it for each new value of the dynamic
+								ExtendedExtrema minimaTree = minimaTreeStage.get( image, connectivity );
+								if( null == minimaTree )
+								{
+									minimaTree = ExtendedExtrema.minima( image, connectivity );
+									minimaTreeStage.put( minimaTree, image, connectivity );
+								}
+								regionalMinima = minimaTree.extendedExtremaStack( (int)dynamic );
+							}
+
+							if( null == regionalMinima )
+							{
+								IJ.log( "The segmentation was interrupted!" );
+								IJ.showStatus( "The segmentation was interrupted!" );
+								IJ.showProgress( 1.0 );
+								return;
+							}
+							minimaStage.put( regionalMinima, image, (int) dynamic, connectivity );
+							IJ.log( "Regional minima took " + (System.currentTimeMillis()-step0) + " ms.");
 						}
+						else
+							IJ.log( "Reusing extended minima with dynamic value " + (int)dynamic + "." );
 
 						final long step1 = System.currentTimeMillis();		
-						IJ.log( "Regional minima took " + (step1-step0) + " ms.");
-
-						IJ.log( "Imposing regional minima on original image (connectivity = " + readConn + ")..." );
 
 						// Impose regional minima over the original image
-						ImageStack imposedMinima = MinimaAndMaxima3D.imposeMinima( image, regionalMinima, connectivity );
-
+						ImageStack imposedMinima = imposedMinimaStage.get( image, regionalMinima, connectivity );
 						if( null == imposedMinima )
 						{
-							IJ.log( "The segmentation was interrupted!" );
-							IJ.showStatus( "The segmentation was interrupted!" );
-							IJ.showProgress( 1.0 );
-							return;
+							IJ.log( "Imposing regional minima on original image (connectivity = " + readConn + ")..." );
+							imposedMinima = MinimaAndMaxima3D.imposeMinima( image, regionalMinima, connectivity );
+
+							if( null == imposedMinima )
+							{
+								IJ.log( "The segmentation was interrupted!" );
+								IJ.showStatus( "The segmentation was interrupted!" );
+								IJ.showProgress( 1.0 );
+								return;
+							}
+							imposedMinimaStage.put( imposedMinima, image, regionalMinima, connectivity );
+							IJ.log( "Imposition took " + (System.currentTimeMillis()-step1) + " ms." );
 						}
 
 						final long step2 = System.currentTimeMillis();
-						IJ.log( "Imposition took " + (step2-step1) + " ms." );
-
-						IJ.log( "Labeling regional minima..." );
 
 						// Label regional minima
-						ImageStack labeledMinima = BinaryImages.componentsLabeling( regionalMinima, connectivity, 32 );
+						ImageStack labeledMinima = labeledMinimaStage.get( regionalMinima, connectivity );
 						if( null == labeledMinima )
 						{
-							IJ.log( "The segmentation was interrupted!" );
-							IJ.showStatus( "The segmentation was interrupted!" );
-							IJ.showProgress( 1.0 );
-							return;
+							IJ.log( "Labeling regional minima..." );
+							labeledMinima = BinaryImages.componentsLabeling( regionalMinima, connectivity, 32 );
+							if( null == labeledMinima )
+							{
+								IJ.log( "The segmentation was interrupted!" );
+								IJ.showStatus( "The segmentation was interrupted!" );
+								IJ.showProgress( 1.0 );
+								return;
+							}
+							labeledMinimaStage.put( labeledMinima, regionalMinima, connectivity );
+							IJ.log( "Connected components took " + (System.currentTimeMillis()-step2) + " ms." );
 						}
 
 						final long step3 = System.currentTimeMillis();
-						IJ.log( "Connected components took " + (step3-step2) + " ms." );
 
 						// Apply watershed		
-						IJ.log("Running watershed...");
-
-						ImageStack resultStack = null;
-						
-						try{
-							resultStack = Watershed.computeWatershed( imposedMinima, labeledMinima, 
+						ImageStack resultStack = watershedStage.get( imposedMinima, labeledMinima, 
 								connectivity, calculateDams );
-						}
-						catch( Exception ex )
-						{							
-							ex.printStackTrace();
-							IJ.log( "Error while runing watershed: " + ex.getMessage() );							
-						}
-						catch( OutOfMemoryError err )
-						{
-							err.printStackTrace();
-							IJ.log( "Error: the plugin run out of memory. Please use a smaller input image." );
-						}
+						
 						if( null == resultStack )
 						{
-							IJ.log( "The segmentation was interrupted!" );
-							IJ.showStatus( "The segmentation was interrupted!" );
-							IJ.showProgress( 1.0 );
-							// set button back to initial text
-							segmentButton.setText( segmentText );
-							segmentButton.setToolTipText( segmentTip );
-							return;
+							IJ.log("Running watershed...");
+							try{
+								resultStack = Watershed.computeWatershed( imposedMinima, labeledMinima, 
+									connectivity, calculateDams );
+							}
+							catch( Exception ex )
+							{							
+								ex.printStackTrace();
+								IJ.log( "Error while runing watershed: " + ex.getMessage() );							
+							}
+							catch( OutOfMemoryError err )
+							{
+								err.printStackTrace();
+								IJ.log( "Error: the plugin run out of memory. Please use a smaller input image." );
+							}
+							if( null == resultStack )
+							{
+								IJ.log( "The segmentation was interrupted!" );
+								IJ.showStatus( "The segmentation was interrupted!" );
+								IJ.showProgress( 1.0 );
+								// set button back to initial text
+								segmentButton.setText( segmentText );
+								segmentButton.setToolTipText( segmentTip );
+								return;
+							}
+							watershedStage.put( resultStack, imposedMinima, labeledMinima, 
+									connectivity, calculateDams );
 						}
+						else
+							IJ.log( "Reusing watershed result." );
 
 						resultImage = new ImagePlus( "watershed", resultStack );
 						resultImage.setCalibration( inputImage.getCalibration() );
@@ -1102,8 +1214,6 @@ public class MorphologicalSegmentation implements PlugIn {
 						// set button back to initial text
 						segmentButton.setText( segmentText );
 						segmentButton.setToolTipText( segmentTip );
-						// set thread to null					
-						segmentationThread = null;
 
 						// Record
 						String[] arg = new String[] {
@@ -1114,16 +1224,15 @@ public class MorphologicalSegmentation implements PlugIn {
 					}
 				};
 
-				segmentationThread = newThread;
-				newThread.start();
+				segmentationTask = segmentationExec.submit( task );
 
 			}
 			else if( command.equals( stopText ) ) 							  
 			{
-				if( null != segmentationThread )
-					segmentationThread.interrupt();
+				if( null != segmentationTask )
+					segmentationTask.cancel( true );
 				else
-					IJ.log("Error: interrupting segmentation failed becaused the thread is null!");
+					IJ.log("Error: interrupting segmentation failed becaused the task is null!");
 
 				// set button back to initial text
 				segmentButton.setText( segmentText );
@@ -12,6 +12,8 @@ import ij.ImagePlus;
 import ij.ImageStack;
 import ij.gui.GenericDialog;
 import ij.plugin.PlugIn;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
 import inra.ijpb.label.LabelImages;
 
 /**
@@ -120,10 +122,11 @@ public class RemoveBorderLabelsPlugin implements PlugIn {
 		int sizeZ = image.getSize();
 		
 		TreeSet<Integer> labelSet = new TreeSet<Integer>();
+		Image3D labels = Images3D.createWrapper(image);
 	
 		for (int z = 0; z < sizeZ; z++) {
 			for (int y = 0; y < sizeY; y++) {
-				labelSet.add((int) image.getVoxel(0, y, z));
+				labelSet.add(labels.get(0, y, z));
 			}
 		}
 	
@@ -139,10 +142,11 @@ public class RemoveBorderLabelsPlugin implements PlugIn {
 		int sizeZ = image.getSize();
 		
 		TreeSet<Integer> labelSet = new TreeSet<Integer>();
+		Image3D labels = Images3D.createWrapper(image);
 	
 		for (int z = 0; z < sizeZ; z++) {
 			for (int y = 0; y < sizeY; y++) {
-				labelSet.add((int) image.getVoxel(sizeX - 1, y, z));
+				labelSet.add(labels.get(sizeX - 1, y, z));
 			}
 		}
 	
@@ -157,10 +161,11 @@ public class RemoveBorderLabelsPlugin implements PlugIn {
 		int sizeZ = image.getSize();
 		
 		TreeSet<Integer> labelSet = new TreeSet<Integer>();
+		Image3D labels = Images3D.createWrapper(image);
 	
 		for (int z = 0; z < sizeZ; z++) {
 			for (int x = 0; x < sizeX; x++) {
-				labelSet.add((int) image.getVoxel(x, 0, z));
+				labelSet.add(labels.get(x, 0, z));
 			}
 		}
 	
@@ -176,10 +181,11 @@ public class RemoveBorderLabelsPlugin implements PlugIn {
 		int sizeZ = image.getSize();
 		
 		TreeSet<Integer> labelSet = new TreeSet<Integer>();
+		Image3D labels = Images3D.createWrapper(image);
 	
 		for (int z = 0; z < sizeZ; z++) {
 			for (int x = 0; x < sizeX; x++) {
-				labelSet.add((int) image.getVoxel(x, sizeY - 1, z));
+				labelSet.add(labels.get(x, sizeY - 1, z));
 			}
 		}
 	
@@ -194,10 +200,11 @@ public class RemoveBorderLabelsPlugin implements PlugIn {
 		int sizeY = image.getHeight();
 		
 		TreeSet<Integer> labelSet = new TreeSet<Integer>();
+		Image3D labels = Images3D.createWrapper(image);
 	
 		for (int y = 0; y < sizeY; y++) {
 			for (int x = 0; x < sizeX; x++) {
-				labelSet.add((int) image.getVoxel(x, y, 0));
+				labelSet.add(labels.get(x, y, 0));
 			}
 		}
 		
@@ -213,10 +220,11 @@ public class RemoveBorderLabelsPlugin implements PlugIn {
 		int sizeZ = image.getSize();
 		
 		TreeSet<Integer> labelSet = new TreeSet<Integer>();
+		Image3D labels = Images3D.createWrapper(image);
 	
 		for (int y = 0; y < sizeY; y++) {
 			for (int x = 0; x < sizeX; x++) {
-				labelSet.add((int) image.getVoxel(x, y, sizeZ - 1));
+				labelSet.add(labels.get(x, y, sizeZ - 1));
 			}
 		}
 		
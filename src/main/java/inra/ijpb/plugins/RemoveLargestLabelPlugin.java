@@ -7,6 +7,7 @@ import ij.IJ;
 import ij.ImagePlus;
 import ij.plugin.PlugIn;
 import inra.ijpb.label.LabelImages;
+import inra.ijpb.label.LabelStatistics;
 
 /**
  * Removes all the labels in a 2D/3D image but the largest one. 
@@ -26,8 +27,15 @@ public class RemoveLargestLabelPlugin implements PlugIn {
 	public void run(String arg0) {
 		ImagePlus imagePlus = IJ.getImage();
 		
+		// identify the largest label using the statistics of the original image
+		LabelStatistics stats = LabelStatistics.get(imagePlus);
+		
 		ImagePlus resultPlus = imagePlus.duplicate();
-		LabelImages.removeLargestLabel(resultPlus);
+		if (stats.size() > 0)
+		{
+			int[] labels = new int[] { stats.getLargestLabel() };
+			LabelImages.replaceLabels(resultPlus, labels, 0);
+		}
 		String newName = imagePlus.getShortTitle() + "-killLargest";
 		resultPlus.setTitle(newName);
 		
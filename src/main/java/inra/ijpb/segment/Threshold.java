@@ -8,6 +8,8 @@ import ij.ImageStack;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageProcessor;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.SliceWindowProcessor;
 
 /**
  * Static methods for thresholding images.
@@ -98,10 +100,18 @@ public class Threshold
 	 *            the lower threshold bound (inclusive)
 	 * @param upper
 	 *            the upper threshold bound (inclusive)
-	 * @return a 3D binary image
+	 * @return a 3D binary image, or null if the processing of a virtual stack
+	 *         was interrupted
 	 */
 	public static final ImageStack threshold(ImageStack image, double lower, double upper)
 	{
+		// process virtual stacks slice by slice, reading slices in advance
+		if (image.isVirtual())
+		{
+			// the result is null if the processing was interrupted
+			return new SliceWindowProcessor(new ThresholdOperator(lower, upper)).process(image);
+		}
+		
 		int sizeX = image.getWidth();
 		int sizeY = image.getHeight();
 		int sizeZ = image.getSize();
@@ -123,4 +133,71 @@ public class Threshold
 		return result;
 	}
 
+	/**
+	 * Computes a 3D binary image with value 255 when input image has value
+	 * between <code>lower</code> and <code>upper</code> values (inclusive),
+	 * and 0 otherwise. Input and output images can be stored out of memory,
+	 * for example using {@link inra.ijpb.data.image.ChunkedImage3D}.
+	 * 
+	 * @param image
+	 *            the input 3D grayscale image
+	 * @param lower
+	 *            the lower threshold bound (inclusive)
+	 * @param upper
+	 *            the upper threshold bound (inclusive)
+	 * @param result
+	 *            the 3D image that will contain the binary image, with the
+	 *            same size as input image
+	 */
+	public static final void threshold(Image3D image, double lower, double upper, Image3D result)
+	{
+		int sizeX = image.getSizeX();
+		int sizeY = image.getSizeY();
+		int sizeZ = image.getSizeZ();
+
+		double[] line = new double[sizeX];
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				image.getLineX(y, z, line);
+				for (int x = 0; x < sizeX; x++)
+				{
+					double value = line[x];
+					line[x] = value >= lower && value <= upper ? 255 : 0;
+				}
+				result.setLineX(y, z, line);
+			}
+		}
+	}
+
+	/**
+	 * Thresholds each slice of a 3D image independently.
+	 */
+	private static class ThresholdOperator implements SliceWindowProcessor.Operator
+	{
+		double lower;
+		double upper;
+
+		ThresholdOperator(double lower, double upper)
+		{
+			this.lower = lower;
+			this.upper = upper;
+		}
+
+		public int getRadius()
+		{
+			return 0;
+		}
+
+		public ImageProcessor prepare(ImageProcessor slice)
+		{
+			return slice;
+		}
+
+		public ImageProcessor process(ImageProcessor[] window)
+		{
+			return threshold(window[0], lower, upper);
+		}
+	}
 }
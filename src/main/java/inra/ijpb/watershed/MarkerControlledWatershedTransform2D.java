@@ -11,6 +11,7 @@ import ij.ImagePlus;
 import ij.ImageStack;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
+import inra.ijpb.algo.ProgressCounter;
 import inra.ijpb.data.Cursor2D;
 import inra.ijpb.data.Neighborhood2D;
 import inra.ijpb.data.Neighborhood2DC8;
@@ -140,9 +141,11 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
 	      	IJ.log( "  Flooding " + count + " pixels..." );
 	      	IJ.showStatus("Flooding " + count + " pixels...");	      		      	
 	      	
+			final ProgressCounter progress = new ProgressCounter( this, count );
 			for (int p = 0; p < count; ++p)
 	      	{
-				IJ.showProgress(p, count);
+				if ( !progress.update( p ) )
+					return null;
 	       		final PixelRecord pixelRecord = pixelList.removeFirst();
 	       		final Cursor2D p2 = pixelRecord.getCursor();
 	    		final int i = p2.getX();
@@ -186,7 +189,7 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
 
 		final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
-		IJ.showProgress( 1.0 );
+		fireProgressChanged( this, 1, 1 );
 					
 	    return new FloatProcessor( tabLabels );
 	}
@@ -276,9 +279,11 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
 	      	IJ.log( "  Flooding " + count + " pixels..." );
 	      	IJ.showStatus("Flooding " + count + " pixels...");	      		      	
 	      	
+			final ProgressCounter progress = new ProgressCounter( this, count );
 			for (int p = 0; p < count; ++p)
 	      	{
-				IJ.showProgress(p, count);
+				if ( !progress.update( p ) )
+					return null;
 	       		final PixelRecord pixelRecord = pixelList.removeFirst();
 	       		final Cursor2D p2 = pixelRecord.getCursor();
 	    		final int i = p2.getX();
@@ -332,7 +337,7 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
 
 		final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
-		IJ.showProgress( 1.0 );
+		fireProgressChanged( this, 1, 1 );
 		
 		// Create result label image
 		FloatProcessor labelProcessor = new FloatProcessor(size1, size2);
@@ -424,9 +429,11 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
 	      	IJ.log( "  Flooding " + count + " pixels..." );
 	      	IJ.showStatus("Flooding " + count + " pixels...");	      		      	
 	      	
+			final ProgressCounter progress = new ProgressCounter( this, count );
 			for (int p = 0; p < count; ++p)
 	      	{
-				IJ.showProgress(p, count);
+				if ( !progress.update( p ) )
+					return null;
 	       		final PixelRecord pixelRecord = pixelList.removeFirst();
 	       		final Cursor2D p2 = pixelRecord.getCursor();
 	    		final int i = p2.getX();
@@ -478,7 +485,7 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
 
 		final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
-		IJ.showProgress( 1.0 );
+		fireProgressChanged( this, 1, 1 );
 				
 		return new FloatProcessor( tabLabels );
 	}
@@ -567,9 +574,11 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
 	      	IJ.log( "  Flooding " + count + " pixels..." );
 	      	IJ.showStatus("Flooding " + count + " pixels...");	      		      	
 	      	
+			final ProgressCounter progress = new ProgressCounter( this, count );
 			for (int p = 0; p < count; ++p)
 	      	{
-				IJ.showProgress( p, count );
+				if ( !progress.update( p ) )
+					return null;
 	       		final PixelRecord pixelRecord = pixelList.removeFirst();
 	       		final Cursor2D p2 = pixelRecord.getCursor();
 	    		final int i = p2.getX();
@@ -631,7 +640,7 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
 
 		final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
-		IJ.showProgress( 1.0 );
+		fireProgressChanged( this, 1, 1 );
 		
 		// Create result label image
 		FloatProcessor labelProcessor = new FloatProcessor(size1, size2);
@@ -709,12 +718,11 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
       	// with mask
       	if ( null != maskImage )
       	{      	
+      		final ProgressCounter progress = new ProgressCounter( this, numPixels );
       		while ( pixelList.isEmpty() == false )
       		{
-      			if ( Thread.currentThread().isInterrupted() )
-    				return null;	
-      			
-      			IJ.showProgress( numPixels-pixelList.size(), numPixels );
+      			if ( !progress.update( numPixels-pixelList.size() ) )
+      				return null;
 
       			final PixelRecord pixelRecord = pixelList.poll();
       			final Cursor2D p = pixelRecord.getCursor();
@@ -754,12 +762,11 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
       	}
       	else // without mask
       	{
+      		final ProgressCounter progress = new ProgressCounter( this, numPixels );
       		while ( pixelList.isEmpty() == false )
       		{
-      			if ( Thread.currentThread().isInterrupted() )
-    				return null;	
-      			
-      			IJ.showProgress( numPixels-pixelList.size(), numPixels );
+      			if ( !progress.update( numPixels-pixelList.size() ) )
+      				return null;
 
       			final PixelRecord pixelRecord = pixelList.poll();
       			final Cursor2D p = pixelRecord.getCursor();
@@ -800,7 +807,7 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
 
 		final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
-		IJ.showProgress( 1.0 );
+		fireProgressChanged( this, 1, 1 );
 		
 	    return new FloatProcessor( tabLabels );
 	}
@@ -873,12 +880,11 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
       	// with mask
       	if ( null != maskImage )
       	{      	
+      		final ProgressCounter progress = new ProgressCounter( this, numPixels );
       		while ( pixelList.isEmpty() == false )
       		{
-      			if ( Thread.currentThread().isInterrupted() )
-    				return null;	
-      			
-      			IJ.showProgress( numPixels-pixelList.size(), numPixels );
+      			if ( !progress.update( numPixels-pixelList.size() ) )
+      				return null;
 
       			final PixelRecord pixelRecord = pixelList.poll();
       			final Cursor2D p = pixelRecord.getCursor();
@@ -924,12 +930,11 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
       	}
       	else // without mask
       	{
+      		final ProgressCounter progress = new ProgressCounter( this, numPixels );
       		while ( pixelList.isEmpty() == false )
       		{
-      			if ( Thread.currentThread().isInterrupted() )
-    				return null;	
-      			
-      			IJ.showProgress( numPixels-pixelList.size(), numPixels );
+      			if ( !progress.update( numPixels-pixelList.size() ) )
+      				return null;
 
       			final PixelRecord pixelRecord = pixelList.poll();
       			final Cursor2D p = pixelRecord.getCursor();
@@ -976,7 +981,7 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
 
 		final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
-		IJ.showProgress( 1.0 );
+		fireProgressChanged( this, 1, 1 );
 		
 		// Create result label image
 		FloatProcessor labelProcessor = new FloatProcessor(size1, size2);
@@ -1094,14 +1099,13 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
       		if ( Thread.currentThread().isInterrupted() )
 				return null;	
       		
+      		final ProgressCounter progress = new ProgressCounter( this, maxValue + 1 );
       		while ( pixelList.isEmpty() == false )
       		{
-      			if ( Thread.currentThread().isInterrupted() )
-    				return null;	
-
       			final PixelRecord pixelRecord = pixelList.poll();
       			// show progression along pixel values
-	    		IJ.showProgress( (pixelRecord.getValue() + 1) / (maxValue + 1));
+      			if ( !progress.update( pixelRecord.getValue() + 1 ) )
+      				return null;
 	    		
       			final Cursor2D p = pixelRecord.getCursor();
 	    		final int i = p.getX();
@@ -1164,14 +1168,13 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
       	}
       	else // without mask
       	{
+      		final ProgressCounter progress = new ProgressCounter( this, maxValue + 1 );
       		while ( pixelList.isEmpty() == false )
       		{
-      			if ( Thread.currentThread().isInterrupted() )
-    				return null;	
-      			
       			final PixelRecord pixelRecord = pixelList.poll();
       			// show progression along pixel values
-	    		IJ.showProgress( (pixelRecord.getValue() + 1) / (maxValue + 1));
+      			if ( !progress.update( pixelRecord.getValue() + 1 ) )
+      				return null;
 	    		
       			final Cursor2D p = pixelRecord.getCursor();
 	    		final int i = p.getX();
@@ -1235,7 +1238,7 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
 		final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
 		IJ.showStatus("");
-		IJ.showProgress( 1.0 );
+		fireProgressChanged( this, 1, 1 );
 		
 		// Create result label image
 		FloatProcessor labelProcessor = new FloatProcessor(size1, size2);
@@ -1344,14 +1347,13 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
       		if ( Thread.currentThread().isInterrupted() )
 				return null;	
       		
+      		final ProgressCounter progress = new ProgressCounter( this, maxValue + 1 );
       		while ( pixelList.isEmpty() == false )
       		{
-      			if ( Thread.currentThread().isInterrupted() )
-    				return null;	
-
       			final PixelRecord pixelRecord = pixelList.poll();
       			// show progression along pixel values
-	    		IJ.showProgress( (pixelRecord.getValue() + 1) / (maxValue + 1));
+      			if ( !progress.update( pixelRecord.getValue() + 1 ) )
+      				return null;
 	    		
       			final Cursor2D p = pixelRecord.getCursor();
 	    		final int i = p.getX();
@@ -1406,14 +1408,13 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
       	}
       	else // without mask
       	{
+      		final ProgressCounter progress = new ProgressCounter( this, maxValue + 1 );
       		while ( pixelList.isEmpty() == false )
       		{
-      			if ( Thread.currentThread().isInterrupted() )
-    				return null;	
-      			
       			final PixelRecord pixelRecord = pixelList.poll();
       			// show progression along pixel values
-	    		IJ.showProgress( (pixelRecord.getValue() + 1) / (maxValue + 1));
+      			if ( !progress.update( pixelRecord.getValue() + 1 ) )
+      				return null;
 	    		
       			final Cursor2D p = pixelRecord.getCursor();
 	    		final int i = p.getX();
@@ -1471,7 +1472,7 @@ public class MarkerControlledWatershedTransform2D extends WatershedTransform2D
 		final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
 		IJ.showStatus("");
-		IJ.showProgress( 1.0 );
+		fireProgressChanged( this, 1, 1 );
 	    
 		// Create result label image
 		ImageProcessor labelProcessor = markerImage.duplicate();
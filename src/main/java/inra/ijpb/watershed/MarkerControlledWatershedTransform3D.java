@@ -13,11 +13,15 @@ import ij.ImageStack;
 import ij.Prefs;
 import ij.process.ImageProcessor;
 import ij.util.ThreadUtil;
+import inra.ijpb.algo.PhaseTimer;
+import inra.ijpb.algo.ProgressCounter;
 import inra.ijpb.data.Cursor3D;
 import inra.ijpb.data.Neighborhood3D;
 import inra.ijpb.data.Neighborhood3DC26;
 import inra.ijpb.data.Neighborhood3DC6;
+import inra.ijpb.data.OffsetNeighborhood3D;
 import inra.ijpb.data.VoxelRecord;
+import inra.ijpb.data.image.Image3D;
 import inra.ijpb.data.image.Images3D;
 
 /**
@@ -145,9 +149,11 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 	      	IJ.log( "  Flooding " + count + " voxels..." );
 	      	IJ.showStatus("Flooding " + count + " voxels...");	      		      	
 	      	
+			final ProgressCounter progress = new ProgressCounter( this, count );
 			for (int p = 0; p < count; ++p)
 	      	{
-				IJ.showProgress(p, count);
+				if ( !progress.update( p ) )
+					return null;
 	       		final VoxelRecord voxelRecord = voxelList.removeFirst();
 	       		final Cursor3D p2 = voxelRecord.getCursor();
 	    		final int i = p2.getX();
@@ -193,7 +199,7 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 
 		final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
-		IJ.showProgress( 1.0 );
+		fireProgressChanged( this, 1, 1 );
 		
 		// Create result label image
 		ImageStack labelStack = markerImage.duplicate().getStack();
@@ -295,9 +301,11 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 	      	IJ.log( "  Flooding " + count + " voxels..." );
 	      	IJ.showStatus("Flooding " + count + " voxels...");	      		      	
 	      	
+			final ProgressCounter progress = new ProgressCounter( this, count );
 			for (int p = 0; p < count; ++p)
 	      	{
-				IJ.showProgress(p, count);
+				if ( !progress.update( p ) )
+					return null;
 	       		final VoxelRecord voxelRecord = voxelList.removeFirst();
 	       		final Cursor3D p2 = voxelRecord.getCursor();
 	    		final int i = p2.getX();
@@ -351,7 +359,7 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 
 		final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
-		IJ.showProgress( 1.0 );
+		fireProgressChanged( this, 1, 1 );
 		
 		// Create result label image
 		ImageStack labelStack = markerImage.duplicate().getStack();
@@ -407,12 +415,14 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 		// list of original voxels values and corresponding coordinates
 		PriorityQueue<VoxelRecord> voxelList = null;
 		
-		final int[][][] tabLabels = new int[ size1 ][ size2 ][ size3 ]; 
+		// output labels, using one array per slice to process large images
+		final int[][] tabLabels = new int[ size3 ][ size1 * size2 ];
 		
 		// Make list of voxels and sort it in ascending order
 		IJ.showStatus( "Extracting voxel values..." );
 		if( verbose ) IJ.log("  Extracting voxel values..." );
 		final long t0 = System.currentTimeMillis();
+		PhaseTimer phase = startPhase( "extract voxels" );
 		
 		voxelList = extractVoxelValuesPriorityQueue( inputStack, markerImage.getStack(), tabLabels );
 		if ( null == voxelList )
@@ -420,65 +430,71 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 						
 		final long t1 = System.currentTimeMillis();		
 		if( verbose ) IJ.log("  Extraction took " + (t1-t0) + " ms.");
+		phase.finish( voxelList.size() );
 					    
 		// Watershed
 	    final long start = System.currentTimeMillis();
+	    phase = startPhase( "flood" );
+	    long flooded = 0;
 	         	
-      	// Check connectivity
-       	final Neighborhood3D neigh = connectivity == 26 ? 
-       			new Neighborhood3DC26() : new Neighborhood3DC6();
+      	// Check connectivity, and precompute planar offsets of neighbors
+	    final OffsetNeighborhood3D neigh = OffsetNeighborhood3D.create( 
+	    		size1, size2, size3, connectivity );
+	    final int[] offsets = neigh.getPlanarOffsets();
+	    
+	    final Image3D inputValues = Images3D.createWrapper( inputStack );
 
 	    final int count = voxelList.size();
 	    IJ.log( "  Flooding from " + count + " voxels..." );
       	IJ.showStatus("Flooding from " + count + " voxels...");
 	    
-      	final int numVoxels = size1 * size2 * size3;
+      	final double numVoxels = (double) size1 * size2 * size3;
       	
       	// with mask
       	if ( null != maskImage )
       	{
-      		final ImageStack maskStack = maskImage.getStack();
+      		final Image3D maskValues = Images3D.createWrapper( maskImage.getStack() );
       		
+      		final ProgressCounter progress = new ProgressCounter( this, numVoxels );
       		while ( voxelList.isEmpty() == false )
       		{
-      			if ( Thread.currentThread().isInterrupted() )
-    				return null;	
-      			
-      			IJ.showProgress( numVoxels-voxelList.size(), numVoxels );
+      			if ( !progress.update( numVoxels-voxelList.size() ) )
+      				return null;
 
       			final VoxelRecord voxelRecord = voxelList.poll();
+      			flooded++;
       			final Cursor3D p = voxelRecord.getCursor();
 	    		final int i = p.getX();
 	    		final int j = p.getY();
 	    		final int k = p.getZ();
+	    		final int xy = neigh.planarIndex( i, j );
 
       			double voxelValue = Double.MAX_VALUE;
 
-      			// Read neighbor coordinates		       	
-		       	neigh.setCursor( p );
-		       		
-		       	for( Cursor3D c : neigh.getNeighbors() )			       		
+      			// only neighbors of border voxels need bounds checking
+      			final boolean interior = neigh.isInterior( i, j, k );
+		       	for( int n = 0; n < offsets.length; n++ )
 		       	{
+		       		if ( !interior && !neigh.contains( i, j, k, n ) )
+		       			continue;
+		       		final int x2 = i + neigh.getShiftX( n );
+		       		final int y2 = j + neigh.getShiftY( n );
+		       		final int z2 = k + neigh.getShiftZ( n );
+		       		final int xy2 = xy + offsets[ n ];
+
 		       		// Look in neighborhood for labeled voxels with
 		       		// smaller or equal original value
-		       		int u = c.getX();
-		       		int v = c.getY();
-		       		int w = c.getZ();
-		       		
-		       		if ( u >= 0 && u < size1 && v >= 0 && v < size2 && w >= 0 && w < size3 )
+		       		// Unlabeled neighbors go into the queue if they are not there yet 
+		       		if ( tabLabels[ z2 ][ xy2 ] == 0 && maskValues.getValue( x2, y2, z2 ) > 0 )
+		       		{
+		       			voxelList.add( new VoxelRecord( neigh.getNeighbor( p, n ), inputValues.getValue( x2, y2, z2 ) ));
+		       			tabLabels[ z2 ][ xy2 ] = INQUEUE;
+		       		}
+		       		else if ( tabLabels[ z2 ][ xy2 ] > 0 && inputValues.getValue( x2, y2, z2 ) <= voxelValue )
 		       		{
-		       			// Unlabeled neighbors go into the queue if they are not there yet 
-		       			if ( tabLabels[u][v][w] == 0 && maskStack.getVoxel(u, v, w) > 0 )
-		       			{
-		       				voxelList.add( new VoxelRecord( u, v, w, inputStack.getVoxel(u,v,w) ));
-		       				tabLabels[u][v][w] = INQUEUE;
-		       			}
-		       			else if ( tabLabels[u][v][w] > 0 && inputStack.getVoxel(u,v,w) <= voxelValue )
-		       			{
-		       				// assign label of smallest neighbor
-		       				tabLabels[i][j][k] = tabLabels[u][v][w];
-		       				voxelValue = inputStack.getVoxel(u,v,w);
-		       			}
+		       			// assign label of smallest neighbor
+		       			tabLabels[ k ][ xy ] = tabLabels[ z2 ][ xy2 ];
+		       			voxelValue = inputValues.getValue( x2, y2, z2 );
 		       		}
 		       	}    
 
@@ -486,46 +502,47 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
       	}
       	else // without mask
       	{
+      		final ProgressCounter progress = new ProgressCounter( this, numVoxels );
       		while ( voxelList.isEmpty() == false )
       		{
-      			if ( Thread.currentThread().isInterrupted() )
-    				return null;	
-      			
-      			IJ.showProgress( numVoxels-voxelList.size(), numVoxels );
+      			if ( !progress.update( numVoxels-voxelList.size() ) )
+      				return null;
 
       			final VoxelRecord voxelRecord = voxelList.poll();
+      			flooded++;
       			final Cursor3D p = voxelRecord.getCursor();
 	    		final int i = p.getX();
 	    		final int j = p.getY();
 	    		final int k = p.getZ();
+	    		final int xy = neigh.planarIndex( i, j );
 
 
       			double voxelValue = voxelRecord.getValue(); //inputStack.getVoxel( i, j, k );
 
-      			// Read neighbor coordinates
-      			neigh.setCursor( p );
-
-      			for( Cursor3D c : neigh.getNeighbors() )			       		
+      			// only neighbors of border voxels need bounds checking
+      			final boolean interior = neigh.isInterior( i, j, k );
+      			for( int n = 0; n < offsets.length; n++ )
       			{
+      				if ( !interior && !neigh.contains( i, j, k, n ) )
+      					continue;
+      				final int x2 = i + neigh.getShiftX( n );
+      				final int y2 = j + neigh.getShiftY( n );
+      				final int z2 = k + neigh.getShiftZ( n );
+      				final int xy2 = xy + offsets[ n ];
+
       				// Look in neighborhood for labeled voxels with
       				// smaller or equal original value
-      				int u = c.getX();
-      				int v = c.getY();
-      				int w = c.getZ();
-      				if ( u >= 0 && u < size1 && v >= 0 && v < size2 && w >= 0 && w < size3 )
+      				// Unlabeled neighbors go into the queue if they are not there yet 
+      				if ( tabLabels[ z2 ][ xy2 ] == 0 )
+      				{
+      					voxelList.add( new VoxelRecord( neigh.getNeighbor( p, n ), inputValues.getValue( x2, y2, z2 ) ));
+      					tabLabels[ z2 ][ xy2 ] = INQUEUE;
+      				}
+      				else if ( tabLabels[ z2 ][ xy2 ] > 0 && inputValues.getValue( x2, y2, z2 ) <= voxelValue )
       				{
-      					// Unlabeled neighbors go into the queue if they are not there yet 
-      					if ( tabLabels[ u ][ v ][ w ] == 0 )
-      					{
-      						voxelList.add( new VoxelRecord( u, v, w, inputStack.getVoxel( u, v, w ) ));
-      						tabLabels[u][v][w] = INQUEUE;
-      					}
-      					else if ( tabLabels[ u ][ v ][ w ] > 0 && inputStack.getVoxel( u, v, w ) <= voxelValue )
-      					{
-      						// assign label of smallest neighbor
-      						tabLabels[ i ][ j ][ k ] = tabLabels[ u ][ v ][ w ];
-      						voxelValue = inputStack.getVoxel( u, v, w );
-      					}
+      					// assign label of smallest neighbor
+      					tabLabels[ k ][ xy ] = tabLabels[ z2 ][ xy2 ];
+      					voxelValue = inputValues.getValue( x2, y2, z2 );
       				}
       			}    
 
@@ -534,15 +551,19 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 
 		final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
-		IJ.showProgress( 1.0 );
+		phase.finish( flooded );
+		fireProgressChanged( this, 1, 1 );
 		
 		// Create result label image
+		phase = startPhase( "write output" );
 		ImageStack labelStack = markerImage.duplicate().getStack();
+		// use a wrapper to also write labels stored as int values
+		final Image3D labelValues = Images3D.createWrapper( labelStack );
 	    
-	    for (int i = 0; i < size1; ++i)
-	      for (int j = 0; j < size2; ++j)
-	        for (int k = 0; k < size3; ++k)
-	            labelStack.setVoxel( i, j, k, tabLabels[i][j][k] );
+	    for (int k = 0; k < size3; ++k)
+	    	for (int j = 0, xy = 0; j < size2; ++j)
+	    		for (int i = 0; i < size1; ++i, ++xy)
+	    			labelValues.setValue( i, j, k, tabLabels[ k ][ xy ] );
 	    
 	    
 	    String title = inputImage.getTitle();
@@ -556,6 +577,7 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 		
 	    final ImagePlus ws = new ImagePlus( title + "-watershed" + ext, labelStack );
 	    ws.setCalibration( inputImage.getCalibration() );
+	    phase.finish( (long) size1 * size2 * size3 );
 	    return ws;
 	}
 
@@ -612,17 +634,17 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 		// list of original voxels values and corresponding coordinates
 		PriorityQueue<VoxelRecord> voxelList = null;
 		
-		// output labels
-		final int[][][] tabLabels = new int[ size1 ][ size2 ][ size3 ];
+		// output labels, using one array per slice to process large images
+		final int[][] tabLabels = new int[ size3 ][ size1 * size2 ];
 		// value INIT is assigned to each voxel of the output labels
-	    for( int i=0; i<size1; i++ )
-	    	for( int j=0; j<size2; j++ )
-	    		Arrays.fill( tabLabels[i][j], INIT );
+		for ( int[] slice : tabLabels )
+			Arrays.fill( slice, INIT );
 		
 		// Make list of voxels and sort it in ascending order
 		IJ.showStatus( "Extracting voxel values..." );
 		if( verbose ) IJ.log("  Extracting voxel values..." );
 		final long t0 = System.currentTimeMillis();
+		PhaseTimer phase = startPhase( "extract voxels" );
 		
 		voxelList = extractVoxelValuesPriorityQueue( inputStack, markerImage.getStack(), tabLabels );		
 		if( null == voxelList )
@@ -630,13 +652,19 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 						
 		final long t1 = System.currentTimeMillis();		
 		if( verbose ) IJ.log("  Extraction took " + (t1-t0) + " ms.");
+		phase.finish( voxelList.size() );
 					    
 		// Watershed
 	    final long start = System.currentTimeMillis();
+	    phase = startPhase( "flood" );
+	    long flooded = 0;
 	         	
-      	// Check connectivity
-       	final Neighborhood3D neigh = connectivity == 26 ? 
-       			new Neighborhood3DC26() : new Neighborhood3DC6();
+      	// Check connectivity, and precompute planar offsets of neighbors
+	    final OffsetNeighborhood3D neigh = OffsetNeighborhood3D.create( 
+	    		size1, size2, size3, connectivity );
+	    final int[] offsets = neigh.getPlanarOffsets();
+	    
+	    final Image3D inputValues = Images3D.createWrapper( inputStack );
 
 	    final int count = voxelList.size();
 	    IJ.log( "  Flooding from " + count + " voxels..." );
@@ -657,166 +685,158 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
       	{
       		if ( Thread.currentThread().isInterrupted() )
 				return null;	
-      		final ImageStack maskStack = maskImage.getStack();
+      		final Image3D maskValues = Images3D.createWrapper( maskImage.getStack() );
       		
+      		final ProgressCounter progress = new ProgressCounter( this, maxValue + 1 );
       		while ( voxelList.isEmpty() == false )
       		{
-      			if ( Thread.currentThread().isInterrupted() )
-    				return null;	
-      			
-//      			IJ.showProgress( numVoxels-voxelList.size(), numVoxels );
-
       			final VoxelRecord voxelRecord = voxelList.poll();
+      			flooded++;
       			// show progression along voxel values
-	    		IJ.showProgress( (voxelRecord.getValue() + 1) / (maxValue + 1));
+      			if ( !progress.update( voxelRecord.getValue() + 1 ) )
+      				return null;
 	    		
       			final Cursor3D p = voxelRecord.getCursor();
 	    		final int i = p.getX();
 	    		final int j = p.getY();
 	    		final int k = p.getZ();
+	    		final int xy = neigh.planarIndex( i, j );
       			
-
-      			// Read neighbor coordinates		       	
-		       	neigh.setCursor( p );
-		       	 
 		       	// reset list of neighbor labels
 		       	neighborLabels.clear();
 		       	
 		       	// reset list of neighbor voxels
 		       	neighborVoxels.clear();
 		       	
-		       	for( Cursor3D c : neigh.getNeighbors() )			       		
+      			// only neighbors of border voxels need bounds checking
+		       	final boolean interior = neigh.isInterior( i, j, k );
+		       	for( int n = 0; n < offsets.length; n++ )
 		       	{
-		       		// Look in neighborhood for labeled voxels with
-		       		// smaller or equal original value
-		       		int u = c.getX();
-		       		int v = c.getY();
-		       		int w = c.getZ();
-		       		
-		       		if ( u >= 0 && u < size1 && v >= 0 && v < size2 && w >= 0 && w < size3 )
+		       		if ( !interior && !neigh.contains( i, j, k, n ) )
+		       			continue;
+		       		final int x2 = i + neigh.getShiftX( n );
+		       		final int y2 = j + neigh.getShiftY( n );
+		       		final int z2 = k + neigh.getShiftZ( n );
+		       		final int xy2 = xy + offsets[ n ];
+
+		       		// Unlabeled neighbors go into the queue if they are not there yet 
+		       		if ( tabLabels[ z2 ][ xy2 ] == INIT && maskValues.getValue( x2, y2, z2 ) > 0 )
 		       		{
-		       			// Unlabeled neighbors go into the queue if they are not there yet 
-		       			if ( tabLabels[u][v][w] == INIT && maskStack.getVoxel(u, v, w) > 0 )
-		       			{
-      						//voxelList.add( new VoxelRecord( c, inputStack.getVoxel( u, v, w ) ));
-      						//tabLabels[u][v][w] = INQUEUE;
-		       				neighborVoxels.add( new VoxelRecord( c, inputStack.getVoxel( u, v, w ) ) );
-      					}
-      					else if ( tabLabels[ u ][ v ][ w ] > 0 
-      							&& neighborLabels.contains(tabLabels[ u ][ v ][ w ]) == false)
-      					{
-      						// store labels of neighbors in a list
-      						neighborLabels.add( tabLabels[ u ][ v ][ w ] );
-      					}
-      				}
+		       			neighborVoxels.add( new VoxelRecord( neigh.getNeighbor( p, n ), inputValues.getValue( x2, y2, z2 ) ) );
+		       		}
+		       		else if ( tabLabels[ z2 ][ xy2 ] > 0 
+		       				&& neighborLabels.contains( tabLabels[ z2 ][ xy2 ] ) == false )
+		       		{
+		       			// store labels of neighbors in a list
+		       			neighborLabels.add( tabLabels[ z2 ][ xy2 ] );
+		       		}
       			}
 		       	// if the neighbors of the extracted voxel that have already been labeled 
 		       	// all have the same label, then the voxel is labeled with their label.
       			if( neighborLabels.size() == 1 )
       			{
-      				tabLabels[ i ][ j ][ k ] = neighborLabels.get( 0 );
+      				tabLabels[ k ][ xy ] = neighborLabels.get( 0 );
       				// now that we know the voxel is labeled, add neighbors to list
       				for( VoxelRecord v : neighborVoxels )
       				{      					
-      					tabLabels[ v.getCursor().getX() ][ v.getCursor().getY() ][ v.getCursor().getZ() ] = INQUEUE;
+      					final Cursor3D c = v.getCursor();
+      					tabLabels[ c.getZ() ][ neigh.planarIndex( c.getX(), c.getY() ) ] = INQUEUE;
       					voxelList.add( v );
       				}
       			}
       			else if( neighborLabels.size() > 1 )
-      				tabLabels[ i ][ j ][ k ] = WSHED;
+      				tabLabels[ k ][ xy ] = WSHED;
       		}
       	}
       	else // without mask
       	{
+      		final ProgressCounter progress = new ProgressCounter( this, maxValue + 1 );
       		while ( voxelList.isEmpty() == false )
       		{
-      			if ( Thread.currentThread().isInterrupted() )
-    				return null;	
-      			
-//      			IJ.showProgress( numVoxels-voxelList.size(), numVoxels );
-
       			final VoxelRecord voxelRecord = voxelList.poll();
+      			flooded++;
       			// show progression along voxel values
-	    		IJ.showProgress( (voxelRecord.getValue() + 1) / (maxValue + 1));
+      			if ( !progress.update( voxelRecord.getValue() + 1 ) )
+      				return null;
 	    		
       			final Cursor3D p = voxelRecord.getCursor();
 	    		final int i = p.getX();
 	    		final int j = p.getY();
 	    		final int k = p.getZ();
+	    		final int xy = neigh.planarIndex( i, j );
 
-      			// Set cursor of neighborhood in voxel of interest
-      			neigh.setCursor( p );
-      			
       			// reset list of neighbor labels
 		       	neighborLabels.clear();      
 		       	
 		       	// reset list of neighbor voxels
 		       	neighborVoxels.clear();
       			
-		       	// Read neighbor coordinates
-      			for( Cursor3D c : neigh.getNeighbors() )			       		
-      			{      				      				
-      				// Look in neighborhood for labeled voxels with
-      				// smaller or equal original value
-      				int u = c.getX();
-      				int v = c.getY();
-      				int w = c.getZ();
-      				if ( u >= 0 && u < size1 && v >= 0 && v < size2 && w >= 0 && w < size3 )
+      			// only neighbors of border voxels need bounds checking
+      			final boolean interior = neigh.isInterior( i, j, k );
+      			for( int n = 0; n < offsets.length; n++ )
+      			{
+      				if ( !interior && !neigh.contains( i, j, k, n ) )
+      					continue;
+      				final int x2 = i + neigh.getShiftX( n );
+      				final int y2 = j + neigh.getShiftY( n );
+      				final int z2 = k + neigh.getShiftZ( n );
+      				final int xy2 = xy + offsets[ n ];
+
+      				// Unlabeled neighbors go into the queue if they are not there yet 
+      				if ( tabLabels[ z2 ][ xy2 ] == INIT )
+      				{
+      					neighborVoxels.add( new VoxelRecord( neigh.getNeighbor( p, n ), inputValues.getValue( x2, y2, z2 ) ) );
+      				}
+      				else if ( tabLabels[ z2 ][ xy2 ] > 0 
+      						&& neighborLabels.contains( tabLabels[ z2 ][ xy2 ] ) == false )
       				{
-      					// Unlabeled neighbors go into the queue if they are not there yet 
-      					if ( tabLabels[ u ][ v ][ w ] == INIT )
-      					{
-      						//voxelList.add( new VoxelRecord( c, inputStack.getVoxel( u, v, w ) ));
-      						//tabLabels[u][v][w] = INQUEUE;
-		       				neighborVoxels.add( new VoxelRecord( c, inputStack.getVoxel( u, v, w ) ) );
-      					}
-      					else if ( tabLabels[ u ][ v ][ w ] > 0 
-      							&& neighborLabels.contains(tabLabels[ u ][ v ][ w ]) == false)
-      					{
-      						// store labels of neighbors in a list without repetitions
-      						neighborLabels.add( tabLabels[ u ][ v ][ w ] );
-      					}
+      					// store labels of neighbors in a list without repetitions
+      					neighborLabels.add( tabLabels[ z2 ][ xy2 ] );
       				}
       			}
       			// if the neighbors of the extracted voxel that have already been labeled 
       			// all have the same label, then the voxel is labeled with their label
       			if( neighborLabels.size() == 1 )
       			{
-      				tabLabels[ i ][ j ][ k ] = neighborLabels.get( 0 );
+      				tabLabels[ k ][ xy ] = neighborLabels.get( 0 );
       				// now that we know the voxel is labeled, add unlabeled neighbors to list
       				for( VoxelRecord v : neighborVoxels )
       				{      					
-      					tabLabels[ v.getCursor().getX() ][ v.getCursor().getY() ][ v.getCursor().getZ() ] = INQUEUE;
+      					final Cursor3D c = v.getCursor();
+      					tabLabels[ c.getZ() ][ neigh.planarIndex( c.getX(), c.getY() ) ] = INQUEUE;
       					voxelList.add( v );
       				}
       			}
       			else if( neighborLabels.size() > 1 )
-      				tabLabels[ i ][ j ][ k ] = WSHED;
+      				tabLabels[ k ][ xy ] = WSHED;
       				
       		}
       	}
 
 		final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
+		phase.finish( flooded );
 		IJ.showStatus("");
-		IJ.showProgress( 1.0 );
+		fireProgressChanged( this, 1, 1 );
 	    
 		// Create result label image
+		phase = startPhase( "write output" );
 		ImageStack labelStack = markerImage.duplicate().getStack();
+		// use a wrapper to also write labels stored as int values
+		final Image3D labelValues = Images3D.createWrapper( labelStack );
 	    
 		for (int k = 0; k < size3; ++k)
 		{
 			if ( Thread.currentThread().isInterrupted() )
 				return null;	
 			
-			ImageProcessor labelProcessor = labelStack.getProcessor( k+1 );
-			for (int i = 0; i < size1; ++i)
-				for (int j = 0; j < size2; ++j)	
+			for (int j = 0, xy = 0; j < size2; ++j)
+				for (int i = 0; i < size1; ++i, ++xy)	
 				{					
-					if( tabLabels[ i ][ j ][ k ] == INIT ) // set unlabeled voxels to WSHED
-						labelProcessor.setf( i,  j, 0 );
+					if( tabLabels[ k ][ xy ] == INIT ) // set unlabeled voxels to WSHED
+						labelValues.setValue( i, j, k, 0 );
 					else
-						labelProcessor.setf( i,  j, tabLabels[ i ][ j ][ k ] );
+						labelValues.setValue( i, j, k, tabLabels[ k ][ xy ] );
 				}
 				
 		}
@@ -832,6 +852,7 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 		
 	    final ImagePlus ws = new ImagePlus( title + "-watershed" + ext, labelStack );
 	    ws.setCalibration( inputImage.getCalibration() );
+	    phase.finish( (long) size1 * size2 * size3 );
 	    return ws;
 	}
 	
@@ -848,6 +869,44 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 			final ImageStack inputStack,
 			final ImageStack seedStack,
 			final int[][][] tabLabels) 
+	{
+		final int size1 = inputStack.getWidth();
+	    final int size2 = inputStack.getHeight();
+	    final int size3 = inputStack.getSize();
+	    
+	    // work on planar indices, and copy back labels into 3D array
+	    final int[][] labels = new int[ size3 ][ size1 * size2 ];
+	    for (int k = 0; k < size3; ++k)
+	    	for (int j = 0, xy = 0; j < size2; ++j)
+	    		for (int i = 0; i < size1; ++i, ++xy)
+	    			labels[ k ][ xy ] = tabLabels[ i ][ j ][ k ];
+
+	    final PriorityQueue<VoxelRecord> voxelList = 
+	    		extractVoxelValuesPriorityQueue( inputStack, seedStack, labels );
+	    if ( null == voxelList )
+	    	return null;
+	    
+	    for (int k = 0; k < size3; ++k)
+	    	for (int j = 0, xy = 0; j < size2; ++j)
+	    		for (int i = 0; i < size1; ++i, ++xy)
+	    			tabLabels[ i ][ j ][ k ] = labels[ k ][ xy ];
+	    return voxelList;
+	}
+
+	/**
+	 * Extract voxel values from input and seed images. Output labels are
+	 * stored with one array per slice, each slice being indexed by
+	 * <code>y * sizeX + x</code>.
+	 * 
+	 * @param inputStack input stack
+	 * @param seedStack seed stack
+	 * @param tabLabels output label array, indexed by slice then by planar index
+	 * @return priority queue of voxels neighboring the seeds
+	 */
+	public PriorityQueue<VoxelRecord> extractVoxelValuesPriorityQueue(
+			final ImageStack inputStack,
+			final ImageStack seedStack,
+			final int[][] tabLabels) 
 	{
 		if ( Thread.currentThread().isInterrupted() )					
 			return null;
@@ -856,15 +915,18 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 	    final int size2 = inputStack.getHeight();
 	    final int size3 = inputStack.getSize();
 		
+	    final Image3D inputValues = Images3D.createWrapper( inputStack );
+	    final Image3D seedValues = Images3D.createWrapper( seedStack );
 	            
         final PriorityQueue<VoxelRecord> voxelList = new PriorityQueue<VoxelRecord>();
         
         // Auxiliary cursor to visit neighbors
 	    final Cursor3D cursor = new Cursor3D(0, 0, 0);
       	
-      	// Check connectivity
-       	final Neighborhood3D neigh = connectivity == 26 ? 
-       			new Neighborhood3DC26() : new Neighborhood3DC6();
+      	// Check connectivity, and precompute planar offsets of neighbors
+	    final OffsetNeighborhood3D neigh = OffsetNeighborhood3D.create( 
+	    		size1, size2, size3, connectivity == 26 ? 26 : 6 );
+	    final int[] offsets = neigh.getPlanarOffsets();
 	    
 		if( null != maskImage ) // apply mask
 		{
@@ -881,36 +943,37 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 				}
 
 				final ImageProcessor ipMask = mask.getProcessor( z+1 );
-				final ImageProcessor ipSeed = seedStack.getProcessor( z+1 );
 
 				for( int x = 0; x < size1; ++x )
 					for( int y = 0; y < size2; ++y )
 						if( ipMask.getf( x, y ) > 0 )
 						{
-							int label = (int) ipSeed.getf( x, y );
+							int label = (int) seedValues.getValue( x, y, z );
 							if( label > 0 )
 							{								
 								cursor.set( x, y, z );
-								neigh.setCursor( cursor );
+								final int xy = neigh.planarIndex( x, y );
+								final boolean interior = neigh.isInterior( x, y, z );
 
 								// add unlabeled neighbors to priority queue
-								for( Cursor3D c : neigh.getNeighbors() )			       		
+								for( int n = 0; n < offsets.length; n++ )
 								{
-									int u = c.getX();
-									int v = c.getY();
-									int w = c.getZ();
-									if ( u >= 0 && u < size1 && 
-											v >= 0 && v < size2 && 
-											w >= 0 && w < size3 &&
-											(int) seedStack.getVoxel( u, v, w ) == 0 &&
-											tabLabels[ u ][ v ][ w ] != INQUEUE )															 
+									if ( !interior && !neigh.contains( x, y, z, n ) )
+										continue;
+									final int x2 = x + neigh.getShiftX( n );
+									final int y2 = y + neigh.getShiftY( n );
+									final int z2 = z + neigh.getShiftZ( n );
+									final int xy2 = xy + offsets[ n ];
+									if ( (int) seedValues.getValue( x2, y2, z2 ) == 0 &&
+											tabLabels[ z2 ][ xy2 ] != INQUEUE )
 									{
-										voxelList.add( new VoxelRecord( u, v, w, inputStack.getVoxel( u, v, w ) ) );
-										tabLabels[ u ][ v ][ w ] = INQUEUE;
+										voxelList.add( new VoxelRecord( neigh.getNeighbor( cursor, n ), 
+												inputValues.getValue( x2, y2, z2 ) ) );
+										tabLabels[ z2 ][ xy2 ] = INQUEUE;
 									}
 
 								}
-								tabLabels[x][y][z] = label;
+								tabLabels[ z ][ xy ] = label;
 							}
 						}								
 			}
@@ -927,35 +990,36 @@ public class MarkerControlledWatershedTransform3D extends WatershedTransform3D
 				
 				IJ.showProgress( z+1, size3 );
 
-				final ImageProcessor ipSeed = seedStack.getProcessor( z+1 );
 
 				for( int x = 0; x < size1; ++x )
 					for( int y = 0; y < size2; ++y )
 					{
-						int label = (int) ipSeed.getf( x, y );
+						int label = (int) seedValues.getValue( x, y, z );
 						if( label > 0 )
 						{
 							cursor.set( x, y, z );
-							neigh.setCursor( cursor );
+							final int xy = neigh.planarIndex( x, y );
+							final boolean interior = neigh.isInterior( x, y, z );
 
 							// add unlabeled neighbors to priority queue
-							for( Cursor3D c : neigh.getNeighbors() )			       		
+							for( int n = 0; n < offsets.length; n++ )
 							{
-								int u = c.getX();
-								int v = c.getY();
-								int w = c.getZ();
-								if ( u >= 0 && u < size1 && 
-										v >= 0 && v < size2 && 
-										w >= 0 && w < size3 &&
-										(int) seedStack.getVoxel( u, v, w ) == 0 &&
-										tabLabels[ u ][ v ][ w ] != INQUEUE )															 
+								if ( !interior && !neigh.contains( x, y, z, n ) )
+									continue;
+								final int x2 = x + neigh.getShiftX( n );
+								final int y2 = y + neigh.getShiftY( n );
+								final int z2 = z + neigh.getShiftZ( n );
+								final int xy2 = xy + offsets[ n ];
+								if ( (int) seedValues.getValue( x2, y2, z2 ) == 0 &&
+										tabLabels[ z2 ][ xy2 ] != INQUEUE )
 								{
-									voxelList.add( new VoxelRecord( u, v, w, inputStack.getVoxel( u, v, w ) ) );
-									tabLabels[ u ][ v ][ w ] = INQUEUE;
+									voxelList.add( new VoxelRecord( neigh.getNeighbor( cursor, n ), 
+											inputValues.getValue( x2, y2, z2 ) ) );
+									tabLabels[ z2 ][ xy2 ] = INQUEUE;
 								}
 
 							}
-							tabLabels[x][y][z] = label;
+							tabLabels[ z ][ xy ] = label;
 						}
 					}
 			}
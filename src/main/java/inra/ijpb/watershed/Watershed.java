@@ -3,6 +3,7 @@ package inra.ijpb.watershed;
 import ij.ImagePlus;
 import ij.ImageStack;
 import ij.process.ImageProcessor;
+import inra.ijpb.algo.DefaultAlgoListener;
 
 /**
  * Several static methods for computing watershed in 2D/3D images. 
@@ -27,6 +28,7 @@ public class Watershed
 			int connectivity )
 	{
 		WatershedTransform3D wt = new WatershedTransform3D( input, mask, connectivity );
+		DefaultAlgoListener.monitor( wt );
 		
 		return wt.apply();		
 	}
@@ -54,6 +56,7 @@ public class Watershed
 		if( connectivity == 6 || connectivity == 26 )
 		{
 			WatershedTransform3D wt = new WatershedTransform3D( input, mask, connectivity );
+			DefaultAlgoListener.monitor( wt );
 			return wt.apply( hMin, hMax );
 		}
 		else if( connectivity == 4 || connectivity == 8 )
@@ -61,6 +64,7 @@ public class Watershed
 			WatershedTransform2D wt = 
 					new WatershedTransform2D( input.getProcessor(), 
 							null != mask ? mask.getProcessor() : null, connectivity );
+			DefaultAlgoListener.monitor( wt );
 			final ImageProcessor ip = wt.apply( hMin, hMax );
 			if( null != ip )
 			{
@@ -103,6 +107,7 @@ public class Watershed
 		final ImagePlus inputIP = new ImagePlus( "input", input );		
 		final ImagePlus binaryMaskIP = ( null != mask ) ? new ImagePlus( "binary mask", mask ) : null;
 		WatershedTransform3D wt = new WatershedTransform3D( inputIP, binaryMaskIP, connectivity );
+		DefaultAlgoListener.monitor( wt );
 		
 		final ImagePlus ws = wt.apply();
 		if( null != ws )
@@ -128,6 +133,7 @@ public class Watershed
 			int connectivity )
 	{		
 		WatershedTransform2D wt = new WatershedTransform2D( input, mask, connectivity );
+		DefaultAlgoListener.monitor( wt );
 		return wt.apply();
 	}
 	
@@ -159,6 +165,7 @@ public class Watershed
 		if( connectivity == 6 || connectivity == 26 )
 		{
 			MarkerControlledWatershedTransform3D wt = new MarkerControlledWatershedTransform3D( input, marker, binaryMask, connectivity );
+			DefaultAlgoListener.monitor( wt );
 			if( usePriorityQueue )
 			{
 				if( getDams )
@@ -179,6 +186,7 @@ public class Watershed
 			MarkerControlledWatershedTransform2D wt = new MarkerControlledWatershedTransform2D( 
 					input.getProcessor(), marker.getProcessor(), 
 					null != binaryMask ? binaryMask.getProcessor() : null, connectivity );
+			DefaultAlgoListener.monitor( wt );
 			ImageProcessor ip;
 			if( usePriorityQueue )
 			{
@@ -280,6 +288,7 @@ public class Watershed
 			boolean getDams )
 	{															
 		MarkerControlledWatershedTransform2D wt = new MarkerControlledWatershedTransform2D( input, marker, binaryMask, connectivity );
+		DefaultAlgoListener.monitor( wt );
 		if( usePriorityQueue )
 		{
 			if( getDams )
@@ -319,6 +328,7 @@ public class Watershed
 			boolean getDams )
 	{
 		MarkerControlledWatershedTransform3D wt = new MarkerControlledWatershedTransform3D( input, marker, null, connectivity );
+		DefaultAlgoListener.monitor( wt );
 		if( usePriorityQueue )
 		{
 			if( getDams )
@@ -364,6 +374,7 @@ public class Watershed
 		final ImagePlus markerIP = new ImagePlus( "marker", marker );	
 		
 		MarkerControlledWatershedTransform3D wt = new MarkerControlledWatershedTransform3D( inputIP, markerIP, null, connectivity );
+		DefaultAlgoListener.monitor( wt );
 		
 		ImagePlus ws = null;
 		
@@ -415,6 +426,7 @@ public class Watershed
 		final int conn3d = connectivity == 4 ? 6 : 26;
 									
 		MarkerControlledWatershedTransform3D wt = new MarkerControlledWatershedTransform3D( inputIP, markerIP, null, conn3d );
+		DefaultAlgoListener.monitor( wt );
 		
 		ImagePlus ws = null;
 		
@@ -459,6 +471,7 @@ public class Watershed
 		if( connectivity == 6 || connectivity == 26 )
 		{
 			MarkerControlledWatershedTransform3D wt = new MarkerControlledWatershedTransform3D( input, marker, binaryMask, connectivity );
+			DefaultAlgoListener.monitor( wt );
 			if( getDams )
 				return wt.applyWithPriorityQueueAndDams();
 			else 
@@ -469,6 +482,7 @@ public class Watershed
 			MarkerControlledWatershedTransform2D wt = new MarkerControlledWatershedTransform2D( 
 					input.getProcessor(), marker.getProcessor(), 
 					null != binaryMask ? binaryMask.getProcessor() : null, connectivity );
+			DefaultAlgoListener.monitor( wt );
 			ImageProcessor ip;
 			if( getDams )
 				ip = wt.applyWithPriorityQueueAndDams();
@@ -546,6 +560,7 @@ public class Watershed
 			boolean getDams )
 	{															
 		MarkerControlledWatershedTransform2D wt = new MarkerControlledWatershedTransform2D( input, marker, binaryMask, connectivity );
+		DefaultAlgoListener.monitor( wt );
 		if( getDams )
 			return wt.applyWithPriorityQueueAndDams();
 		else 
@@ -568,6 +583,7 @@ public class Watershed
 			boolean getDams )
 	{
 		MarkerControlledWatershedTransform3D wt = new MarkerControlledWatershedTransform3D( input, marker, null, connectivity );
+		DefaultAlgoListener.monitor( wt );
 		if( getDams )
 			return wt.applyWithPriorityQueueAndDams();
 		else 
@@ -596,6 +612,7 @@ public class Watershed
 		final ImagePlus markerIP = new ImagePlus( "marker", marker );	
 		
 		MarkerControlledWatershedTransform3D wt = new MarkerControlledWatershedTransform3D( inputIP, markerIP, null, connectivity );
+		DefaultAlgoListener.monitor( wt );
 		
 		ImagePlus ws = null;
 
@@ -626,7 +643,8 @@ public class Watershed
 	{												
 		MarkerControlledWatershedTransform2D wt = 
 				new MarkerControlledWatershedTransform2D( input, marker, 
-														  null, connectivity );		
+														  null, connectivity );
+		DefaultAlgoListener.monitor( wt );		
 		if( getDams )			
 			return wt.applyWithPriorityQueueAndDams();							
 		else			
@@ -10,6 +10,8 @@ import ij.ImagePlus;
 import ij.ImageStack;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.algo.ProgressCounter;
 import inra.ijpb.data.Cursor2D;
 import inra.ijpb.data.Neighborhood2D;
 import inra.ijpb.data.Neighborhood2DC4;
@@ -44,7 +46,7 @@ import inra.ijpb.data.image.Images3D;
  * 
  * @author Ignacio Arganda-Carreras
  */
-public class WatershedTransform2D 
+public class WatershedTransform2D extends AlgoStub
 {
 	/** input image (usually a gradient image) */
 	ImageProcessor inputImage = null;
@@ -258,6 +260,9 @@ public class WatershedTransform2D
 	    	    
 	    LinkedList<Cursor2D> fifo = new LinkedList<Cursor2D>();
 	      
+        final ProgressCounter progress = new ProgressCounter( this, hMax, 
+        		ProgressCounter.DEFAULT_INTERVAL, 1 );
+
         // initial height
         double h = hMin;
         
@@ -410,11 +415,12 @@ public class WatershedTransform2D
 	    		}// end if	    		
 	    	}// end for
 	    		    		    	
-	    	IJ.showProgress( h / hMax );
+	    	if ( !progress.update( h ) )
+	    		return null;
 	    	
 	    }// end while (flooding)
 	    
-	    IJ.showProgress( 1.0 );
+	    progress.finish();
 	    
 	    final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
@@ -490,6 +496,9 @@ public class WatershedTransform2D
 	    	    
 	    LinkedList<Cursor2D> fifo = new LinkedList<Cursor2D>();
 	      
+        final ProgressCounter progress = new ProgressCounter( this, hMax, 
+        		ProgressCounter.DEFAULT_INTERVAL, 1 );
+
         // initial height
         double h = hMin;
         
@@ -640,11 +649,12 @@ public class WatershedTransform2D
 	    		}// end if	    		
 	    	}// end for
 	    		    		    	
-	    	IJ.showProgress( h / hMax );
+	    	if ( !progress.update( h ) )
+	    		return null;
 	    	
 	    }// end while (flooding)
 	    
-	    IJ.showProgress( 1.0 );
+	    progress.finish();
 	    
 	    final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
@@ -777,6 +787,9 @@ public class WatershedTransform2D
 	    	    
 	    LinkedList<Cursor2D> fifo = new LinkedList<Cursor2D>();
 	      
+        final ProgressCounter progress = new ProgressCounter( this, hMax, 
+        		ProgressCounter.DEFAULT_INTERVAL, 1 );
+
         // initial height
         double h = hMin;
         
@@ -931,11 +944,12 @@ public class WatershedTransform2D
 	    	
 	    	animation.addSlice( "h = " + h, new FloatProcessor( tabLabels ) );
 	    	
-	    	IJ.showProgress( h / hMax );
+	    	if ( !progress.update( h ) )
+	    		return null;
 	    	
 	    }// end while (flooding)
 	    
-	    IJ.showProgress( 1.0 );
+	    progress.finish();
 	    
 	    final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");	    	   
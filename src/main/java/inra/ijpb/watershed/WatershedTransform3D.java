@@ -31,15 +31,16 @@ import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
 import ij.Prefs;
-import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import ij.util.ThreadUtil;
+import inra.ijpb.algo.AlgoStub;
+import inra.ijpb.algo.ProgressCounter;
 import inra.ijpb.data.Cursor3D;
-import inra.ijpb.data.Neighborhood3D;
-import inra.ijpb.data.Neighborhood3DC6;
-import inra.ijpb.data.Neighborhood3DC26;
+import inra.ijpb.data.OffsetNeighborhood3D;
 import inra.ijpb.data.VoxelRecord;
+import inra.ijpb.data.image.Image3D;
 import inra.ijpb.data.image.Images3D;
+import inra.ijpb.label.LabelImages;
 
 /**
  * Class to apply the watershed algorithm in 3D to an image. 
@@ -48,7 +49,7 @@ import inra.ijpb.data.image.Images3D;
  * 
  * @author Ignacio Arganda-Carreras
  */
-public class WatershedTransform3D 
+public class WatershedTransform3D extends AlgoStub
 {
 	/** input image (usually a gradient image) */
 	ImagePlus inputImage = null;
@@ -205,14 +206,14 @@ public class WatershedTransform3D
 	    
 	    // binary mask stack
 	    final ImageStack mask = maskImage.getImageStack();
+	    final Image3D maskValues = Images3D.createWrapper( mask );
 	    	    
-	    // output labels
-	    final int[][][] tabLabels = new int[ size1 ][ size2 ][ size3 ]; 
+	    // output labels, using one array per slice to process large images
+	    final int[][] tabLabels = new int[ size3 ][ size1 * size2 ];
 	    
 	    // value INIT is assigned to each voxel of the output labels
-	    for( int i=0; i<size1; i++ )
-	    	for( int j=0; j<size2; j++ )
-	    		Arrays.fill( tabLabels[i][j], INIT );
+	    for ( int[] slice : tabLabels )
+	    	Arrays.fill( slice, INIT );
 	    
 	    int currentLabel = 0;
 	    
@@ -238,12 +239,16 @@ public class WatershedTransform3D
 	    IJ.showStatus( "Flooding..." );
 	    final long start = System.currentTimeMillis();
 	    
-      	// Check connectivity
-       	final Neighborhood3D neigh = connectivity == 26 ? 
-       									new Neighborhood3DC26() : new Neighborhood3DC6();
+	    // Check connectivity, and precompute planar offsets of neighbors
+	    final OffsetNeighborhood3D neigh = OffsetNeighborhood3D.create( 
+	    		size1, size2, size3, connectivity == 26 ? 26 : 6 );
+	    final int[] offsets = neigh.getPlanarOffsets();
 	    	    
 	    LinkedList<Cursor3D> fifo = new LinkedList<Cursor3D>();
 	      
+        final ProgressCounter progress = new ProgressCounter( this, hMax, 
+        		ProgressCounter.DEFAULT_INTERVAL, 1 );
+
         // initial height
         double h = hMin;
         
@@ -279,26 +284,28 @@ public class WatershedTransform3D
 	    		final int i = p.getX();
 	    		final int j = p.getY();
 	    		final int k = p.getZ();
+	    		final int xy = neigh.planarIndex( i, j );
 	    			    		
 	    		// set label to MASK
-	    		tabLabels[ i ][ j ][ k ] = MASK;
+	    		tabLabels[ k ][ xy ] = MASK;
 
-	    		// read neighbor coordinates	    		
-	    		neigh.setCursor( p );
-	    		for( Cursor3D c : neigh.getNeighbors() )			       		
-	    		{       			
-	    			int u = c.getX();
-	    			int v = c.getY();
-	    			int w = c.getZ();
+	    		// only neighbors of border voxels need bounds checking
+	    		final boolean interior = neigh.isInterior( i, j, k );
+	    		for( int n = 0; n < offsets.length; n++ )
+	    		{
+	    			if( !interior && !neigh.contains( i, j, k, n ) )
+	    				continue;
+	    			final int x2 = i + neigh.getShiftX( n );
+	    			final int y2 = j + neigh.getShiftY( n );
+	    			final int z2 = k + neigh.getShiftZ( n );
+	    			final int xy2 = xy + offsets[ n ];
 
 	    			// initialize queue with neighbors at level h of current basins or watersheds
-	    			if ( u >= 0 && u < size1 && v >= 0 && v < size2 && w >= 0 && w < size3
-	    					&& tabLabels[ u ][ v ][ w ] >= WSHED 
-	    					&& mask.getVoxel(u, v, w) > 0 ) 
-	    				//&&  ( tabLabels[ u ][ v ][ w ] > 0 || tabLabels[ u ][ v ][ w ] == WSHED ) )
+	    			if ( tabLabels[ z2 ][ xy2 ] >= WSHED 
+	    					&& maskValues.getValue( x2, y2, z2 ) > 0 ) 
 	    				{
 	    					fifo.addLast( p );
-	    					tabLabels[ i ][ j ][ k ] = INQUEUE;
+	    					tabLabels[ k ][ xy ] = INQUEUE;
 	    					break;
 	    				}	    			
 	    		}// end for	    	
@@ -311,44 +318,45 @@ public class WatershedTransform3D
 	    		final int i = p.getX();
 	    		final int j = p.getY();
 	    		final int k = p.getZ();
+	    		final int xy = neigh.planarIndex( i, j );
 
-	    		// read neighbor coordinates
-	    		neigh.setCursor( p );
-
-	    		for( Cursor3D c : neigh.getNeighbors() )			       		
+	    		// labeling current point by inspecting neighbors
+	    		final boolean interior = neigh.isInterior( i, j, k );
+	    		for( int n = 0; n < offsets.length; n++ )
 	    		{
-	    			// labeling current point by inspecting neighbors
-	    			int u = c.getX();
-	    			int v = c.getY();
-	    			int w = c.getZ();
-
-	    			if ( u >= 0 && u < size1 && v >= 0 && v < size2 && w >= 0 && w < size3 
-	    					&& mask.getVoxel(u, v, w) > 0 )
+	    			if( !interior && !neigh.contains( i, j, k, n ) )
+	    				continue;
+	    			final int x2 = i + neigh.getShiftX( n );
+	    			final int y2 = j + neigh.getShiftY( n );
+	    			final int z2 = k + neigh.getShiftZ( n );
+	    			final int xy2 = xy + offsets[ n ];
+
+	    			if ( maskValues.getValue( x2, y2, z2 ) > 0 )
 	    			{
-	    				if ( tabLabels[ u ][ v ][ w ] > 0 ) // i.e. the voxel belongs to an already labeled basin
+	    				if ( tabLabels[ z2 ][ xy2 ] > 0 ) // i.e. the voxel belongs to an already labeled basin
 	    				{
-	    					if ( tabLabels[ i ][ j ][ k ] == INQUEUE || (tabLabels[ i ][ j ][ k ] == WSHED && flag == true ) )
+	    					if ( tabLabels[ k ][ xy ] == INQUEUE || (tabLabels[ k ][ xy ] == WSHED && flag == true ) )
 	    					{
-	    						tabLabels[ i ][ j ][ k ] = tabLabels[ u ][ v ][ w ];
+	    						tabLabels[ k ][ xy ] = tabLabels[ z2 ][ xy2 ];
 	    					}
-	    					else if ( tabLabels[ i ][ j ][ k ] > 0 && tabLabels[ i ][ j ][ k ] != tabLabels[ u ][ v ][ w ] )
+	    					else if ( tabLabels[ k ][ xy ] > 0 && tabLabels[ k ][ xy ] != tabLabels[ z2 ][ xy2 ] )
 	    					{
-	    						tabLabels[ i ][ j ][ k ] = WSHED;
+	    						tabLabels[ k ][ xy ] = WSHED;
 	    						flag = false;
 	    					}       					
 	    				}
-	    				else if ( tabLabels[ u ][ v ][ w ] == WSHED )
+	    				else if ( tabLabels[ z2 ][ xy2 ] == WSHED )
 	    				{
-	    					if( tabLabels[ i ][ j ][ k ] == INQUEUE )
+	    					if( tabLabels[ k ][ xy ] == INQUEUE )
 	    					{
-	    						tabLabels[ i ][ j ][ k ] = WSHED;
+	    						tabLabels[ k ][ xy ] = WSHED;
 	    						flag = true;
 	    					}
 	    				}
-	    				else if ( tabLabels[ u ][ v ][ w ] == MASK )
+	    				else if ( tabLabels[ z2 ][ xy2 ] == MASK )
 	    				{
-	    					tabLabels[ u ][ v ][ w ] = INQUEUE;
-	    					fifo.addLast( c );
+	    					tabLabels[ z2 ][ xy2 ] = INQUEUE;
+	    					fifo.addLast( neigh.getNeighbor( p, n ) );
 
 	    				}
 	    			}       			       			
@@ -369,69 +377,57 @@ public class WatershedTransform3D
 	    		}
 	    			    		
 	    		final Cursor3D p = voxelRecord.getCursor();
-	    		final int i = p.getX();
-	    		final int j = p.getY();
-	    		final int k = p.getZ();
+	    		final int xy = neigh.planarIndex( p.getX(), p.getY() );
 	    		
-	    		if ( tabLabels[ i ][ j ][ k ] == MASK ) // the voxel is inside a new minimum
+	    		if ( tabLabels[ p.getZ() ][ xy ] == MASK ) // the voxel is inside a new minimum
 	    		{
 	    			currentLabel ++;
 	    			fifo.addLast( p );
-	    			tabLabels[ i ][ j ][ k ] = currentLabel;
+	    			tabLabels[ p.getZ() ][ xy ] = currentLabel;
 	    			
 	    			while( fifo.isEmpty() == false )
 	    	    	{
 	    				final Cursor3D p2 = fifo.poll();
-
-	    	    		// read neighbor coordinates
-	    	    		neigh.setCursor( p2 );
-
-	    	    		for( Cursor3D c : neigh.getNeighbors() ) // inspect neighbors of p2		       		
+	    				final int i = p2.getX();
+	    				final int j = p2.getY();
+	    				final int k = p2.getZ();
+	    				final int xy1 = neigh.planarIndex( i, j );
+
+	    	    		// inspect neighbors of p2
+	    				final boolean interior = neigh.isInterior( i, j, k );
+	    	    		for( int n = 0; n < offsets.length; n++ )
 	    	    		{       			
-	    	    			int u = c.getX();
-	    	    			int v = c.getY();
-	    	    			int w = c.getZ();
+	    	    			if( !interior && !neigh.contains( i, j, k, n ) )
+	    	    				continue;
+	    	    			final int x2 = i + neigh.getShiftX( n );
+	    	    			final int y2 = j + neigh.getShiftY( n );
+	    	    			final int z2 = k + neigh.getShiftZ( n );
+	    	    			final int xy2 = xy1 + offsets[ n ];
 	    	    			
-	    	    			if ( u >= 0 && u < size1 && v >= 0 && v < size2 && w >= 0 && w < size3 
-	    	    					&& tabLabels[ u ][ v ][ w ] == MASK 
-	    	    					&& mask.getVoxel(u, v, w) > 0 )
+	    	    			if ( tabLabels[ z2 ][ xy2 ] == MASK 
+	    	    					&& maskValues.getValue( x2, y2, z2 ) > 0 )
 	    	    			{
-	    	    				fifo.addLast( c );
-	    	    				tabLabels[ u ][ v ][ w ] = currentLabel;
+	    	    				fifo.addLast( neigh.getNeighbor( p2, n ) );
+	    	    				tabLabels[ z2 ][ xy2 ] = currentLabel;
 	    	    			}	    	    				    	    			
 	    	    		}// end for
 	    	    	}// end while
 	    		}// end if	    		
 	    	}// end for
 	    		    		    	
-	    	IJ.showProgress( h / hMax );
+	    	if ( !progress.update( h ) )
+	    		return null;
 	    	
 	    }// end while (flooding)
 	    
-	    IJ.showProgress( 1.0 );
+	    progress.finish();
 	    
 	    final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
 	    
 	    // Create result label image
-	    ImageStack labelStack = new ImageStack( size1, size2 );
-
-	    for (int k = 0; k < size3; ++k)
-	    {
-	    	
-	    	FloatProcessor fp = new FloatProcessor( size1, size2 );
-	    	for (int i = 0; i < size1; ++i)
-	    		for (int j = 0; j < size2; ++j)
-	    		{
-	    			if( tabLabels[ i ][ j ][ k ] == INIT ) // set unlabeled voxels to 0
-	    				fp.setf( i, j, 0 );	
-	    			else
-	    				fp.setf( i, j, tabLabels[i][j][k] );
-	    		}
-	    	labelStack.addSlice( fp );	    	
-	    }		
-	    			
-	    final ImagePlus ws = new ImagePlus( "watershed", labelStack );
+	    final ImagePlus ws = new ImagePlus( "watershed", 
+	    		createLabelStack( tabLabels, size1, size2, currentLabel ) );
 	    ws.setCalibration( inputImage.getCalibration() );
 	    return ws;
 	}
@@ -470,13 +466,13 @@ public class WatershedTransform3D
 	    final int size2 = inputStack.getHeight();
 	    final int size3 = inputStack.getSize();
 	    	    
-	    // output labels
-	    final int[][][] tabLabels = new int[ size1 ][ size2 ][ size3 ]; 
+	    	    
+	    // output labels, using one array per slice to process large images
+	    final int[][] tabLabels = new int[ size3 ][ size1 * size2 ];
 	    
 	    // value INIT is assigned to each voxel of the output labels
-	    for( int i=0; i<size1; i++ )
-	    	for( int j=0; j<size2; j++ )
-	    		Arrays.fill( tabLabels[i][j], INIT );
+	    for ( int[] slice : tabLabels )
+	    	Arrays.fill( slice, INIT );
 	    
 	    int currentLabel = 0;
 	    
@@ -502,12 +498,16 @@ public class WatershedTransform3D
 	    IJ.showStatus( "Flooding..." );
 	    final long start = System.currentTimeMillis();
 	    
-      	// Check connectivity
-       	final Neighborhood3D neigh = connectivity == 26 ? 
-       									new Neighborhood3DC26() : new Neighborhood3DC6();
+	    // Check connectivity, and precompute planar offsets of neighbors
+	    final OffsetNeighborhood3D neigh = OffsetNeighborhood3D.create( 
+	    		size1, size2, size3, connectivity == 26 ? 26 : 6 );
+	    final int[] offsets = neigh.getPlanarOffsets();
 	    	    
 	    LinkedList<Cursor3D> fifo = new LinkedList<Cursor3D>();
 	      
+        final ProgressCounter progress = new ProgressCounter( this, hMax, 
+        		ProgressCounter.DEFAULT_INTERVAL, 1 );
+
         // initial height
         double h = hMin;
         
@@ -543,24 +543,27 @@ public class WatershedTransform3D
 	    		final int i = p.getX();
 	    		final int j = p.getY();
 	    		final int k = p.getZ();
+	    		final int xy = neigh.planarIndex( i, j );
 	    			    		
 	    		// set label to MASK
-	    		tabLabels[ i ][ j ][ k ] = MASK;
+	    		tabLabels[ k ][ xy ] = MASK;
 
-	    		// read neighbor coordinates	    		
-	    		neigh.setCursor( p );
-	    		for( Cursor3D c : neigh.getNeighbors() )			       		
-	    		{       			
-	    			int u = c.getX();
-	    			int v = c.getY();
-	    			int w = c.getZ();
+	    		// only neighbors of border voxels need bounds checking
+	    		final boolean interior = neigh.isInterior( i, j, k );
+	    		for( int n = 0; n < offsets.length; n++ )
+	    		{
+	    			if( !interior && !neigh.contains( i, j, k, n ) )
+	    				continue;
+	    			final int x2 = i + neigh.getShiftX( n );
+	    			final int y2 = j + neigh.getShiftY( n );
+	    			final int z2 = k + neigh.getShiftZ( n );
+	    			final int xy2 = xy + offsets[ n ];
 
 	    			// initialize queue with neighbors at level h of current basins or watersheds
-	    			if ( u >= 0 && u < size1 && v >= 0 && v < size2 && w >= 0 && w < size3
-	    					&&   tabLabels[ u ][ v ][ w ] >= WSHED ) 	    				
+	    			if ( tabLabels[ z2 ][ xy2 ] >= WSHED ) 
 	    				{
 	    					fifo.addLast( p );
-	    					tabLabels[ i ][ j ][ k ] = INQUEUE;
+	    					tabLabels[ k ][ xy ] = INQUEUE;
 	    					break;
 	    				}	    			
 	    		}// end for	    	
@@ -573,50 +576,50 @@ public class WatershedTransform3D
 	    		final int i = p.getX();
 	    		final int j = p.getY();
 	    		final int k = p.getZ();
+	    		final int xy = neigh.planarIndex( i, j );
 
-	    		// read neighbor coordinates
-	    		neigh.setCursor( p );
-
-	    		for( Cursor3D c : neigh.getNeighbors() )			       		
+	    		// labeling current point by inspecting neighbors
+	    		final boolean interior = neigh.isInterior( i, j, k );
+	    		for( int n = 0; n < offsets.length; n++ )
 	    		{
-	    			// labeling current point by inspecting neighbors
-	    			int u = c.getX();
-	    			int v = c.getY();
-	    			int w = c.getZ();
-
-	    			if ( u >= 0 && u < size1 && v >= 0 && v < size2 && w >= 0 && w < size3 )
+	    			if( !interior && !neigh.contains( i, j, k, n ) )
+	    				continue;
+	    			final int x2 = i + neigh.getShiftX( n );
+	    			final int y2 = j + neigh.getShiftY( n );
+	    			final int z2 = k + neigh.getShiftZ( n );
+	    			final int xy2 = xy + offsets[ n ];
+
+	    			if ( tabLabels[ z2 ][ xy2 ] > 0 ) // i.e. the voxel belongs to an already labeled basin
 	    			{
-	    				if ( tabLabels[ u ][ v ][ w ] > 0 ) // i.e. the voxel belongs to an already labeled basin
+	    				if ( tabLabels[ k ][ xy ] == INQUEUE || (tabLabels[ k ][ xy ] == WSHED && flag == true ) )
 	    				{
-	    					if ( tabLabels[ i ][ j ][ k ] == INQUEUE || (tabLabels[ i ][ j ][ k ] == WSHED && flag == true ) )
-	    					{
-	    						tabLabels[ i ][ j ][ k ] = tabLabels[ u ][ v ][ w ];
-	    					}
-	    					else if ( tabLabels[ i ][ j ][ k ] > 0 && tabLabels[ i ][ j ][ k ] != tabLabels[ u ][ v ][ w ] )
-	    					{
-	    						tabLabels[ i ][ j ][ k ] = WSHED;
-	    						flag = false;
-	    					}       					
+	    					tabLabels[ k ][ xy ] = tabLabels[ z2 ][ xy2 ];
 	    				}
-	    				else if ( tabLabels[ u ][ v ][ w ] == WSHED )
+	    				else if ( tabLabels[ k ][ xy ] > 0 && tabLabels[ k ][ xy ] != tabLabels[ z2 ][ xy2 ] )
 	    				{
-	    					if( tabLabels[ i ][ j ][ k ] == INQUEUE )
-	    					{
-	    						tabLabels[ i ][ j ][ k ] = WSHED;
-	    						flag = true;
-	    					}
-	    				}
-	    				else if ( tabLabels[ u ][ v ][ w ] == MASK )
+	    					tabLabels[ k ][ xy ] = WSHED;
+	    					flag = false;
+	    				}       					
+	    			}
+	    			else if ( tabLabels[ z2 ][ xy2 ] == WSHED )
+	    			{
+	    				if( tabLabels[ k ][ xy ] == INQUEUE )
 	    				{
-	    					tabLabels[ u ][ v ][ w ] = INQUEUE;
-	    					fifo.addLast( c );
-
+	    					tabLabels[ k ][ xy ] = WSHED;
+	    					flag = true;
 	    				}
-	    			}       			       			
+	    			}
+	    			else if ( tabLabels[ z2 ][ xy2 ] == MASK )
+	    			{
+	    				tabLabels[ z2 ][ xy2 ] = INQUEUE;
+	    				fifo.addLast( neigh.getNeighbor( p, n ) );
+
+	    			}
 	    		}	    	
 	    	}
 
-	    	// check for new minima at level h	    		    	
+	    	// check for new minima at level h
+	    		    	
 	    	for(int voxelIndex = heightIndex2; voxelIndex < voxelList.size(); voxelIndex ++, currentIndex++)
 	    	{
 	    		final VoxelRecord voxelRecord = voxelList.get( voxelIndex );	    			    		
@@ -629,68 +632,56 @@ public class WatershedTransform3D
 	    		}
 	    			    		
 	    		final Cursor3D p = voxelRecord.getCursor();
-	    		final int i = p.getX();
-	    		final int j = p.getY();
-	    		final int k = p.getZ();
+	    		final int xy = neigh.planarIndex( p.getX(), p.getY() );
 	    		
-	    		if ( tabLabels[ i ][ j ][ k ] == MASK ) // the voxel is inside a new minimum
+	    		if ( tabLabels[ p.getZ() ][ xy ] == MASK ) // the voxel is inside a new minimum
 	    		{
 	    			currentLabel ++;
 	    			fifo.addLast( p );
-	    			tabLabels[ i ][ j ][ k ] = currentLabel;
+	    			tabLabels[ p.getZ() ][ xy ] = currentLabel;
 	    			
 	    			while( fifo.isEmpty() == false )
 	    	    	{
 	    				final Cursor3D p2 = fifo.poll();
-
-	    	    		// read neighbor coordinates
-	    	    		neigh.setCursor( p2 );
-
-	    	    		for( Cursor3D c : neigh.getNeighbors() ) // inspect neighbors of p2		       		
+	    				final int i = p2.getX();
+	    				final int j = p2.getY();
+	    				final int k = p2.getZ();
+	    				final int xy1 = neigh.planarIndex( i, j );
+
+	    	    		// inspect neighbors of p2
+	    				final boolean interior = neigh.isInterior( i, j, k );
+	    	    		for( int n = 0; n < offsets.length; n++ )
 	    	    		{       			
-	    	    			int u = c.getX();
-	    	    			int v = c.getY();
-	    	    			int w = c.getZ();
+	    	    			if( !interior && !neigh.contains( i, j, k, n ) )
+	    	    				continue;
+	    	    			final int x2 = i + neigh.getShiftX( n );
+	    	    			final int y2 = j + neigh.getShiftY( n );
+	    	    			final int z2 = k + neigh.getShiftZ( n );
+	    	    			final int xy2 = xy1 + offsets[ n ];
 	    	    			
-	    	    			if ( u >= 0 && u < size1 && v >= 0 && v < size2 && w >= 0 && w < size3 
-	    	    					&&  tabLabels[ u ][ v ][ w ] == MASK )
+	    	    			if ( tabLabels[ z2 ][ xy2 ] == MASK )
 	    	    			{
-	    	    				fifo.addLast( c );
-	    	    				tabLabels[ u ][ v ][ w ] = currentLabel;
+	    	    				fifo.addLast( neigh.getNeighbor( p2, n ) );
+	    	    				tabLabels[ z2 ][ xy2 ] = currentLabel;
 	    	    			}	    	    				    	    			
 	    	    		}// end for
 	    	    	}// end while
 	    		}// end if	    		
 	    	}// end for
 	    		    		    	
-	    	IJ.showProgress( h / hMax );
+	    	if ( !progress.update( h ) )
+	    		return null;
 	    	
 	    }// end while (flooding)
 	    
-	    IJ.showProgress( 1.0 );
+	    progress.finish();
 	    
 	    final long end = System.currentTimeMillis();
 		if( verbose ) IJ.log("  Flooding took: " + (end-start) + " ms");
 	    
-		// Create result label image
-	    ImageStack labelStack = new ImageStack( size1, size2 );
-
-	    for (int k = 0; k < size3; ++k)
-	    {
-	    	
-	    	FloatProcessor fp = new FloatProcessor( size1, size2 );
-	    	for (int i = 0; i < size1; ++i)
-	    		for (int j = 0; j < size2; ++j)
-	    		{
-	    			if( tabLabels[ i ][ j ][ k ] == INIT ) // set unlabeled voxels to 0
-	    				fp.setf( i, j, 0 );	
-	    			else
-	    				fp.setf( i, j, tabLabels[i][j][k] );
-	    		}
-	    	labelStack.addSlice( fp );	    	
-	    }			
-	    			
-	    final ImagePlus ws = new ImagePlus( "watershed", labelStack );
+	    // Create result label image
+	    final ImagePlus ws = new ImagePlus( "watershed", 
+	    		createLabelStack( tabLabels, size1, size2, currentLabel ) );
 	    ws.setCalibration( inputImage.getCalibration() );
 	    return ws;
 	}
@@ -818,6 +809,35 @@ public class WatershedTransform3D
 		
 		return voxelList;
 	}
-	
-} // end class WatershedTransform3D
 
+	/**
+	 * Copies the flooding labels into a new label stack, whose type is chosen
+	 * according to the number of labels. Unlabeled voxels are set to 0.
+	 *
+	 * @param tabLabels the labels of each voxel, slice by slice
+	 * @param sizeX the size of the image in the x direction
+	 * @param sizeY the size of the image in the y direction
+	 * @param nLabels the number of labels
+	 * @return the label stack
+	 */
+	static final ImageStack createLabelStack( 
+			int[][] tabLabels, 
+			int sizeX, 
+			int sizeY, 
+			int nLabels )
+	{
+		final int sizeZ = tabLabels.length;
+		final ImageStack labelStack = 
+				LabelImages.createLabelStack( sizeX, sizeY, sizeZ, nLabels );
+		final Image3D labels = Images3D.createWrapper( labelStack );
+		for ( int k = 0; k < sizeZ; ++k )
+			for ( int j = 0, xy = 0; j < sizeY; ++j )
+				for ( int i = 0; i < sizeX; ++i, ++xy )
+				{
+					final int label = tabLabels[ k ][ xy ];
+					// unlabeled voxels are set to 0
+					labels.set( i, j, k, label == INIT ? 0 : label );
+				}
+		return labelStack;
+	}
+}
@@ -8,7 +8,10 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
 	// generic classes
 	inra.ijpb.OpenResourceImage.class, 
+	inra.ijpb.algo.AllTests.class,
 	inra.ijpb.binary.AllTestsRecurse.class,
+	inra.ijpb.data.AllTests.class,
+	inra.ijpb.data.image.AllTests.class,
 	inra.ijpb.label.AllTests.class,
 	inra.ijpb.measure.AllTests.class,
 	inra.ijpb.morphology.AllTestsRecurse.class,
@@ -0,0 +1,15 @@
+package inra.ijpb.algo;
+
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+	// generic classes
+	ProgressCounterTest.class,
+	PhaseMetricsWriterTest.class
+	})
+public class AllTests {
+  //nothing
+}
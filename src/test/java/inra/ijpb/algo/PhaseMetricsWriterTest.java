@@ -0,0 +1,77 @@
+package inra.ijpb.algo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class PhaseMetricsWriterTest
+{
+	/**
+	 * Checks that finishing a phase notifies the phase listeners.
+	 */
+	@Test
+	public final void testPhaseTimer_NotifiesListeners()
+	{
+		AlgoStub algo = new AlgoStub();
+		final ArrayList<PhaseEvent> events = new ArrayList<PhaseEvent>();
+		algo.addPhaseListener(new PhaseListener()
+		{
+			@Override
+			public void algoPhaseFinished(PhaseEvent evt)
+			{
+				events.add(evt);
+			}
+		});
+
+		PhaseTimer phase = new PhaseTimer(algo, "flood");
+		int[] array = new int[1000];
+		phase.finish(array.length);
+
+		assertEquals(1, events.size());
+		PhaseEvent evt = events.get(0);
+		assertEquals(algo, evt.getSource());
+		assertEquals("flood", evt.getPhase());
+		assertEquals(1000, evt.getCount());
+		assertTrue(evt.getElapsedTime() >= 0);
+	}
+
+	/**
+	 * Checks the header and the content of CSV output.
+	 */
+	@Test
+	public final void testAlgoPhaseFinished_CSV()
+	{
+		StringWriter output = new StringWriter();
+		PhaseMetricsWriter writer = new PhaseMetricsWriter(output,
+				PhaseMetricsWriter.Format.CSV);
+		AlgoStub algo = new AlgoStub();
+		writer.algoPhaseFinished(new PhaseEvent(algo, "flood", 2000000000L, 100, 64));
+		writer.algoPhaseFinished(new PhaseEvent(algo, "write output", 1000000L, 10, -1));
+
+		String[] lines = output.toString().split("\n");
+		assertEquals(3, lines.length);
+		assertEquals("algo,phase,time_ms,count,allocated_bytes,throughput", lines[0]);
+		assertEquals("AlgoStub,flood,2000.000,100,64,50.0", lines[1]);
+		assertEquals("AlgoStub,write output,1.000,10,-1,10000.0", lines[2]);
+	}
+
+	/**
+	 * Checks the content of JSON output.
+	 */
+	@Test
+	public final void testAlgoPhaseFinished_JSON()
+	{
+		StringWriter output = new StringWriter();
+		PhaseMetricsWriter writer = new PhaseMetricsWriter(output,
+				PhaseMetricsWriter.Format.JSON);
+		writer.algoPhaseFinished(new PhaseEvent(new AlgoStub(), "flood", 1000000000L, 100, 64));
+
+		assertEquals("{\"algo\": \"AlgoStub\", \"phase\": \"flood\", \"time_ms\": 1000.000, "
+				+ "\"count\": 100, \"allocated_bytes\": 64, \"throughput\": 100.0}\n",
+				output.toString());
+	}
+}
@@ -0,0 +1,86 @@
+package inra.ijpb.algo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class ProgressCounterTest
+{
+	/**
+	 * Checks that progression is published at most once per check period,
+	 * and that the end of the process is always published.
+	 */
+	@Test
+	public final void testIncrement_PublishesThrottledEvents()
+	{
+		AlgoStub algo = new AlgoStub();
+		final ArrayList<AlgoEvent> events = new ArrayList<AlgoEvent>();
+		algo.addAlgoListener(new AlgoListener()
+		{
+			@Override
+			public void algoProgressChanged(AlgoEvent evt)
+			{
+				events.add(evt);
+			}
+
+			@Override
+			public void algoStatusChanged(AlgoEvent evt)
+			{
+			}
+		});
+
+		// no minimal interval, check every 10 updates
+		ProgressCounter progress = new ProgressCounter(algo, 100, 0, 10);
+		for (int i = 0; i < 100; i++)
+		{
+			assertTrue(progress.increment());
+		}
+		assertEquals(10, events.size());
+		assertEquals(10, events.get(0).getCurrentProgress(), .01);
+
+		progress.finish();
+		assertEquals(11, events.size());
+		assertEquals(1.0, events.get(10).getProgressRatio(), .01);
+	}
+
+	/**
+	 * Checks that a cancelled counter stops the process at the next check.
+	 */
+	@Test
+	public final void testCancel()
+	{
+		ProgressCounter progress = new ProgressCounter(new AlgoStub(), 0, 0, 4);
+		assertTrue(progress.increment());
+		progress.cancel();
+		assertTrue(progress.increment());
+		assertTrue(progress.increment());
+		assertFalse(progress.increment());
+		assertFalse(progress.increment());
+		assertTrue(progress.isCancelled());
+	}
+
+	/**
+	 * Checks that an interrupted thread stops the process.
+	 */
+	@Test
+	public final void testInterruptedThread()
+	{
+		ProgressCounter progress = new ProgressCounter(new AlgoStub(), 0, 0, 1);
+		assertTrue(progress.increment());
+
+		Thread.currentThread().interrupt();
+		try
+		{
+			assertFalse(progress.increment());
+		}
+		finally
+		{
+			// clear interrupted flag
+			Thread.interrupted();
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package inra.ijpb.binary;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import ij.IJ;
@@ -10,6 +11,15 @@ import ij.process.ByteProcessor;
 import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import ij.process.ShortProcessor;
+import inra.ijpb.data.OffsetNeighborhood3D;
+import inra.ijpb.data.image.ChunkedImage3D;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.MappedImage3D;
+import inra.ijpb.data.image.IntStackWrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
 
 import org.junit.Test;
 
@@ -97,7 +107,181 @@ public class BinaryImagesTest {
 		assertEquals(8, (int) labels.getVoxel(7, 7, 7));
 		assertEquals(0, (int) labels.getVoxel(8, 8, 8));
 	}
+
+	/**
+	 * Test labeling algorithm on 3D stack, with labels stored as int values.
+	 */
+	@Test
+	public final void testComputeLabelsImageStack_Int()
+	{
+		// create a stack containing cubes with size 2x2x2, separated by
+		// background voxels
+		ImageStack image = ImageStack.create(9, 9, 9, 8);
+		for (int z = 0; z < 9; z++)
+		{
+			for (int y = 0; y < 9; y++)
+			{
+				for (int x = 0; x < 9; x++)
+				{
+					if (x % 3 != 2 && y % 3 != 2 && z % 3 != 2)
+						image.setVoxel(x, y, z, 255);
+				}
+			}
+		}
+		
+		for (int conn : new int[] { 6, 26 })
+		{
+			ImageStack expected = BinaryImages.componentsLabeling(image, conn, 16);
+			ImageStack labels = BinaryImages.componentsLabeling(image, conn, 24);
+			assertEquals(24, labels.getBitDepth());
+			
+			Image3D labels3d = new IntStackWrapper(labels);
+			for (int z = 0; z < 9; z++)
+			{
+				for (int y = 0; y < 9; y++)
+				{
+					for (int x = 0; x < 9; x++)
+					{
+						assertEquals(expected.getVoxel(x, y, z), labels3d.getValue(x, y, z), .01);
+					}
+				}
+			}
+		}
+	}
 	
+	/**
+	 * Labels a binary image stored in a mapped file, and stores the labels
+	 * within another mapped file.
+	 */
+	@Test
+	public final void testComputeLabelsImage3D_Mapped() throws IOException
+	{
+		File file = File.createTempFile("binary", ".raw");
+		file.deleteOnExit();
+		MappedImage3D image = MappedImage3D.createRaw(file, 9, 9, 9, 8, ByteOrder.BIG_ENDIAN);
+		for (int z = 0; z < 9; z++)
+			for (int y = 0; y < 9; y++)
+				for (int x = 0; x < 9; x++)
+					if (x % 3 != 2 && y % 3 != 2 && z % 3 != 2)
+						image.set(x, y, z, 255);
+
+		File labelFile = File.createTempFile("labels", ".raw");
+		labelFile.deleteOnExit();
+		MappedImage3D labels = MappedImage3D.createRaw(labelFile, 9, 9, 9, 16, ByteOrder.BIG_ENDIAN);
+		int nLabels = BinaryImages.componentsLabeling(image, labels, 6, 65535);
+
+		assertEquals(27, nLabels);
+		assertEquals(1, labels.get(0, 0, 0));
+		assertEquals(27, labels.get(7, 7, 7));
+		assertEquals(0, labels.get(8, 8, 8));
+		image.close();
+		labels.close();
+	}
+
+	/**
+	 * Labels a planar image by tiles, and compares with the labels computed
+	 * on the whole image. The image contains components crossing tile
+	 * boundaries, and components connected only by diagonal pixels.
+	 */
+	@Test
+	public final void testComponentsLabelingTiled() throws IOException
+	{
+		int sizeX = 37, sizeY = 29;
+		ImageProcessor image = new ByteProcessor(sizeX, sizeY);
+		for (int y = 0; y < sizeY; y++)
+		{
+			for (int x = 0; x < sizeX; x++)
+			{
+				if ((x * 7 + y * 13 + x * y) % 5 < 2 || y == 10 || x == 20)
+					image.set(x, y, 255);
+			}
+		}
+
+		ChunkedImage3D image3d = ChunkedImage3D.create(sizeX, sizeY, 1, 8);
+		for (int y = 0; y < sizeY; y++)
+			for (int x = 0; x < sizeX; x++)
+				image3d.set(x, y, 0, image.get(x, y));
+
+		for (int conn : new int[] { 4, 8 })
+		{
+			ImageProcessor expected = BinaryImages.componentsLabeling(image, conn, 16);
+			ChunkedImage3D labels = ChunkedImage3D.create(sizeX, sizeY, 1, 24);
+			int nLabels = BinaryImages.componentsLabelingTiled(image3d, labels, conn, 6);
+			assertEquals((int) expected.getMax(), nLabels);
+
+			// labels may be ordered differently, but define the same regions
+			int[] lut = new int[nLabels + 1];
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					int label = labels.get(x, y, 0);
+					int expLabel = expected.get(x, y);
+					assertEquals(expLabel == 0, label == 0);
+					if (label == 0)
+						continue;
+					if (lut[label] == 0)
+						lut[label] = expLabel;
+					assertEquals(lut[label], expLabel);
+				}
+			}
+			labels.close();
+		}
+		image3d.close();
+	}
+
+	/**
+	 * Checks that an interrupted tiled labeling returns -1.
+	 */
+	@Test
+	public final void testComponentsLabelingTiled_Interrupted() throws IOException
+	{
+		ChunkedImage3D image = ChunkedImage3D.create(20, 20, 1, 8);
+		ChunkedImage3D labels = ChunkedImage3D.create(20, 20, 1, 24);
+		Thread.currentThread().interrupt();
+		try
+		{
+			assertEquals(-1, BinaryImages.componentsLabelingTiled(image, labels, 4, 8));
+		}
+		finally
+		{
+			// clear the interrupted status
+			Thread.interrupted();
+		}
+		image.close();
+		labels.close();
+	}
+
+	/**
+	 * Propagates a label within an image with more than 2^31 voxels, stored
+	 * as chunks so that only the visited blocks are allocated.
+	 */
+	@Test
+	public final void testPropagateLabel_LargeImage() throws IOException
+	{
+		int sizeX = 2000, sizeY = 2000, sizeZ = 600;
+		ChunkedImage3D image = ChunkedImage3D.create(sizeX, sizeY, sizeZ, 8);
+		ChunkedImage3D labels = ChunkedImage3D.create(sizeX, sizeY, sizeZ, 32);
+		OffsetNeighborhood3D neigh = OffsetNeighborhood3D.create(sizeX, sizeY, sizeZ, 6);
+		assertFalse(neigh.isLinearIndexable());
+
+		// a small component at the end of the image, and an isolated voxel
+		for (int z = 597; z < 600; z++)
+			for (int y = 1997; y < 2000; y++)
+				for (int x = 1998; x < 2000; x++)
+					image.set(x, y, z, 255);
+		image.set(1990, 1990, 599, 255);
+
+		int[] stack = BinaryImages.propagateLabel(image, labels, neigh, 1999, 1999, 599, 3, new int[3]);
+		assertTrue(stack.length >= 3);
+		assertEquals(3, labels.get(1998, 1997, 597));
+		assertEquals(3, labels.get(1999, 1999, 599));
+		assertEquals(0, labels.get(1990, 1990, 599));
+		assertEquals(0, labels.get(1997, 1997, 597));
+		image.close();
+		labels.close();
+	}
+
 	@Test
 	public final void testDistanceMapImageProcessor() {
 		ImageProcessor image = createBinarySquareImage();
@@ -0,0 +1,189 @@
+package inra.ijpb.binary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.morphology.GeodesicReconstruction;
+import inra.ijpb.morphology.GeodesicReconstruction3D;
+import inra.ijpb.morphology.Morphology;
+import inra.ijpb.morphology.Strel;
+import inra.ijpb.morphology.strel.Cross3DStrel;
+import inra.ijpb.morphology.strel.Cross3x3Strel;
+import inra.ijpb.morphology.strel.CubeStrel;
+import inra.ijpb.morphology.strel.LinearHorizontalStrel;
+import inra.ijpb.morphology.strel.LinearVerticalStrel;
+import inra.ijpb.morphology.strel.SquareStrel;
+
+import org.junit.Test;
+
+public class PackedBinaryImageTest
+{
+	/**
+	 * Checks that conversion to and from ByteProcessor preserves the pixels,
+	 * for a width that is not a multiple of 64.
+	 */
+	@Test
+	public final void testFromProcessor_ToByteProcessor()
+	{
+		ImageProcessor image = createRandomImage(130, 20, 0.3, 1);
+		PackedBinaryImage packed = PackedBinaryImage.fromProcessor(image);
+
+		assertEquals(130, packed.getWidth());
+		assertEquals(20, packed.getHeight());
+		assertSameImages(image, packed.toByteProcessor());
+	}
+
+	/**
+	 * Checks logical operations and that complement keeps padding bits
+	 * cleared.
+	 */
+	@Test
+	public final void testLogicalOperations()
+	{
+		ImageProcessor image1 = createRandomImage(70, 10, 0.5, 2);
+		ImageProcessor image2 = createRandomImage(70, 10, 0.5, 3);
+		PackedBinaryImage packed1 = PackedBinaryImage.fromProcessor(image1);
+		PackedBinaryImage packed2 = PackedBinaryImage.fromProcessor(image2);
+
+		PackedBinaryImage and = packed1.and(packed2);
+		PackedBinaryImage or = packed1.or(packed2);
+		PackedBinaryImage xor = packed1.xor(packed2);
+		for (int y = 0; y < 10; y++)
+		{
+			for (int x = 0; x < 70; x++)
+			{
+				boolean b1 = image1.get(x, y) > 0;
+				boolean b2 = image2.get(x, y) > 0;
+				assertEquals(b1 && b2, and.get(x, y));
+				assertEquals(b1 || b2, or.get(x, y));
+				assertEquals(b1 ^ b2, xor.get(x, y));
+			}
+		}
+
+		assertEquals(70 * 10, packed1.countForeground() + packed1.not().countForeground());
+	}
+
+	/**
+	 * Compares dilation and erosion with the results obtained on byte
+	 * processors, for several structuring elements.
+	 */
+	@Test
+	public final void testDilationErosion_CompareWithMorphology()
+	{
+		ImageProcessor image = createRandomImage(140, 30, 0.1, 4);
+		PackedBinaryImage packed = PackedBinaryImage.fromProcessor(image);
+
+		Strel[] strels = new Strel[] {
+				SquareStrel.fromDiameter(5),
+				new SquareStrel(4, 1),
+				new LinearHorizontalStrel(70, 20),
+				new LinearVerticalStrel(6, 2),
+				new Cross3x3Strel() };
+		for (Strel strel : strels)
+		{
+			assertSameImages(Morphology.dilation(image, strel),
+					packed.dilation(strel).toByteProcessor());
+			assertSameImages(Morphology.erosion(image, strel),
+					packed.erosion(strel).toByteProcessor());
+		}
+	}
+
+	/**
+	 * Compares binary reconstruction with the generic algorithm, for both
+	 * connectivities.
+	 */
+	@Test
+	public final void testReconstructionByDilation()
+	{
+		ImageProcessor mask = createRandomImage(150, 40, 0.55, 5);
+		ImageProcessor marker = createRandomImage(150, 40, 0.01, 6);
+		PackedBinaryImage packedMask = PackedBinaryImage.fromProcessor(mask);
+		PackedBinaryImage packedMarker = PackedBinaryImage.fromProcessor(marker);
+
+		for (int conn : new int[] { 4, 8 })
+		{
+			ImageProcessor markerInMask = packedMarker.and(packedMask).toByteProcessor();
+			ImageProcessor expected = GeodesicReconstruction.reconstructByDilation(
+					markerInMask, mask, conn);
+			PackedBinaryImage result = PackedBinaryImage.reconstructionByDilation(
+					packedMarker, packedMask, conn);
+			assertSameImages(expected, result.toByteProcessor());
+		}
+	}
+
+	/**
+	 * Compares 3D dilation and reconstruction with the generic algorithms.
+	 */
+	@Test
+	public final void testStack_DilationAndReconstruction()
+	{
+		ImageStack image = new ImageStack(70, 12);
+		ImageStack marker = new ImageStack(70, 12);
+		for (int z = 0; z < 9; z++)
+		{
+			image.addSlice(createRandomImage(70, 12, 0.45, 10 + z));
+			marker.addSlice(createRandomImage(70, 12, 0.01, 30 + z));
+		}
+		PackedBinaryStack packed = PackedBinaryStack.fromStack(image);
+
+		CubeStrel cube = new CubeStrel(4, 1);
+		assertSameStacks(Morphology.dilation(image, cube), packed.dilation(cube).toStack());
+		assertSameStacks(Morphology.erosion(image, cube), packed.erosion(cube).toStack());
+
+		Cross3DStrel cross = new Cross3DStrel();
+		assertSameStacks(Morphology.dilation(image, cross), packed.dilation(cross).toStack());
+
+		PackedBinaryStack packedMarker = PackedBinaryStack.fromStack(marker);
+		for (int conn : new int[] { 6, 26 })
+		{
+			ImageStack markerInMask = packedMarker.and(packed).toStack();
+			ImageStack expected = GeodesicReconstruction3D.reconstructByDilation(
+					markerInMask, image, conn);
+			PackedBinaryStack result = PackedBinaryStack.reconstructionByDilation(
+					packedMarker, packed, conn);
+			assertSameStacks(expected, result.toStack());
+		}
+	}
+
+	private static final ImageProcessor createRandomImage(int sizeX, int sizeY,
+			double density, long seed)
+	{
+		Random random = new Random(seed);
+		ImageProcessor image = new ByteProcessor(sizeX, sizeY);
+		for (int y = 0; y < sizeY; y++)
+		{
+			for (int x = 0; x < sizeX; x++)
+			{
+				if (random.nextDouble() < density)
+					image.set(x, y, 255);
+			}
+		}
+		return image;
+	}
+
+	private static final void assertSameImages(ImageProcessor expected, ImageProcessor actual)
+	{
+		for (int y = 0; y < expected.getHeight(); y++)
+		{
+			for (int x = 0; x < expected.getWidth(); x++)
+			{
+				assertTrue("Pixel (" + x + "," + y + ")",
+						(expected.get(x, y) > 0) == (actual.get(x, y) > 0));
+			}
+		}
+	}
+
+	private static final void assertSameStacks(ImageStack expected, ImageStack actual)
+	{
+		assertEquals(expected.getSize(), actual.getSize());
+		for (int z = 0; z < expected.getSize(); z++)
+		{
+			assertSameImages(expected.getProcessor(z + 1), actual.getProcessor(z + 1));
+		}
+	}
+}
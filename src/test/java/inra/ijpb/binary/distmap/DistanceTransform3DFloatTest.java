@@ -3,6 +3,11 @@ package inra.ijpb.binary.distmap;
 import static org.junit.Assert.*;
 import ij.ImageStack;
 import inra.ijpb.binary.ChamferWeights3D;
+import inra.ijpb.data.image.ChunkedImage3D;
+import inra.ijpb.data.image.Images3D;
+
+import java.io.File;
+import java.io.IOException;
 
 import org.junit.Test;
 
@@ -40,4 +45,45 @@ public class DistanceTransform3DFloatTest
 		assertEquals(9, middle, .1);
 	}
 
+	/**
+	 * Computes the distance map of a chunked image, using blocks smaller than
+	 * the image and a cache smaller than the number of blocks, and compares
+	 * with the distance map of the stack.
+	 */
+	@Test
+	public void testDistanceMap_ChunkedImage() throws IOException
+	{
+		ImageStack image = ImageStack.create(20, 20, 20, 8);
+		for (int z = 2; z < 19; z++)
+		{
+			for (int y = 2; y < 15; y++)
+			{
+				for (int x = 4; x < 19; x++)
+				{
+					image.setVoxel(x, y, z, 255);
+				}
+			}
+		}
+
+		float[] weights = ChamferWeights3D.BORGEFORS.getFloatWeights();
+		DistanceTransform3DFloat algo = new DistanceTransform3DFloat(weights, true);
+		ImageStack expected = algo.distanceMap(image);
+
+		File file = File.createTempFile("distmap", ".raw");
+		file.deleteOnExit();
+		ChunkedImage3D result = new ChunkedImage3D(20, 20, 20, 32, 6, 8, file);
+		algo.distanceMap(Images3D.createWrapper(image), result);
+
+		for (int z = 0; z < 20; z++)
+		{
+			for (int y = 0; y < 20; y++)
+			{
+				for (int x = 0; x < 20; x++)
+				{
+					assertEquals(expected.getVoxel(x, y, z), result.getValue(x, y, z), 1e-5);
+				}
+			}
+		}
+		result.close();
+	}
 }
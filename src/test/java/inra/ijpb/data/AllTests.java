@@ -0,0 +1,15 @@
+package inra.ijpb.data;
+
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+	// generic classes
+	OffsetNeighborhood3DTest.class,
+	inra.ijpb.data.border.BorderPaddingTest.class
+	})
+public class AllTests {
+  //nothing
+}
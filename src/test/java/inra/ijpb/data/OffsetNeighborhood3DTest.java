@@ -0,0 +1,123 @@
+package inra.ijpb.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class OffsetNeighborhood3DTest
+{
+	/**
+	 * Checks that the offsets visit the same neighbors in the same order as
+	 * the cursor-based neighborhoods, for interior and border voxels.
+	 */
+	@Test
+	public final void testGetNeighbors_SameAsCursorNeighborhoods()
+	{
+		int sizeX = 5;
+		int sizeY = 4;
+		int sizeZ = 3;
+		Neighborhood3D[] cursorNeighs = new Neighborhood3D[] {
+				new Neighborhood3DC6(), new Neighborhood3DC26() };
+		int[] conns = new int[] { 6, 26 };
+
+		for (int c = 0; c < 2; c++)
+		{
+			OffsetNeighborhood3D neigh = OffsetNeighborhood3D.create(sizeX, sizeY, sizeZ, conns[c]);
+			assertEquals(conns[c], neigh.size());
+			int[] indices = new int[neigh.size()];
+
+			for (int z = 0; z < sizeZ; z++)
+			{
+				for (int y = 0; y < sizeY; y++)
+				{
+					for (int x = 0; x < sizeX; x++)
+					{
+						// expected indices, computed from cursors
+						ArrayList<Integer> expected = new ArrayList<Integer>();
+						cursorNeighs[c].setCursor(new Cursor3D(x, y, z));
+						for (Cursor3D cursor : cursorNeighs[c].getNeighbors())
+						{
+							int x2 = cursor.getX();
+							int y2 = cursor.getY();
+							int z2 = cursor.getZ();
+							if (x2 >= 0 && x2 < sizeX && y2 >= 0 && y2 < sizeY && z2 >= 0 && z2 < sizeZ)
+								expected.add((z2 * sizeY + y2) * sizeX + x2);
+						}
+
+						int count = neigh.getNeighbors(x, y, z, indices);
+						assertEquals(expected.size(), count);
+						for (int i = 0; i < count; i++)
+							assertEquals((int) expected.get(i), indices[i]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks the detection of border voxels, and the computation of neighbor
+	 * cursors.
+	 */
+	@Test
+	public final void testIsInterior_Contains()
+	{
+		OffsetNeighborhood3D neigh = OffsetNeighborhood3D.create(5, 4, 3, 6);
+		assertTrue(neigh.isInterior(1, 1, 1));
+		assertTrue(neigh.isInterior(3, 2, 1));
+		assertFalse(neigh.isInterior(0, 1, 1));
+		assertFalse(neigh.isInterior(1, 3, 1));
+		assertFalse(neigh.isInterior(1, 1, 2));
+
+		// first neighbor in 6-connectivity is in previous slice
+		assertFalse(neigh.contains(2, 2, 0, 0));
+		assertTrue(neigh.contains(2, 2, 1, 0));
+		assertEquals(-20, neigh.getOffsets()[0]);
+
+		Cursor3D cursor = neigh.getNeighbor(new Cursor3D(2, 2, 1), 0);
+		assertEquals(2, cursor.getX());
+		assertEquals(2, cursor.getY());
+		assertEquals(0, cursor.getZ());
+	}
+
+	/**
+	 * Checks that images with more than 2^31 voxels can be processed with
+	 * planar offsets, but not with linear offsets.
+	 */
+	@Test
+	public final void testGetPlanarOffsets_LargeImage()
+	{
+		OffsetNeighborhood3D neigh = OffsetNeighborhood3D.create(2000, 2000, 600, 26);
+		assertFalse(neigh.isLinearIndexable());
+
+		int[] offsets = neigh.getPlanarOffsets();
+		assertEquals(26, offsets.length);
+		for (int n = 0; n < offsets.length; n++)
+		{
+			assertEquals(neigh.getShiftY(n) * 2000 + neigh.getShiftX(n), offsets[n]);
+		}
+		assertEquals(3 * 2000 + 4, neigh.planarIndex(4, 3));
+	}
+
+	/**
+	 * Checks that linear offsets are rejected for images with more than 2^31
+	 * voxels.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public final void testGetOffsets_LargeImage()
+	{
+		OffsetNeighborhood3D.create(2000, 2000, 600, 6).getOffsets();
+	}
+
+	/**
+	 * Checks that invalid connectivity values are rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public final void testCreate_InvalidConnectivity()
+	{
+		OffsetNeighborhood3D.create(5, 4, 3, 8);
+	}
+}
@@ -0,0 +1,170 @@
+package inra.ijpb.data.border;
+
+import static org.junit.Assert.assertEquals;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.IntStackWrapper;
+import inra.ijpb.morphology.Morphology;
+import inra.ijpb.morphology.Strel;
+import inra.ijpb.morphology.strel.SquareStrel;
+
+import org.junit.Test;
+
+public class BorderPaddingTest
+{
+	/**
+	 * Checks that padded planar images contain the same values as the border
+	 * managers, for each border type.
+	 */
+	@Test
+	public final void testPad_2D_AllTypes()
+	{
+		ImageProcessor image = new ByteProcessor(7, 5);
+		for (int i = 0; i < 35; i++)
+			image.set(i, (i * 37) % 256);
+
+		for (BorderManager.Type type : BorderManager.Type.values())
+		{
+			BorderManager border = type.createBorderManager(image);
+			ImageProcessor result = BorderPadding.pad(image, 3, 9, 2, 6, border);
+			assertEquals(19, result.getWidth());
+			assertEquals(13, result.getHeight());
+
+			// compare with values set pixel by pixel
+			ImageProcessor exp = image.createProcessor(19, 13);
+			for (int y = 0; y < 13; y++)
+			{
+				for (int x = 0; x < 19; x++)
+				{
+					exp.set(x, y, border.get(x - 3, y - 2));
+					assertEquals(exp.get(x, y), result.get(x, y));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks that negative border sizes remove pixels.
+	 */
+	@Test
+	public final void testPad_2D_NegativeBorders()
+	{
+		ImageProcessor image = new FloatProcessor(7, 5);
+		for (int i = 0; i < 35; i++)
+			image.setf(i, i + .5f);
+
+		ImageProcessor result = BorderPadding.pad(image, -2, 1, -1, 0, new ReplicatedBorder(image));
+		assertEquals(6, result.getWidth());
+		assertEquals(4, result.getHeight());
+		assertEquals(image.getf(2, 1), result.getf(0, 0), .01);
+		assertEquals(image.getf(6, 4), result.getf(5, 3), .01);
+		assertEquals(image.getf(6, 4), result.getf(4, 3), .01);
+	}
+
+	/**
+	 * Checks that cropping a padded image gives back the original image.
+	 */
+	@Test
+	public final void testCrop_2D()
+	{
+		ImageProcessor image = new ByteProcessor(7, 5);
+		for (int i = 0; i < 35; i++)
+			image.set(i, i * 3);
+
+		ImageProcessor padded = BorderPadding.pad(image, 4, BorderManager.Type.MIRRORED);
+		ImageProcessor result = BorderPadding.crop(padded, 4, 4, 7, 5);
+		for (int i = 0; i < 35; i++)
+			assertEquals(image.get(i), result.get(i));
+	}
+
+	/**
+	 * Checks that padded 3D images contain the same values as the border
+	 * managers, for each border type.
+	 */
+	@Test
+	public final void testPad_3D_AllTypes()
+	{
+		ImageStack image = ImageStack.create(6, 5, 4, 16);
+		for (int z = 0; z < 4; z++)
+			for (int y = 0; y < 5; y++)
+				for (int x = 0; x < 6; x++)
+					image.setVoxel(x, y, z, x + 10 * y + 100 * z);
+
+		for (BorderManager3D.Type type : BorderManager3D.Type.values())
+		{
+			BorderManager3D border = type.createBorderManager(image);
+			ImageStack result = BorderPadding.pad(image, 2, 3, 1, 2, 3, 1, border);
+			assertEquals(11, result.getWidth());
+			assertEquals(8, result.getHeight());
+			assertEquals(8, result.getSize());
+
+			// compare with values set voxel by voxel
+			ImageStack exp = ImageStack.create(11, 8, 8, 16);
+			for (int z = 0; z < 8; z++)
+			{
+				for (int y = 0; y < 8; y++)
+				{
+					for (int x = 0; x < 11; x++)
+					{
+						exp.setVoxel(x, y, z, border.get(x - 2, y - 1, z - 3));
+						assertEquals(exp.getVoxel(x, y, z), result.getVoxel(x, y, z), .01);
+					}
+				}
+			}
+
+			ImageStack cropped = BorderPadding.crop(result, 2, 1, 3, 6, 5, 4);
+			for (int z = 0; z < 4; z++)
+				for (int y = 0; y < 5; y++)
+					for (int x = 0; x < 6; x++)
+						assertEquals(image.getVoxel(x, y, z), cropped.getVoxel(x, y, z), .01);
+		}
+	}
+
+	/**
+	 * Dilation of a positive image ignoring outside pixels is the same as
+	 * dilation with black borders.
+	 */
+	@Test
+	public final void testMorphologyApply_BlackBorder()
+	{
+		ImageProcessor image = new ByteProcessor(12, 10);
+		for (int i = 0; i < 120; i++)
+			image.set(i, (i * 53) % 200);
+		Strel strel = SquareStrel.fromDiameter(5);
+
+		ImageProcessor exp = Morphology.dilation(image, strel);
+		ImageProcessor res = Morphology.Operation.DILATION.apply(image, strel,
+				BorderManager.Type.BLACK);
+		assertEquals(12, res.getWidth());
+		assertEquals(10, res.getHeight());
+		for (int i = 0; i < 120; i++)
+			assertEquals(exp.get(i), res.get(i));
+	}
+
+	/**
+	 * Pads and crops a stack of int labels greater than 2^24, and checks that
+	 * labels are preserved.
+	 */
+	@Test
+	public final void testPadCrop_3D_IntLabels()
+	{
+		ImageStack image = IntStackWrapper.createStack(4, 3, 2);
+		Image3D labels = new IntStackWrapper(image);
+		labels.set(0, 0, 0, (1 << 24) + 1);
+		labels.set(3, 2, 1, 0x12345678);
+
+		ImageStack result = BorderPadding.pad(image, 1, BorderManager3D.Type.REPLICATED);
+		Image3D result3d = new IntStackWrapper(result);
+		assertEquals((1 << 24) + 1, result3d.get(0, 0, 0));
+		assertEquals(0x12345678, result3d.get(5, 4, 3));
+		assertEquals(0, result3d.get(2, 2, 2));
+
+		ImageStack cropped = BorderPadding.crop(result, 1, 1, 1, 4, 3, 2);
+		Image3D cropped3d = new IntStackWrapper(cropped);
+		assertEquals(0x12345678, cropped3d.get(3, 2, 1));
+		assertEquals(0, cropped3d.get(1, 1, 1));
+	}
+}
@@ -0,0 +1,20 @@
+package inra.ijpb.data.image;
+
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+	// generic classes
+	Image3DTest.class,
+	MappedImage3DTest.class,
+	ChunkedImage3DTest.class,
+	DirectImage3DTest.class,
+	IntStackWrapperTest.class,
+	SliceWindowProcessorTest.class,
+	TiledProcessorTest.class
+	})
+public class AllTests {
+  //nothing
+}
@@ -0,0 +1,190 @@
+package inra.ijpb.data.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import ij.ImageStack;
+import inra.ijpb.label.LabelImages;
+import inra.ijpb.segment.Threshold;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class ChunkedImage3DTest
+{
+	/**
+	 * Writes all voxels with a cache smaller than the number of blocks, and
+	 * checks that values are preserved after blocks were written to disk.
+	 */
+	@Test
+	public final void testSetGetValues_SmallCache() throws IOException
+	{
+		File file = File.createTempFile("chunks", ".raw");
+		file.deleteOnExit();
+		ChunkedImage3D image = new ChunkedImage3D(10, 9, 7, 16, 4, 3, file);
+		for (int z = 0; z < 7; z++)
+		{
+			for (int y = 0; y < 9; y++)
+			{
+				for (int x = 0; x < 10; x++)
+				{
+					image.set(x, y, z, 1000 * z + 10 * y + x);
+				}
+			}
+		}
+		assertEquals(3, image.getCachedBlockCount());
+		assertTrue(file.length() > 0);
+
+		for (int z = 0; z < 7; z++)
+		{
+			for (int y = 0; y < 9; y++)
+			{
+				for (int x = 0; x < 10; x++)
+				{
+					assertEquals(1000 * z + 10 * y + x, image.get(x, y, z));
+				}
+			}
+		}
+
+		double[] lineZ = new double[7];
+		image.getLineZ(9, 8, lineZ);
+		assertEquals(6089, lineZ[6], .01);
+		image.close();
+	}
+
+	/**
+	 * Checks that blocks that were never modified contain zeros.
+	 */
+	@Test
+	public final void testGetValue_EmptyBlocks() throws IOException
+	{
+		ChunkedImage3D image = ChunkedImage3D.create(100, 100, 100, 8);
+		assertEquals(0, image.get(99, 99, 99));
+		image.setValue(50, 50, 50, 300);
+		assertEquals(255, image.get(50, 50, 50));
+		assertEquals(2, image.getCachedBlockCount());
+		image.close();
+	}
+
+	/**
+	 * Checks that 16-bit values are clamped and rounded to the nearest
+	 * integer, as for stacks.
+	 */
+	@Test
+	public final void testSetValue_Gray16Rounding() throws IOException
+	{
+		ChunkedImage3D image = ChunkedImage3D.create(10, 10, 10, 16);
+		image.setValue(1, 2, 3, 1000.7);
+		assertEquals(1001, image.get(1, 2, 3));
+		image.setValue(1, 2, 3, 70000);
+		assertEquals(65535, image.get(1, 2, 3));
+		image.setValue(1, 2, 3, -5);
+		assertEquals(0, image.get(1, 2, 3));
+		image.close();
+	}
+
+	/**
+	 * Checks that int values are stored exactly, including values that can
+	 * not be represented as float values.
+	 */
+	@Test
+	public final void testSetGet_IntValues() throws IOException
+	{
+		ChunkedImage3D image = ChunkedImage3D.create(10, 10, 10, 24);
+		int label = (1 << 24) + 1;
+		image.set(1, 2, 3, label);
+		assertEquals(label, image.get(1, 2, 3));
+		image.set(9, 9, 9, -1);
+		assertEquals(-1, image.get(9, 9, 9));
+		image.setValue(4, 5, 6, 1200);
+		assertEquals(1200, image.getValue(4, 5, 6), .01);
+		image.close();
+	}
+
+	/**
+	 * Checks that the blocks of a planar image contain a single slice, such
+	 * that large planar images can be stored.
+	 */
+	@Test
+	public final void testPlanarImage_ThinBlocks() throws IOException
+	{
+		File file = File.createTempFile("chunks", ".raw");
+		file.deleteOnExit();
+		ChunkedImage3D image = new ChunkedImage3D(100000, 100000, 1, 8, 64, 4, file);
+		image.set(99999, 99999, 0, 200);
+		image.set(0, 0, 0, 100);
+		image.set(50000, 0, 0, 50);
+		image.set(0, 50000, 0, 25);
+		image.set(50000, 50000, 0, 12);
+		assertEquals(200, image.get(99999, 99999, 0));
+		assertEquals(100, image.get(0, 0, 0));
+		assertEquals(0, image.get(1, 1, 0));
+
+		// the first block was written back to the file, that is not larger
+		// than the planar blocks covering the image
+		assertEquals(4, image.getCachedBlockCount());
+		assertTrue(file.length() <= 64L * 64 * (1563L * 1563));
+		assertEquals(100, image.get(0, 0, 0));
+		image.close();
+	}
+
+	/**
+	 * Compares the threshold and the look-up table of a chunked image with
+	 * the results obtained on stacks.
+	 */
+	@Test
+	public final void testThresholdAndApplyLut() throws IOException
+	{
+		ImageStack stack = ImageStack.create(11, 8, 6, 8);
+		for (int z = 0; z < 6; z++)
+		{
+			for (int y = 0; y < 8; y++)
+			{
+				for (int x = 0; x < 11; x++)
+				{
+					stack.setVoxel(x, y, z, (x / 3) + 4 * (z / 2));
+				}
+			}
+		}
+
+		File file = File.createTempFile("chunks", ".raw");
+		file.deleteOnExit();
+		ChunkedImage3D image = new ChunkedImage3D(11, 8, 6, 8, 4, 2, file);
+		for (int z = 0; z < 6; z++)
+		{
+			for (int y = 0; y < 8; y++)
+			{
+				for (int x = 0; x < 11; x++)
+				{
+					image.setValue(x, y, z, stack.getVoxel(x, y, z));
+				}
+			}
+		}
+
+		ImageStack expected = Threshold.threshold(stack, 3, 6);
+		Image3D binary = ChunkedImage3D.create(11, 8, 6, 8);
+		Threshold.threshold(image, 3, 6, binary);
+
+		int[] labels = LabelImages.findAllLabels(stack);
+		double[] values = new double[labels.length];
+		for (int i = 0; i < labels.length; i++)
+			values[i] = labels[i] * 1.5;
+		ImageStack expectedLut = LabelImages.applyLut(stack, values);
+		Image3D lut = ChunkedImage3D.create(11, 8, 6, 32);
+		LabelImages.applyLut(image, values, lut);
+
+		for (int z = 0; z < 6; z++)
+		{
+			for (int y = 0; y < 8; y++)
+			{
+				for (int x = 0; x < 11; x++)
+				{
+					assertEquals(expected.getVoxel(x, y, z), binary.getValue(x, y, z), .01);
+					assertEquals(expectedLut.getVoxel(x, y, z), lut.getValue(x, y, z), .01);
+				}
+			}
+		}
+		image.close();
+	}
+}
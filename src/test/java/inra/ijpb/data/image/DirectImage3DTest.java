@@ -0,0 +1,127 @@
+package inra.ijpb.data.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import ij.ImageStack;
+import inra.ijpb.binary.BinaryImages;
+
+import org.junit.Test;
+
+public class DirectImage3DTest
+{
+	/**
+	 * Converts stacks of each type to direct images and back.
+	 */
+	@Test
+	public final void testFromStackToStack_AllTypes()
+	{
+		for (int bitDepth : new int[] { 8, 16, 32 })
+		{
+			ImageStack stack = ImageStack.create(6, 5, 4, bitDepth);
+			for (int z = 0; z < 4; z++)
+			{
+				for (int y = 0; y < 5; y++)
+				{
+					for (int x = 0; x < 6; x++)
+					{
+						stack.setVoxel(x, y, z, 40 * z + 6 * y + x);
+					}
+				}
+			}
+
+			DirectImage3D image = DirectImage3D.fromStack(stack);
+			assertEquals(bitDepth, image.getBitDepth());
+			assertEquals(stack.getVoxel(5, 4, 3), image.getValue(5, 4, 3), .01);
+			assertEquals(stack.getVoxel(2, 3, 1), image.getValue((1 * 5 + 3) * 6 + 2), .01);
+
+			image.setValue(1, 2, 3, 200);
+			ImageStack result = image.toStack();
+			assertEquals(bitDepth, result.getBitDepth());
+			assertEquals(200, result.getVoxel(1, 2, 3), .01);
+			assertEquals(stack.getVoxel(4, 1, 2), result.getVoxel(4, 1, 2), .01);
+
+			image.release();
+			assertTrue(image.isReleased());
+		}
+	}
+
+	/**
+	 * Computes a distance map within a direct image, and compares with the
+	 * distance map computed with stacks.
+	 */
+	@Test
+	public final void testDistanceMap()
+	{
+		ImageStack stack = ImageStack.create(12, 10, 8, 8);
+		for (int z = 1; z < 7; z++)
+		{
+			for (int y = 2; y < 9; y++)
+			{
+				for (int x = 1; x < 11; x++)
+				{
+					stack.setVoxel(x, y, z, 255);
+				}
+			}
+		}
+		float[] weights = new float[] { 3, 4, 5 };
+		ImageStack expected = BinaryImages.distanceMap(stack, weights, true);
+
+		DirectImage3D result = new DirectImage3D(12, 10, 8, 32);
+		BinaryImages.distanceMap(DirectImage3D.fromStack(stack), result, weights, true);
+		for (int z = 0; z < 8; z++)
+		{
+			for (int y = 0; y < 10; y++)
+			{
+				for (int x = 0; x < 12; x++)
+				{
+					assertEquals(expected.getVoxel(x, y, z), result.getValue(x, y, z), 1e-5);
+				}
+			}
+		}
+		result.release();
+	}
+
+	/**
+	 * Converts a stack of int labels greater than 2^24 to a direct image and
+	 * back, and checks that the background of created images is zero.
+	 */
+	@Test
+	public final void testFromStackToStack_IntLabels()
+	{
+		ImageStack stack = IntStackWrapper.createStack(6, 5, 4);
+		Image3D labels = new IntStackWrapper(stack);
+		labels.set(1, 2, 3, (1 << 24) + 1);
+		labels.set(5, 4, 0, Integer.MAX_VALUE);
+
+		DirectImage3D image = DirectImage3D.fromStack(stack);
+		assertEquals(24, image.getBitDepth());
+		assertEquals((1 << 24) + 1, image.get(1, 2, 3));
+		image.set(0, 0, 0, 0x12345678);
+
+		Image3D result = new IntStackWrapper(image.toStack());
+		assertEquals(0x12345678, result.get(0, 0, 0));
+		assertEquals(Integer.MAX_VALUE, result.get(5, 4, 0));
+		assertEquals(0, result.get(1, 1, 1));
+		image.release();
+
+		Image3D created = Images3D.STACK_FACTORY.create(3, 2, 2, 24);
+		assertEquals(0, created.get(2, 1, 1));
+	}
+
+	/**
+	 * Checks that 16-bit values are clamped and rounded to the nearest
+	 * integer, as for stacks.
+	 */
+	@Test
+	public final void testSetValue_Gray16Rounding()
+	{
+		DirectImage3D image = new DirectImage3D(4, 3, 2, 16);
+		image.setValue(1, 2, 1, 1000.7);
+		assertEquals(1001, image.get(1, 2, 1));
+		image.setValue(1, 2, 1, 70000);
+		assertEquals(65535, image.get(1, 2, 1));
+		image.setValue(1, 2, 1, -5);
+		assertEquals(0, image.get(1, 2, 1));
+		image.release();
+	}
+}
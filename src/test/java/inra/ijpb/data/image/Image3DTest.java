@@ -0,0 +1,131 @@
+package inra.ijpb.data.image;
+
+import static org.junit.Assert.assertEquals;
+import ij.ImageStack;
+
+import org.junit.Test;
+
+public class Image3DTest
+{
+	/**
+	 * Checks that lines along each direction contain the same values as
+	 * individual voxels, for each type of wrapper.
+	 */
+	@Test
+	public final void testGetLines_AllTypes()
+	{
+		for (int bitDepth : new int[] { 8, 16, 32 })
+		{
+			ImageStack stack = createStack(5, 4, 3, bitDepth);
+			Image3D image = Images3D.createWrapper(stack);
+
+			double[] lineX = new double[5];
+			double[] lineY = new double[4];
+			double[] lineZ = new double[3];
+			image.getLineX(2, 1, lineX);
+			image.getLineY(3, 2, lineY);
+			image.getLineZ(4, 1, lineZ);
+			for (int x = 0; x < 5; x++)
+				assertEquals(stack.getVoxel(x, 2, 1), lineX[x], .01);
+			for (int y = 0; y < 4; y++)
+				assertEquals(stack.getVoxel(3, y, 2), lineY[y], .01);
+			for (int z = 0; z < 3; z++)
+				assertEquals(stack.getVoxel(4, 1, z), lineZ[z], .01);
+
+			// linear indices
+			assertEquals(stack.getVoxel(3, 2, 1), image.getValue((1 * 4 + 2) * 5 + 3), .01);
+		}
+	}
+
+	/**
+	 * Checks that writing lines and slices modifies the inner stack.
+	 */
+	@Test
+	public final void testSetLines_AllTypes()
+	{
+		for (int bitDepth : new int[] { 8, 16, 32 })
+		{
+			ImageStack stack = ImageStack.create(5, 4, 3, bitDepth);
+			Image3D image = Images3D.createWrapper(stack);
+
+			image.setLineX(1, 0, new double[] { 1, 2, 3, 4, 5 });
+			image.setLineY(2, 1, new double[] { 6, 7, 8, 9 });
+			image.setLineZ(4, 3, new double[] { 10, 11, 12 });
+			assertEquals(3, stack.getVoxel(2, 1, 0), .01);
+			assertEquals(8, stack.getVoxel(2, 2, 1), .01);
+			assertEquals(12, stack.getVoxel(4, 3, 2), .01);
+
+			double[] slice = new double[20];
+			slice[7] = 20;
+			image.setSliceValues(2, slice);
+			assertEquals(20, stack.getVoxel(2, 1, 2), .01);
+			assertEquals(0, stack.getVoxel(4, 3, 2), .01);
+
+			image.setValue((1 * 4 + 3) * 5 + 1, 30);
+			assertEquals(30, stack.getVoxel(1, 3, 1), .01);
+		}
+	}
+
+	/**
+	 * Checks that values written by lines are clamped like individual values.
+	 */
+	@Test
+	public final void testSetLineX_Gray8Clamping()
+	{
+		ImageStack stack = ImageStack.create(3, 1, 1, 8);
+		Image3D image = new ByteStackWrapper(stack);
+		image.setLineX(0, 0, new double[] { -10, 127.6, 300 });
+		assertEquals(0, image.get(0, 0, 0));
+		assertEquals(128, image.get(1, 0, 0));
+		assertEquals(255, image.get(2, 0, 0));
+	}
+
+	/**
+	 * Checks that all the setters of integer wrappers store the same value for
+	 * out of range and non integer values.
+	 */
+	@Test
+	public final void testSetters_SameClampingAndRounding()
+	{
+		for (int bitDepth : new int[] { 8, 16 })
+		{
+			double maxValue = bitDepth == 8 ? 255 : 65535;
+			double[] values = new double[] { -10, 12.6, maxValue + 100 };
+			double[] expected = new double[] { 0, 13, maxValue };
+
+			for (int i = 0; i < values.length; i++)
+			{
+				ImageStack stack = ImageStack.create(2, 2, 2, bitDepth);
+				Image3D image = Images3D.createWrapper(stack);
+
+				image.setValue(0, 0, 0, values[i]);
+				image.setValue(1, values[i]);
+				image.setLineX(1, 0, new double[] { values[i], values[i] });
+				image.setLineY(0, 1, new double[] { values[i], values[i] });
+				image.setLineZ(1, 1, new double[] { values[i], values[i] });
+
+				assertEquals(expected[i], image.getValue(0, 0, 0), .01);
+				assertEquals(expected[i], image.getValue(1, 0, 0), .01);
+				assertEquals(expected[i], image.getValue(0, 1, 0), .01);
+				assertEquals(expected[i], image.getValue(0, 0, 1), .01);
+				assertEquals(expected[i], image.getValue(1, 1, 1), .01);
+			}
+		}
+	}
+
+	private static final ImageStack createStack(int sizeX, int sizeY, int sizeZ, int bitDepth)
+	{
+		ImageStack stack = ImageStack.create(sizeX, sizeY, sizeZ, bitDepth);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					stack.setVoxel(x, y, z, (z * 7 + y * 3 + x) % 50 + 1);
+				}
+			}
+		}
+		return stack;
+	}
+}
@@ -0,0 +1,120 @@
+package inra.ijpb.data.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.io.FileSaver;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class IntStackWrapperTest
+{
+	/**
+	 * Checks that created stacks contain only zeros, whereas stacks created by
+	 * ImageJ contain opaque black.
+	 */
+	@Test
+	public final void testCreateStack_ZeroBackground()
+	{
+		ImageStack stack = IntStackWrapper.createStack(5, 4, 3);
+		assertEquals(24, stack.getBitDepth());
+		assertEquals(3, stack.getSize());
+		Image3D image = new IntStackWrapper(stack);
+		for (int z = 0; z < 3; z++)
+			for (int y = 0; y < 4; y++)
+				for (int x = 0; x < 5; x++)
+					assertEquals(0, image.get(x, y, z));
+	}
+
+	/**
+	 * Checks that labels greater than 2^24 are read and written without loss,
+	 * including the upper byte.
+	 */
+	@Test
+	public final void testGetSet_LargeLabels()
+	{
+		ImageStack stack = IntStackWrapper.createStack(5, 4, 3);
+		Image3D image = Images3D.createWrapper(stack);
+		assertTrue(image instanceof IntStackWrapper);
+
+		image.set(1, 2, 0, (1 << 24) + 1);
+		image.setValue(2, 3, 1, Integer.MAX_VALUE);
+		image.setValue(4, 0, 2, 0x12345678);
+		assertEquals((1 << 24) + 1, image.get(1, 2, 0));
+		assertEquals(Integer.MAX_VALUE, image.get(2, 3, 1));
+		assertEquals(0x12345678, (int) image.getValue(4, 0, 2));
+		assertEquals(0x12345678, ((int[]) stack.getPixels(3))[4]);
+
+		double[] lineZ = new double[3];
+		image.getLineZ(4, 0, lineZ);
+		assertEquals(0x12345678, lineZ[2], 0);
+	}
+
+	/**
+	 * Saves a stack containing large labels, and checks they are read back
+	 * without loss.
+	 */
+	@Test
+	public final void testSaveOpenTiff_LargeLabels() throws IOException
+	{
+		ImageStack stack = IntStackWrapper.createStack(5, 4, 3);
+		Image3D image = new IntStackWrapper(stack);
+		for (int z = 0; z < 3; z++)
+			for (int y = 0; y < 4; y++)
+				for (int x = 0; x < 5; x++)
+					image.set(x, y, z, (1 << 24) + (z * 4 + y) * 5 + x);
+		image.set(0, 0, 0, 0);
+		image.set(4, 3, 2, Integer.MAX_VALUE);
+
+		File file = File.createTempFile("labels", ".tif");
+		file.deleteOnExit();
+		IntStackWrapper.saveTiff(stack, file);
+
+		ImageStack stack2 = IntStackWrapper.openTiff(file);
+		assertEquals(5, stack2.getWidth());
+		assertEquals(4, stack2.getHeight());
+		assertEquals(3, stack2.getSize());
+		Image3D image2 = new IntStackWrapper(stack2);
+		for (int z = 0; z < 3; z++)
+			for (int y = 0; y < 4; y++)
+				for (int x = 0; x < 5; x++)
+					assertEquals(image.get(x, y, z), image2.get(x, y, z));
+
+		// the file is opened by ImageJ as a 32-bit stack
+		ImagePlus imagePlus = IJ.openImage(file.getPath());
+		assertNotNull(imagePlus);
+		assertEquals(32, imagePlus.getBitDepth());
+		assertEquals(3, imagePlus.getStackSize());
+		assertEquals(1 << 24 | 16, imagePlus.getStack().getVoxel(1, 3, 0), 0);
+		file.delete();
+	}
+
+	/**
+	 * Opens a label stack saved by ImageJ as an RGB file, and checks that the
+	 * alpha byte added by ImageJ is removed.
+	 */
+	@Test
+	public final void testOpenTiff_RGB() throws IOException
+	{
+		ImageStack stack = IntStackWrapper.createStack(5, 4, 2);
+		Image3D image = new IntStackWrapper(stack);
+		image.set(1, 2, 0, 3);
+		image.set(4, 3, 1, 0x00ABCDEF);
+
+		File file = File.createTempFile("labels", ".tif");
+		file.deleteOnExit();
+		assertTrue(new FileSaver(new ImagePlus("", stack)).saveAsTiffStack(file.getPath()));
+
+		Image3D image2 = new IntStackWrapper(IntStackWrapper.openTiff(file));
+		assertEquals(0, image2.get(0, 0, 0));
+		assertEquals(3, image2.get(1, 2, 0));
+		assertEquals(0x00ABCDEF, image2.get(4, 3, 1));
+		file.delete();
+	}
+}
@@ -0,0 +1,142 @@
+package inra.ijpb.data.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.io.FileSaver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+
+import org.junit.Test;
+
+public class MappedImage3DTest
+{
+	/**
+	 * Writes and reads values of a 16-bits image mapped with small regions,
+	 * so that lines are split between several regions.
+	 */
+	@Test
+	public final void testSetGetValues_SeveralRegions() throws IOException
+	{
+		File file = File.createTempFile("mapped", ".raw");
+		file.deleteOnExit();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(5 * 4 * 3 * 2);
+		raf.close();
+
+		MappedImage3D image = new MappedImage3D(file, 0, 5, 4, 3, 16,
+				ByteOrder.BIG_ENDIAN, true, 8);
+		assertEquals(15, image.regions.length);
+		for (int z = 0; z < 3; z++)
+		{
+			for (int y = 0; y < 4; y++)
+			{
+				for (int x = 0; x < 5; x++)
+				{
+					image.set(x, y, z, 1000 * z + 10 * y + x);
+				}
+			}
+		}
+
+		double[] lineX = new double[5];
+		image.getLineX(3, 1, lineX);
+		assertEquals(1032, lineX[2], .01);
+		double[] lineZ = new double[3];
+		image.getLineZ(4, 2, lineZ);
+		assertEquals(2024, lineZ[2], .01);
+
+		// values are clamped to the range of the data type
+		image.setValue(1, 2, 0, 70000);
+		assertEquals(65535, image.get(1, 2, 0));
+		image.close();
+
+		// check values were written in big endian order
+		raf = new RandomAccessFile(file, "r");
+		raf.seek(((1 * 4 + 3) * 5 + 2) * 2);
+		assertEquals(1032, raf.readShort());
+		raf.close();
+	}
+
+	/**
+	 * Checks the header offset and the read-only mode of a float image.
+	 */
+	@Test
+	public final void testReadOnly_Float() throws IOException
+	{
+		File file = File.createTempFile("mapped", ".raw");
+		file.deleteOnExit();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.writeInt(0xCAFE);
+		for (int i = 0; i < 3 * 2 * 2; i++)
+		{
+			raf.writeFloat(i * .5f);
+		}
+		raf.close();
+
+		MappedImage3D image = new MappedImage3D(file, 4, 3, 2, 2, 32,
+				ByteOrder.BIG_ENDIAN, false);
+		assertEquals(4.5, image.getValue(0, 1, 1), .001);
+		double[] slice = new double[6];
+		image.getSliceValues(1, slice);
+		assertEquals(5.5, slice[5], .001);
+
+		try
+		{
+			image.setValue(0, 0, 0, 1.0);
+			fail("Should not modify a read-only image");
+		}
+		catch (ReadOnlyBufferException ex)
+		{
+		}
+		image.close();
+	}
+
+	/**
+	 * Checks that a created raw file has the expected size.
+	 */
+	@Test
+	public final void testCreateRaw_Gray8() throws IOException
+	{
+		File file = File.createTempFile("mapped", ".raw");
+		file.deleteOnExit();
+		MappedImage3D image = MappedImage3D.createRaw(file, 7, 5, 3, 8,
+				ByteOrder.BIG_ENDIAN);
+		image.setLineY(2, 1, new double[] { 1, 2, 300, 4, 5 });
+		assertEquals(255, image.get(2, 2, 1));
+		assertEquals(0, image.get(3, 2, 1));
+		image.close();
+
+		assertEquals(7 * 5 * 3, file.length());
+	}
+
+	/**
+	 * Opens a 16-bit TIFF file specified with a relative path, and checks
+	 * that written values are rounded to the nearest integer.
+	 */
+	@Test
+	public final void testOpenTiff_RelativePath() throws IOException
+	{
+		ImageStack stack = ImageStack.create(4, 3, 2, 16);
+		stack.setVoxel(1, 2, 1, 1200);
+		File file = new File("mapped-test.tif");
+		file.deleteOnExit();
+		assertTrue(new FileSaver(new ImagePlus("", stack)).saveAsTiffStack(file.getPath()));
+
+		MappedImage3D image = MappedImage3D.openTiff(file, true);
+		assertEquals(4, image.getSizeX());
+		assertEquals(3, image.getSizeY());
+		assertEquals(2, image.getSizeZ());
+		assertEquals(1200, image.get(1, 2, 1));
+
+		image.setValue(2, 1, 0, 1000.7);
+		assertEquals(1001, image.get(2, 1, 0));
+		image.close();
+		file.delete();
+	}
+}
@@ -0,0 +1,238 @@
+package inra.ijpb.data.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import ij.ImageStack;
+import ij.VirtualStack;
+import ij.process.ImageProcessor;
+import inra.ijpb.binary.BinaryImages;
+import inra.ijpb.label.LabelStatistics;
+import inra.ijpb.morphology.strel.CubeStrel;
+import inra.ijpb.segment.Threshold;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SliceWindowProcessorTest
+{
+	/**
+	 * Reads all slices in forward order, and checks that each slice is read
+	 * only once.
+	 */
+	@Test
+	public final void testSlicePrefetcher_ForwardScan()
+	{
+		ImageStack stack = createGrayscaleStack();
+		CountingVirtualStack virtual = new CountingVirtualStack(stack);
+
+		SlicePrefetcher prefetcher = new SlicePrefetcher(virtual, 3);
+		try
+		{
+			for (int z = 0; z < stack.getSize(); z++)
+			{
+				ImageProcessor slice = prefetcher.getSlice(z);
+				assertEquals(stack.getVoxel(3, 4, z), slice.getf(3, 4), .01);
+			}
+		}
+		finally
+		{
+			prefetcher.close();
+		}
+		assertEquals(stack.getSize(), virtual.readCount.get());
+	}
+
+	/**
+	 * Computes a slice-wise threshold on a virtual stack.
+	 */
+	@Test
+	public final void testThreshold_VirtualStack()
+	{
+		ImageStack stack = createGrayscaleStack();
+		ImageStack expected = Threshold.threshold(stack, 20, 60);
+		ImageStack result = Threshold.threshold(new CountingVirtualStack(stack), 20, 60);
+		assertStacksEqual(expected, result);
+	}
+
+	/**
+	 * Computes dilation and erosion by a cube on a virtual stack.
+	 */
+	@Test
+	public final void testCubeStrel_VirtualStack()
+	{
+		ImageStack stack = createGrayscaleStack();
+		CubeStrel strel = CubeStrel.fromRadius(1);
+
+		assertStacksEqual(strel.dilation(stack), strel.dilation(new CountingVirtualStack(stack)));
+		assertStacksEqual(strel.erosion(stack), strel.erosion(new CountingVirtualStack(stack)));
+	}
+
+	/**
+	 * Writes the result of a dilation within a 3D image.
+	 */
+	@Test
+	public final void testProcess_Image3D()
+	{
+		ImageStack stack = createGrayscaleStack();
+		CubeStrel strel = CubeStrel.fromRadius(2);
+		ImageStack expected = strel.dilation(stack);
+
+		ImageStack result = ImageStack.create(stack.getWidth(), stack.getHeight(), stack.getSize(), 8);
+		SliceWindowProcessor algo = new SliceWindowProcessor(strel.dilationOperator(), 2);
+		algo.process(new CountingVirtualStack(stack), Images3D.createWrapper(result));
+		assertStacksEqual(expected, result);
+	}
+
+	/**
+	 * Computes a chamfer distance map from a virtual binary stack.
+	 */
+	@Test
+	public final void testDistanceMap_VirtualStack()
+	{
+		ImageStack stack = Threshold.threshold(createGrayscaleStack(), 10, 70);
+		float[] weights = new float[] { 3, 4, 5 };
+		ImageStack expected = BinaryImages.distanceMap(stack, weights, true);
+		ImageStack result = BinaryImages.distanceMap(new CountingVirtualStack(stack), weights, true);
+		assertStacksEqual(expected, result);
+	}
+
+	/**
+	 * Computes the label statistics of a virtual label stack.
+	 */
+	@Test
+	public final void testLabelStatistics_VirtualStack()
+	{
+		ImageStack stack = ImageStack.create(8, 7, 6, 8);
+		for (int z = 0; z < 6; z++)
+		{
+			for (int y = 0; y < 7; y++)
+			{
+				for (int x = 0; x < 8; x++)
+				{
+					stack.setVoxel(x, y, z, (x / 3) + 3 * (z / 2));
+				}
+			}
+		}
+
+		LabelStatistics expected = LabelStatistics.compute(stack);
+		LabelStatistics stats = LabelStatistics.compute(new CountingVirtualStack(stack));
+		assertArrayEquals(expected.getLabels(), stats.getLabels());
+		for (int label : expected.getLabels())
+		{
+			assertEquals(expected.getCount(label), stats.getCount(label));
+			assertArrayEquals(expected.getBoundingBox(label), stats.getBoundingBox(label));
+		}
+	}
+
+	/**
+	 * Checks that the processing returns null when the thread is interrupted.
+	 */
+	@Test
+	public final void testProcess_Interrupted()
+	{
+		ImageStack stack = createGrayscaleStack();
+		SliceWindowProcessor algo = new SliceWindowProcessor(CubeStrel.fromRadius(1).dilationOperator());
+
+		Thread.currentThread().interrupt();
+		try
+		{
+			assertNull(algo.process(new CountingVirtualStack(stack)));
+		}
+		finally
+		{
+			// clear the interrupted flag
+			Thread.interrupted();
+		}
+	}
+
+	/**
+	 * Checks that the wrappers of virtual stacks returned by Images3D read
+	 * slices without prefetching thread.
+	 */
+	@Test
+	public final void testCreateWrapper_VirtualStack()
+	{
+		ImageStack stack = createGrayscaleStack();
+		CountingVirtualStack virtual = new CountingVirtualStack(stack);
+		Image3D image = Images3D.createWrapper(virtual);
+		assertTrue(image instanceof VirtualStackWrapper);
+		assertNull(((VirtualStackWrapper) image).prefetcher);
+
+		assertEquals(stack.getVoxel(3, 2, 1), image.getValue(3, 2, 1), .01);
+		assertEquals(1, virtual.readCount.get());
+	}
+
+	private static final void assertStacksEqual(ImageStack expected, ImageStack result)
+	{
+		assertEquals(expected.getSize(), result.getSize());
+		for (int z = 0; z < expected.getSize(); z++)
+		{
+			for (int y = 0; y < expected.getHeight(); y++)
+			{
+				for (int x = 0; x < expected.getWidth(); x++)
+				{
+					assertEquals(expected.getVoxel(x, y, z), result.getVoxel(x, y, z), 1e-5);
+				}
+			}
+		}
+	}
+
+	private static final ImageStack createGrayscaleStack()
+	{
+		ImageStack stack = ImageStack.create(10, 9, 8, 8);
+		for (int z = 0; z < 8; z++)
+		{
+			for (int y = 0; y < 9; y++)
+			{
+				for (int x = 0; x < 10; x++)
+				{
+					stack.setVoxel(x, y, z, (x * 7 + y * 13 + z * 29) % 80);
+				}
+			}
+		}
+		return stack;
+	}
+
+	/**
+	 * A virtual stack that returns copies of the slices of an in-memory
+	 * stack, and counts the number of slices read.
+	 */
+	private static class CountingVirtualStack extends VirtualStack
+	{
+		ImageStack stack;
+		AtomicInteger readCount = new AtomicInteger(0);
+
+		CountingVirtualStack(ImageStack stack)
+		{
+			super(stack.getWidth(), stack.getHeight(), null, null);
+			this.stack = stack;
+		}
+
+		@Override
+		public ImageProcessor getProcessor(int n)
+		{
+			readCount.incrementAndGet();
+			return stack.getProcessor(n).duplicate();
+		}
+
+		@Override
+		public int getSize()
+		{
+			return stack.getSize();
+		}
+
+		@Override
+		public int getBitDepth()
+		{
+			return stack.getBitDepth();
+		}
+
+		@Override
+		public String getSliceLabel(int n)
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,291 @@
+package inra.ijpb.data.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.morphology.GeodesicReconstruction;
+import inra.ijpb.morphology.Morphology;
+import inra.ijpb.morphology.Strel;
+import inra.ijpb.morphology.strel.SquareStrel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class TiledProcessorTest
+{
+	/**
+	 * Computes morphological operations by tiles, and compares with the
+	 * result computed on the whole image.
+	 */
+	@Test
+	public final void testApplyTiled_Morphology()
+	{
+		ImageProcessor image = createGrayscaleImage();
+		Strel strel = SquareStrel.fromRadius(2);
+
+		for (Morphology.Operation op : Morphology.Operation.values())
+		{
+			ImageProcessor expected = op.apply(image, strel);
+			ImageProcessor result = op.applyTiled(image, strel, 7);
+			assertImagesEqual(expected, result);
+		}
+	}
+
+	/**
+	 * Checks that the result type is given by the operator.
+	 */
+	@Test
+	public final void testProcess_ResultType()
+	{
+		ImageProcessor image = createGrayscaleImage();
+		TiledProcessor.Operator op = new TiledProcessor.Operator()
+		{
+			public ImageProcessor process(ImageProcessor tile, int x0, int y0)
+			{
+				ImageProcessor res = new FloatProcessor(tile.getWidth(), tile.getHeight());
+				for (int i = 0; i < tile.getPixelCount(); i++)
+				{
+					res.setf(i, tile.get(i) / 2f);
+				}
+				return res;
+			}
+		};
+
+		ImageProcessor result = new TiledProcessor(6, 0).process(image, op);
+		assertTrue(result instanceof FloatProcessor);
+		for (int i = 0; i < image.getPixelCount(); i++)
+		{
+			assertEquals(image.get(i) / 2f, result.getf(i), 1e-5);
+		}
+	}
+
+	/**
+	 * Computes geodesic reconstructions by tiles, on a spiral mask that
+	 * requires several passes over the tiles.
+	 */
+	@Test
+	public final void testReconstructTiled()
+	{
+		ImageProcessor mask = createSpiralImage();
+		ImageProcessor marker = new ByteProcessor(mask.getWidth(), mask.getHeight());
+		marker.set(15, 15, 255);
+
+		for (int conn : new int[] { 4, 8 })
+		{
+			ImageProcessor expected = GeodesicReconstruction.reconstructByDilation(marker, mask, conn);
+			ImageProcessor result = GeodesicReconstruction.reconstructByDilationTiled(marker, mask, conn, 5);
+			assertImagesEqual(expected, result);
+		}
+
+		// reconstruction by erosion of the inverted images
+		ImageProcessor mask2 = mask.duplicate();
+		mask2.invert();
+		ImageProcessor marker2 = marker.duplicate();
+		marker2.invert();
+		ImageProcessor expected = GeodesicReconstruction.reconstructByErosion(marker2, mask2, 4);
+		ImageProcessor result = GeodesicReconstruction.reconstructByErosionTiled(marker2, mask2, 4, 6);
+		assertImagesEqual(expected, result);
+	}
+
+	/**
+	 * Checks that the tiles are processed again only while the image changes.
+	 */
+	@Test
+	public final void testIterate_PassCount()
+	{
+		final ImageProcessor mask = createSpiralImage();
+		ImageProcessor image = new ByteProcessor(mask.getWidth(), mask.getHeight());
+		TiledProcessor.Operator op = new TiledProcessor.Operator()
+		{
+			public ImageProcessor process(ImageProcessor tile, int x0, int y0)
+			{
+				return tile.duplicate();
+			}
+		};
+
+		// an operator that does not modify the image requires a single pass
+		assertEquals(1, new TiledProcessor(5, 1).iterate(image, op));
+	}
+
+	/**
+	 * Computes morphological operations by tiles read from and written to
+	 * chunked images, and compares with the result computed on the whole
+	 * image.
+	 */
+	@Test
+	public final void testApplyTiled_Image3D() throws IOException
+	{
+		ImageProcessor image = createGrayscaleImage();
+		Strel strel = SquareStrel.fromRadius(2);
+		ChunkedImage3D image3d = toImage3D(image, 8);
+
+		for (Morphology.Operation op : Morphology.Operation.values())
+		{
+			ImageProcessor expected = op.apply(image, strel);
+			ChunkedImage3D result = ChunkedImage3D.create(23, 19, 1, 8);
+			assertTrue(op.applyTiled(image3d, strel, result, 7) == result);
+			assertImagesEqual(expected, result);
+			result.close();
+		}
+		image3d.close();
+	}
+
+	/**
+	 * Computes geodesic reconstructions by tiles read from and written to
+	 * chunked and mapped images.
+	 */
+	@Test
+	public final void testReconstructTiled_Image3D() throws IOException
+	{
+		ImageProcessor mask = createSpiralImage();
+		ImageProcessor marker = new ByteProcessor(mask.getWidth(), mask.getHeight());
+		marker.set(15, 15, 255);
+		ImageProcessor expected = GeodesicReconstruction.reconstructByDilation(marker, mask, 4);
+
+		ChunkedImage3D marker3d = toImage3D(marker, 8);
+		File file = File.createTempFile("mask", ".raw");
+		file.deleteOnExit();
+		MappedImage3D mask3d = MappedImage3D.createRaw(file, 31, 31, 1, 8, ByteOrder.BIG_ENDIAN);
+		for (int y = 0; y < 31; y++)
+		{
+			for (int x = 0; x < 31; x++)
+			{
+				mask3d.set(x, y, 0, mask.get(x, y));
+			}
+		}
+
+		Image3D result = GeodesicReconstruction.reconstructByDilationTiled(marker3d, mask3d, 4, 5);
+		assertTrue(result == marker3d);
+		assertImagesEqual(expected, result);
+		marker3d.close();
+		mask3d.close();
+	}
+
+	/**
+	 * Checks that interrupted tiled processing returns null.
+	 */
+	@Test
+	public final void testReconstructTiled_Interrupted() throws IOException
+	{
+		ImageProcessor mask = createSpiralImage();
+		ImageProcessor marker = new ByteProcessor(mask.getWidth(), mask.getHeight());
+		marker.set(15, 15, 255);
+		ChunkedImage3D image3d = toImage3D(mask, 8);
+
+		Thread.currentThread().interrupt();
+		try
+		{
+			assertNull(GeodesicReconstruction.reconstructByDilationTiled(marker, mask, 4, 5));
+			assertNull(GeodesicReconstruction.reconstructByDilationTiled(image3d, image3d, 4, 5));
+			assertNull(Morphology.Operation.DILATION.applyTiled(image3d,
+					SquareStrel.fromRadius(1), image3d, 5));
+		}
+		finally
+		{
+			// clear the interrupted status
+			Thread.interrupted();
+		}
+		image3d.close();
+	}
+
+	/**
+	 * Checks that 3D images with several slices are rejected.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public final void testIterate_Image3D_NotPlanar()
+	{
+		Image3D image = Images3D.createWrapper(ImageStack.create(5, 5, 2, 8));
+		new TiledProcessor(2, 1).iterate(image, null);
+	}
+
+	private static final void assertImagesEqual(ImageProcessor expected, Image3D result)
+	{
+		assertEquals(expected.getWidth(), result.getSizeX());
+		assertEquals(expected.getHeight(), result.getSizeY());
+		assertEquals(1, result.getSizeZ());
+		for (int y = 0; y < expected.getHeight(); y++)
+		{
+			for (int x = 0; x < expected.getWidth(); x++)
+			{
+				assertEquals(expected.getf(x, y), result.getValue(x, y, 0), 1e-5);
+			}
+		}
+	}
+
+	private static final ChunkedImage3D toImage3D(ImageProcessor image, int bitDepth)
+			throws IOException
+	{
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+		ChunkedImage3D result = ChunkedImage3D.create(sizeX, sizeY, 1, bitDepth);
+		for (int y = 0; y < sizeY; y++)
+		{
+			for (int x = 0; x < sizeX; x++)
+			{
+				result.setValue(x, y, 0, image.getf(x, y));
+			}
+		}
+		return result;
+	}
+
+	private static final void assertImagesEqual(ImageProcessor expected, ImageProcessor result)
+	{
+		assertEquals(expected.getWidth(), result.getWidth());
+		assertEquals(expected.getHeight(), result.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++)
+		{
+			for (int x = 0; x < expected.getWidth(); x++)
+			{
+				assertEquals(expected.getf(x, y), result.getf(x, y), 1e-5);
+			}
+		}
+	}
+
+	private static final ImageProcessor createGrayscaleImage()
+	{
+		ImageProcessor image = new ByteProcessor(23, 19);
+		for (int y = 0; y < 19; y++)
+		{
+			for (int x = 0; x < 23; x++)
+			{
+				image.set(x, y, (x * 37 + y * 71 + x * y * 13) % 200);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Creates a 31x31 binary image containing a spiral path starting from
+	 * the center of the image.
+	 */
+	private static final ImageProcessor createSpiralImage()
+	{
+		ImageProcessor image = new ByteProcessor(31, 31);
+		int x = 15, y = 15;
+		int[][] dirs = new int[][] { { 1, 0 }, { 0, 1 }, { -1, 0 }, { 0, -1 } };
+		int length = 2;
+		int d = 0;
+		image.set(x, y, 255);
+		while (true)
+		{
+			for (int i = 0; i < length; i++)
+			{
+				x += dirs[d][0];
+				y += dirs[d][1];
+				if (x < 0 || y < 0 || x >= 31 || y >= 31)
+					return image;
+				image.set(x, y, 255);
+			}
+			d = (d + 1) % 4;
+			if (d % 2 == 0)
+				length += 2;
+		}
+	}
+}
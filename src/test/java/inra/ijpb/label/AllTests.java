@@ -10,6 +10,12 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({
 	// generic classes
 	LabelImagesTest.class, 
+	LabelCropTest.class, 
+	LabelIndexTest.class, 
+	LabelMappingTest.class, 
+	LabelStatisticsTest.class, 
+	RegionMergingTest.class, 
+	RunLengthLabelImageTest.class, 
 	})
 public class AllTests {
   //nothing
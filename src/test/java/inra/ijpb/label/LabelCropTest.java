@@ -0,0 +1,104 @@
+package inra.ijpb.label;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+import org.junit.Test;
+
+public class LabelCropTest
+{
+	private static final ImageProcessor createImage()
+	{
+		byte[] data = new byte[]{
+				0, 5, 5, 0, 0, 
+				0, 5, 0, 2, 2, 
+				2, 0, 0, 2, 2, 
+				2, 0, 0, 0, 0};
+		return new ByteProcessor(5, 4, data);
+	}
+
+	@Test
+	public final void testGet_View()
+	{
+		LabelCrop[] crops = LabelCrop.createAll(createImage(), 1);
+		assertEquals(2, crops.length);
+
+		LabelCrop crop = crops[1];
+		assertEquals(5, crop.getLabel());
+		assertEquals(4, crop.getWidth());
+		assertEquals(4, crop.getHeight());
+		assertEquals(0, crop.get(0, 0, 0));
+		assertEquals(255, crop.get(1, 1, 0));
+		assertEquals(255, crop.get(2, 1, 0));
+		assertEquals(255, crop.get(1, 2, 0));
+		assertEquals(0, crop.get(2, 2, 0));
+	}
+
+	@Test
+	public final void testCropLabels_ImageProcessor()
+	{
+		ImageProcessor image = createImage();
+		ImageProcessor[] crops = LabelImages.cropLabels(image, new int[]{5, 3, 2}, 0);
+
+		assertEquals(3, crops.length);
+		assertNull(crops[1]);
+
+		ImageProcessor crop = crops[2];
+		assertEquals(5, crop.getWidth());
+		assertEquals(3, crop.getHeight());
+		assertEquals(255, crop.get(0, 1));
+		assertEquals(255, crop.get(4, 0));
+		assertEquals(0, crop.get(1, 1));
+
+		// compare with single label cropping
+		ImageProcessor crop5 = LabelImages.cropLabel(image, 5, 0);
+		assertEquals(crop5.getWidth(), crops[0].getWidth());
+		assertEquals(crop5.getHeight(), crops[0].getHeight());
+		for (int y = 0; y < crop5.getHeight(); y++)
+		{
+			for (int x = 0; x < crop5.getWidth(); x++)
+			{
+				assertEquals(crop5.get(x, y), crops[0].get(x, y));
+			}
+		}
+	}
+
+	@Test
+	public final void testCropLabels_ImageStack()
+	{
+		ImageStack image = ImageStack.create(6, 5, 4, 8);
+		image.setVoxel(1, 1, 0, 3);
+		image.setVoxel(2, 1, 1, 3);
+		image.setVoxel(4, 3, 3, 7);
+
+		ImageStack[] crops = LabelImages.cropLabels(image, new int[]{3, 7}, 1);
+
+		assertEquals(4, crops[0].getWidth());
+		assertEquals(3, crops[0].getHeight());
+		assertEquals(4, crops[0].getSize());
+		assertEquals(255, crops[0].getVoxel(1, 1, 1), .01);
+		assertEquals(255, crops[0].getVoxel(2, 1, 2), .01);
+		assertEquals(0, crops[0].getVoxel(2, 1, 1), .01);
+
+		assertEquals(3, crops[1].getWidth());
+		assertEquals(3, crops[1].getSize());
+		assertEquals(255, crops[1].getVoxel(1, 1, 1), .01);
+	}
+
+	@Test
+	public final void testCropLabels_ImagePlus()
+	{
+		ImagePlus imagePlus = new ImagePlus("labels", createImage());
+		ImagePlus[] crops = LabelImages.cropLabels(imagePlus, 0);
+
+		assertEquals(2, crops.length);
+		assertEquals("labels-crop-2", crops[0].getTitle());
+		assertEquals(5, crops[0].getWidth());
+		assertEquals(2, crops[1].getWidth());
+		assertEquals(2, crops[1].getHeight());
+	}
+}
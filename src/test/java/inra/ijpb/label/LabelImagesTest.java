@@ -7,6 +7,7 @@ import ij.ImagePlus;
 import ij.ImageStack;
 import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
+import inra.ijpb.data.image.IntStackWrapper;
 import inra.ijpb.label.LabelImages;
 
 import org.junit.Test;
@@ -134,4 +135,65 @@ public class LabelImagesTest
 		assertEquals(4, sizeOpen10.get(5, 5));
 	}
 
+	/**
+	 * Checks that labels that can not be represented exactly as float values
+	 * are preserved when stored as int values.
+	 */
+	@Test
+	public final void testLabelStack_IntLabels()
+	{
+		ImageStack image = LabelImages.createLabelStack(5, 4, 3, 1 << 24);
+		assertEquals(24, image.getBitDepth());
+
+		int label1 = (1 << 24) + 1;
+		int label2 = (1 << 24) + 2;
+		IntStackWrapper labels3d = new IntStackWrapper(image);
+		labels3d.set(1, 1, 1, label1);
+		labels3d.set(2, 1, 1, label1);
+		labels3d.set(3, 2, 2, label2);
+
+		int[] labels = LabelImages.findAllLabels(image);
+		assertEquals(2, labels.length);
+		assertEquals(label1, labels[0]);
+		assertEquals(label2, labels[1]);
+
+		int[] counts = LabelImages.voxelCount(image, labels);
+		assertEquals(2, counts[0]);
+		assertEquals(1, counts[1]);
+
+		ImageStack kept = LabelImages.keepLabels(image, new int[] { label2 });
+		IntStackWrapper kept3d = new IntStackWrapper(kept);
+		assertEquals(0, kept3d.get(1, 1, 1));
+		assertEquals(label2, kept3d.get(3, 2, 2));
+	}
+
+	/**
+	 * Checks that utilities that read labels voxel by voxel distinguish int
+	 * labels that differ only by their upper byte.
+	 */
+	@Test
+	public final void testLabelUtilities_IntLabelsUpperByte()
+	{
+		ImageStack image = LabelImages.createLabelStack(5, 4, 3, 1 << 24);
+		IntStackWrapper labels3d = new IntStackWrapper(image);
+		int label1 = 0x01000003;
+		int label2 = 0x02000003;
+		for (int z = 0; z < 3; z++)
+			for (int y = 0; y < 4; y++)
+				for (int x = 0; x < 5; x++)
+					labels3d.set(x, y, z, x < 2 ? label1 : label2);
+		labels3d.set(4, 3, 2, label1);
+
+		ImageStack boundaries = LabelImages.labelBoundaries(image);
+		assertEquals(255, boundaries.getVoxel(1, 1, 1), 0);
+		assertEquals(0, boundaries.getVoxel(2, 1, 1), 0);
+
+		ImageStack largest = LabelImages.keepLargestLabel(image);
+		assertEquals(255, largest.getVoxel(3, 1, 1), 0);
+		assertEquals(0, largest.getVoxel(1, 1, 1), 0);
+
+		LabelImages.removeLargestLabel(image);
+		assertEquals(label1, labels3d.get(1, 1, 1));
+		assertEquals(0, labels3d.get(3, 1, 1));
+	}
 }
@@ -0,0 +1,98 @@
+package inra.ijpb.label;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+import org.junit.Test;
+
+public class LabelIndexTest
+{
+	@Test
+	public final void testIndexOf_Dense()
+	{
+		LabelIndex index = new LabelIndex(new int[]{2, 7, 5});
+		assertEquals(0, index.indexOf(2));
+		assertEquals(1, index.indexOf(7));
+		assertEquals(2, index.indexOf(5));
+		assertEquals(-1, index.indexOf(3));
+		assertEquals(-1, index.indexOf(0));
+		assertEquals(-1, index.indexOf(1000));
+		assertTrue(index.contains(5));
+		assertFalse(index.contains(4));
+	}
+
+	/**
+	 * Uses labels large enough to switch to the hash map implementation.
+	 */
+	@Test
+	public final void testIndexOf_Sparse()
+	{
+		int[] labels = new int[]{3, 50000000, 2000000000};
+		LabelIndex index = new LabelIndex(labels);
+		assertEquals(3, index.size());
+		assertEquals(0, index.indexOf(3));
+		assertEquals(1, index.indexOf(50000000));
+		assertEquals(2, index.indexOf(2000000000));
+		assertEquals(-1, index.indexOf(4));
+	}
+
+	/**
+	 * Negative labels, that can be found in float images, are indexed with
+	 * the hash map.
+	 */
+	@Test
+	public final void testVoxelCount_NegativeLabels()
+	{
+		ImageStack image = ImageStack.create(3, 2, 2, 32);
+		image.setVoxel(0, 0, 0, -2);
+		image.setVoxel(1, 0, 0, -2);
+		image.setVoxel(2, 1, 1, -2);
+		image.setVoxel(0, 1, 1, 5);
+
+		LabelIndex index = new LabelIndex(new int[]{-2, 5});
+		assertEquals(0, index.indexOf(-2));
+		assertEquals(1, index.indexOf(5));
+		assertEquals(-1, index.indexOf(-1));
+
+		int[] counts = index.voxelCount(image);
+		assertEquals(3, counts[0]);
+		assertEquals(1, counts[1]);
+	}
+
+	@Test
+	public final void testPixelCountAndBoundingBoxes()
+	{
+		byte[] data = new byte[]{
+				0, 1, 1, 0, 
+				0, 1, 0, 4, 
+				4, 0, 0, 4};
+		ImageProcessor image = new ByteProcessor(4, 3, data);
+		LabelIndex index = new LabelIndex(new int[]{1, 4});
+
+		int[] counts = index.pixelCount(image);
+		assertEquals(3, counts[0]);
+		assertEquals(3, counts[1]);
+
+		int[][] boxes = index.boundingBoxes(image);
+		assertEquals(1, boxes[0][0]);
+		assertEquals(2, boxes[0][1]);
+		assertEquals(0, boxes[0][2]);
+		assertEquals(1, boxes[0][3]);
+		assertEquals(0, boxes[1][0]);
+		assertEquals(3, boxes[1][1]);
+		assertEquals(1, boxes[1][2]);
+		assertEquals(2, boxes[1][3]);
+
+		FloatProcessor values = new FloatProcessor(4, 3);
+		values.setValue(2.5);
+		values.fill();
+		double[] sums = index.sum(image, values);
+		assertEquals(7.5, sums[0], .01);
+		assertEquals(7.5, sums[1], .01);
+	}
+}
@@ -0,0 +1,103 @@
+package inra.ijpb.label;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import org.junit.Test;
+
+public class LabelMappingTest
+{
+	private static final ImageProcessor createImage()
+	{
+		byte[] data = new byte[]{
+				0, 5, 5, 0, 0, 
+				0, 5, 0, 9, 9, 
+				2, 0, 0, 9, 9, 
+				2, 0, 0, 0, 0};
+		return new ByteProcessor(5, 4, data);
+	}
+
+	@Test
+	public final void testRemoveLabels_ImageProcessor()
+	{
+		ImageProcessor image = createImage();
+		LabelImages.removeLabels(image, new int[]{5, 9}, 0);
+
+		assertEquals(0, image.get(1, 0));
+		assertEquals(0, image.get(3, 1));
+		assertEquals(2, image.get(0, 2));
+	}
+
+	@Test
+	public final void testKeepLabels_Short()
+	{
+		ImageProcessor image = createImage().convertToShort(false);
+		image.set(4, 3, 1000);
+		ImageProcessor result = LabelImages.keepLabels(image, new int[]{9, 1000});
+
+		assertTrue(result instanceof ShortProcessor);
+		assertEquals(0, result.get(1, 0));
+		assertEquals(9, result.get(3, 1));
+		assertEquals(1000, result.get(4, 3));
+		// input image is not modified
+		assertEquals(5, image.get(1, 0));
+	}
+
+	@Test
+	public final void testReplaceLabels_Float()
+	{
+		ImageProcessor image = createImage().convertToFloat();
+		image.setf(4, 3, 2.5f);
+		LabelImages.replaceLabels(image, new float[]{2, 9}, 7);
+
+		assertEquals(7, image.getf(0, 2), .01);
+		assertEquals(7, image.getf(3, 1), .01);
+		assertEquals(5, image.getf(1, 0), .01);
+		// non integer values are kept
+		assertEquals(2.5, image.getf(4, 3), .01);
+	}
+
+	@Test
+	public final void testRemapLabels_ImageProcessor()
+	{
+		ImageProcessor image = createImage();
+		LabelImages.remapLabels(image);
+
+		assertEquals(1, image.get(0, 2));
+		assertEquals(2, image.get(1, 0));
+		assertEquals(3, image.get(3, 1));
+		assertEquals(0, image.get(0, 0));
+	}
+
+	@Test
+	public final void testRemapLabels_ImageStack()
+	{
+		ImageStack image = ImageStack.create(5, 4, 3, 32);
+		image.setVoxel(1, 1, 0, 120000);
+		image.setVoxel(2, 2, 1, 40);
+		image.setVoxel(4, 3, 2, 40);
+		LabelImages.remapLabels(image);
+
+		assertEquals(2, image.getVoxel(1, 1, 0), .01);
+		assertEquals(1, image.getVoxel(2, 2, 1), .01);
+		assertEquals(1, image.getVoxel(4, 3, 2), .01);
+		assertEquals(0, image.getVoxel(0, 0, 0), .01);
+	}
+
+	@Test
+	public final void testApplyLut_ImageProcessor()
+	{
+		ImageProcessor image = createImage();
+		FloatProcessor result = LabelImages.applyLut(image, new double[]{1.5, 2.5, 3.5});
+
+		assertTrue(Float.isNaN(result.getf(0, 0)));
+		assertEquals(1.5, result.getf(0, 2), .01);
+		assertEquals(2.5, result.getf(1, 0), .01);
+		assertEquals(3.5, result.getf(3, 1), .01);
+	}
+}
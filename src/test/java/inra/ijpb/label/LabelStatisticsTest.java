@@ -0,0 +1,169 @@
+package inra.ijpb.label;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+import org.junit.Test;
+
+public class LabelStatisticsTest
+{
+	private static final ImageProcessor createImage()
+	{
+		byte[] data = new byte[]{
+				0, 5, 5, 0, 0, 
+				0, 5, 0, 2, 2, 
+				2, 0, 0, 2, 2, 
+				2, 0, 0, 0, 0};
+		return new ByteProcessor(5, 4, data);
+	}
+
+	@Test
+	public final void testCompute_ImageProcessor()
+	{
+		LabelStatistics stats = LabelStatistics.compute(createImage());
+
+		assertEquals(2, stats.size());
+		assertEquals(2, stats.getLabels()[0]);
+		assertEquals(5, stats.getLabels()[1]);
+		assertEquals(6, stats.getCount(2));
+		assertEquals(3, stats.getCount(5));
+		assertEquals(0, stats.getCount(3));
+		assertEquals(2, stats.getLargestLabel());
+
+		int[] box = stats.getBoundingBox(2);
+		assertEquals(0, box[0]);
+		assertEquals(4, box[1]);
+		assertEquals(1, box[2]);
+		assertEquals(3, box[3]);
+		assertNull(stats.getBoundingBox(3));
+	}
+
+	@Test
+	public final void testCompute_ImageStack()
+	{
+		ImageStack image = ImageStack.create(4, 3, 3, 8);
+		image.setVoxel(1, 1, 0, 3);
+		image.setVoxel(2, 1, 1, 3);
+		image.setVoxel(3, 2, 2, 7);
+
+		LabelStatistics stats = LabelStatistics.compute(image);
+
+		assertEquals(2, stats.size());
+		assertEquals(2, stats.getCount(3));
+		assertEquals(1, stats.getCount(7));
+		int[] box = stats.getBoundingBox(3);
+		assertEquals(1, box[0]);
+		assertEquals(2, box[1]);
+		assertEquals(1, box[2]);
+		assertEquals(1, box[3]);
+		assertEquals(0, box[4]);
+		assertEquals(1, box[5]);
+	}
+
+	@Test
+	public final void testGet_CachedUntilInvalidated()
+	{
+		ImagePlus imagePlus = new ImagePlus("labels", createImage());
+
+		LabelStatistics stats = LabelStatistics.get(imagePlus);
+		assertSame(stats, LabelStatistics.get(imagePlus));
+
+		LabelStatistics.invalidate(imagePlus);
+		assertNotSame(stats, LabelStatistics.get(imagePlus));
+	}
+
+	@Test
+	public final void testGet_ReplacedProcessor()
+	{
+		ImagePlus imagePlus = new ImagePlus("labels", createImage());
+		LabelStatistics stats = LabelStatistics.get(imagePlus);
+
+		imagePlus.setProcessor(new ByteProcessor(5, 4));
+		LabelStatistics stats2 = LabelStatistics.get(imagePlus);
+		assertNotSame(stats, stats2);
+		assertEquals(0, stats2.size());
+	}
+
+	@Test
+	public final void testGet_ProcessorModifiedInPlace()
+	{
+		ImageProcessor image = createImage();
+		ImagePlus imagePlus = new ImagePlus("labels", image);
+		LabelStatistics stats = LabelStatistics.get(imagePlus);
+		assertEquals(2, stats.size());
+
+		// modify the processor without referring to the ImagePlus
+		LabelImages.removeLabels(image, new int[] { 5 }, 0);
+
+		LabelStatistics stats2 = LabelStatistics.get(imagePlus);
+		assertNotSame(stats, stats2);
+		assertEquals(1, stats2.size());
+		assertEquals(0, stats2.getCount(5));
+	}
+
+	@Test
+	public final void testRemoveLargestLabel_InvalidatesSharedPixels()
+	{
+		ImageProcessor image = createImage();
+		ImagePlus imagePlus = new ImagePlus("labels", image);
+		ImagePlus other = new ImagePlus("other", image);
+		LabelStatistics stats = LabelStatistics.get(other);
+		assertEquals(2, stats.size());
+
+		LabelImages.removeLargestLabel(imagePlus);
+
+		// the other image shares the pixel array, and must be updated
+		LabelStatistics stats2 = LabelStatistics.get(other);
+		assertNotSame(stats, stats2);
+		assertEquals(1, stats2.size());
+	}
+
+	@Test
+	public final void testRemoveLargestLabel_UpdatesStatistics()
+	{
+		ImageProcessor image = createImage();
+		ImagePlus imagePlus = new ImagePlus("labels", image);
+		LabelStatistics.get(imagePlus);
+
+		LabelImages.removeLargestLabel(imagePlus);
+
+		assertEquals(0, image.get(0, 2));
+		assertEquals(0, image.get(4, 1));
+		assertEquals(5, image.get(1, 0));
+
+		LabelStatistics stats = LabelStatistics.get(imagePlus);
+		assertEquals(1, stats.size());
+		assertEquals(5, stats.getLargestLabel());
+		assertEquals(stats.size(), LabelStatistics.compute(image).size());
+	}
+
+	@Test
+	public final void testKeepLargestLabel_ImagePlus()
+	{
+		ImagePlus imagePlus = new ImagePlus("labels", createImage());
+		ImageProcessor result = LabelImages.keepLargestLabel(imagePlus).getProcessor();
+
+		assertEquals(255, result.get(0, 2));
+		assertEquals(255, result.get(4, 1));
+		assertEquals(0, result.get(1, 0));
+	}
+
+	@Test
+	public final void testCropLabel_ImagePlus()
+	{
+		ImagePlus imagePlus = new ImagePlus("labels", createImage());
+		ImageProcessor result = LabelImages.cropLabel(imagePlus, 5, 1).getProcessor();
+
+		assertEquals(4, result.getWidth());
+		assertEquals(4, result.getHeight());
+		assertEquals(255, result.get(1, 1));
+		assertEquals(255, result.get(2, 1));
+		assertEquals(0, result.get(2, 2));
+	}
+}
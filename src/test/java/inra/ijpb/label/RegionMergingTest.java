@@ -0,0 +1,164 @@
+package inra.ijpb.label;
+
+import static org.junit.Assert.assertEquals;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.IntStackWrapper;
+
+import org.junit.Test;
+
+public class RegionMergingTest
+{
+	/**
+	 * Four regions separated by watershed lines. The vertical line between
+	 * regions 1 and 2 has low values, the other lines have high values.
+	 */
+	@Test
+	public final void testProcess_ImageProcessor_MergeTwoRegions()
+	{
+		byte[] data = new byte[]{
+				1, 1, 1, 0, 2, 2, 2, 
+				1, 1, 1, 0, 2, 2, 2, 
+				1, 1, 1, 0, 2, 2, 2, 
+				0, 0, 0, 0, 0, 0, 0, 
+				3, 3, 3, 0, 4, 4, 4, 
+				3, 3, 3, 0, 4, 4, 4}; 
+		ImageProcessor labels = new ByteProcessor(7, 6, data);
+		ImageProcessor values = new ByteProcessor(7, 6);
+		values.setValue(100);
+		values.fill();
+		for (int y = 0; y < 3; y++)
+		{
+			values.set(3, y, 10);
+		}
+
+		RegionMerging algo = new RegionMerging(RegionMerging.Weight.MEAN, 50);
+		ImageProcessor result = algo.process(labels, values);
+
+		assertEquals(1, result.get(0, 0));
+		assertEquals(1, result.get(6, 0));
+		// watershed line between merged regions is removed
+		assertEquals(1, result.get(3, 1));
+		assertEquals(0, result.get(3, 3));
+		assertEquals(3, result.get(0, 5));
+		assertEquals(4, result.get(6, 5));
+	}
+
+	/**
+	 * Merges successively regions along a chain, and checks that the merged
+	 * edges are updated correctly.
+	 */
+	@Test
+	public final void testProcess_ImageStack_MergeChain()
+	{
+		// five regions along x, separated by planes of zeros
+		ImageStack labels = ImageStack.create(14, 3, 3, 16);
+		ImageStack values = ImageStack.create(14, 3, 3, 8);
+		for (int z = 0; z < 3; z++)
+		{
+			for (int y = 0; y < 3; y++)
+			{
+				for (int x = 0; x < 14; x++)
+				{
+					if (x % 3 == 2)
+					{
+						// low values on first and third planes, high otherwise
+						values.setVoxel(x, y, z, x == 2 || x == 8 ? 10 : 200);
+						continue;
+					}
+					labels.setVoxel(x, y, z, 10 * (x / 3 + 1));
+				}
+			}
+		}
+
+		RegionMerging algo = new RegionMerging(RegionMerging.Weight.MINIMUM, 50);
+		ImageStack result = algo.process(labels, values);
+
+		assertEquals(10, (int) result.getVoxel(0, 1, 1));
+		assertEquals(10, (int) result.getVoxel(2, 1, 1));
+		assertEquals(10, (int) result.getVoxel(4, 1, 1));
+		assertEquals(0, (int) result.getVoxel(5, 1, 1));
+		assertEquals(30, (int) result.getVoxel(7, 1, 1));
+		assertEquals(30, (int) result.getVoxel(10, 1, 1));
+		assertEquals(0, (int) result.getVoxel(11, 1, 1));
+		assertEquals(50, (int) result.getVoxel(13, 1, 1));
+	}
+
+	/**
+	 * Merges two regions of an int label stack, whose labels can not be
+	 * represented exactly as float values.
+	 */
+	@Test
+	public final void testProcess_ImageStack_IntLabels()
+	{
+		int label1 = (1 << 24) + 1;
+		int label2 = (1 << 24) + 3;
+		int label3 = (1 << 24) + 5;
+
+		// three regions along x, separated by planes of zeros
+		ImageStack labels = IntStackWrapper.createStack(11, 3, 3);
+		Image3D labelValues = new IntStackWrapper(labels);
+		ImageStack values = ImageStack.create(11, 3, 3, 8);
+		for (int z = 0; z < 3; z++)
+		{
+			for (int y = 0; y < 3; y++)
+			{
+				for (int x = 0; x < 11; x++)
+				{
+					if (x == 3 || x == 7)
+					{
+						// low values on first plane only
+						values.setVoxel(x, y, z, x == 3 ? 10 : 200);
+						continue;
+					}
+					labelValues.set(x, y, z, x < 3 ? label1 : (x < 7 ? label2 : label3));
+				}
+			}
+		}
+
+		RegionMerging algo = new RegionMerging(RegionMerging.Weight.MEAN, 50);
+		ImageStack result = algo.process(labels, values);
+		assertEquals(24, result.getBitDepth());
+
+		Image3D resultValues = new IntStackWrapper(result);
+		assertEquals(label1, resultValues.get(0, 1, 1));
+		assertEquals(label1, resultValues.get(3, 1, 1));
+		assertEquals(label1, resultValues.get(5, 1, 1));
+		assertEquals(0, resultValues.get(7, 1, 1));
+		assertEquals(label3, resultValues.get(10, 1, 1));
+	}
+
+	/**
+	 * Merges two regions of a planar int label image, whose labels can not be
+	 * represented exactly as float values.
+	 */
+	@Test
+	public final void testProcess_ImageProcessor_IntLabels()
+	{
+		int label1 = (1 << 24) + 1;
+		int label2 = (1 << 24) + 3;
+		ImageProcessor labels = new ColorProcessor(7, 3);
+		ImageProcessor values = new ByteProcessor(7, 3);
+		values.setValue(100);
+		values.fill();
+		for (int y = 0; y < 3; y++)
+		{
+			for (int x = 0; x < 3; x++)
+			{
+				labels.set(x, y, label1);
+				labels.set(x + 4, y, label2);
+			}
+			values.set(3, y, 10);
+		}
+
+		RegionMerging algo = new RegionMerging(RegionMerging.Weight.MEAN, 50);
+		ImageProcessor result = algo.process(labels, values);
+
+		assertEquals(label1, result.get(0, 1));
+		assertEquals(label1, result.get(3, 1));
+		assertEquals(label1, result.get(6, 1));
+	}
+}
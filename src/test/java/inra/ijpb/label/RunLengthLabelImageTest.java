@@ -0,0 +1,213 @@
+package inra.ijpb.label;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import ij.ImageStack;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.IntStackWrapper;
+import inra.ijpb.measure.GeometricMeasures3D;
+
+import org.junit.Test;
+
+public class RunLengthLabelImageTest
+{
+	/**
+	 * Encodes a label image and converts it back to a stack.
+	 */
+	@Test
+	public final void testFromStackToStack()
+	{
+		ImageStack image = createLabelImage();
+		RunLengthLabelImage rle = RunLengthLabelImage.fromStack(image);
+
+		ImageStack result = rle.toStack(8);
+		for (int z = 0; z < 10; z++)
+		{
+			for (int y = 0; y < 10; y++)
+			{
+				for (int x = 0; x < 10; x++)
+				{
+					assertEquals(image.getVoxel(x, y, z), result.getVoxel(x, y, z), .01);
+					assertEquals((int) image.getVoxel(x, y, z), rle.get(x, y, z));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks that labels stored as int values are encoded without loss.
+	 */
+	@Test
+	public final void testFromStack_IntLabels()
+	{
+		ImageStack image = IntStackWrapper.createStack(6, 4, 3);
+		Image3D labels3d = new IntStackWrapper(image);
+		labels3d.set(1, 1, 1, (1 << 24) + 1);
+		labels3d.set(2, 1, 1, (1 << 24) + 1);
+		labels3d.set(3, 1, 1, (1 << 24) + 3);
+
+		RunLengthLabelImage rle = RunLengthLabelImage.fromStack(image);
+		assertEquals(2, rle.getRunCount());
+		assertArrayEquals(new int[] { (1 << 24) + 1, (1 << 24) + 3 }, rle.findAllLabels());
+
+		Image3D result = new IntStackWrapper(rle.toStack(24));
+		assertEquals((1 << 24) + 1, result.get(2, 1, 1));
+		assertEquals((1 << 24) + 3, result.get(3, 1, 1));
+	}
+
+	/**
+	 * Compares the measurements computed on runs with the measurements
+	 * computed on voxels.
+	 */
+	@Test
+	public final void testMeasurements()
+	{
+		ImageStack image = createLabelImage();
+		RunLengthLabelImage rle = RunLengthLabelImage.fromStack(image);
+
+		int[] labels = rle.findAllLabels();
+		assertArrayEquals(LabelImages.findAllLabels(image), labels);
+
+		LabelIndex index = new LabelIndex(labels);
+		assertArrayEquals(index.voxelCount(image), rle.voxelCount(labels));
+
+		int[][] boxes = index.boundingBoxes(image);
+		int[][] boxes2 = rle.boundingBoxes(labels);
+		for (int i = 0; i < labels.length; i++)
+		{
+			assertArrayEquals(boxes[i], boxes2[i]);
+		}
+
+		double[][] centroids = GeometricMeasures3D.centroids(image, labels);
+		double[][] centroids2 = rle.centroids(labels);
+		for (int i = 0; i < labels.length; i++)
+		{
+			assertArrayEquals(centroids[i], centroids2[i], 1e-10);
+		}
+	}
+
+	/**
+	 * Compares the moments computed on runs with the moments computed on
+	 * voxels.
+	 */
+	@Test
+	public final void testMoments()
+	{
+		ImageStack image = createLabelImage();
+		RunLengthLabelImage rle = RunLengthLabelImage.fromStack(image);
+		int[] labels = rle.findAllLabels();
+		double[] resol = new double[] { .5, 1.5, 2 };
+
+		double[][] moments = rle.moments(labels, resol);
+		for (int i = 0; i < labels.length; i++)
+		{
+			// compute moments from voxels
+			double[] exp = new double[9];
+			int count = 0;
+			for (int pass = 0; pass < 2; pass++)
+			{
+				for (int z = 0; z < 10; z++)
+				{
+					for (int y = 0; y < 10; y++)
+					{
+						for (int x = 0; x < 10; x++)
+						{
+							if ((int) image.getVoxel(x, y, z) != labels[i])
+								continue;
+							double x2 = x * resol[0];
+							double y2 = y * resol[1];
+							double z2 = z * resol[2];
+							if (pass == 0)
+							{
+								exp[0] += x2;
+								exp[1] += y2;
+								exp[2] += z2;
+								count++;
+								continue;
+							}
+							x2 -= exp[0];
+							y2 -= exp[1];
+							z2 -= exp[2];
+							exp[3] += x2 * x2 / count;
+							exp[4] += y2 * y2 / count;
+							exp[5] += z2 * z2 / count;
+							exp[6] += x2 * y2 / count;
+							exp[7] += x2 * z2 / count;
+							exp[8] += y2 * z2 / count;
+						}
+					}
+				}
+				if (pass == 0)
+				{
+					exp[0] /= count;
+					exp[1] /= count;
+					exp[2] /= count;
+				}
+			}
+			assertArrayEquals(exp, moments[i], 1e-10);
+		}
+	}
+
+	/**
+	 * Compares the number of transitions computed on runs with the number
+	 * of transitions computed on voxels.
+	 */
+	@Test
+	public final void testTransitionsX()
+	{
+		ImageStack image = createLabelImage();
+		RunLengthLabelImage rle = RunLengthLabelImage.fromStack(image);
+		int[] labels = rle.findAllLabels();
+
+		for (boolean countBorder : new boolean[] { true, false })
+		{
+			int[] counts = rle.transitionsX(labels, countBorder);
+			for (int i = 0; i < labels.length; i++)
+			{
+				int label = labels[i];
+				int exp = 0;
+				for (int z = 0; z < 10; z++)
+				{
+					for (int y = 0; y < 10; y++)
+					{
+						if (countBorder && image.getVoxel(0, y, z) == label)
+							exp++;
+						if (countBorder && image.getVoxel(9, y, z) == label)
+							exp++;
+						for (int x = 1; x < 10; x++)
+						{
+							if (image.getVoxel(x - 1, y, z) == label ^ image.getVoxel(x, y, z) == label)
+								exp++;
+						}
+					}
+				}
+				assertEquals(exp, counts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Creates a 10x10x10 label image containing a cube touching the image
+	 * border, a ball, and two touching boxes.
+	 */
+	private static final ImageStack createLabelImage()
+	{
+		ImageStack image = ImageStack.create(10, 10, 10, 8);
+		for (int z = 0; z < 10; z++)
+		{
+			for (int y = 0; y < 10; y++)
+			{
+				for (int x = 0; x < 10; x++)
+				{
+					if (x < 3 && y < 3 && z < 3)
+						image.setVoxel(x, y, z, 2);
+					else if ((x - 6) * (x - 6) + (y - 6) * (y - 6) + (z - 6) * (z - 6) <= 7)
+						image.setVoxel(x, y, z, 5);
+					else if (y == 1 && z > 4 && x > 3)
+						image.setVoxel(x, y, z, x < 7 ? 7 : 9);
+				}
+			}
+		}
+		return image;
+	}
+}
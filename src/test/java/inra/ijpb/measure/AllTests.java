@@ -13,6 +13,7 @@ import org.junit.runners.Suite;
 	GeometricMeasures3DTest.class,
 	GeometryUtilsTest.class,
 	RegionAdjacencyGraphTest.class, 
+	RegionContactsTest.class, 
 	Vector3dTest.class,
 	})
 public class AllTests {
@@ -0,0 +1,96 @@
+package inra.ijpb.measure;
+
+import static org.junit.Assert.*;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+import org.junit.Test;
+
+public class RegionContactsTest
+{
+	/**
+	 * Four regions separated by watershed lines, with values equal to the
+	 * x-coordinate.
+	 */
+	@Test
+	public void testCompute_ImageProcessor_FourRegions()
+	{
+		byte[] data = new byte[]{
+				1, 1, 1, 0, 2, 2, 
+				1, 1, 1, 0, 2, 2, 
+				0, 0, 0, 0, 2, 2, 
+				3, 3, 0, 0, 0, 0,  
+				3, 3, 0, 4, 4, 4,  
+				3, 3, 0, 4, 4, 4};
+		ImageProcessor image = new ByteProcessor(6, 6, data);
+		ImageProcessor values = new FloatProcessor(6, 6);
+		for (int y = 0; y < 6; y++)
+		{
+			for (int x = 0; x < 6; x++)
+			{
+				values.setf(x, y, x);
+			}
+		}
+
+		RegionContacts contacts = RegionContacts.compute(image, values);
+		assertEquals(4, contacts.size());
+
+		int index = contacts.indexOf(2, 1);
+		assertTrue(index >= 0);
+		assertEquals(1, contacts.getLabel1(index));
+		assertEquals(2, contacts.getLabel2(index));
+		assertEquals(2, contacts.getContactSize(index));
+		assertEquals(3, contacts.getMeanValue(index), .01);
+		
+		index = contacts.indexOf(1, 3);
+		assertEquals(2, contacts.getContactSize(index));
+		assertEquals(0, contacts.getMinValue(index), .01);
+		assertEquals(1, contacts.getMaxValue(index), .01);
+
+		assertTrue(contacts.indexOf(2, 4) >= 0);
+		assertTrue(contacts.indexOf(3, 4) >= 0);
+		assertEquals(-1, contacts.indexOf(1, 4));
+		assertEquals(-1, contacts.indexOf(2, 3));
+	}
+
+	/**
+	 * Checks that the adjacencies are the same as the ones computed by the
+	 * RegionAdjacencyGraph class.
+	 */
+	@Test
+	public void testCompute_ImageStack_ConsistentWithLabelPairs()
+	{
+		ImageStack image = ImageStack.create(7, 6, 5, 8);
+		for (int z = 0; z < 5; z++)
+		{
+			for (int y = 0; y < 6; y++)
+			{
+				for (int x = 0; x < 7; x++)
+				{
+					if (x == 3 || z == 2)
+						continue;
+					int label = (x < 3 ? 1 : 2) + (z < 2 ? 0 : 2);
+					image.setVoxel(x, y, z, label);
+				}
+			}
+		}
+
+		RegionContacts contacts = RegionContacts.compute(image, null);
+		assertEquals(contacts.size(), contacts.getLabelPairs().size());
+		
+		// regions 1 and 2 in first slices, regions 3 and 4 in last slices
+		assertTrue(contacts.indexOf(1, 2) >= 0);
+		assertTrue(contacts.indexOf(3, 4) >= 0);
+		assertTrue(contacts.indexOf(1, 3) >= 0);
+		assertTrue(contacts.indexOf(2, 4) >= 0);
+		assertEquals(-1, contacts.indexOf(2, 3));
+
+		// contact between 1 and 2 is located on x = 3, for z in {0, 1}
+		assertEquals(2 * 6, contacts.getContactSize(contacts.indexOf(1, 2)));
+		// contact between 1 and 3 is located on z = 2, for x in {0, 1, 2}
+		assertEquals(3 * 6, contacts.getContactSize(contacts.indexOf(1, 3)));
+		assertTrue(Double.isNaN(contacts.getMeanValue(0)));
+	}
+}
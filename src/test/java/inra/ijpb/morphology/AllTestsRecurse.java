@@ -10,7 +10,8 @@ import org.junit.runners.Suite;
 	AllTests.class,
 	inra.ijpb.morphology.extrema.AllTests.class,
 	inra.ijpb.morphology.geodrec.AllTests.class,
-	inra.ijpb.morphology.strel.AllTests.class
+	inra.ijpb.morphology.strel.AllTests.class,
+	inra.ijpb.morphology.tree.AllTests.class
 	})
 public class AllTestsRecurse {
   //nothing
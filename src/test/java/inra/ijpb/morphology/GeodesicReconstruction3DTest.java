@@ -2,6 +2,7 @@ package inra.ijpb.morphology;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import ij.IJ;
 import ij.ImagePlus;
@@ -201,6 +202,23 @@ public class GeodesicReconstruction3DTest {
 		}
 	}
 	
+	/**
+	 * Checks that killBorders and fillHoles return null when the thread is
+	 * interrupted, instead of processing a null reconstruction.
+	 */
+	@Test
+	public final void test_killBordersFillHoles_Interrupted() {
+		ImageStack image = createInvertedLeveledCubeGraphImage();
+
+		Thread.currentThread().interrupt();
+		try {
+			assertNull(GeodesicReconstruction3D.killBorders(image));
+			assertNull(GeodesicReconstruction3D.fillHoles(image));
+		} finally {
+			Thread.interrupted();
+		}
+	}
+
 	@Test
 	public final void test_reconstructByErosion_LeveledCubeGraphC6() {
 		ImageStack mask = createInvertedLeveledCubeGraphImage();
@@ -9,6 +9,9 @@ import static org.junit.Assert.assertTrue;
 import ij.IJ;
 import ij.ImagePlus;
 import ij.ImageStack;
+import inra.ijpb.data.image.DirectImage3D;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
 
 import org.junit.Test;
 
@@ -342,6 +345,42 @@ public class MinimaAndMaxima3DTest {
 		}
 	}
 
+	/**
+	 * Checks that minima imposition gives the same result when intermediate
+	 * images are stored out of the heap.
+	 */
+	@Test
+	public final void testImposeMinima_DirectImage3D() {
+		ImageStack image = ImageStack.create(12, 11, 10, 8);
+		for (int z = 0; z < 10; z++) {
+			for (int y = 0; y < 11; y++) {
+				for (int x = 0; x < 12; x++) {
+					image.setVoxel(x, y, z, (x * 7 + y * 13 + z * 29) % 150 + 20);
+				}
+			}
+		}
+		
+		for (int conn : new int[] { 6, 26 }) {
+			ImageStack minima = MinimaAndMaxima3D.extendedMinima(image, 10, conn);
+			ImageStack expected = MinimaAndMaxima3D.imposeMinima(image, minima, conn);
+
+			DirectImage3D direct = DirectImage3D.fromStack(image);
+			Image3D result = MinimaAndMaxima3D.imposeMinima(direct,
+					Images3D.createWrapper(minima), conn, DirectImage3D.FACTORY);
+			assertTrue(result instanceof DirectImage3D);
+			
+			for (int z = 0; z < 10; z++) {
+				for (int y = 0; y < 11; y++) {
+					for (int x = 0; x < 12; x++) {
+						assertEquals(expected.getVoxel(x, y, z), result.getValue(x, y, z), .01);
+					}
+				}
+			}
+			direct.release();
+			((DirectImage3D) result).release();
+		}
+	}
+
 	private ImageStack createLeveledCubeGraphImage() {
 		ImageStack stack = createCubeGraphImage();
 		stack.setVoxel(5, 1, 1, 224);
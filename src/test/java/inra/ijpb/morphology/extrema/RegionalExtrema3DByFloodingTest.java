@@ -4,7 +4,12 @@
 package inra.ijpb.morphology.extrema;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import ij.ImageStack;
+import inra.ijpb.data.OffsetNeighborhood3D;
+import inra.ijpb.data.image.ChunkedImage3D;
+
+import java.io.IOException;
 
 import org.junit.Test;
 
@@ -14,6 +19,32 @@ import org.junit.Test;
  */
 public class RegionalExtrema3DByFloodingTest {
 
+	/**
+	 * Computes the neighborhood minimum of voxels located beyond linear index
+	 * 2^31 within a large chunked image, with and without mask.
+	 */
+	@Test
+	public final void testNeighborhoodMin_LargeImage() throws IOException {
+		int sizeX = 2000, sizeY = 2000, sizeZ = 600;
+		ChunkedImage3D image = ChunkedImage3D.create(sizeX, sizeY, sizeZ, 8);
+		ChunkedImage3D mask = ChunkedImage3D.create(sizeX, sizeY, sizeZ, 8);
+		OffsetNeighborhood3D neigh = OffsetNeighborhood3D.create(sizeX, sizeY, sizeZ, 26);
+		assertFalse(neigh.isLinearIndexable());
+
+		image.set(1999, 1999, 599, 10);
+		image.set(1997, 1997, 597, 20);
+		image.set(1000, 1000, 500, 30);
+		mask.set(1999, 1999, 599, 255);
+
+		// maxima are computed using sign -1
+		assertEquals(-10, RegionalExtrema3DByFlooding.neighborhoodMin(image, null, neigh, 1999, 1999, 599, -1), 1e-10);
+		assertEquals(-20, RegionalExtrema3DByFlooding.neighborhoodMin(image, null, neigh, 1998, 1998, 598, -1), 1e-10);
+		assertEquals(-10, RegionalExtrema3DByFlooding.neighborhoodMin(image, mask, neigh, 1998, 1998, 598, -1), 1e-10);
+		assertEquals(0, RegionalExtrema3DByFlooding.neighborhoodMin(image, null, neigh, 1000, 1000, 500, 1), 1e-10);
+		image.close();
+		mask.close();
+	}
+
 	/**
 	 * Test method for {@link inra.ijpb.morphology.extrema.RegionalExtrema3DByFlooding#applyTo(ij.ImageStack)}.
 	 */
@@ -7,9 +7,12 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
 	// generic classes
+	BorderConnectedComponentsTest.class,
 	GeodesicReconstructionHybridTest.class,
+	IncrementalGeodesicReconstructionTest.class,
 	GeodesicReconstructionScanningTest.class,
 	GeodesicReconstruction3DHybrid0Gray8Test.class,
+	GeodesicReconstruction3DHybrid0Gray16Test.class,
 	GeodesicReconstruction3DHybrid1Image3DTest.class,
 	GeodesicReconstructionByDilation3DGray8Test.class,
 	GeodesicReconstructionByDilation3DScanningGray8Test.class,
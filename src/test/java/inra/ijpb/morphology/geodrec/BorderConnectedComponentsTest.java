@@ -0,0 +1,201 @@
+package inra.ijpb.morphology.geodrec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.morphology.GeodesicReconstruction;
+import inra.ijpb.morphology.GeodesicReconstruction3D;
+
+import org.junit.Test;
+
+public class BorderConnectedComponentsTest
+{
+	/**
+	 * Checks the detection of binary images.
+	 */
+	@Test
+	public final void testIsBinary()
+	{
+		ImageProcessor image = createRandomImage(10, 10, 0.5, 1);
+		assertTrue(BorderConnectedComponents.isBinary(image));
+
+		image.set(3, 3, 100);
+		assertFalse(BorderConnectedComponents.isBinary(image));
+	}
+
+	/**
+	 * Compares holes filling and border removal with the results of geodesic
+	 * reconstruction, for both planar connectivities.
+	 */
+	@Test
+	public final void testFillHolesKillBorders_CompareWithReconstruction()
+	{
+		ImageProcessor image = createRandomImage(60, 50, 0.5, 2);
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+
+		for (int conn : new int[] { 4, 8 })
+		{
+			// reference for holes filling
+			ImageProcessor markers = image.duplicate();
+			for (int y = 1; y < sizeY - 1; y++)
+			{
+				for (int x = 1; x < sizeX - 1; x++)
+				{
+					markers.set(x, y, 255);
+				}
+			}
+			ImageProcessor expected = GeodesicReconstruction.reconstructByErosion(markers, image, conn);
+			assertSameImages(expected, BorderConnectedComponents.fillHoles(image, conn));
+
+			// reference for border removal
+			markers = image.duplicate();
+			for (int y = 1; y < sizeY - 1; y++)
+			{
+				for (int x = 1; x < sizeX - 1; x++)
+				{
+					markers.set(x, y, 0);
+				}
+			}
+			ImageProcessor rec = GeodesicReconstruction.reconstructByDilation(markers, image, conn);
+			ImageProcessor result = BorderConnectedComponents.killBorders(image, conn);
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					assertEquals(image.get(x, y) - rec.get(x, y), result.get(x, y));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks that the automatic dispatch gives the expected result on a
+	 * simple binary image containing a hole.
+	 */
+	@Test
+	public final void testFillHoles_Dispatch()
+	{
+		ImageProcessor image = new ByteProcessor(10, 10);
+		for (int y = 2; y < 8; y++)
+		{
+			for (int x = 2; x < 8; x++)
+			{
+				image.set(x, y, 255);
+			}
+		}
+		image.set(4, 4, 0);
+		image.set(5, 5, 0);
+		image.set(9, 9, 255);
+
+		ImageProcessor filled = GeodesicReconstruction.fillHoles(image);
+		assertEquals(255, filled.get(4, 4));
+		assertEquals(255, filled.get(5, 5));
+		assertEquals(0, filled.get(0, 0));
+
+		ImageProcessor killed = GeodesicReconstruction.killBorders(image);
+		assertEquals(0, killed.get(9, 9));
+		assertEquals(255, killed.get(2, 2));
+	}
+
+	/**
+	 * Compares 3D holes filling and border removal with the results of
+	 * geodesic reconstruction, for both 3D connectivities.
+	 */
+	@Test
+	public final void testFillHolesKillBorders3D_CompareWithReconstruction()
+	{
+		ImageStack image = new ImageStack(15, 12);
+		for (int z = 0; z < 10; z++)
+		{
+			image.addSlice(createRandomImage(15, 12, 0.6, 10 + z));
+		}
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+		int sizeZ = image.getSize();
+
+		for (int conn : new int[] { 6, 26 })
+		{
+			ImageStack markers = image.duplicate();
+			for (int z = 1; z < sizeZ - 1; z++)
+			{
+				for (int y = 1; y < sizeY - 1; y++)
+				{
+					for (int x = 1; x < sizeX - 1; x++)
+					{
+						markers.setVoxel(x, y, z, 255);
+					}
+				}
+			}
+			ImageStack expected = GeodesicReconstruction3D.reconstructByErosion(markers, image, conn);
+			assertSameStacks(expected, BorderConnectedComponents.fillHoles(image, conn));
+
+			markers = image.duplicate();
+			for (int z = 1; z < sizeZ - 1; z++)
+			{
+				for (int y = 1; y < sizeY - 1; y++)
+				{
+					for (int x = 1; x < sizeX - 1; x++)
+					{
+						markers.setVoxel(x, y, z, 0);
+					}
+				}
+			}
+			ImageStack rec = GeodesicReconstruction3D.reconstructByDilation(markers, image, conn);
+			ImageStack result = BorderConnectedComponents.killBorders(image, conn);
+			for (int z = 0; z < sizeZ; z++)
+			{
+				for (int y = 0; y < sizeY; y++)
+				{
+					for (int x = 0; x < sizeX; x++)
+					{
+						assertEquals(image.getVoxel(x, y, z) - rec.getVoxel(x, y, z),
+								result.getVoxel(x, y, z), .01);
+					}
+				}
+			}
+		}
+	}
+
+	private static final ImageProcessor createRandomImage(int sizeX, int sizeY,
+			double density, long seed)
+	{
+		Random random = new Random(seed);
+		ImageProcessor image = new ByteProcessor(sizeX, sizeY);
+		for (int y = 0; y < sizeY; y++)
+		{
+			for (int x = 0; x < sizeX; x++)
+			{
+				if (random.nextDouble() < density)
+					image.set(x, y, 255);
+			}
+		}
+		return image;
+	}
+
+	private static final void assertSameImages(ImageProcessor expected, ImageProcessor actual)
+	{
+		for (int y = 0; y < expected.getHeight(); y++)
+		{
+			for (int x = 0; x < expected.getWidth(); x++)
+			{
+				assertEquals(expected.get(x, y), actual.get(x, y));
+			}
+		}
+	}
+
+	private static final void assertSameStacks(ImageStack expected, ImageStack actual)
+	{
+		assertEquals(expected.getSize(), actual.getSize());
+		for (int z = 0; z < expected.getSize(); z++)
+		{
+			assertSameImages(expected.getProcessor(z + 1), actual.getProcessor(z + 1));
+		}
+	}
+}
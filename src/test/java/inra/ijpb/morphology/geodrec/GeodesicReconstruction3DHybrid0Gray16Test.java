@@ -0,0 +1,102 @@
+package inra.ijpb.morphology.geodrec;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import ij.ImageStack;
+
+import org.junit.Test;
+
+public class GeodesicReconstruction3DHybrid0Gray16Test
+{
+	/**
+	 * Compares reconstruction by dilation with the scanning algorithm, using
+	 * values greater than 255.
+	 */
+	@Test
+	public final void testDilation_CompareWithScanning()
+	{
+		ImageStack mask = createRandomStack(15, 12, 10, 1);
+		ImageStack marker = ImageStack.create(15, 12, 10, 16);
+		marker.setVoxel(7, 6, 5, 60000);
+		marker.setVoxel(1, 1, 1, 2000);
+
+		for (int conn : new int[] { 6, 26 })
+		{
+			ImageStack expected = new GeodesicReconstructionByDilation3DScanning(conn)
+					.applyTo(marker, mask);
+			GeodesicReconstruction3DHybrid0Gray16 algo = new GeodesicReconstruction3DHybrid0Gray16(
+					GeodesicReconstructionType.BY_DILATION, conn);
+			ImageStack result = algo.applyTo(marker, mask);
+
+			assertEquals(16, result.getBitDepth());
+			assertSameStacks(expected, result);
+		}
+	}
+
+	/**
+	 * Compares reconstruction by erosion with the scanning algorithm, using
+	 * values greater than 255.
+	 */
+	@Test
+	public final void testErosion_CompareWithScanning()
+	{
+		ImageStack mask = createRandomStack(15, 12, 10, 2);
+		ImageStack marker = ImageStack.create(15, 12, 10, 16);
+		for (int z = 0; z < 10; z++)
+		{
+			for (int y = 0; y < 12; y++)
+			{
+				for (int x = 0; x < 15; x++)
+				{
+					marker.setVoxel(x, y, z, 65535);
+				}
+			}
+		}
+		marker.setVoxel(7, 6, 5, 100);
+
+		for (int conn : new int[] { 6, 26 })
+		{
+			ImageStack expected = new GeodesicReconstructionByErosion3DScanning(conn)
+					.applyTo(marker, mask);
+			GeodesicReconstruction3DHybrid0Gray16 algo = new GeodesicReconstruction3DHybrid0Gray16(
+					GeodesicReconstructionType.BY_EROSION, conn);
+			ImageStack result = algo.applyTo(marker, mask);
+
+			assertSameStacks(expected, result);
+		}
+	}
+
+	private static final ImageStack createRandomStack(int sizeX, int sizeY,
+			int sizeZ, long seed)
+	{
+		Random random = new Random(seed);
+		ImageStack image = ImageStack.create(sizeX, sizeY, sizeZ, 16);
+		for (int z = 0; z < sizeZ; z++)
+		{
+			for (int y = 0; y < sizeY; y++)
+			{
+				for (int x = 0; x < sizeX; x++)
+				{
+					image.setVoxel(x, y, z, random.nextInt(65536));
+				}
+			}
+		}
+		return image;
+	}
+
+	private static final void assertSameStacks(ImageStack expected, ImageStack actual)
+	{
+		for (int z = 0; z < expected.getSize(); z++)
+		{
+			for (int y = 0; y < expected.getHeight(); y++)
+			{
+				for (int x = 0; x < expected.getWidth(); x++)
+				{
+					assertEquals(expected.getVoxel(x, y, z), actual.getVoxel(x, y, z), .01);
+				}
+			}
+		}
+	}
+}
@@ -183,6 +183,45 @@ public class GeodesicReconstruction3DHybrid1Image3DTest {
 	}
 	
 
+	/**
+	 * Compares the results of the line-based scans with the gray8-specific
+	 * implementation, for both reconstruction types and connectivities.
+	 */
+	@Test
+	public final void testCompareWithHybrid0Gray8() {
+		int sizeX = 17;
+		int sizeY = 13;
+		int sizeZ = 11;
+		ImageStack mask = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+		ImageStack marker = ImageStack.create(sizeX, sizeY, sizeZ, 8);
+		for (int z = 0; z < sizeZ; z++) {
+			for (int y = 0; y < sizeY; y++) {
+				for (int x = 0; x < sizeX; x++) {
+					int value = (x * 37 + y * 101 + z * 53 + x * y * z) % 251;
+					mask.setVoxel(x, y, z, value);
+					marker.setVoxel(x, y, z, (value * 7 + x + z) % 256);
+				}
+			}
+		}
+
+		GeodesicReconstructionType[] types = new GeodesicReconstructionType[] {
+				GeodesicReconstructionType.BY_DILATION,
+				GeodesicReconstructionType.BY_EROSION };
+		for (GeodesicReconstructionType type : types) {
+			for (int conn : new int[] { 6, 26 }) {
+				GeodesicReconstruction3DHybrid0Gray8 ref = 
+						new GeodesicReconstruction3DHybrid0Gray8(type, conn);
+				ImageStack expected = ref.applyTo(marker, mask);
+
+				GeodesicReconstruction3DHybrid1Image3D algo = 
+						new GeodesicReconstruction3DHybrid1Image3D(type, conn);
+				ImageStack result = algo.applyTo(marker, mask);
+
+				assertStackEquals(expected, result);
+			}
+		}
+	}
+
 	private ImageStack createCubicMeshImage() {
 		int sizeX = 20;
 		int sizeY = 20;
@@ -0,0 +1,154 @@
+package inra.ijpb.morphology.geodrec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.morphology.GeodesicReconstruction;
+import inra.ijpb.morphology.GeodesicReconstruction3D;
+
+import org.junit.Test;
+
+public class IncrementalGeodesicReconstructionTest
+{
+	/**
+	 * Checks that adding markers one by one gives the same result as the
+	 * reconstruction of all the markers, for both connectivities.
+	 */
+	@Test
+	public final void testAddMarker_CompareWithReconstruction()
+	{
+		ImageProcessor mask = createRandomImage(40, 30, 3);
+		ImageProcessor marker = new ByteProcessor(40, 30);
+		marker.set(5, 5, 200);
+
+		for (int conn : new int[] { 4, 8 })
+		{
+			IncrementalGeodesicReconstruction algo = new IncrementalGeodesicReconstruction(
+					marker, mask, GeodesicReconstructionType.BY_DILATION, conn);
+
+			algo.addMarker(30, 20, 255);
+			algo.addMarker(12, 25, 150);
+
+			ImageProcessor allMarkers = marker.duplicate();
+			allMarkers.set(30, 20, 255);
+			allMarkers.set(12, 25, 150);
+			ImageProcessor expected = GeodesicReconstruction.reconstructByDilation(
+					allMarkers, mask, conn);
+
+			assertSameImages(expected, algo.getResult());
+		}
+	}
+
+	/**
+	 * Checks incremental reconstruction by erosion.
+	 */
+	@Test
+	public final void testAddMarkers_Erosion()
+	{
+		ImageProcessor mask = createRandomImage(40, 30, 4);
+		ImageProcessor marker = new ByteProcessor(40, 30);
+		marker.setValue(255);
+		marker.fill();
+		marker.set(5, 5, 10);
+
+		IncrementalGeodesicReconstruction algo = new IncrementalGeodesicReconstruction(
+				marker, mask, GeodesicReconstructionType.BY_EROSION, 4);
+
+		ImageProcessor newMarkers = new ByteProcessor(40, 30);
+		newMarkers.setValue(255);
+		newMarkers.fill();
+		newMarkers.set(35, 25, 0);
+		assertTrue(algo.addMarkers(newMarkers));
+
+		ImageProcessor allMarkers = marker.duplicate();
+		allMarkers.set(35, 25, 0);
+		ImageProcessor expected = GeodesicReconstruction.reconstructByErosion(
+				allMarkers, mask, 4);
+		assertSameImages(expected, algo.getResult());
+	}
+
+	/**
+	 * Checks that adding a marker below the current result does not modify
+	 * the result.
+	 */
+	@Test
+	public final void testAddMarker_NoModification()
+	{
+		ImageProcessor mask = new ByteProcessor(10, 10);
+		mask.setValue(100);
+		mask.fill();
+		ImageProcessor marker = new ByteProcessor(10, 10);
+		marker.set(2, 2, 80);
+
+		IncrementalGeodesicReconstruction algo = new IncrementalGeodesicReconstruction(marker, mask);
+		assertEquals(80, algo.getResult().get(9, 9));
+
+		assertFalse(algo.addMarker(5, 5, 50));
+		assertTrue(algo.addMarker(5, 5, 255));
+		assertEquals(100, algo.getResult().get(0, 9));
+	}
+
+	/**
+	 * Checks that adding markers one by one gives the same result as the 3D
+	 * reconstruction of all the markers, for both connectivities.
+	 */
+	@Test
+	public final void testAddMarker3D_CompareWithReconstruction()
+	{
+		ImageStack mask = new ImageStack(15, 12);
+		for (int z = 0; z < 8; z++)
+		{
+			mask.addSlice(createRandomImage(15, 12, 10 + z));
+		}
+		ImageStack marker = ImageStack.create(15, 12, 8, 8);
+		marker.setVoxel(2, 2, 2, 200);
+
+		for (int conn : new int[] { 6, 26 })
+		{
+			IncrementalGeodesicReconstruction3D algo = new IncrementalGeodesicReconstruction3D(
+					marker, mask, GeodesicReconstructionType.BY_DILATION, conn);
+			algo.addMarker(12, 10, 6, 255);
+
+			ImageStack allMarkers = marker.duplicate();
+			allMarkers.setVoxel(12, 10, 6, 255);
+			ImageStack expected = GeodesicReconstruction3D.reconstructByDilation(
+					allMarkers, mask, conn);
+
+			for (int z = 0; z < 8; z++)
+			{
+				assertSameImages(expected.getProcessor(z + 1), algo.getResult().getProcessor(z + 1));
+			}
+		}
+	}
+
+	private static final ImageProcessor createRandomImage(int sizeX, int sizeY, long seed)
+	{
+		Random random = new Random(seed);
+		ImageProcessor image = new ByteProcessor(sizeX, sizeY);
+		for (int y = 0; y < sizeY; y++)
+		{
+			for (int x = 0; x < sizeX; x++)
+			{
+				image.set(x, y, random.nextInt(256));
+			}
+		}
+		return image;
+	}
+
+	private static final void assertSameImages(ImageProcessor expected, ImageProcessor actual)
+	{
+		for (int y = 0; y < expected.getHeight(); y++)
+		{
+			for (int x = 0; x < expected.getWidth(); x++)
+			{
+				assertEquals(expected.get(x, y), actual.get(x, y));
+			}
+		}
+	}
+}
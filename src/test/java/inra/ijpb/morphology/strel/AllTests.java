@@ -11,6 +11,7 @@ import org.junit.runners.Suite;
 	LinearVerticalStrelTest.class,
 	LinearDiagDownStrelTest.class, 
 	LinearDiagUpStrelTest.class,
+	LinearDepthStrel3DTest.class,
 	// compound of linear 
 	SquareStrelTest.class, 
 	OctagonStrelTest.class,
@@ -0,0 +1,69 @@
+package inra.ijpb.morphology.strel;
+
+import static org.junit.Assert.assertEquals;
+import ij.ImageStack;
+
+import org.junit.Test;
+
+public class LinearDepthStrel3DTest
+{
+	/**
+	 * Compares dilation and erosion of a gray8 stack with a brute force
+	 * computation.
+	 */
+	@Test
+	public void testDilationErosion_Gray8()
+	{
+		checkDilationErosion(8);
+	}
+
+	/**
+	 * Compares dilation and erosion of a float stack with a brute force
+	 * computation.
+	 */
+	@Test
+	public void testDilationErosion_Float()
+	{
+		checkDilationErosion(32);
+	}
+
+	private static final void checkDilationErosion(int bitDepth)
+	{
+		ImageStack stack = ImageStack.create(4, 3, 9, bitDepth);
+		for (int z = 0; z < 9; z++)
+		{
+			for (int y = 0; y < 3; y++)
+			{
+				for (int x = 0; x < 4; x++)
+				{
+					stack.setVoxel(x, y, z, (x * 31 + y * 17 + z * 53) % 200 + 10);
+				}
+			}
+		}
+
+		LinearDepthStrel3D strel = new LinearDepthStrel3D(4, 1);
+		ImageStack dilated = strel.dilation(stack);
+		ImageStack eroded = strel.erosion(stack);
+
+		for (int z = 0; z < 9; z++)
+		{
+			for (int y = 0; y < 3; y++)
+			{
+				for (int x = 0; x < 4; x++)
+				{
+					double vmax = Double.NEGATIVE_INFINITY;
+					double vmin = Double.POSITIVE_INFINITY;
+					for (int dz = -1; dz <= 2; dz++)
+					{
+						if (z + dz < 0 || z + dz >= 9)
+							continue;
+						vmax = Math.max(vmax, stack.getVoxel(x, y, z + dz));
+						vmin = Math.min(vmin, stack.getVoxel(x, y, z + dz));
+					}
+					assertEquals(vmax, dilated.getVoxel(x, y, z), .01);
+					assertEquals(vmin, eroded.getVoxel(x, y, z), .01);
+				}
+			}
+		}
+	}
+}
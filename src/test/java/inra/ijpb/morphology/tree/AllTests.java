@@ -0,0 +1,15 @@
+package inra.ijpb.morphology.tree;
+
+
+import org.junit.runner.RunWith;
+import org.junit.runners.Suite;
+
+@RunWith(Suite.class)
+@Suite.SuiteClasses({
+	// generic classes
+	ComponentTreeTest.class,
+	ExtendedExtremaTest.class
+	})
+public class AllTests {
+  //nothing
+}
@@ -0,0 +1,248 @@
+package inra.ijpb.morphology.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import org.junit.Test;
+
+public class ComponentTreeTest
+{
+	/**
+	 * Checks the nodes and attributes of the max-tree of a simple image.
+	 */
+	@Test
+	public final void testMaxTree_SimpleImage()
+	{
+		// two peaks of different sizes over a background
+		ImageProcessor image = new ByteProcessor(8, 5);
+		image.setValue(10);
+		image.fill();
+		for (int y = 1; y < 4; y++)
+		{
+			image.set(1, y, 50);
+			image.set(2, y, 50);
+		}
+		image.set(5, 2, 80);
+
+		ComponentTree tree = ComponentTree.maxTree(image, 4);
+
+		// root, large peak and small peak
+		assertEquals(3, tree.getNodeCount());
+		int root = tree.getRoot();
+		assertEquals(10, tree.getLevel(root));
+		assertEquals(40, tree.getAreas()[root]);
+
+		int[] parents = tree.getParents();
+		int peak1 = parents[2 * 8 + 1];
+		assertEquals(6, tree.getAreas()[peak1]);
+		assertEquals(40, tree.getHeights()[peak1]);
+		int[][] boxes = tree.getBoundingBoxes();
+		assertEquals(1, boxes[0][peak1]);
+		assertEquals(2, boxes[1][peak1]);
+		assertEquals(1, boxes[2][peak1]);
+		assertEquals(3, boxes[3][peak1]);
+
+		int peak2 = 2 * 8 + 5;
+		assertTrue(tree.isCanonical(peak2));
+		assertEquals(1, tree.getAreas()[peak2]);
+		assertEquals(70, tree.getHeights()[peak2]);
+	}
+
+	/**
+	 * Compares area opening with a brute force computation, for both
+	 * connectivities.
+	 */
+	@Test
+	public final void testAreaOpening_CompareWithThresholdDecomposition()
+	{
+		ImageProcessor image = createRandomImage(20, 15, 16, 1);
+		for (int conn : new int[] { 4, 8 })
+		{
+			ComponentTree tree = ComponentTree.maxTree(image, conn);
+			ImageProcessor result = tree.filter(
+					tree.selectNodes(ComponentTree.Attribute.AREA, 7),
+					ComponentTree.Rule.DIRECT);
+
+			ImageProcessor expected = bruteForceAreaOpening(image, 7, conn);
+			assertSameImages(expected, result);
+		}
+	}
+
+	/**
+	 * Checks that the min-tree of an image corresponds to the max-tree of the
+	 * inverted image.
+	 */
+	@Test
+	public final void testAreaClosing_Duality()
+	{
+		ImageProcessor image = createRandomImage(20, 15, 16, 2);
+		ImageProcessor inverted = image.duplicate();
+		inverted.invert();
+
+		ComponentTree minTree = ComponentTree.minTree(image, 4);
+		ImageProcessor closing = minTree.filter(
+				minTree.selectNodes(ComponentTree.Attribute.AREA, 5),
+				ComponentTree.Rule.DIRECT);
+		ImageProcessor opening = bruteForceAreaOpening(inverted, 5, 4);
+		opening.invert();
+
+		assertSameImages(opening, closing);
+	}
+
+	/**
+	 * Checks the subtractive rule, that lowers the descendants of removed
+	 * nodes.
+	 */
+	@Test
+	public final void testSubtractiveRule()
+	{
+		// a large plateau at 50, with a single peak at 80
+		ImageProcessor image = new ShortProcessor(5, 5);
+		for (int y = 1; y < 4; y++)
+		{
+			for (int x = 1; x < 4; x++)
+			{
+				image.set(x, y, 50);
+			}
+		}
+		image.set(2, 2, 80);
+
+		ComponentTree tree = ComponentTree.maxTree(image, 4);
+		boolean[] keep = tree.selectNodes(ComponentTree.Attribute.HEIGHT, 40);
+		ImageProcessor direct = tree.filter(keep, ComponentTree.Rule.DIRECT);
+		ImageProcessor subtractive = tree.filter(keep, ComponentTree.Rule.SUBTRACTIVE);
+
+		// the plateau has height 80, and the peak has height 30
+		assertEquals(50, direct.get(1, 1));
+		assertEquals(50, direct.get(2, 2));
+		assertEquals(50, subtractive.get(1, 1));
+		assertEquals(50, subtractive.get(2, 2));
+
+		// remove the plateau but keep the peak
+		keep = new boolean[25];
+		keep[tree.getRoot()] = true;
+		keep[2 * 5 + 2] = true;
+		direct = tree.filter(keep, ComponentTree.Rule.DIRECT);
+		subtractive = tree.filter(keep, ComponentTree.Rule.SUBTRACTIVE);
+		assertEquals(0, direct.get(1, 1));
+		assertEquals(80, direct.get(2, 2));
+		assertEquals(0, subtractive.get(1, 1));
+		assertEquals(30, subtractive.get(2, 2));
+	}
+
+	/**
+	 * Compares 3D max-tree filtering on a single slice stack with planar
+	 * filtering.
+	 */
+	@Test
+	public final void testVolumeOpening_SingleSlice()
+	{
+		ImageProcessor image = createRandomImage(12, 10, 256, 3);
+		ImageStack stack = new ImageStack(12, 10);
+		stack.addSlice(image);
+
+		ComponentTree tree2d = ComponentTree.maxTree(image, 8);
+		ComponentTree tree3d = ComponentTree.maxTree(stack, 26);
+		ImageProcessor expected = tree2d.filter(
+				tree2d.selectNodes(ComponentTree.Attribute.AREA, 4),
+				ComponentTree.Rule.DIRECT);
+		ImageStack result = tree3d.filterStack(
+				tree3d.selectNodes(ComponentTree.Attribute.AREA, 4),
+				ComponentTree.Rule.DIRECT);
+
+		assertSameImages(expected, result.getProcessor(1));
+	}
+
+	/**
+	 * Computes area opening by threshold decomposition.
+	 */
+	private static final ImageProcessor bruteForceAreaOpening(ImageProcessor image,
+			int minArea, int conn)
+	{
+		int sizeX = image.getWidth();
+		int sizeY = image.getHeight();
+		ImageProcessor result = new ByteProcessor(sizeX, sizeY);
+		for (int t = 1; t < 256; t++)
+		{
+			boolean[] visited = new boolean[sizeX * sizeY];
+			for (int i = 0; i < sizeX * sizeY; i++)
+			{
+				if (visited[i] || image.get(i) < t)
+					continue;
+
+				// collect the component containing current pixel
+				int[] component = new int[sizeX * sizeY];
+				int count = 0;
+				Deque<Integer> queue = new ArrayDeque<Integer>();
+				queue.add(i);
+				visited[i] = true;
+				while (!queue.isEmpty())
+				{
+					int p = queue.removeFirst();
+					component[count++] = p;
+					int x = p % sizeX;
+					int y = p / sizeX;
+					for (int dy = -1; dy <= 1; dy++)
+					{
+						for (int dx = -1; dx <= 1; dx++)
+						{
+							if (conn == 4 && dx != 0 && dy != 0)
+								continue;
+							int x2 = x + dx;
+							int y2 = y + dy;
+							if (x2 < 0 || x2 >= sizeX || y2 < 0 || y2 >= sizeY)
+								continue;
+							int q = y2 * sizeX + x2;
+							if (!visited[q] && image.get(q) >= t)
+							{
+								visited[q] = true;
+								queue.add(q);
+							}
+						}
+					}
+				}
+
+				if (count >= minArea)
+				{
+					for (int k = 0; k < count; k++)
+					{
+						result.set(component[k], t);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	private static final ImageProcessor createRandomImage(int sizeX, int sizeY,
+			int nLevels, long seed)
+	{
+		Random random = new Random(seed);
+		ImageProcessor image = new ByteProcessor(sizeX, sizeY);
+		for (int i = 0; i < sizeX * sizeY; i++)
+		{
+			image.set(i, random.nextInt(nLevels) * (256 / nLevels));
+		}
+		return image;
+	}
+
+	private static final void assertSameImages(ImageProcessor expected, ImageProcessor actual)
+	{
+		for (int y = 0; y < expected.getHeight(); y++)
+		{
+			for (int x = 0; x < expected.getWidth(); x++)
+			{
+				assertEquals("Pixel (" + x + "," + y + ")", expected.get(x, y), actual.get(x, y));
+			}
+		}
+	}
+}
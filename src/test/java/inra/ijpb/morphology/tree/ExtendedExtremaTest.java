@@ -0,0 +1,128 @@
+package inra.ijpb.morphology.tree;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import inra.ijpb.morphology.MinimaAndMaxima;
+import inra.ijpb.morphology.MinimaAndMaxima3D;
+
+import org.junit.Test;
+
+public class ExtendedExtremaTest
+{
+	/**
+	 * Checks the dynamics of the minima of a simple image.
+	 */
+	@Test
+	public final void testGetDynamics_SimpleImage()
+	{
+		// two basins with depth 40 and 100 below a plateau at 150
+		ImageProcessor image = new ByteProcessor(7, 3);
+		image.setValue(150);
+		image.fill();
+		image.set(1, 1, 110);
+		image.set(5, 1, 50);
+
+		ExtendedExtrema algo = ExtendedExtrema.minima(image, 4);
+		int[] dynamics = algo.getDynamics();
+		assertEquals(40, dynamics[1 * 7 + 1]);
+		assertEquals(Integer.MAX_VALUE, dynamics[1 * 7 + 5]);
+
+		assertEquals(255, algo.extendedExtrema(30).get(1, 1));
+		assertEquals(0, algo.extendedExtrema(40).get(1, 1));
+		assertEquals(255, algo.extendedExtrema(40).get(5, 1));
+	}
+
+	/**
+	 * Compares extended minima with the results obtained by geodesic
+	 * reconstruction, for several values of the dynamic. The dynamic is kept
+	 * small enough to avoid saturation of the marker image.
+	 */
+	@Test
+	public final void testExtendedMinima_CompareWithReconstruction()
+	{
+		ImageProcessor image = createRandomImage(25, 20, 1);
+		for (int conn : new int[] { 4, 8 })
+		{
+			ExtendedExtrema minima = ExtendedExtrema.minima(image, conn);
+			for (int h : new int[] { 0, 1, 5, 20, 60, 100 })
+			{
+				assertSameImages(MinimaAndMaxima.extendedMinima(image, h, conn),
+						minima.extendedExtrema(h));
+			}
+		}
+	}
+
+	/**
+	 * Checks that extended maxima correspond to the extended minima of the
+	 * inverted image.
+	 */
+	@Test
+	public final void testExtendedMaxima_Duality()
+	{
+		ImageProcessor image = createRandomImage(25, 20, 2);
+		ImageProcessor inverted = image.duplicate();
+		inverted.invert();
+
+		ExtendedExtrema maxima = ExtendedExtrema.maxima(image, 8);
+		for (int h : new int[] { 0, 4, 30, 80 })
+		{
+			assertSameImages(MinimaAndMaxima.extendedMinima(inverted, h, 8),
+					maxima.extendedExtrema(h));
+		}
+	}
+
+	/**
+	 * Compares extended minima of a 3D image with the results obtained by
+	 * geodesic reconstruction.
+	 */
+	@Test
+	public final void testExtendedMinima_3D()
+	{
+		ImageStack image = new ImageStack(8, 7);
+		for (int z = 0; z < 5; z++)
+		{
+			image.addSlice(createRandomImage(8, 7, z + 10));
+		}
+
+		for (int conn : new int[] { 6, 26 })
+		{
+			ExtendedExtrema minima = ExtendedExtrema.minima(image, conn);
+			for (int h : new int[] { 0, 3, 30 })
+			{
+				ImageStack expected = MinimaAndMaxima3D.extendedMinima(image, h, conn);
+				ImageStack result = minima.extendedExtremaStack(h);
+				for (int z = 0; z < 5; z++)
+				{
+					assertSameImages(expected.getProcessor(z + 1), result.getProcessor(z + 1));
+				}
+			}
+		}
+	}
+
+	private static final ImageProcessor createRandomImage(int sizeX, int sizeY, long seed)
+	{
+		Random random = new Random(seed);
+		ImageProcessor image = new ByteProcessor(sizeX, sizeY);
+		for (int i = 0; i < sizeX * sizeY; i++)
+		{
+			image.set(i, random.nextInt(64) * 4);
+		}
+		return image;
+	}
+
+	private static final void assertSameImages(ImageProcessor expected, ImageProcessor actual)
+	{
+		for (int y = 0; y < expected.getHeight(); y++)
+		{
+			for (int x = 0; x < expected.getWidth(); x++)
+			{
+				assertEquals("Pixel (" + x + "," + y + ")", expected.get(x, y), actual.get(x, y));
+			}
+		}
+	}
+}
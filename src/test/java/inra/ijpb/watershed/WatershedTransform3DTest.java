@@ -0,0 +1,71 @@
+package inra.ijpb.watershed;
+
+import static org.junit.Assert.assertEquals;
+import ij.ImagePlus;
+import ij.ImageStack;
+import inra.ijpb.data.image.Image3D;
+import inra.ijpb.data.image.Images3D;
+
+import org.junit.Test;
+
+public class WatershedTransform3DTest
+{
+	/**
+	 * Checks that the label stack type is chosen according to the number of
+	 * labels, and that labels are stored exactly.
+	 */
+	@Test
+	public final void testCreateLabelStack_Type()
+	{
+		int[][] tabLabels = new int[][] {
+				{ 1, 0, WatershedTransform3D.INIT },
+				{ 200, 300, 2 } };
+
+		ImageStack labels = WatershedTransform3D.createLabelStack(tabLabels, 3, 1, 300);
+		assertEquals(16, labels.getBitDepth());
+		assertEquals(2, labels.getSize());
+		assertEquals(1, (int) labels.getVoxel(0, 0, 0));
+		assertEquals(0, (int) labels.getVoxel(2, 0, 0));
+		assertEquals(300, (int) labels.getVoxel(1, 0, 1));
+
+		int bigLabel = (1 << 24) + 1;
+		tabLabels[1][1] = bigLabel;
+		labels = WatershedTransform3D.createLabelStack(tabLabels, 3, 1, bigLabel);
+		assertEquals(24, labels.getBitDepth());
+		Image3D values = Images3D.createWrapper(labels);
+		assertEquals(bigLabel, values.get(1, 0, 1));
+		assertEquals(0, values.get(2, 0, 0));
+	}
+
+	/**
+	 * Computes the watershed of an image with two minima, and checks the
+	 * type of the result.
+	 */
+	@Test
+	public final void testApply_TwoBasins()
+	{
+		ImageStack input = ImageStack.create(7, 3, 3, 8);
+		for (int z = 0; z < 3; z++)
+		{
+			for (int y = 0; y < 3; y++)
+			{
+				for (int x = 0; x < 7; x++)
+				{
+					input.setVoxel(x, y, z, 10 + 10 * Math.min(Math.abs(x - 1), Math.abs(x - 5)));
+				}
+			}
+		}
+
+		WatershedTransform3D algo = new WatershedTransform3D(new ImagePlus("input", input), null, 6);
+		ImagePlus result = algo.apply();
+
+		assertEquals(8, result.getBitDepth());
+		ImageStack labels = result.getStack();
+		int label1 = (int) labels.getVoxel(0, 1, 1);
+		int label2 = (int) labels.getVoxel(6, 1, 1);
+		assertEquals(label1, (int) labels.getVoxel(2, 1, 1));
+		assertEquals(label2, (int) labels.getVoxel(4, 1, 1));
+		assertEquals(0, (int) labels.getVoxel(3, 1, 1));
+		assertEquals(3, label1 + label2);
+	}
+}